@@ -0,0 +1,102 @@
+package edu.NUDT.RDA.parallel;
+
+import se.fnord.PcapReader;
+import util.bloom.RDA.PcapRDAIngest;
+import util.bloom.RDA.SimpleRDATable;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * build the RDA table of a pcap trace with 1..16 workers,
+ * every worker decodes a record aligned range into its own shard
+ */
+public class ParallelPcapIngest {
+
+    static int[] threadNums = {1, 2, 4, 8, 16};
+
+    PcapReader reader = null;
+    int numBuckets = 0;
+
+    public ParallelPcapIngest(String trace, int _numBuckets) throws IOException {
+        reader = PcapReader.create(Paths.get(trace));
+        numBuckets = _numBuckets;
+    }
+
+    /**
+     * @param parallelism
+     * @return the table
+     */
+    public SimpleRDATable test(int parallelism) {
+        SimpleRDATable table = new SimpleRDATable(numBuckets);
+        long startTime = System.nanoTime();
+        long n = PcapRDAIngest.ingestParallel(reader, table, 1.0, parallelism);
+        long T = System.nanoTime() - startTime;
+        String result = "threads: " + parallelism + " packets: " + n + " ms: " + (T / 1e6)
+                + " packets/s: " + Math.round(n / (T / 1e9));
+        System.out.println("$: " + result);
+        write("testParallelPcapIngest", result);
+        return table;
+    }
+
+    /**
+     * the merged shards must hold the same ids as a sequential table
+     *
+     * @return
+     */
+    public boolean sameBuckets(int parallelism) {
+        SimpleRDATable sequential = new SimpleRDATable(numBuckets);
+        PcapRDAIngest.ingest(reader, sequential, 1.0);
+        SimpleRDATable table = new SimpleRDATable(numBuckets);
+        PcapRDAIngest.ingestParallel(reader, table, 1.0, parallelism);
+        for (int i = 0; i < numBuckets; i++) {
+            if (sequential.buckets.getCounter(i) != table.buckets.getCounter(i)
+                    || sequential.buckets.getKeySum(i) != table.buckets.getKeySum(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void write(String testParallelPcapIngest, String result) {
+
+        BufferedWriter bufferedWriter = null;
+        try {
+
+            bufferedWriter = new BufferedWriter(new FileWriter(testParallelPcapIngest, true));
+            bufferedWriter.append(result);
+            bufferedWriter.newLine();
+            bufferedWriter.flush();
+            bufferedWriter.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) {
+        int numBuckets = 200000;
+        int rpt = 3;
+        if (args.length > 1) {
+            numBuckets = Integer.parseInt(args[1]);
+        }
+
+        try {
+            ParallelPcapIngest bench = new ParallelPcapIngest(args[0], numBuckets);
+            System.out.println("$: same buckets: " + bench.sameBuckets(threadNums[threadNums.length - 1]));
+            //warm up
+            bench.test(1);
+
+            for (int r = 0; r < rpt; r++) {
+                for (int parallelism : threadNums) {
+                    bench.test(parallelism);
+                }
+            }
+            bench.reader.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
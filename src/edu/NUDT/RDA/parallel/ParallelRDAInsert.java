@@ -0,0 +1,167 @@
+package edu.NUDT.RDA.parallel;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import util.bloom.RDA.RDABucketStore;
+import util.bloom.RDA.SimpleRDATable;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * insert throughput of one SimpleRDATable shared by several threads,
+ * semaphore buckets vs CAS buckets
+ */
+public class ParallelRDAInsert {
+
+    static ExecutorService parallelRDA = null;
+
+    static int[] threadNums = {1, 2, 4, 8, 16};
+
+    long[] ids = null;
+    double[] ts = null;
+    int numBuckets = 0;
+
+    public ParallelRDAInsert(int n, int _numBuckets) {
+        if (parallelRDA == null) {
+            ThreadFactory RDAFactory = new ThreadFactoryBuilder().setNameFormat("RDA-%d")
+                    .build();
+            parallelRDA = Executors.newFixedThreadPool(threadNums[threadNums.length - 1], RDAFactory);
+        }
+        numBuckets = _numBuckets;
+        ids = new long[n];
+        ts = new double[n];
+        Random r = new Random(n);
+        for (int i = 0; i < n; i++) {
+            ids[i] = r.nextLong();
+            ts[i] = r.nextDouble();
+        }
+    }
+
+    /**
+     * all threads insert their slice of the ids into the same table
+     *
+     * @param table
+     * @param parallelism
+     * @return elapsed nanoseconds
+     */
+    public long parallelInsert(final SimpleRDATable table, int parallelism) {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(parallelism);
+        int slice = (ids.length + parallelism - 1) / parallelism;
+        for (int i = 0; i < parallelism; i++) {
+            final int from = i * slice;
+            final int to = Math.min(ids.length, from + slice);
+            parallelRDA.execute(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = from; j < to; j++) {
+                            table.insert(ids[j], ts[j], 1);
+                        }
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * @param concurrent CAS buckets or not
+     * @param parallelism
+     * @return inserts per second
+     */
+    public double test(boolean concurrent, int parallelism) {
+        RDABucketStore.concurrent = concurrent;
+        SimpleRDATable table = new SimpleRDATable(numBuckets);
+        RDABucketStore.concurrent = false;
+
+        long T = parallelInsert(table, parallelism);
+        double rate = ids.length / (T / 1e9);
+        String result = (concurrent ? "CAS" : "semaphore") + " threads: " + parallelism
+                + " ms: " + (T / 1e6) + " inserts/s: " + Math.round(rate);
+        System.out.println("$: " + result);
+        write("testParallelInsertRDA", result);
+        return rate;
+    }
+
+    /**
+     * the CAS table must hold the same ids as a sequential one
+     *
+     * @return
+     */
+    public boolean sameBuckets(int parallelism) {
+        SimpleRDATable sequential = new SimpleRDATable(numBuckets);
+        parallelInsert(sequential, 1);
+        RDABucketStore.concurrent = true;
+        SimpleRDATable table = new SimpleRDATable(numBuckets);
+        RDABucketStore.concurrent = false;
+        parallelInsert(table, parallelism);
+        for (int i = 0; i < numBuckets; i++) {
+            if (sequential.buckets.getCounter(i) != table.buckets.getCounter(i)
+                    || sequential.buckets.getKeySum(i) != table.buckets.getKeySum(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void write(String testParallelInsertRDA, String result) {
+
+        BufferedWriter bufferedWriter = null;
+        try {
+
+            bufferedWriter = new BufferedWriter(new FileWriter(testParallelInsertRDA, true));
+            bufferedWriter.append(result);
+            bufferedWriter.newLine();
+            bufferedWriter.flush();
+            bufferedWriter.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = 2000000;
+        int numBuckets = 20000;
+        int rpt = 3;
+        if (args.length > 0) {
+            n = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            numBuckets = Integer.parseInt(args[1]);
+        }
+
+        try {
+            ParallelRDAInsert bench = new ParallelRDAInsert(n, numBuckets);
+            System.out.println("$: same buckets: " + bench.sameBuckets(threadNums[threadNums.length - 1]));
+            //warm up
+            bench.test(false, 1);
+            bench.test(true, 1);
+
+            for (int r = 0; r < rpt; r++) {
+                for (int parallelism : threadNums) {
+                    bench.test(false, parallelism);
+                    bench.test(true, parallelism);
+                }
+            }
+
+            parallelRDA.shutdown();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -21,6 +21,7 @@ import java.util.Vector;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
@@ -39,6 +40,8 @@ import util.bloom.Apache.Key;
 import util.bloom.Apache.Hash.hashing.LongHashFunction;
 import util.bloom.Exist.FineComb;
 import util.bloom.Exist.IBLTEntry;
+import util.bloom.RDA.ArrayRDABucketStore;
+import util.bloom.RDA.RDAPeeler;
 import util.bloom.RDA.SimpleRDATableEntry;
 
 //
@@ -82,8 +85,9 @@ public class ParallelSimpleRDATable  implements Writable ,Serializable{
 	 */
 	private static ExecutorService parallelBFr;
 	public static int parallelism = 1;
+	//threads of parallelBFr
+	public static int poolSize = 1;
 	public static Semaphore BFDecodeOps;
-	public static Semaphore BFOps;
 	
 	public static Semaphore BFDecodeOneThreadOps;
 	/**
@@ -114,13 +118,14 @@ public class ParallelSimpleRDATable  implements Writable ,Serializable{
 	  public static void init(int threads){
 		  
 		 // pureCells.clear();
-		  BFOps = new Semaphore(threads);
 		  BFDecodeOps= new Semaphore(threads);
 		  BFDecodeOneThreadOps = new Semaphore(1);
 		  
 		  ThreadFactory BFrFactory = new ThreadFactoryBuilder().setNameFormat("BF-%d")
 			      .build();
-			    parallelBFr = Executors.newFixedThreadPool(5, BFrFactory);			    
+		  //one worker per bank, more would idle
+		  poolSize = Math.max(1, Math.min(threads, N_HASH));
+			    parallelBFr = Executors.newFixedThreadPool(poolSize, BFrFactory);			    
 		 inited = true;			   
 	  }
 	  
@@ -460,143 +465,107 @@ public class ParallelSimpleRDATable  implements Writable ,Serializable{
 //		
 //	}
 	
-	 class BFInsert implements Runnable{
-		   
-		// private volatile boolean running = true;
-		  // int indexStart=-1;
-		   //int indexEnd=-1;
-		   int indexBF=-1;
-		   long id;
-		   double TS;
-		   long Counter;
-		   //Set<Key> keyList;
-		   public BFInsert(int index,long _id,double _TS,long _Counter){
-			  // this.indexStart=start;
-			   //this.indexEnd=end;
-			   indexBF=index;
-			   id = _id;
-			   TS = _TS;
-			   Counter = _Counter;
-		   }
-		   
-//		   public void terminate() {
-//		        running = false;
-//		    }
-		   public void run() {
-			   //while (running) {
-			    	  //log.main("begin: "+indexBF);
-			    	  SimpleRDATableEntry[] TBPart = bf.get(indexBF);			    	
-						byte[] kVec=IBLTEntry.ToByteArray(id);
-						
-						int h = hashPos(id, indexBF);
-						//int[] h=IBLTEntry.hashC.hash(new Key(kVec),indexBF);
-						
-						SimpleRDATableEntry entry = TBPart[h%TBPart.length];
-						entry.Counter+=Counter;
-						entry.TS+=TS;
-						entry.keySum ^= id;
-						
-						//BFOps.release(); 
-						//running = false;			  
-						//log.main("complete: "+indexBF);
-			   		//}
-			    }
-
-	 }
-	
+	 /**
+	  * one key is too little work to hand off, update the banks in place
+	  * @param id
+	  * @param TS
+	  * @param Counter
+	  */
 	 void _insert(long id,double TS,long Counter){
-		
-		 try {        	 
-        	// long startTime = System.currentTimeMillis();
-			//BFOps.release(parallelism);
-             //log.main("parallelism: "+parallelism);    
-             for (int i = 0; i < parallelism; i++) {
-             //  BFOps.acquire(1);               
-               parallelBFr.execute(new BFInsert(i,id,TS,Counter));
-               
-             }       
-             
-           //  BFOps.acquire(parallelism);
-             //log.main("complete: ");
-            // BFOps.release(parallelism);
-             //log.main("finish: "+parallelism);
-           } catch (Exception e) {
-             e.printStackTrace();
-           }		 		
+		 for(int indexBF=0;indexBF<N_HASH;indexBF++){
+			 SimpleRDATableEntry[] TBPart = bf.get(indexBF);
+			 int h = hashPos(id, indexBF);
+			 SimpleRDATableEntry entry = TBPart[h%TBPart.length];
+			 entry.Counter+=Counter;
+			 entry.TS+=TS;
+			 entry.keySum ^= id;
+		 }
 	}
-	
-	 class BFInsertBatch implements Runnable{
-		   
-		// private volatile boolean running = true;
-		  // int indexStart=-1;
-		   //int indexEnd=-1;
-		   int indexBF=-1;
-		   long Counter;
-		   //ConcurrentHashMap<Integer,Set<Pair<Long,Double>>> hashKeys;
-		   //Set<Key> keyList;
-		   public BFInsertBatch(int index,long _Counter){
-			  // this.indexStart=start;
-			   //this.indexEnd=end;
-			   indexBF=index;
-			   //hashKeys= _hashKeys;
-			   Counter = _Counter;
-		   }
-		   
-//		   public void terminate() {
-//		        running = false;
-//		    }
-		   public void run() {
-			   //while (running) {
-			    	  //log.main("begin: "+indexBF);
-			    	  SimpleRDATableEntry[] TBPart = bf.get(indexBF);	
-			    	 Hashtable<Long, Double> sets = hashKeys.get(indexBF);
-
-			    	//   log.main("set: "+sets.size()+", TBPart: "+TBPart.length);				   		
-			     Iterator<Entry<Long, Double>> ier = sets.entrySet().iterator();
-			    	  while(ier.hasNext()){
-			    		 Entry<Long, Double> nxt = ier.next();
-			    		 long id = nxt.getKey();
-			    		  double TS = nxt.getValue();
-			    		//  log.main("#: "+id+", "+TS);
-						byte[] kVec=IBLTEntry.ToByteArray(id);
-						
-						//int[] h=IBLTEntry.hashC.hash(new Key(kVec),indexBF);
-						int h = hashPos(id, indexBF);
-						
-						SimpleRDATableEntry entry = TBPart[h%TBPart.length];
-						entry.Counter+=Counter;
-						entry.TS+=TS;
-						entry.keySum ^= id;
-			    	  }
-			    	  bf.put(indexBF, TBPart);
-					  BFOps.release(); 
-						//running = false;			  
-						//log.main("complete: "+indexBF);
-			   		//}
-			    }
-
+	 
+	 /**
+	  * a worker owns the banks indexBF, indexBF+workers, ...
+	  * and applies the whole batch to them
+	  */
+	 class BFInsertBank implements Runnable{
+		 
+		 int indexBF=-1;
+		 int workers;
+		 long[] ids;
+		 float[] ts;
+		 int len;
+		 long Counter;
+		 CountDownLatch done;
+		 
+		 public BFInsertBank(int index,int _workers,long[] _ids,float[] _ts,int _len,long _Counter,CountDownLatch _done){
+			 indexBF=index;
+			 done=_done;
+			 workers=_workers;
+			 ids=_ids;
+			 ts=_ts;
+			 len=_len;
+			 Counter=_Counter;
+		 }
+		 
+		 public void run() {
+			 try{
+				 for(int bank=indexBF;bank<N_HASH;bank+=workers){
+					 SimpleRDATableEntry[] TBPart = bf.get(bank);
+					 for(int i=0;i<len;i++){
+						 long id = ids[i];
+						 SimpleRDATableEntry entry = TBPart[hashPos(id, bank)%TBPart.length];
+						 entry.Counter+=Counter;
+						 entry.TS+=ts[i];
+						 entry.keySum ^= id;
+					 }
+				 }
+			 }finally{
+				 done.countDown();
+			 }
+		 }
 	 }
-	 void _insert(long Counter){
-			
-		 try {        	 
-        	// long startTime = System.currentTimeMillis();
-			 // BFOps.release(parallelism);
-             //log.main("parallelism: "+parallelism);    
-             for (int i = 0; i < parallelism; i++) {
-               BFOps.acquire(1);               
-               parallelBFr.execute(new BFInsertBatch(i,Counter));
-               
-             }       
-             
-             BFOps.acquire(parallelism);
-             //log.main("complete: ");
-             BFOps.release(parallelism);
-             //log.main("finish: "+parallelism);
-           } catch (Exception e) {
-             e.printStackTrace();
-           }		 		
-	}
 	 
+	 /**
+	  * insert a batch, returns when all banks are updated
+	  * @param ids
+	  * @param ts
+	  */
+	 public void insertBatch(long[] ids,float[] ts){
+		 insertBatch(ids,ts,ids.length,1);
+	 }
+	 
+	 /**
+	  * insert (or erase, negative Counter) the first len items of a batch,
+	  * the batch is partitioned by bank, each bank has one owning worker;
+	  * one batch at a time per table
+	  * @param ids
+	  * @param ts
+	  * @param len
+	  * @param Counter
+	  */
+	 public synchronized void insertBatch(long[] ids,float[] ts,int len,long Counter){
+		 if(len<=0){
+			 return;
+		 }
+		 int workers = Math.min(poolSize,N_HASH);
+		 if(workers<=1){
+			 //nothing to split
+			 for(int i=0;i<len;i++){
+				 _insert(ids[i],ts[i],Counter);
+			 }
+			 return;
+		 }
+		 CountDownLatch done = new CountDownLatch(workers);
+		 try {
+			 for (int i = 0; i < workers; i++) {
+				 parallelBFr.execute(new BFInsertBank(i,workers,ids,ts,len,Counter,done));
+			 }
+			 //barrier, the count downs of the workers publish the buckets
+			 done.await();
+		 } catch (InterruptedException e) {
+			 e.printStackTrace();
+		 }
+	 }
+	
 	 /**
 	  * seq insert
 	  * @param id
@@ -650,40 +619,6 @@ public class ParallelSimpleRDATable  implements Writable ,Serializable{
 	 }
 	 
 
-	 class BFScanPure implements Runnable{
-		   
-		   int indexBF=-1;
-		   //ConcurrentHashMap<Integer,Integer> _pureCells;
-		   //Set<Key> keyList;
-		   public BFScanPure(int index){
-			  // this.indexStart=start;
-			   //this.indexEnd=end;
-			   indexBF=index;
-			  // _pureCells = _pureCellsI;
-		   }
-		   
-		   public void run() {
-			      try {
-			    	SimpleRDATableEntry[] TBPart = bf.get(indexBF);
-			    	for(int i=0;i<TBPart.length;i++){		  				  
-						 //SimpleRDATableEntry entry = TBPart[i];
-						 	//////System.out.println("$Decode: "+entry.toString());
-						  if( ParallelSimpleRDATable.EntryIsPure(indexBF,i,TBPart)){
-							  //log.main("find pured!");
-							  pureCells.put(i, indexBF);
-							  //////System.out.print(" pure!!!\n");							
-						  }
-						  
-					  }
-
-			      } finally {
-			    	  BFDecodeOps.release();
-			    	  
-			      }
-			    }
-
-	 }
-	 
 	/**
 	 * decode ids
 	 * @param positive
@@ -692,65 +627,36 @@ public class ParallelSimpleRDATable  implements Writable ,Serializable{
 	 */
 	public boolean decodeIDs(HashSet<Long> positive,HashSet<Long> negative){
 		
-		//scan pure cells
-		BFDecodeOps.release(parallelism);
-		//long time1 = System.nanoTime();
-			while(true){  
-				try {        	 
-		        	// long startTime = System.currentTimeMillis();
-	             for (int i = 0; i < parallelism; i++) {
-	               BFDecodeOps.acquire(1);               
-	               parallelBFr.execute(new BFScanPure(i));
-	               
-	             }
-	             BFDecodeOps.acquire(parallelism);
-	             //delete pured items
-	             int nErased = 0;
-	             if(!pureCells.isEmpty()){
-					 Iterator<Entry<Integer, Integer>> ier = pureCells.entrySet().iterator();
-						SimpleRDATableEntry entry;
-						while(ier.hasNext()){
-							Entry<Integer, Integer> nxt = ier.next();
-							Integer bucketId = nxt.getKey();
-							Integer indexBF = nxt.getValue();
-							entry = bf.get(indexBF)[bucketId];
-							if(entry.Counter==1){
-								positive.add(entry.keySum);
-							}else{
-								negative.add(entry.keySum);
-							}
-							nErased++;
-							_insert(entry.keySum,-entry.TS,-entry.Counter);
-						}
-						pureCells.clear();
-					}
-	             //terminate
-	             if(nErased<=0){
-	            	 break;
-	             }
-	             BFDecodeOps.release(parallelism);
-	           } catch (Exception e) {
-	             e.printStackTrace();
-	           }		 	
-				
+		//banks back to back, same layout as SimpleRDATable
+		ArrayRDABucketStore packed = new ArrayRDABucketStore(bucketPerBank*N_HASH,false);
+		for(int indexBF=0;indexBF<N_HASH;indexBF++){
+			SimpleRDATableEntry[] TBPart = bf.get(indexBF);
+			int start = indexBF*bucketPerBank;
+			for(int i=0;i<TBPart.length;i++){
+				packed.set(start+i,TBPart[i].Counter,TBPart[i].TS,TBPart[i].keySum,0);
+			}
+		}
 		
+		RDAPeeler peeler = new RDAPeeler(packed,N_HASH,LongHashFunction4PosHash,null);
+		boolean decoded = peeler.peel(true);
+		for(long id: peeler.getPositive()){
+			positive.add(id);
+		}
+		for(long id: peeler.getNegative()){
+			negative.add(id);
 		}
-		if(false){
-			//	float decodeDelay=(System.nanoTime()-time1)/1000000.0f;
-		//	log.main("decodeDelay: "+decodeDelay+" +: "+positive.size()+" -: "+negative.size());
 		
-			Enumeration<SimpleRDATableEntry[]> ier = bf.elements();
-			while(ier.hasMoreElements()){
-				SimpleRDATableEntry[] nxt = ier.nextElement();
-				for(int i=0;i<nxt.length;i++){
-					if(!nxt[i].empty()){
-						return false;
-					}
-				}
+		//peeled in place, as before
+		for(int indexBF=0;indexBF<N_HASH;indexBF++){
+			SimpleRDATableEntry[] TBPart = bf.get(indexBF);
+			int start = indexBF*bucketPerBank;
+			for(int i=0;i<TBPart.length;i++){
+				TBPart[i].Counter=packed.Counter[start+i];
+				TBPart[i].TS=packed.TS[start+i];
+				TBPart[i].keySum=packed.keySum[start+i];
 			}
-			return true;
 		}
-		return true;
+		return decoded;
 	}
 			
 
@@ -928,10 +834,6 @@ public class ParallelSimpleRDATable  implements Writable ,Serializable{
 		// TODO Auto-generated method stub
 		
 	}
-	/**
-	 * hashKeys
-	 */
-	static ConcurrentHashMap<Integer,Hashtable<Long,Double>> hashKeys=new ConcurrentHashMap<Integer,Hashtable<Long,Double>>();
 	/**
 	 * test
 	 * @param args
@@ -970,31 +872,18 @@ public class ParallelSimpleRDATable  implements Writable ,Serializable{
 		for(int repeat = 0;repeat <repeatedNum;repeat++){
 		//parallel
 		 bl=new ParallelSimpleRDATable(_expectedNumEntries,NumHash);				
-		 hashKeys.clear();
-		 
 		 
 		 totalDelays=0;
-		//bl=new ParallelSimpleRDATable(_expectedNumEntries,NumHash);		
 		//batch
-		
-		for(int j=0;j<NumHash;j++){
-			Hashtable<Long, Double> set = new Hashtable<Long,Double>();			
-			hashKeys.put(j,set);
-		}
-		//total packets
-		
+		long[] ids = new long[totalPackets];
+		float[] ts = new float[totalPackets];
 		for(int i=0;i<totalPackets;i++){
-			//	log.main("#i: "+i);
 			double[] rec = pg.NextWeibullPacket();
-			//replicate to each thread
-			for(int j=0;j<NumHash;j++){
-				Hashtable<Long, Double> set0 = hashKeys.get(j);
-				set0.put((long)rec[0], rec[1]);
-				hashKeys.put(j,set0);
-			}
+			ids[i]=(long)rec[0];
+			ts[i]=(float)rec[1];
 		}		
 		 long t1 = System.currentTimeMillis();
-		 bl._insert(1);
+		 bl.insertBatch(ids, ts);
 		totalDelays+=(System.currentTimeMillis()-t1);
 		
 		//decode
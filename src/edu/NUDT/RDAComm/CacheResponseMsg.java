@@ -1,20 +1,34 @@
 package edu.NUDT.RDAComm;
 
-import java.util.Hashtable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+import util.bloom.RDA.LongDoubleMap;
 
 public class CacheResponseMsg extends ObjMessage {
 	static final long serialVersionUID = 220L;
 
-	public Hashtable<Long,Double> _hashTable;
+	//id -> timestamp, written as primitive pairs
+	public transient LongDoubleMap _hashTable;
 	
-	public CacheResponseMsg(Hashtable<Long,Double> hashTable) {
+	public CacheResponseMsg(LongDoubleMap hashTable) {
 				
-		_hashTable= hashTable;//new Hashtable<Long,Double>(hashTable);	
+		_hashTable= hashTable;	
 	}
 	
 	public CacheResponseMsg(){
 		
 	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		LongDoubleMap.write(out, _hashTable);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		_hashTable = LongDoubleMap.read(in);
+	}
 }
\ No newline at end of file
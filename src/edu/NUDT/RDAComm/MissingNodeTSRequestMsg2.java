@@ -14,6 +14,8 @@ public class MissingNodeTSRequestMsg2 extends ObjMessage {
 	static final long serialVersionUID = 20L;
 	public AddressIF from;
 	public boolean isA=false;
+	//ids of a sliding window round, looked up in the window before the period caches
+	public boolean window=false;
 	public Set<Long> ids;
 	//public CountingBloomFilter bf;
 	
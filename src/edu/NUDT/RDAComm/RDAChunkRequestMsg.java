@@ -0,0 +1,23 @@
+package edu.NUDT.RDAComm;
+
+import edu.harvard.syrah.sbon.async.comm.AddressIF;
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+
+public class RDAChunkRequestMsg extends ObjMessage {
+
+	static final long serialVersionUID = 21L;
+	public AddressIF from;
+	//SRDA table instead of RDA
+	public boolean simple=false;
+	//first bucket
+	public int start;
+	public int maxBuckets;
+
+	public RDAChunkRequestMsg(AddressIF _from,boolean _simple,int _start,int _maxBuckets) {
+
+		from = _from;
+		simple = _simple;
+		start = _start;
+		maxBuckets = _maxBuckets;
+	}
+}
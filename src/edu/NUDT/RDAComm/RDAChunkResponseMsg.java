@@ -0,0 +1,42 @@
+package edu.NUDT.RDAComm;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+import util.bloom.RDA.RDABucketStore;
+import util.bloom.RDA.RDATableCodec;
+
+public class RDAChunkResponseMsg extends ObjMessage {
+	static final long serialVersionUID = 22L;
+
+	//first bucket of the chunk
+	public int start;
+	//buckets of the whole table, -1 if no transfer is in progress: start over from 0
+	public int total;
+	//the table the chunk is cut from, the same for every chunk of a transfer
+	public long snapshot;
+	//shipped with RDATableCodec
+	public transient RDABucketStore chunk;
+	
+	public RDAChunkResponseMsg(int _start,int _total,RDABucketStore _chunk) {
+		start=_start;
+		total=_total;
+		chunk=_chunk;	
+	}
+	
+	public RDAChunkResponseMsg(){
+		
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		RDATableCodec.write(out, chunk);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		chunk = RDATableCodec.read(in);
+	}
+}
@@ -0,0 +1,18 @@
+package edu.NUDT.RDAComm;
+
+import edu.harvard.syrah.sbon.async.comm.AddressIF;
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+
+public class RDALevelRequestMsg extends ObjMessage {
+
+	static final long serialVersionUID = 25L;
+	public AddressIF from;
+	//level of the RDA pyramid, 0 is the full table, -1 the coarsest of a new snapshot
+	public int level;
+
+	public RDALevelRequestMsg(AddressIF _from,int _level) {
+
+		from = _from;
+		level = _level;
+	}
+}
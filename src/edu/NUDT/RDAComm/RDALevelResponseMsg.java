@@ -0,0 +1,39 @@
+package edu.NUDT.RDAComm;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+import util.bloom.RDA.RDABucketStore;
+import util.bloom.RDA.RDATableCodec;
+
+public class RDALevelResponseMsg extends ObjMessage {
+	static final long serialVersionUID = 26L;
+
+	public int level;
+	//buckets of level 0
+	public int fullSize;
+	//shipped with RDATableCodec
+	public transient RDABucketStore buckets;
+	
+	public RDALevelResponseMsg(int _level,int _fullSize,RDABucketStore _buckets) {
+		level=_level;
+		fullSize=_fullSize;
+		buckets=_buckets;	
+	}
+	
+	public RDALevelResponseMsg(){
+		
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		RDATableCodec.write(out, buckets);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		buckets = RDATableCodec.read(in);
+	}
+}
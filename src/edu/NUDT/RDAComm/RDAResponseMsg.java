@@ -1,20 +1,35 @@
 package edu.NUDT.RDAComm;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
-import util.bloom.RDA.RDATableEntry;
-import util.bloom.RDA.SimpleRDATableEntry;
+import util.bloom.RDA.RDATable;
 
 public class RDAResponseMsg extends ObjMessage {
-	static final long serialVersionUID = 19L;
+	static final long serialVersionUID = 20L;
 
-	public RDATableEntry[] _hashTable;
+	//shipped with RDATableCodec
+	public transient RDATable _table;
 	
-	public RDAResponseMsg(RDATableEntry[] hashTable) {
+	public RDAResponseMsg(RDATable table) {
 				
-		_hashTable=hashTable;	
+		_table=table;	
 	}
 	
 	public RDAResponseMsg(){
 		
 	}
-}
\ No newline at end of file
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		_table.write(out);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		_table = new RDATable();
+		_table.readFields(in);
+	}
+}
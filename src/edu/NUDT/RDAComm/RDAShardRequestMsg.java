@@ -0,0 +1,18 @@
+package edu.NUDT.RDAComm;
+
+import edu.harvard.syrah.sbon.async.comm.AddressIF;
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+
+public class RDAShardRequestMsg extends ObjMessage {
+
+	static final long serialVersionUID = 29L;
+	public AddressIF from;
+	//flow shards asked for, null or empty for all
+	public int[] shards;
+
+	public RDAShardRequestMsg(AddressIF _from,int[] _shards) {
+
+		from = _from;
+		shards = _shards;
+	}
+}
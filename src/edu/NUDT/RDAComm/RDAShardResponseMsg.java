@@ -0,0 +1,42 @@
+package edu.NUDT.RDAComm;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+import util.bloom.RDA.RDABucketStore;
+import util.bloom.RDA.RDATableCodec;
+
+public class RDAShardResponseMsg extends ObjMessage {
+	static final long serialVersionUID = 30L;
+
+	//shards of the whole table, 0 if the host keeps none
+	public int numShards;
+	public int shardBuckets;
+	//the shards sent, in the order of the buckets
+	public int[] shards;
+	//shipped with RDATableCodec
+	public transient RDABucketStore buckets;
+	
+	public RDAShardResponseMsg(int _numShards,int _shardBuckets,int[] _shards,RDABucketStore _buckets) {
+		numShards=_numShards;
+		shardBuckets=_shardBuckets;
+		shards=_shards;
+		buckets=_buckets;	
+	}
+	
+	public RDAShardResponseMsg(){
+		
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		RDATableCodec.write(out, buckets);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		buckets = RDATableCodec.read(in);
+	}
+}
@@ -0,0 +1,37 @@
+package edu.NUDT.RDAComm;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import edu.harvard.syrah.sbon.async.comm.AddressIF;
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+import util.bloom.RDA.RDADifferenceEstimator;
+
+public class RDASketchRequestMsg extends ObjMessage {
+
+	static final long serialVersionUID = 23L;
+	public AddressIF from;
+	//at least this many buckets, set when a smaller table did not decode
+	public int minBuckets;
+	//strata of the requester's ids
+	public transient RDADifferenceEstimator sketch;
+
+	public RDASketchRequestMsg(AddressIF _from,RDADifferenceEstimator _sketch,int _minBuckets) {
+
+		from = _from;
+		sketch = _sketch;
+		minBuckets = _minBuckets;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		sketch.write(out);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		sketch = new RDADifferenceEstimator();
+		sketch.readFields(in);
+	}
+}
@@ -0,0 +1,37 @@
+package edu.NUDT.RDAComm;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+import util.bloom.RDA.SimpleRDATable;
+
+public class RDASketchResponseMsg extends ObjMessage {
+	static final long serialVersionUID = 24L;
+
+	//estimated ids in one set only
+	public long estimate;
+	//SRDA table sized to the estimate, shipped with RDATableCodec
+	public transient SimpleRDATable _table;
+	
+	public RDASketchResponseMsg(long _estimate,SimpleRDATable table) {
+		estimate=_estimate;
+		_table=table;	
+	}
+	
+	public RDASketchResponseMsg(){
+		
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		_table.write(out);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		_table = new SimpleRDATable();
+		_table.readFields(in);
+	}
+}
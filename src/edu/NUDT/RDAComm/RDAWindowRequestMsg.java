@@ -0,0 +1,18 @@
+package edu.NUDT.RDAComm;
+
+import edu.harvard.syrah.sbon.async.comm.AddressIF;
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+
+public class RDAWindowRequestMsg extends ObjMessage {
+
+	static final long serialVersionUID = 27L;
+	public AddressIF from;
+	//the window ends at this timestamp, the requester's clock
+	public double end;
+
+	public RDAWindowRequestMsg(AddressIF _from,double _end) {
+
+		from = _from;
+		end = _end;
+	}
+}
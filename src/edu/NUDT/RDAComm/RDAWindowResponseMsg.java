@@ -0,0 +1,37 @@
+package edu.NUDT.RDAComm;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
+import util.bloom.RDA.SimpleRDATable;
+
+public class RDAWindowResponseMsg extends ObjMessage {
+	static final long serialVersionUID = 28L;
+
+	//packets within the window
+	public long packets;
+	//SRDA table of the sliding window, shipped with RDATableCodec
+	public transient SimpleRDATable _table;
+	
+	public RDAWindowResponseMsg(long _packets,SimpleRDATable table) {
+		packets=_packets;
+		_table=table;	
+	}
+	
+	public RDAWindowResponseMsg(){
+		
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		_table.write(out);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		_table = new SimpleRDATable();
+		_table.readFields(in);
+	}
+}
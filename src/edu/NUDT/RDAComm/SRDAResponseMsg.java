@@ -1,20 +1,35 @@
 package edu.NUDT.RDAComm;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import edu.harvard.syrah.sbon.async.comm.obj.ObjMessage;
-import util.bloom.RDA.RDATableEntry;
-import util.bloom.RDA.SimpleRDATableEntry;
+import util.bloom.RDA.SimpleRDATable;
 
 public class SRDAResponseMsg extends ObjMessage {
-	static final long serialVersionUID = 119L;
+	static final long serialVersionUID = 120L;
 
-	public SimpleRDATableEntry[] _hashTable;
+	//shipped with RDATableCodec
+	public transient SimpleRDATable _table;
 	
-	public SRDAResponseMsg(SimpleRDATableEntry[] hashTable) {
+	public SRDAResponseMsg(SimpleRDATable table) {
 				
-		_hashTable=hashTable;	
+		_table=table;	
 	}
 	
 	public SRDAResponseMsg(){
 		
 	}
-}
\ No newline at end of file
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		_table.write(out);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		_table = new SimpleRDATable();
+		_table.readFields(in);
+	}
+}
@@ -45,7 +45,7 @@ public class EndPointControllerPeriod {
 		/*
 		 * Create the event loop
 		 */
-		EL.set(new EL(Long.valueOf(Config.getConfigProps().getProperty(
+		EL.set(EL.create(Long.valueOf(Config.getConfigProps().getProperty(
 				"sbon.eventloop.statedump", "600000")), Boolean.valueOf(Config
 				.getConfigProps().getProperty("sbon.eventloop.showidle",
 						"false"))));
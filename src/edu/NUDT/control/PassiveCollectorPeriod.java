@@ -5,10 +5,11 @@ import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -44,8 +45,18 @@ import edu.NUDT.RDAComm.DateRequestMsg;
 import edu.NUDT.RDAComm.DateResponseMsg;
 import edu.NUDT.RDAComm.MissingNodeTSRequestMsg2;
 import edu.NUDT.RDAComm.MissingResponseMsg;
+import edu.NUDT.RDAComm.RDAChunkRequestMsg;
+import edu.NUDT.RDAComm.RDAChunkResponseMsg;
+import edu.NUDT.RDAComm.RDALevelRequestMsg;
+import edu.NUDT.RDAComm.RDALevelResponseMsg;
 import edu.NUDT.RDAComm.RDARequestMsg;
 import edu.NUDT.RDAComm.RDAResponseMsg;
+import edu.NUDT.RDAComm.RDASketchRequestMsg;
+import edu.NUDT.RDAComm.RDASketchResponseMsg;
+import edu.NUDT.RDAComm.RDAShardRequestMsg;
+import edu.NUDT.RDAComm.RDAShardResponseMsg;
+import edu.NUDT.RDAComm.RDAWindowRequestMsg;
+import edu.NUDT.RDAComm.RDAWindowResponseMsg;
 import edu.NUDT.RDAComm.SRDARequestMsg;
 import edu.NUDT.RDAComm.SRDAResponseMsg;
 import edu.harvard.syrah.prp.Log;
@@ -68,16 +79,26 @@ import edu.harvard.syrah.sbon.async.EL;
 import util.async.HashMapCache;
 import util.async.UniformHashFunc;
 import util.async.java.util.concurrent.ConcurrentHashMap;
-import util.bloom.Apache.BloomFilter;
-import util.bloom.Apache.BloomFilterFactory;
 import util.bloom.Apache.CountingBloomFilter;
 import util.bloom.Apache.Filter;
-import util.bloom.Apache.Key;
-import util.bloom.Apache.Hash.Hash;
-import util.bloom.Apache.Hash.MurmurHash3;
-import util.bloom.Apache.Hash.MurmurHash3.LongPair;
+import util.bloom.Apache.RotatingBloomFilter;
 import util.bloom.Exist.FineComb;
+import util.bloom.RDA.LongDoubleMap;
 import util.bloom.RDA.PassiveRDAHost;
+import util.bloom.RDA.PcapRDAIngest;
+import util.bloom.RDA.RDABucketStore;
+import util.bloom.RDA.RDADifferenceEstimator;
+import util.bloom.RDA.RDAEpochs;
+import util.bloom.RDA.RDAPaths;
+import util.bloom.RDA.RDAPyramid;
+import util.bloom.RDA.RDAStreamDecoder;
+import util.bloom.RDA.RDATable;
+import util.bloom.RDA.RDATablePool;
+import util.bloom.RDA.ShardedRDATable;
+import util.bloom.RDA.SimpleRDAMeasurementPoint;
+import util.bloom.RDA.SimpleRDAMeasurementPointSRDA;
+import util.bloom.RDA.SimpleRDATable;
+import util.bloom.RDA.SlidingRDATable;
 
 /**
  * control the passive collector
@@ -135,11 +156,57 @@ public class PassiveCollectorPeriod{
 
 	public static final double falsePositiveProbability=Double.parseDouble(Config
 			.getConfigProps().getProperty("falsePositiveProbability", "0.0000001"));
+	//Bloom filter generations of the duplicate filter, one period is spread over all but two
+	public static final int dedupGenerations = Integer.parseInt(Config
+			.getConfigProps().getProperty("dedupGenerations", "4"));
 			
 	public static final int RDAEntries = Integer.parseInt(Config
 			.getConfigProps().getProperty("RDAEntries", "1000"));		
 	public static final int hashFuncNum = Integer.parseInt(Config
 			.getConfigProps().getProperty("hashFuncNum", "2"));	
+	//capture raw frames instead of decoded pcap4j packets
+	public static final boolean rawCapture = Boolean.parseBoolean(Config
+			.getConfigProps().getProperty("rawCapture", "false"));
+	//buckets per chunk when the table is streamed, 0 sends it in one message
+	public static final int streamChunkBuckets = Integer.parseInt(Config
+			.getConfigProps().getProperty("streamChunkBuckets", "0"));
+	//chunk requests in flight during a transfer
+	public static final int streamWindow = Integer.parseInt(Config
+			.getConfigProps().getProperty("streamWindow", "4"));
+	//size the SRDA table from a strata estimate of the difference instead of RDAEntries
+	public static final boolean adaptiveRDA = Boolean.parseBoolean(Config
+			.getConfigProps().getProperty("adaptiveRDA", "false"));
+	//extra buckets over the estimate, covers the estimation error
+	public static final double adaptiveSlack = Double.parseDouble(Config
+			.getConfigProps().getProperty("adaptiveSlack", "0.4"));
+	//smallest bank of the folded RDA levels, 0 ships the full table
+	public static final int pyramidMinBuckets = Integer.parseInt(Config
+			.getConfigProps().getProperty("pyramidMinBuckets", "0"));
+	//a level whose standard error of the mean delay is above this fraction of it is refined
+	public static final double pyramidMaxRelError = Double.parseDouble(Config
+			.getConfigProps().getProperty("pyramidMaxRelError", "0.05"));
+
+	public static final long slidingWindow = Long.parseLong(Config
+			.getConfigProps().getProperty("slidingWindow", "0"));
+
+	public static final int slidingSlots = Integer.parseInt(Config
+			.getConfigProps().getProperty("slidingSlots", "10"));
+
+	public static final long slidingQueryInterval = Long.parseLong(Config
+			.getConfigProps().getProperty("slidingQueryInterval", "1000"));
+
+	public static final boolean epochSwap = Boolean.parseBoolean(Config
+			.getConfigProps().getProperty("epochSwap", "true"));
+
+	//flow shards next to the SRDA table, a 5-tuple hash picks the shard of a packet; 0 turns them off
+	public static final int flowShards = Integer.parseInt(Config
+			.getConfigProps().getProperty("flowShards", "0"));
+
+	public static final int flowShardBuckets = Integer.parseInt(Config
+			.getConfigProps().getProperty("flowShardBuckets", "500"));
+	//shards asked for in a round, all if empty
+	public static final int[] flowShardQuery = ShardedRDATable.parse(Config
+			.getConfigProps().getProperty("flowShardQuery", ""));
 
 	public static final long offsetDate = Integer.parseInt(Config
 			.getConfigProps().getProperty("offsetDate", "5000"));	
@@ -153,13 +220,17 @@ public class PassiveCollectorPeriod{
 
 	public final static String filterProg=Config.getConfigProps()
 			.getProperty("filterProg", "ip host 10.107.20.2 and 10.107.20.3");
+
+	//one capture for every peer of targetDNSAddress, the packets go to the table of their (src,dst) path
+	public static final boolean hub = Boolean.parseBoolean(Config
+			.getConfigProps().getProperty("hub", "false"));
 	
 	BpfProgram prog = null;
 	
 	/**
-	 * test existence
+	 * duplicates within the last measurement period
 	 */
-	BloomFilter packetBF;
+	RotatingBloomFilter packetFilter;
 	 /**
 	  * cache the latest date
 	  */
@@ -203,6 +274,7 @@ public ObjComm commSync= null;
 	public PassiveRDAHost RDAHost = null; 
 	
 	private PacketListener  listener;
+	private PcapRawLoop.FrameVisitor rawListener;
 	/**
 	 * maximum packets
 	 */
@@ -210,21 +282,40 @@ public ObjComm commSync= null;
 	//address
 	byte[] nodeA;
 	byte[] nodeB;
+	int nodeAInt;
+	int nodeBInt;
 	private AddressIF synTargetAddress;
+	/**
+	 * hub: captured path -> host of the path, null on a pair
+	 */
+	RDAPaths<PassiveRDAHost> paths = null;
+	/**
+	 * the peers and the hosts of their paths, in the order of targetDNSAddress;
+	 * one peer and RDAHost on a pair
+	 */
+	String[] pathPeers;
+	PassiveRDAHost[] pathHosts;
 
 
 	
 	public PassiveCollectorPeriod(CB0 cbDone){
 		
-		MaximumPackets = PassiveCollectorPeriod.TotalPackets;
-		
-		long vectorSize = Math.round((Math.log(falsePositiveProbability)/Math.log(0.6185))*(int)MaximumPackets);
+		pathPeers = hub ? hubPeers() : new String[]{PassiveCollectorPeriod.target[0]};
+		//the capture counts the packets of all paths
+		MaximumPackets = PassiveCollectorPeriod.TotalPackets*pathPeers.length;
 		
-		int nbHash= (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2)));
-				//(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2);
-		
-		packetBF = (BloomFilter) BloomFilterFactory.createBloomFilter((int)vectorSize, nbHash,Hash.MURMUR_HASH);
+		//the generations rotate, so long or fast periods do not fill the filter up
+		packetFilter = new RotatingBloomFilter(MaximumPackets, measurementPeriod, dedupGenerations,
+				falsePositiveProbability);
 		
+		RDABucketStore.offHeap = Boolean.parseBoolean(Config.getConfigProps()
+				.getProperty("offHeapBuckets", "false"));
+		RDABucketStore.concurrent = Boolean.parseBoolean(Config.getConfigProps()
+				.getProperty("concurrentBuckets", "false"));
+		LongDoubleMap.offHeap = Boolean.parseBoolean(Config.getConfigProps()
+				.getProperty("offHeapTSTable", "false"));
+		RDATablePool.maxBytes = Long.parseLong(Config.getConfigProps()
+				.getProperty("scratchPoolMB", "256")) << 20;
 		RDAHost=new PassiveRDAHost();	
 		
 		//SenderTable = new ConcurrentHashMap<Long,Long>((int)MaximumPackets);
@@ -241,6 +332,7 @@ public ObjComm commSync= null;
 		nodeB = NetUtil.stringIPToByteIP(PassiveCollectorPeriod.target[0]);
 
 		synTargetAddress=NetAddress.createUnresolved(PassiveCollectorPeriod.target[0], PassiveCollectorPeriod.UDPPort);
+		initPaths();
 		
 		/**
 		 * init the pcap
@@ -278,6 +370,65 @@ public ObjComm commSync= null;
 		});
 	}
 	
+	/**
+	 * the peers of the hub, the distinct entries of targetDNSAddress
+	 */
+	static String[] hubPeers(){
+		List<String> peers = new ArrayList<String>();
+		for(String t: target){
+			if(!t.isEmpty()&&!peers.contains(t)){
+				peers.add(t);
+			}
+		}
+		return peers.toArray(new String[peers.size()]);
+	}
+
+	/**
+	 * a host per path; the path of the first peer keeps RDAHost
+	 */
+	void initPaths(){
+		pathHosts = new PassiveRDAHost[pathPeers.length];
+		pathHosts[0] = RDAHost;
+		if(!hub){
+			return;
+		}
+		nodeAInt = PcapRDAIngest.ipv4(nodeA, 0);
+		paths = new RDAPaths<PassiveRDAHost>();
+		for(int i=0;i<pathPeers.length;i++){
+			if(i>0){
+				pathHosts[i] = new PassiveRDAHost();
+			}
+			int peer = PcapRDAIngest.ipv4(NetUtil.stringIPToByteIP(pathPeers[i]), 0);
+			paths.putIfAbsent(pathKey(nodeAInt, peer), pathHosts[i]);
+		}
+		log.main("hub: "+paths.size()+" paths");
+	}
+
+	/**
+	 * the captured direction between me and a peer, as on a pair: me to the
+	 * peer on the active side, the peer to me on the passive one
+	 */
+	static long pathKey(int me, int peer){
+		return isActive ? RDAPaths.key(me, peer) : RDAPaths.key(peer, me);
+	}
+
+	/**
+	 * the host that answers a requester: the host of its path on a hub
+	 * @param from
+	 * @return
+	 */
+	PassiveRDAHost hostFor(AddressIF from){
+		if(paths==null||from==null){
+			return RDAHost;
+		}
+		PassiveRDAHost host = paths.get(pathKey(nodeAInt, from.getIntIPAddr()));
+		if(host==null){
+			log.warn("no path to "+from+", answered from the path to "+pathPeers[0]);
+			return RDAHost;
+		}
+		return host;
+	}
+
 	public boolean openPcap(){
 		   /***************************************************************************
 	     * Fouth we create a packet handler which receives packets and tells the 
@@ -393,16 +544,16 @@ public ObjComm commSync= null;
 						 //get the key of tcp packet
 						// byte[] header = ipPkt.getRawData();
 						 
-						 if((PassiveCollectorPeriod.isActive&&testEqual(src,nodeA)&&testEqual(dst,nodeB))||
+						 if(paths!=null){
+							 //hub: the path picks the host, hash and duplicate filter are shared
+							 PassiveRDAHost host = paths.get(PcapRDAIngest.ipv4(src, 0), PcapRDAIngest.ipv4(dst, 0));
+							 if(host!=null){
+								 addNewKey(ipPkt.getRawData(),ts,host);
+							 }
+						 }else if((PassiveCollectorPeriod.isActive&&testEqual(src,nodeA)&&testEqual(dst,nodeB))||
 								 (!PassiveCollectorPeriod.isActive&&testEqual(dst,nodeA)&&testEqual(src,nodeB))){
-							 Key byteRaw = new Key(ipPkt.getRawData());
-							 
-							 //store key,value
-							   if(!packetBF.membershipTest(byteRaw)){
-								   //get the hash code
-								  packetBF.add(byteRaw);
-								  addNewKey(byteRaw,ts);
-						 	}
+							 //store key,value, duplicates are dropped
+							 addNewKey(ipPkt.getRawData(),ts);
 							 
 						 }
 						
@@ -485,6 +636,57 @@ public ObjComm commSync= null;
 	}
 	    };
 	    
+	    if(rawCapture){
+	    	initRawListener();
+	    }
+	}
+
+	/**
+	 * raw frames: link, IPv4 and TCP headers are read at fixed offsets, the id is hashed
+	 * from the frame itself and goes to the RDA without any object per packet
+	 */
+	void initRawListener(){
+		nodeAInt = PcapRDAIngest.ipv4(nodeA, 0);
+		nodeBInt = PcapRDAIngest.ipv4(nodeB, 0);
+		final int linkType = dumpHandler.getDlt().value();
+		rawListener = new PcapRawLoop.FrameVisitor(){
+			@Override
+			public void visit(byte[] frame, int capturedLength, long ts) {
+				int ip = PcapRDAIngest.tcpIpv4Offset(frame, 0, capturedLength, linkType);
+				if(ip<0){
+					return;
+				}
+				int src = PcapRDAIngest.ipv4(frame, ip+12);
+				int dst = PcapRDAIngest.ipv4(frame, ip+16);
+				PassiveRDAHost host = null;
+				if(paths!=null){
+					host = paths.get(src, dst);
+				}else if((PassiveCollectorPeriod.isActive&&src==nodeAInt&&dst==nodeBInt)||
+						 (!PassiveCollectorPeriod.isActive&&dst==nodeAInt&&src==nodeBInt)){
+					host = RDAHost;
+				}
+				if(host!=null){
+					//time of the pcap header, no Timestamp object
+					ts -= PassiveCollectorPeriod.TSConstant;
+					long id = PcapRDAIngest.packetId(frame, ip, capturedLength);
+					if(packetFilter.addIfAbsent(id, ts)){
+						if(flowShards>0){
+							host.parseRecord(id, PcapRDAIngest.flowId(frame, ip, capturedLength), ts);
+						}else{
+							host.parseRecord(id, ts);
+						}
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * packets stored so far
+	 * @return
+	 */
+	long recordedPackets(){
+		return packetFilter.getNumInserted();
 	}
 	    
 	/**
@@ -502,23 +704,32 @@ public ObjComm commSync= null;
 	}
 
 	/**
-	 * add to the hash map, increase the idIndex
-	 * @param hashCode
+	 * add to the hash map, unless it was seen within the period
+	 * @param bytes
 	 * @param ts
 	 */
-	protected void addNewKey(Key key, long ts) {
-		// TODO Auto-generated method stub
-		//murmum3
-		int offset=0;
-		byte[] bytes = key.getBytes();
-		int seed=0x5bd1e995;
-		int m2 = 0x9747b28c;
-		LongPair out = new LongPair();
-		MurmurHash3.murmurhash3_x64_128(bytes, offset, bytes.length, seed, out);
-		long hashCode = out.val1+m2*out.val1;
+	protected void addNewKey(byte[] bytes, long ts) {
+		addNewKey(bytes, ts, RDAHost);
+	}
+
+	/**
+	 * @param bytes
+	 * @param ts
+	 * @param host of the path of the packet
+	 */
+	protected void addNewKey(byte[] bytes, long ts, PassiveRDAHost host) {
+		//the id of the raw listener, so peers in either capture mode agree
+		long hashCode = PcapRDAIngest.ipv4PacketId(bytes, bytes.length);
+		if(hashCode==0||!packetFilter.addIfAbsent(hashCode, ts)){
+			return;
+		}
 		
 		//store to RDA directly
-		RDAHost.parseRecord(hashCode, ts);
+		if(flowShards>0){
+			host.parseRecord(hashCode, PcapRDAIngest.flowId(bytes, 0, bytes.length), ts);
+		}else{
+			host.parseRecord(hashCode, ts);
+		}
 		
 		//SenderTable.put(hashCode, ts);
 		//store the key
@@ -562,10 +773,15 @@ public ObjComm commSync= null;
 	    	 * ready threads
 	    	 */
 	    	//ExecutorService execRDA = Executors.newCachedThreadPool();
-			dumpHandler.loop(count, listener,execRDA);
+			if(rawCapture){
+				//on the capture thread, no task per packet
+				new PcapRawLoop(dumpHandler).loop(count, rawListener);
+			}else{
+				dumpHandler.loop(count, listener,execRDA);
+			}
 			//execRDA.shutdown();
 			log.main("end: "+(System.currentTimeMillis()-t1)/1000);
-			log.main("BF recorded: "+packetBF.NumInserted+", fp: "+packetBF.getAveragedPriorFP());
+			log.main("BF recorded: "+recordedPackets()+", fp: "+packetFilter.getFalsePositive());
 			terminateCollect(new CB0(){
 				@Override
 				protected void cb(CBResult result) {
@@ -665,8 +881,14 @@ public ObjComm commSync= null;
 				//dumpHandler.breakLoop();				
 				//dumpHandler.close();
 				log.main("terminate!");
-				//flush the record
-				RDAHost.setParsed();				
+				expireStreamSnapshots();
+				//flush the record: the capture loop has returned, the live epoch
+				//is frozen for the rounds; capture starts again only after
+				//restartMeasureInterval and the next sync, packets in between are not seen
+				for(PassiveRDAHost host: pathHosts){
+					host.freezeEpoch();
+					host.setParsed();
+				}
 				startRDAProcess(new CB0(){
 					@Override
 					protected void cb(CBResult result) {
@@ -702,16 +924,30 @@ public ObjComm commSync= null;
 		
 		//active node only
 		if(PassiveCollectorPeriod.isActive){		
-		RDAHost.RemoteRDAComputeTest(new CB0(){
+		runRounds(0, cbDone);
+		}
+	}
+
+	/**
+	 * the rounds of the paths one after the other, the peers are not asked for
+	 * their tables all at once
+	 * @param i first path
+	 * @param cbDone with the result of the last round
+	 */
+	void runRounds(final int i, final CB0 cbDone){
+		pathHosts[i].RemoteRDAComputeTest(pathPeers[i], new CB0(){
 			@Override
 			protected void cb(CBResult result) {
-				// TODO Auto-generated method stub
-				//log.main("remote RDA compute finish");
-				cbDone.call(result);
+				if(i+1>=pathHosts.length){
+					cbDone.call(result);
+					return;
+				}
+				if(result.state!=CBResult.CBState.OK){
+					log.warn("round to "+pathPeers[i]+": "+result.toString());
+				}
+				runRounds(i+1, cbDone);
 			}
-			
 		});
-		}
 	}
 
 
@@ -723,7 +959,9 @@ public ObjComm commSync= null;
 	public void startCollect(){		
 		//SenderTable.clear();
 		//ID2Index.clear();		
-		RDAHost.setUnParsed();
+		for(PassiveRDAHost host: pathHosts){
+			host.setUnParsed();
+		}
 		pcapStore2Hash(Long.valueOf(MaximumPackets).intValue());
 	}
 	
@@ -732,8 +970,10 @@ public ObjComm commSync= null;
 	 */
 	public boolean restartCollect(){
 		//reset
-		RDAHost.reset();
-		packetBF.clear();	
+		for(PassiveRDAHost host: pathHosts){
+			host.reset();
+		}
+		packetFilter.clear();	
 		
 		//DuplicatedSenderTSTable.clear();
 		if(!dumpHandler.isOpen()){
@@ -756,16 +996,17 @@ public ObjComm commSync= null;
 		protected void cb(CBResult result, MissingNodeTSRequestMsg2 arg1, AddressIF arg2, Long arg3, CB1<Boolean> arg4) {
 			// TODO Auto-generated method stub
 			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
 			//store nodes
 			
 			Iterator<Long> ier = arg1.ids.iterator();
 			
-			Hashtable<Long,Double> hashTable = new Hashtable<Long,Double>();
+			LongDoubleMap hashTable = LongDoubleMap.create(arg1.ids.size(), false);
 			
 			double ts;
 			while(ier.hasNext()){
-			    Long key = ier.next();
-			    ts = RDAHost.getTimeStampForGivenID(key);
+			    long key = ier.next();
+			    ts = host.getTimeStampForGivenID(key, arg1.window);
 				if(ts>=0){
 					hashTable.put(key, ts);
 				}
@@ -784,21 +1025,22 @@ public ObjComm commSync= null;
 		protected void cb(CBResult result, CacheRequestMsg arg1, AddressIF arg2, Long arg3, CB1<Boolean> arg4) {
 			// TODO Auto-generated method stub
 			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
 			//store nodes
 			Set<Long> nodes = arg1.ids;
-			Set<Long> setMe = RDAHost._hostRDA.SenderTSTable.keySet();
+			Set<Long> setMe = host._hostRDA.SenderTSTable.keySet();
 			Set<Long> common=Sets.intersection(nodes, setMe);
 			log.main("LateBind: "+lateBindMeasure4Receiver+"set dist: "+nodes.size()+", "+setMe.size()+", same: "+common.size()+
 					", diff: "+(nodes.size()+setMe.size()-2*common.size()));
 			
-			Hashtable<Long,Double> hashTable = new Hashtable<Long,Double>();
+			LongDoubleMap hashTable = LongDoubleMap.create(nodes.size(), false);
 			//get common		
 			double ts;
 			if(!common.isEmpty()){
 			Iterator<Long> ier = common.iterator();
 			while(ier.hasNext()){
-				Long key = ier.next();	
-				ts = RDAHost.getTimeStampForGivenID(key);
+				long key = ier.next();	
+				ts = host.getTimeStampForGivenID(key);
 				if(ts>=0){
 					hashTable.put(key, ts);
 				}
@@ -853,10 +1095,11 @@ public ObjComm commSync= null;
 		protected void cb(CBResult result, RDARequestMsg arg1, AddressIF arg2, Long arg3, CB1<Boolean> cbHandled) {
 			// TODO Auto-generated method stub
 			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
 			//check if the parse is ready, if not ready, wait for the signal
 			long millis = 100;
 			int delta = 100;
-			while(!RDAHost.isParsed()&&(packetBF.NumInserted+delta<MaximumPackets)){
+			while(!host.isParsed()&&(recordedPackets()+delta<MaximumPackets)){
 				log.warn("not yet ready!");
 				try {
 					Thread.sleep(millis);
@@ -866,12 +1109,12 @@ public ObjComm commSync= null;
 				}
 				}
 				//if(isParsed){
-			/*if(!RDAHost._hostRDA.isParsed){
-				RDAHost.parseRecordsCacheRDA(SenderTable);
+			/*if(!host._hostRDA.isParsed){
+				host.parseRecordsCacheRDA(SenderTable);
 			}*/
 				//store my hashtable
-			 
-				RDAResponseMsg msg = new RDAResponseMsg(RDAHost._hostRDA.sender.copyTable().hashTable);
+				host.freezeEpoch();
+				RDAResponseMsg msg = new RDAResponseMsg(host._hostRDA.sender.copyTable());
 				sendResponseMessage("RDARequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
 				//}
 		}
@@ -884,6 +1127,7 @@ public ObjComm commSync= null;
 		protected void cb(CBResult result, SRDARequestMsg arg1, AddressIF arg2, Long arg3, CB1<Boolean> cbHandled) {
 			// TODO Auto-generated method stub
 			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
 			//check if the parse is ready, if not ready, wait for the signal
 			/*long millis = 100;
 			while(!isParsed){
@@ -896,17 +1140,243 @@ public ObjComm commSync= null;
 				}
 				}*/
 				//if(isParsed){
-			/*if(!RDAHost._hostSRDA.isParsed){
-				RDAHost.parseRecordsSRDACacheRDA(SenderTable);
+			/*if(!host._hostSRDA.isParsed){
+				host.parseRecordsSRDACacheRDA(SenderTable);
 			}*/
 				//store my hashtable
-				SRDAResponseMsg msg = new SRDAResponseMsg(RDAHost._hostSRDA.sender.copyTable().hashTable);
-				log.main("send response 4 SRDA: "+msg._hashTable.length);
+				host.freezeEpoch();
+				SRDAResponseMsg msg = new SRDAResponseMsg(host._hostSRDA.sender.copyTable());
+				log.main("send response 4 SRDA: "+msg._table.getNumBuckets());
 				sendResponseMessage("SRDARequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
 				//}
 		}
 
 	}
+
+	/**
+	 * estimate the difference from the requester's strata, answer with an
+	 * SRDA table of that size built from the cache
+	 */
+	public class QueryRDASketchReqHandler extends ResponseObjCommCB<RDASketchRequestMsg> {
+
+		@Override
+		protected void cb(CBResult result, RDASketchRequestMsg arg1, AddressIF arg2, Long arg3, CB1<Boolean> cbHandled) {
+			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
+			host.freezeEpoch();
+			long estimate = host._hostSRDA.buildEstimator().estimate(arg1.sketch);
+			int buckets = Math.max(arg1.minBuckets,
+					RDADifferenceEstimator.bucketsFor(estimate, SimpleRDATable.N_HASH, adaptiveSlack));
+			RDASketchResponseMsg msg = new RDASketchResponseMsg(estimate, host._hostSRDA.buildTable(buckets));
+			log.main("send sized SRDA: estimate "+estimate+", "+msg._table.getNumBuckets()+" buckets");
+			sendResponseMessage("RDASketchRequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
+		}
+
+	}
+
+	/**
+	 * the sliding window table, moved to the requester's end of the window
+	 */
+	public class QueryRDAWindowReqHandler extends ResponseObjCommCB<RDAWindowRequestMsg> {
+
+		@Override
+		protected void cb(CBResult result, RDAWindowRequestMsg arg1, AddressIF arg2, Long arg3, CB1<Boolean> cbHandled) {
+			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
+			SlidingRDATable window = host._hostSRDA.window;
+			RDAWindowResponseMsg msg;
+			if(window==null){
+				log.warn("no sliding window, RDA.slidingWindow=0");
+				msg = new RDAWindowResponseMsg(-1, new SimpleRDATable(SimpleRDATable.N_HASH));
+			}else{
+				SimpleRDATable table = window.snapshot(arg1.end);
+				msg = new RDAWindowResponseMsg(window.size(), table);
+			}
+			sendResponseMessage("RDAWindowRequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
+		}
+
+	}
+
+	/**
+	 * the flow shards asked for, packed in the order of the request
+	 */
+	public class QueryRDAShardReqHandler extends ResponseObjCommCB<RDAShardRequestMsg> {
+
+		@Override
+		protected void cb(CBResult result, RDAShardRequestMsg arg1, AddressIF arg2, Long arg3, CB1<Boolean> cbHandled) {
+			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
+			host.freezeEpoch();
+			ShardedRDATable flows = host._hostSRDA.flows;
+			RDAShardResponseMsg msg;
+			if(flows==null){
+				log.warn("no flow shards, RDA.flowShards=0");
+				msg = new RDAShardResponseMsg(0, 0, new int[0], RDABucketStore.allocate(0, false));
+			}else{
+				int[] shards = flows.validShards(arg1.shards);
+				msg = new RDAShardResponseMsg(flows.getNumShards(), flows.getShardBuckets(), shards, flows.select(shards));
+			}
+			sendResponseMessage("RDAShardRequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
+		}
+
+	}
+
+	/**
+	 * folded table snapshots of the rounds in progress, per requester
+	 */
+	final ConcurrentHashMap<String, RDAPyramid> pyramidSnapshots = new ConcurrentHashMap<String, RDAPyramid>();
+
+	public class QueryRDALevelReqHandler extends ResponseObjCommCB<RDALevelRequestMsg> {
+
+		@Override
+		protected void cb(CBResult result, RDALevelRequestMsg arg1, AddressIF arg2, Long arg3, CB1<Boolean> cbHandled) {
+			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
+			String key = fromNode.toString();
+			RDAPyramid snapshot = pyramidSnapshots.get(key);
+			//a new round folds the table it is answered from
+			if (arg1.level < 0 || snapshot == null) {
+				host.freezeEpoch();
+				snapshot = new RDAPyramid(host._hostRDA.sender.copyTable().buckets, RDATable.N_HASH,
+						pyramidMinBuckets);
+				pyramidSnapshots.put(key, snapshot);
+			}
+			int level = arg1.level < 0 ? snapshot.coarsest() : Math.min(arg1.level, snapshot.coarsest());
+			if (level == 0) {
+				pyramidSnapshots.remove(key);
+			}
+			RDALevelResponseMsg msg = new RDALevelResponseMsg(level, snapshot.getLevel(0).size(),
+					snapshot.getLevel(level));
+			sendResponseMessage("RDALevelRequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
+		}
+
+	}
+
+	/**
+	 * the table a chunked transfer is cut from: the frozen epoch itself, which
+	 * nobody writes until the next freeze, or a pooled copy of the table when
+	 * the period is not captured into epochs
+	 */
+	static final class StreamSnapshot {
+		final RDABucketStore buckets;
+		final int nHash;
+		//null if buckets is a copy
+		final RDAEpochs<?> epochs;
+		final RDAEpochs.Epoch<?> epoch;
+		//ms, for the expiry
+		final long created = System.currentTimeMillis();
+		//tells the transfers apart
+		final long id = System.nanoTime();
+
+		StreamSnapshot(RDABucketStore _buckets, int _nHash, RDAEpochs<?> _epochs, RDAEpochs.Epoch<?> _epoch) {
+			buckets = _buckets;
+			nHash = _nHash;
+			epochs = _epochs;
+			epoch = _epoch;
+		}
+
+		static StreamSnapshot of(SimpleRDAMeasurementPoint p) {
+			if (p.epochs != null) {
+				RDAEpochs.Epoch<RDATable> e = p.epochs.getFrozen();
+				return new StreamSnapshot(e.table.buckets, RDATable.N_HASH, p.epochs, e);
+			}
+			return new StreamSnapshot(p.sender.copyFromPool().buckets, RDATable.N_HASH, null, null);
+		}
+
+		static StreamSnapshot of(SimpleRDAMeasurementPointSRDA p) {
+			if (p.epochs != null) {
+				RDAEpochs.Epoch<SimpleRDATable> e = p.epochs.getFrozen();
+				return new StreamSnapshot(e.table.buckets, SimpleRDATable.N_HASH, p.epochs, e);
+			}
+			return new StreamSnapshot(p.sender.copyFromPool().buckets, SimpleRDATable.N_HASH, null, null);
+		}
+
+		/**
+		 * false once the epoch has been frozen over and is cleared for reuse
+		 */
+		boolean valid() {
+			return epochs == null || epochs.getFrozen() == epoch;
+		}
+
+		/**
+		 * the transfer is over, a copy goes back to RDATablePool
+		 */
+		void release() {
+			if (epochs == null) {
+				RDATablePool.get().give(buckets, nHash);
+			}
+		}
+	}
+
+	/**
+	 * table snapshots of the transfers in progress, per requester
+	 */
+	final ConcurrentHashMap<String, StreamSnapshot> streamSnapshots = new ConcurrentHashMap<String, StreamSnapshot>();
+
+	/**
+	 * drop the snapshots of transfers that were abandoned, once per period
+	 */
+	void expireStreamSnapshots() {
+		long oldest = System.currentTimeMillis() - measurementPeriod;
+		Iterator<Map.Entry<String, StreamSnapshot>> ier = streamSnapshots.entrySet().iterator();
+		while (ier.hasNext()) {
+			StreamSnapshot snapshot = ier.next().getValue();
+			if (snapshot.created < oldest) {
+				ier.remove();
+				snapshot.release();
+			}
+		}
+	}
+
+	public class QueryRDAChunkReqHandler extends ResponseObjCommCB<RDAChunkRequestMsg> {
+
+		@Override
+		protected void cb(CBResult result, RDAChunkRequestMsg arg1, AddressIF arg2, Long arg3, CB1<Boolean> cbHandled) {
+			final AddressIF fromNode = arg1.from;
+			final PassiveRDAHost host = hostFor(fromNode);
+			String key = fromNode + (arg1.simple ? "/SRDA" : "/RDA");
+			StreamSnapshot snapshot = streamSnapshots.get(key);
+			//the first chunk fixes the table the whole transfer is cut from
+			if (arg1.start == 0) {
+				host.freezeEpoch();
+				snapshot = arg1.simple ? StreamSnapshot.of(host._hostSRDA) : StreamSnapshot.of(host._hostRDA);
+				StreamSnapshot old = streamSnapshots.put(key, snapshot);
+				if (old != null) {
+					old.release();
+				}
+			} else if (snapshot == null) {
+				//a later chunk cut from another table would not peel, the requester starts over
+				log.warn("no transfer in progress for " + key + ", chunk " + arg1.start);
+				RDAChunkResponseMsg msg = new RDAChunkResponseMsg(arg1.start, -1, RDABucketStore.allocate(0, false));
+				sendResponseMessage("RDAChunkRequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
+				return;
+			}
+			RDABucketStore table = snapshot.buckets;
+			int total = table.size();
+			int nHash = arg1.simple ? SimpleRDATable.N_HASH : RDATable.N_HASH;
+			int start = Math.min(Math.max(arg1.start, 0), total);
+			int len = RDAStreamDecoder.chunkLength(total, nHash, start, Math.max(1, arg1.maxBuckets));
+			RDABucketStore chunk = table.newStore(len);
+			chunk.copyFrom(table, start, 0, len);
+			//checked after the copy: the epoch is cleared only once another one is frozen
+			if (!snapshot.valid()) {
+				log.warn("epoch of the transfer for " + key + " was frozen over, chunk " + start);
+				if (streamSnapshots.remove(key, snapshot)) {
+					snapshot.release();
+				}
+				RDAChunkResponseMsg msg = new RDAChunkResponseMsg(arg1.start, -1, RDABucketStore.allocate(0, false));
+				sendResponseMessage("RDAChunkRequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
+				return;
+			}
+			if (start + len >= total && streamSnapshots.remove(key, snapshot)) {
+				snapshot.release();
+			}
+			RDAChunkResponseMsg msg = new RDAChunkResponseMsg(start, total, chunk);
+			msg.snapshot = snapshot.id;
+			sendResponseMessage("RDAChunkRequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
+		}
+
+	}
 	
 	/**
 	 * @param myNearestStartDate
@@ -1247,7 +1717,9 @@ public ObjComm commSync= null;
 						
 						//comm = new ObjUDPComm(); 		
 						comm = new ObjComm();
-						RDAHost.comm=comm;																	
+						for(PassiveRDAHost host: pathHosts){
+							host.comm=comm;
+						}																	
 						comm.initServer(me, new CB0() {							
 							protected void cb(CBResult result0) {
 								switch (result0.state) {
@@ -1256,10 +1728,20 @@ public ObjComm commSync= null;
 									//RDA request, packet ts request
 									//simple RDA
 									comm.registerMessageCB(SRDARequestMsg.class, new QuerySRDAReqHandler());
+									comm.registerMessageCB(RDASketchRequestMsg.class, new QueryRDASketchReqHandler());
+									comm.registerMessageCB(RDAWindowRequestMsg.class, new QueryRDAWindowReqHandler());
+									comm.registerMessageCB(RDAShardRequestMsg.class, new QueryRDAShardReqHandler());
 									//RDA
 									comm.registerMessageCB(RDARequestMsg.class, new QueryRDAReqHandler());
+									comm.registerMessageCB(RDAChunkRequestMsg.class, new QueryRDAChunkReqHandler());
+									comm.registerMessageCB(RDALevelRequestMsg.class, new QueryRDALevelReqHandler());
 									comm.registerMessageCB(MissingNodeTSRequestMsg2.class, new MissingNodeReqHandler());
 									comm.registerMessageCB(CacheRequestMsg.class, new CacheReqHandler());
+									if(PassiveCollectorPeriod.isActive&&RDAHost._hostSRDA.window!=null){
+										for(int i=0;i<pathHosts.length;i++){
+											pathHosts[i].registerWindowTimer(pathPeers[i]);
+										}
+									}
 									
 									
 									final AddressIF objSyncCommAddr =NetAddress.createUnresolved(PassiveCollectorPeriod.myRegion[0],PassiveCollectorPeriod.UDPPort);//NetIPAddress.create(me,UDPPort);
@@ -1348,6 +1830,8 @@ public ObjComm commSync= null;
 					
 					//RDA request, packet ts request
 					comm.registerMessageCB(RDARequestMsg.class, new QueryRDAReqHandler());
+					comm.registerMessageCB(RDAChunkRequestMsg.class, new QueryRDAChunkReqHandler());
+					comm.registerMessageCB(RDALevelRequestMsg.class, new QueryRDALevelReqHandler());
 					comm.registerMessageCB(MissingNodeTSRequestMsg2.class, new MissingNodeReqHandler());
 
 					//request to remote nodes
@@ -1509,7 +1993,7 @@ public ObjComm commSync= null;
 		// TODO Auto-generated method stub
 		//last timer
 		log.main("set up sync");		
-		syncDate(synTargetAddress, new CB1<Long>(){
+		CB1<Long> cbSynced = new CB1<Long>(){
 			@Override
 			protected void cb(CBResult result, Long commonDate0) {
 				switch(result.state){
@@ -1547,6 +2031,37 @@ public ObjComm commSync= null;
 				
 			}
 			
+		};
+		if(paths!=null){
+			syncPeers(0, -1, cbSynced);
+		}else{
+			syncDate(synTargetAddress, cbSynced);
+		}
+	}
+
+	/**
+	 * hub: the date with every peer in turn, the collection starts at the latest
+	 * @param i
+	 * @param latest
+	 * @param cbDone
+	 */
+	void syncPeers(final int i, final long latest, final CB1<Long> cbDone){
+		if(i>=pathPeers.length){
+			if(latest<0){
+				cbDone.call(CBResult.ERROR("no peer synchronized"), latest);
+			}else{
+				cbDone.call(CBResult.OK(), latest);
+			}
+			return;
+		}
+		syncDate(NetAddress.createUnresolved(pathPeers[i], PassiveCollectorPeriod.UDPPort), new CB1<Long>(){
+			@Override
+			protected void cb(CBResult result, Long date) {
+				if(result.state!=CBResult.CBState.OK){
+					log.warn("sync with "+pathPeers[i]+": "+result.toString());
+				}
+				syncPeers(i+1, Math.max(latest, date), cbDone);
+			}
 		});
 	}
 	
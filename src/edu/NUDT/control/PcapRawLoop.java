@@ -0,0 +1,113 @@
+package edu.NUDT.control;
+
+import java.lang.reflect.Field;
+
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+
+/**
+ * Capture loop over pcap_next_ex on the native handle of a pcap4j PcapHandle.
+ *
+ * PcapHandle.loop builds a java.sql.Timestamp and a fresh byte[] for every
+ * frame before the listener sees it. Here the frame is copied into one buffer
+ * of snaplen bytes and the time is read from the sec/usec of the pcap header,
+ * so nothing is allocated per frame.
+ */
+final class PcapRawLoop {
+
+	/**
+	 * called on the capture thread, frame is reused by the next call
+	 */
+	interface FrameVisitor {
+		/**
+		 * @param frame captured bytes from index 0
+		 * @param capturedLength
+		 * @param ts ms since the epoch, from the pcap header
+		 */
+		void visit(byte[] frame, int capturedLength, long ts);
+	}
+
+	static {
+		//same library as pcap4j
+		Native.register(PcapRawLoop.class, System.getProperty(
+				"org.pcap4j.core.NativeMappings.pcapLibName", Platform.isWindows() ? "wpcap" : "pcap"));
+	}
+
+	private static native int pcap_next_ex(Pointer p, Pointer header, Pointer data);
+
+	/**
+	 * a pointer that is moved over the native memory instead of created per frame
+	 */
+	private static final class Cursor extends Pointer {
+		Cursor() {
+			super(0);
+		}
+
+		void moveTo(Memory ref) {
+			peer = Native.POINTER_SIZE == 8 ? ref.getLong(0) : ref.getInt(0) & 0xffffffffL;
+		}
+	}
+
+	private final Pointer pcap;
+	private final Memory headerRef = new Memory(Native.POINTER_SIZE);
+	private final Memory dataRef = new Memory(Native.POINTER_SIZE);
+	private final Cursor header = new Cursor();
+	private final Cursor data = new Cursor();
+	private final byte[] frame;
+
+	PcapRawLoop(PcapHandle handle) {
+		try {
+			Field f = PcapHandle.class.getDeclaredField("handle");
+			f.setAccessible(true);
+			pcap = (Pointer) f.get(handle);
+			frame = new byte[Math.max(handle.getSnapshot(), 1)];
+		} catch (Exception e) {
+			throw new IllegalStateException("no native handle in " + handle, e);
+		}
+	}
+
+	/**
+	 * @param count frames to read, 0 or less reads until the end of the capture
+	 * @param visitor
+	 * @return frames read
+	 * @throws PcapNativeException
+	 */
+	int loop(int count, FrameVisitor visitor) throws PcapNativeException {
+		int n = 0;
+		while (count <= 0 || n < count) {
+			int rc = pcap_next_ex(pcap, headerRef, dataRef);
+			if (rc == 0) {
+				//read timeout of a live capture
+				continue;
+			}
+			if (rc == -2) {
+				//end of a savefile, or pcap_breakloop
+				break;
+			}
+			if (rc < 0) {
+				throw new PcapNativeException("pcap_next_ex: " + rc, rc);
+			}
+			header.moveTo(headerRef);
+			long sec, usec;
+			if (NativeLong.SIZE == 8) {
+				sec = header.getLong(0);
+				usec = header.getLong(8);
+			} else {
+				sec = header.getInt(0) & 0xffffffffL;
+				usec = header.getInt(4);
+			}
+			int caplen = Math.min(header.getInt(2 * NativeLong.SIZE), frame.length);
+			data.moveTo(dataRef);
+			data.read(0, frame, 0, caplen);
+			visitor.visit(frame, caplen, sec * 1000 + usec / 1000);
+			n++;
+		}
+		return n;
+	}
+}
@@ -109,6 +109,21 @@ public class EL implements EventLoopIF {
 		return eventLoop;
 	}
 
+	/**
+	 * The event loop of the configuration: this single threaded one, or a
+	 * MultiEL with one reactor per core for sbon.eventloop.reactors=0, or
+	 * with that many reactors for a value above 1.
+	 */
+	public static EventLoopIF create(long stateDumpInterval, boolean showIdle) {
+		int reactors = Integer.parseInt(Config.getConfigProps().getProperty(
+				"sbon.eventloop.reactors", "1"));
+		if (reactors <= 0)
+			reactors = Runtime.getRuntime().availableProcessors();
+		if (reactors > 1)
+			return new MultiEL(stateDumpInterval, showIdle, reactors);
+		return new EL(stateDumpInterval, showIdle);
+	}
+
 	public EL() {
 		this(DEFAULT_STATE_DUMP_INTERVAL, DEFAULT_SHOW_IDLE);
 	}
@@ -903,72 +918,7 @@ public class EL implements EventLoopIF {
 					continue;
 				}
 				
-				CB1R<Boolean, SelectionKey> cbComm = null;
-				// commEvent.ts = System.currentTimeMillis();
-
-				ChannelSub channelSub = (ChannelSub) key.attachment();
-
-				int readyOps = key.readyOps();
-				
-				//log.debug("channel=" + key.channel());
-
-				if (key.isValid() && key.isAcceptable()) {
-					// log.debug("Handling comms cb with key.isAcceptable()");
-					if (channelSub.acceptCB != null) {
-						cbComm = channelSub.acceptCB;
-						// PTimer pt = new PTimer();
-						if (cbComm.cb(CBResult.OK(), key) && key.isValid()) {
-							readyOps &= ~SelectionKey.OP_ACCEPT;
-						}
-						// pt.stop(log, "Accept CB took");
-					} else {
-						log.debug("acceptCB=null channel=" + key.channel() + "cST="
-								+ POut.toString(channelSubTable));
-					}
-				}
-				if (key.isValid() && key.isConnectable()) {
-					// log.debug("Handling comms cb with key.isConnectable()");
-					if (channelSub.connectCB != null) {
-						cbComm = channelSub.connectCB;
-						// PTimer pt = new PTimer();
-						if (cbComm.cb(CBResult.OK(), key) && key.isValid()) {
-							readyOps &= ~SelectionKey.OP_ACCEPT;
-						}
-						// pt.stop(log, "Connect CB took");
-					} else {
-						log.debug("connectCB=null channel=" + key.channel() + " cST="
-								+ POut.toString(channelSubTable));
-					}
-				}
-				if (key.isValid() && key.isReadable()) {
-					//log.debug("Handling comms cb with key.isReadable()");
-					if (channelSub.readCB != null) {
-						cbComm = channelSub.readCB;
-						// PTimer pt = new PTimer();
-						if (cbComm.cb(CBResult.OK(), key) && key.isValid()) {
-							readyOps &= ~SelectionKey.OP_READ;
-						}
-						// pt.stop(log, "Read CB took");
-					} else {
-						log.debug("readCB=null channel=" + key.channel() + " cST="
-								+ POut.toString(channelSubTable));
-					}
-				}
-				if (key.isValid() && key.isWritable()) {
-					// log.debug("Handling comms cb with key.isWritable()");
-					if (channelSub.writeCB != null) {
-						cbComm = channelSub.writeCB;
-						// PTimer pt = new PTimer();
-						if (cbComm.cb(CBResult.OK(), key) && key.isValid()) {
-							readyOps &= ~SelectionKey.OP_WRITE;
-						}
-						// pt.stop(log, "Write CB took");
-					} else {
-						log.debug("writeCB=null channel=" + key.channel() + "cST="
-								+ POut.toString(channelSubTable));
-					}
-				}
-				
+				int readyOps = dispatch(key);
 				
 				// Have you dealt with all the interest ops?
 				if ((!key.isValid()) || readyOps  == 0) {
@@ -1000,6 +950,76 @@ public class EL implements EventLoopIF {
 
 	}
 
+	/**
+	 * Runs the comm callbacks of a selected key.
+	 * 
+	 * @return the ready ops left unhandled
+	 */
+	static int dispatch(SelectionKey key) {
+		CB1R<Boolean, SelectionKey> cbComm = null;
+		// commEvent.ts = System.currentTimeMillis();
+
+		ChannelSub channelSub = (ChannelSub) key.attachment();
+
+		int readyOps = key.readyOps();
+		
+		//log.debug("channel=" + key.channel());
+
+		if (key.isValid() && key.isAcceptable()) {
+			// log.debug("Handling comms cb with key.isAcceptable()");
+			if (channelSub.acceptCB != null) {
+				cbComm = channelSub.acceptCB;
+				// PTimer pt = new PTimer();
+				if (cbComm.cb(CBResult.OK(), key) && key.isValid()) {
+					readyOps &= ~SelectionKey.OP_ACCEPT;
+				}
+				// pt.stop(log, "Accept CB took");
+			} else {
+				log.debug("acceptCB=null channel=" + key.channel());
+			}
+		}
+		if (key.isValid() && key.isConnectable()) {
+			// log.debug("Handling comms cb with key.isConnectable()");
+			if (channelSub.connectCB != null) {
+				cbComm = channelSub.connectCB;
+				// PTimer pt = new PTimer();
+				if (cbComm.cb(CBResult.OK(), key) && key.isValid()) {
+					readyOps &= ~SelectionKey.OP_ACCEPT;
+				}
+				// pt.stop(log, "Connect CB took");
+			} else {
+				log.debug("connectCB=null channel=" + key.channel());
+			}
+		}
+		if (key.isValid() && key.isReadable()) {
+			//log.debug("Handling comms cb with key.isReadable()");
+			if (channelSub.readCB != null) {
+				cbComm = channelSub.readCB;
+				// PTimer pt = new PTimer();
+				if (cbComm.cb(CBResult.OK(), key) && key.isValid()) {
+					readyOps &= ~SelectionKey.OP_READ;
+				}
+				// pt.stop(log, "Read CB took");
+			} else {
+				log.debug("readCB=null channel=" + key.channel());
+			}
+		}
+		if (key.isValid() && key.isWritable()) {
+			// log.debug("Handling comms cb with key.isWritable()");
+			if (channelSub.writeCB != null) {
+				cbComm = channelSub.writeCB;
+				// PTimer pt = new PTimer();
+				if (cbComm.cb(CBResult.OK(), key) && key.isValid()) {
+					readyOps &= ~SelectionKey.OP_WRITE;
+				}
+				// pt.stop(log, "Write CB took");
+			} else {
+				log.debug("writeCB=null channel=" + key.channel());
+			}
+		}
+		return readyOps;
+	}
+
 	protected void shutdown() {
 		if (!ranShutdown) {
 			log.debug("Running shutdown hook.");
@@ -1015,7 +1035,7 @@ public class EL implements EventLoopIF {
 		}
 	}
 
-	class ChannelSub {
+	static class ChannelSub {
 		protected CB1R<Boolean, SelectionKey> acceptCB = null;
 		protected CB1R<Boolean, SelectionKey> connectCB = null;
 		protected CB1R<Boolean, SelectionKey> readCB = null;
@@ -0,0 +1,684 @@
+package edu.harvard.syrah.sbon.async;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.harvard.syrah.prp.ANSI;
+import edu.harvard.syrah.prp.Log;
+import edu.harvard.syrah.prp.ANSI.Color;
+import edu.harvard.syrah.sbon.async.CallbacksIF.*;
+import edu.harvard.syrah.sbon.async.EL.ChannelSub;
+import edu.harvard.syrah.sbon.async.EL.Priority;
+
+/**
+ *
+ * Event loop with several reactors. Each reactor is a thread with its own
+ * selector, its own queues of callbacks and its own timing wheel for the
+ * timers.
+ *
+ * A channel is pinned to one reactor by its hash, so the callbacks of a
+ * channel run on one thread, one after the other, while channels on
+ * different reactors are served in parallel. A timer registered on a reactor
+ * thread stays on that reactor; one registered from any other thread goes to
+ * reactor 0, so the timers of code outside the reactors (the measurement
+ * rounds of the hosts) run one after the other on one thread, as they do
+ * with a single selector thread.
+ *
+ * Registrations from other threads are queued to the reactor, and they wake
+ * its selector at most once per select. Registrations on the reactor thread
+ * itself never wake it.
+ *
+ */
+public class MultiEL implements EventLoopIF {
+	protected static final Log log = new Log(MultiEL.class);
+
+	public int SELECTION_KEY_ALL_OPS = SelectionKey.OP_ACCEPT
+			| SelectionKey.OP_CONNECT | SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+
+	// Maximum time that a reactor spends on callbacks without accessing the
+	// network
+	private static final long MAX_EVENT_QUEUE_PERIOD = 10;
+
+	private final Reactor[] reactors;
+	private final Thread[] threads;
+	private final ThreadLocal<Reactor> current = new ThreadLocal<Reactor>();
+
+	private final Map<SelectableChannel, ChannelSub> channelSubTable = new ConcurrentHashMap<SelectableChannel, ChannelSub>();
+	// pending timers, found again on deregistration
+	private final Map<CB0, TimingWheel.Timer> timers = new ConcurrentHashMap<CB0, TimingWheel.Timer>();
+
+	private volatile boolean loopExit = false;
+	private volatile boolean forceExit = false;
+	private boolean ranShutdown = false;
+
+	private final boolean showIdle;
+
+	public MultiEL(int numReactors) {
+		this(0, false, numReactors);
+	}
+
+	public MultiEL(final long stateDumpInterval, final boolean showIdle,
+			int numReactors) {
+		this.showIdle = showIdle;
+
+		long tick = Long.parseLong(Config.getConfigProps().getProperty(
+				"sbon.eventloop.tick", "1"));
+		int slots = Integer.parseInt(Config.getConfigProps().getProperty(
+				"sbon.eventloop.wheelslots", "512"));
+
+		reactors = new Reactor[Math.max(1, numReactors)];
+		threads = new Thread[reactors.length];
+		for (int i = 0; i < reactors.length; i++) {
+			reactors[i] = new Reactor(i, slots, tick);
+		}
+		log.debug("Opened " + reactors.length + " reactors");
+
+		// Make sure that we shutdown cleanly
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				MultiEL.this.shutdown();
+			}
+		});
+
+		if (stateDumpInterval != 0) {
+			this.registerTimerCB(stateDumpInterval, new CB0("ELStateDumper") {
+				protected void cb(CBResult result) {
+					dumpState(true);
+					if (!shouldExit())
+						MultiEL.this.registerTimerCB(stateDumpInterval, this);
+				}
+			});
+		}
+	}
+
+	public int getNumReactors() {
+		return reactors.length;
+	}
+
+	Reactor reactorOf(SelectableChannel channel) {
+		return reactors[(channel.hashCode() & 0x7fffffff) % reactors.length];
+	}
+
+	/*
+	 * Timers
+	 */
+
+	public CB0 registerTimerCB(CB0 cb) {
+		return registerTimerCB(cb, Priority.NORMAL);
+	}
+
+	public CB0 registerTimerCB(CB0 cb, Priority priority) {
+		return registerTimerCB(0, cb, priority);
+	}
+
+	public CB0 registerTimerCB(long delay, CB0 cb) {
+		return registerTimerCB(delay, cb, Priority.NORMAL);
+	}
+
+	public CB0 registerTimerCB(long delay, CB0 cb, Priority priority) {
+		cb.ts = System.currentTimeMillis() + delay;
+		return schedule(cb, priority, delay == 0);
+	}
+
+	public CB0 registerClockTimerCB(long clock, CB0 cb, Priority priority) {
+		cb.ts = clock;
+		return schedule(cb, priority, clock == 0);
+	}
+
+	private CB0 schedule(CB0 cb, Priority priority, boolean now) {
+		Reactor r = current.get();
+		boolean local = r != null;
+		if (!local) {
+			r = reactors[0];
+		}
+
+		if (now) {
+			r.getNowQueue(priority).add(cb);
+			if (!local)
+				r.wakeup();
+			return cb;
+		}
+
+		TimingWheel.Timer t = r.wheel.newTimer(cb, priority);
+		timers.put(cb, t);
+		if (local) {
+			r.addTimer(t);
+		} else {
+			r.incoming.add(t);
+			r.wakeup();
+		}
+		return cb;
+	}
+
+	public void registerTimerCB(Barrier barrier, CB0 cb) {
+		registerTimerCB(barrier, cb, Priority.NORMAL);
+	}
+
+	public void registerTimerCB(Barrier barrier, CB0 cb, Priority priority) {
+		registerTimerCB(barrier, 0, cb, priority);
+	}
+
+	public void registerTimerCB(Barrier barrier, long delay, CB0 cb) {
+		registerTimerCB(barrier, delay, cb, Priority.NORMAL);
+	}
+
+	public void registerTimerCB(Barrier barrier, long delay, CB0 cb,
+			Priority priority) {
+		barrier.registerTimerCB(delay, cb, priority);
+	}
+
+	public long deregisterTimerCB(CB0 cb) {
+		return deregisterTimerCB(cb, Priority.NORMAL);
+	}
+
+	public long deregisterTimerCB(CB0 cb, Priority priority) {
+		assert cb != null;
+
+		TimingWheel.Timer t = timers.remove(cb);
+		if (t == null) {
+			log.error("No pending timer for cb=" + cb);
+		} else {
+			t.cancelled = true;
+			// unlinked at once on its own reactor, skipped when due elsewhere
+			Reactor r = current.get();
+			if (r != null && r.wheel == t.wheel) {
+				r.wheel.remove(t);
+			}
+		}
+		return cb.ts - System.currentTimeMillis();
+	}
+
+	/*
+	 * Channels
+	 */
+
+	public void registerCommCB(final SelectableChannel channel,
+			final int selectionKey) throws ClosedChannelException {
+		assert channel != null;
+		final ChannelSub channelSub = channelSubTable.get(channel);
+		assert channelSub != null : "channelSub is null for registerCommCB call. channel="
+				+ channel;
+		assert channelSub.checkCommCBs(selectionKey);
+		if (!channel.isOpen())
+			throw new ClosedChannelException();
+
+		final Reactor r = reactorOf(channel);
+		r.execute(new Runnable() {
+			public void run() {
+				try {
+					// Register with selector while preserving previous registrations
+					SelectionKey key = channel.keyFor(r.selector);
+					if (key != null) {
+						channel.register(r.selector, key.interestOps() | selectionKey,
+								channelSub);
+					} else {
+						channel.register(r.selector, selectionKey, channelSub);
+					}
+				} catch (ClosedChannelException e) {
+					log.warn("ClosedChannelException channel=" + channel + " e=" + e);
+				} catch (IllegalArgumentException e) {
+					log.error("Illegal key selector mask: " + e + " selectionKey="
+							+ selectionKey);
+				} catch (CancelledKeyException e) {
+					log.warn(("CancelledKeyException channel=" + channel + " e=" + e));
+				}
+			}
+		});
+	}
+
+	public void deregisterCommCB(final SelectableChannel channel,
+			final int selectionKey) throws ClosedChannelException {
+		assert channel != null;
+		final ChannelSub channelSub = channelSubTable.get(channel);
+		if (channelSub == null) {
+			log.warn("channelSub==null channel=" + channel + " Ignoring.");
+			return;
+		}
+
+		final Reactor r = reactorOf(channel);
+		r.execute(new Runnable() {
+			public void run() {
+				SelectionKey key = channel.keyFor(r.selector);
+				if (key == null) {
+					log.warn("key==null channel=" + channel + " Ignoring.");
+					return;
+				}
+				try {
+					// Deregister with selector while preserving previous registrations
+					channel.register(r.selector, key.interestOps() & (~selectionKey),
+							channelSub);
+				} catch (ClosedChannelException e) {
+					log.warn("ClosedChannelException channel=" + channel + " e=" + e);
+				} catch (CancelledKeyException e) {
+					log.warn(("CancelledKeyException channel=" + channel + " e=" + e));
+				}
+			}
+		});
+	}
+
+	public void deregisterAllCommCBs(final SelectableChannel channel)
+			throws ClosedChannelException {
+		assert channel != null;
+		final ChannelSub channelSub = channelSubTable.get(channel);
+		if (channelSub == null) {
+			log.warn("channelSub==null channel=" + channel + " Ignoring.");
+			return;
+		}
+
+		final Reactor r = reactorOf(channel);
+		r.execute(new Runnable() {
+			public void run() {
+				try {
+					channel.register(r.selector, 0, channelSub);
+				} catch (ClosedChannelException e) {
+					log.warn("ClosedChannelException channel=" + channel + " e=" + e);
+				} catch (CancelledKeyException e) {
+					log.warn(("CancelledKeyException channel=" + channel + " e=" + e));
+				}
+			}
+		});
+	}
+
+	public CB1R<Boolean, SelectionKey> getCommCB(SelectableChannel channel,
+			int selectionKey) {
+		assert channel != null;
+		ChannelSub channelSub = channelSubTable.get(channel);
+
+		// Is this an unknown channel?
+		if (channelSub == null)
+			return null;
+
+		return channelSub.getCommCB(selectionKey);
+	}
+
+	public void setCommCB(SelectableChannel channel, int selectionKey,
+			CB1R<Boolean, SelectionKey> commCB) {
+		assert channel != null;
+		assert commCB != null;
+
+		ChannelSub channelSub = channelSubTable.get(channel);
+
+		if (channelSub == null) {
+			channelSub = new ChannelSub();
+			channelSubTable.put(channel, channelSub);
+		}
+
+		channelSub.setCommCBs(selectionKey, commCB);
+	}
+
+	public void unsetCommCB(SelectableChannel channel, int selectionKey) {
+		assert channel != null;
+		ChannelSub channelSub = channelSubTable.get(channel);
+		assert channelSub != null;
+
+		channelSub.setCommCBs(selectionKey, null);
+		if (channelSub.isEmpty()) {
+			channelSubTable.remove(channel);
+		}
+	}
+
+	public void unsetAllCommCBs(SelectableChannel channel) {
+		assert channel != null;
+		ChannelSub channelSub = channelSubTable.get(channel);
+
+		if (channelSub != null) {
+			channelSub.setCommCBs(SELECTION_KEY_ALL_OPS, null);
+			channelSubTable.remove(channel);
+		} else {
+			log.warn("Trying to close an already closed channel=" + channel);
+		}
+	}
+
+	/**
+	 * On the reactor of the channel the selector is polled first, elsewhere
+	 * the ready ops of its last select are used.
+	 */
+	public boolean checkChannelState(SelectableChannel channel, int selectionKey) {
+		Reactor r = reactorOf(channel);
+		SelectionKey key = channel.keyFor(r.selector);
+		if (key == null || !key.isValid())
+			return false;
+		if (r.inLoop()) {
+			try {
+				r.selector.selectNow();
+			} catch (IOException e) {
+				log.error("Could not complete selectNow(): " + e);
+			}
+			if (!r.selector.selectedKeys().contains(key))
+				return false;
+		}
+		return key.isValid() && ((key.readyOps() & selectionKey) == selectionKey);
+	}
+
+	/**
+	 * Polls the network of the calling reactor, nothing on other threads.
+	 */
+	public void handleNetwork() {
+		Reactor r = current.get();
+		if (r == null)
+			return;
+		try {
+			r.selector.selectNow();
+		} catch (IOException e) {
+			log.error("Could not complete selectNow(): " + e);
+		}
+		r.handleSelectCallbacks();
+	}
+
+	/*
+	 * Loop
+	 */
+
+	/**
+	 * Runs the first reactor on the calling thread and the others on their own
+	 * threads, and returns once all of them exited.
+	 */
+	public void main() {
+		log.debug(ANSI.color(Color.LIGHTRED, "Starting " + reactors.length
+				+ " reactors..."));
+
+		for (int i = 1; i < reactors.length; i++) {
+			threads[i] = new Thread(reactors[i], "EL-reactor-" + i);
+			threads[i].setPriority(Thread.MAX_PRIORITY);
+			threads[i].start();
+		}
+		Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+		reactors[0].run();
+
+		for (int i = 1; i < reactors.length; i++) {
+			try {
+				threads[i].join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		log.main("Exited main event loop.");
+	}
+
+	public void forceExit() {
+		forceExit = true;
+		wakeupAll();
+	}
+
+	public void exit() {
+		log.main(ANSI.color(Color.LIGHTRED, "Ready to exit main event loop..."));
+		loopExit = true;
+		wakeupAll();
+	}
+
+	public boolean shouldExit() {
+		return loopExit;
+	}
+
+	private void wakeupAll() {
+		for (Reactor r : reactors) {
+			r.selector.wakeup();
+		}
+	}
+
+	public void dumpState(boolean eventQueueDump) {
+		for (Reactor r : reactors) {
+			log.debug("reactor=" + r.index + " timers=" + r.wheel.size() + " now_eQ="
+					+ (r.nowHP.size() + r.nowNP.size() + r.nowLP.size())
+					+ " incoming=" + r.incoming.size() + " tasks=" + r.tasks.size()
+					+ " keys=" + r.selector.keys().size());
+		}
+		log.debug("cST.size=" + channelSubTable.size() + " timers=" + timers.size());
+	}
+
+	protected void shutdown() {
+		if (!ranShutdown) {
+			log.debug("Running shutdown hook.");
+			forceExit = true;
+			for (Reactor r : reactors) {
+				try {
+					r.selector.close();
+				} catch (IOException e) {
+					log.error("Could not close selector");
+				}
+			}
+			log.debug("Shutdown hook complete.");
+			ranShutdown = true;
+		}
+	}
+
+	/**
+	 * One selector, its callbacks and its timers, served by one thread.
+	 */
+	final class Reactor implements Runnable {
+		final int index;
+		Selector selector;
+		final TimingWheel wheel;
+
+		// zero delay callbacks, from any thread
+		final Queue<CB0> nowHP = new ConcurrentLinkedQueue<CB0>();
+		final Queue<CB0> nowNP = new ConcurrentLinkedQueue<CB0>();
+		final Queue<CB0> nowLP = new ConcurrentLinkedQueue<CB0>();
+
+		// timers out of the wheel, reactor thread only
+		final Queue<TimingWheel.Timer> dueHP = new ArrayDeque<TimingWheel.Timer>();
+		final Queue<TimingWheel.Timer> dueNP = new ArrayDeque<TimingWheel.Timer>();
+		final Queue<TimingWheel.Timer> dueLP = new ArrayDeque<TimingWheel.Timer>();
+
+		// timers and channel registrations from other threads
+		final Queue<TimingWheel.Timer> incoming = new ConcurrentLinkedQueue<TimingWheel.Timer>();
+		final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+		// false while the reactor blocks in select and a wakeup is owed
+		final AtomicBoolean awake = new AtomicBoolean(true);
+
+		Reactor(int index, int slots, long tick) {
+			this.index = index;
+			this.wheel = new TimingWheel(slots, tick, System.currentTimeMillis());
+			try {
+				selector = Selector.open();
+			} catch (IOException e) {
+				log.error("Could not open selector: " + e);
+			}
+		}
+
+		boolean inLoop() {
+			return current.get() == this;
+		}
+
+		void wakeup() {
+			if (awake.compareAndSet(false, true))
+				selector.wakeup();
+		}
+
+		/**
+		 * run on the reactor thread, now if this is it
+		 */
+		void execute(Runnable task) {
+			if (inLoop()) {
+				task.run();
+			} else {
+				tasks.add(task);
+				wakeup();
+			}
+		}
+
+		Queue<CB0> getNowQueue(Priority priority) {
+			switch (priority) {
+				case HIGH:
+					return nowHP;
+				case LOW:
+					return nowLP;
+				default:
+					return nowNP;
+			}
+		}
+
+		void addTimer(TimingWheel.Timer t) {
+			if (!wheel.add(t)) {
+				switch (t.priority) {
+					case HIGH:
+						dueHP.add(t);
+						break;
+					case LOW:
+						dueLP.add(t);
+						break;
+					default:
+						dueNP.add(t);
+						break;
+				}
+			}
+		}
+
+		private boolean hasWork() {
+			return !tasks.isEmpty() || !incoming.isEmpty() || !nowHP.isEmpty()
+					|| !nowNP.isEmpty() || !nowLP.isEmpty() || !dueHP.isEmpty()
+					|| !dueNP.isEmpty() || !dueLP.isEmpty();
+		}
+
+		private boolean idle() {
+			return !hasWork() && wheel.size() == 0;
+		}
+
+		public void run() {
+			current.set(this);
+			try {
+				while (!forceExit && !(loopExit && idle())) {
+					Runnable task;
+					while ((task = tasks.poll()) != null) {
+						task.run();
+					}
+					TimingWheel.Timer t;
+					while ((t = incoming.poll()) != null) {
+						if (!t.cancelled)
+							addTimer(t);
+					}
+
+					long now = System.currentTimeMillis();
+					wheel.expire(now, dueHP, dueNP, dueLP);
+					handleEventQueues(now);
+
+					if (!forceExit) {
+						handleSelector();
+						handleSelectCallbacks();
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				log.warn("Selector closed.");
+				shutdown();
+			} finally {
+				current.remove();
+			}
+		}
+
+		/**
+		 * One callback at a time, the highest priority first and timers before
+		 * zero delay callbacks of the same priority, for at most
+		 * MAX_EVENT_QUEUE_PERIOD.
+		 */
+		private void handleEventQueues(long startTime) {
+			while (true) {
+				if (!runNext(dueHP, nowHP) && !runNext(dueNP, nowNP)
+						&& !runNext(dueLP, nowLP))
+					return;
+				if (System.currentTimeMillis() - startTime >= MAX_EVENT_QUEUE_PERIOD)
+					return;
+			}
+		}
+
+		private boolean runNext(Queue<TimingWheel.Timer> due, Queue<CB0> now) {
+			TimingWheel.Timer t;
+			while ((t = due.poll()) != null) {
+				timers.remove(t.cb, t);
+				if (!t.cancelled) {
+					t.cb.cb(CBResult.OK());
+					return true;
+				}
+			}
+			CB0 cb = now.poll();
+			if (cb != null) {
+				cb.call(CBResult.OK());
+				return true;
+			}
+			return false;
+		}
+
+		private void handleSelector() {
+			try {
+				if (hasWork()) {
+					selector.selectNow();
+					return;
+				}
+				awake.set(false);
+				// a registration may have come in before the flag was down
+				if (hasWork()) {
+					awake.set(true);
+					selector.selectNow();
+					return;
+				}
+				long timeout = wheel.nextTimeout(System.currentTimeMillis());
+				if (timeout > 0) {
+					selector.select(timeout);
+				} else {
+					if (showIdle)
+						log.info("Reactor " + index + " idle");
+					selector.select();
+				}
+				awake.set(true);
+			} catch (IOException e) {
+				awake.set(true);
+				log.error("Could not complete select(): " + e);
+			}
+		}
+
+		void handleSelectCallbacks() {
+			for (Iterator<SelectionKey> keyIt = selector.selectedKeys().iterator(); keyIt.hasNext();) {
+				SelectionKey key = keyIt.next();
+
+				if (!key.isValid()) {
+					continue;
+				}
+
+				int readyOps = EL.dispatch(key);
+
+				// Have you dealt with all the interest ops?
+				if ((!key.isValid()) || readyOps == 0) {
+					try {
+						keyIt.remove();
+					} catch (ConcurrentModificationException e) {
+						log.error(e.toString());
+					}
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		final MultiEL el = new MultiEL(Runtime.getRuntime().availableProcessors());
+		EL.set(el);
+
+		final int n = 100000;
+		final AtomicInteger fired = new AtomicInteger(0);
+		final long start = System.currentTimeMillis();
+		for (int i = 0; i < n; i++) {
+			CB0 cb = EL.get().registerTimerCB(1 + (i % 1000), new CB0() {
+				protected void cb(CBResult result) {
+					if (fired.incrementAndGet() == n / 2) {
+						log.main(n / 2 + " timers fired in "
+								+ (System.currentTimeMillis() - start) + " ms on "
+								+ el.getNumReactors() + " reactors");
+						EL.get().exit();
+					}
+				}
+			});
+			// half of them are timeouts that are cancelled
+			if (i % 2 == 1)
+				EL.get().deregisterTimerCB(cb);
+		}
+		EL.get().main();
+	}
+}
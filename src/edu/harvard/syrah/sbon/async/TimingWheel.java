@@ -0,0 +1,173 @@
+package edu.harvard.syrah.sbon.async;
+
+import java.util.Queue;
+
+import edu.harvard.syrah.sbon.async.CallbacksIF.CB0;
+import edu.harvard.syrah.sbon.async.EL.Priority;
+
+/**
+ *
+ * Hashed timing wheel for the timer callbacks of one reactor (Varghese and
+ * Lauck). A timer is linked into the slot of its deadline tick, so adding and
+ * cancelling are O(1), and every tick looks at one slot only; a timer more
+ * than one turn away stays in its slot until the turn of its deadline.
+ *
+ * Only the thread of the reactor touches the wheel. Other threads hand their
+ * timers to the reactor and cancel by marking them.
+ *
+ */
+public class TimingWheel {
+
+	static final class Timer {
+		final TimingWheel wheel;
+		final CB0 cb;
+		final Priority priority;
+		final long deadlineTick;
+		Timer prev, next;
+		boolean linked;
+		volatile boolean cancelled;
+
+		Timer(TimingWheel wheel, CB0 cb, Priority priority, long deadlineTick) {
+			this.wheel = wheel;
+			this.cb = cb;
+			this.priority = priority;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+
+	private final Timer[] slots;
+	private final int mask;
+	private final long tickMs;
+
+	// last tick whose slot has been expired
+	private long lastTick;
+	private int size = 0;
+
+	/**
+	 * @param numSlots rounded up to a power of two
+	 * @param tickMs length of a tick in ms
+	 * @param now current time in ms
+	 */
+	public TimingWheel(int numSlots, long tickMs, long now) {
+		int n = 1;
+		while (n < numSlots)
+			n <<= 1;
+		this.slots = new Timer[n];
+		this.mask = n - 1;
+		this.tickMs = Math.max(1, tickMs);
+		this.lastTick = now / this.tickMs;
+	}
+
+	Timer newTimer(CB0 cb, Priority priority) {
+		// round up, a timer never fires before its time
+		return new Timer(this, cb, priority, (cb.ts + tickMs - 1) / tickMs);
+	}
+
+	/**
+	 * @param t
+	 * @return false if t is due already and was not added
+	 */
+	boolean add(Timer t) {
+		if (t.deadlineTick <= lastTick)
+			return false;
+		int s = (int) (t.deadlineTick & mask);
+		t.prev = null;
+		t.next = slots[s];
+		if (slots[s] != null)
+			slots[s].prev = t;
+		slots[s] = t;
+		t.linked = true;
+		size++;
+		return true;
+	}
+
+	void remove(Timer t) {
+		if (!t.linked)
+			return;
+		int s = (int) (t.deadlineTick & mask);
+		if (t.prev != null)
+			t.prev.next = t.next;
+		else
+			slots[s] = t.next;
+		if (t.next != null)
+			t.next.prev = t.prev;
+		t.prev = t.next = null;
+		t.linked = false;
+		size--;
+	}
+
+	/**
+	 * Move the timers due at now to the queues of their priority; cancelled
+	 * timers are dropped on the way.
+	 *
+	 * @return timers moved
+	 */
+	int expire(long now, Queue<Timer> dueHP, Queue<Timer> dueNP, Queue<Timer> dueLP) {
+		long nowTick = now / tickMs;
+		if (nowTick <= lastTick)
+			return 0;
+		// after a long stall every slot is looked at once
+		long steps = Math.min(nowTick - lastTick, slots.length);
+		int moved = 0;
+		for (long i = 1; i <= steps; i++) {
+			int s = (int) ((lastTick + i) & mask);
+			Timer t = slots[s];
+			while (t != null) {
+				Timer next = t.next;
+				if (t.cancelled) {
+					remove(t);
+				} else if (t.deadlineTick <= nowTick) {
+					remove(t);
+					switch (t.priority) {
+						case HIGH:
+							dueHP.add(t);
+							break;
+						case LOW:
+							dueLP.add(t);
+							break;
+						default:
+							dueNP.add(t);
+							break;
+					}
+					moved++;
+				}
+				t = next;
+			}
+		}
+		lastTick = nowTick;
+		return moved;
+	}
+
+	/**
+	 * Time to the earliest deadline on the wheel, so that an idle reactor
+	 * sleeps until its next timer instead of waking every tick. Cancelled
+	 * timers still count; they only cost an early wakeup.
+	 *
+	 * @param now current time in ms
+	 * @return ms to wait, at least 1, or -1 if the wheel is empty
+	 */
+	long nextTimeout(long now) {
+		if (size == 0)
+			return -1;
+		long best = Long.MAX_VALUE;
+		for (long i = 1; i <= slots.length; i++) {
+			long tick = lastTick + i;
+			for (Timer t = slots[(int) (tick & mask)]; t != null; t = t.next) {
+				if (t.deadlineTick < best)
+					best = t.deadlineTick;
+			}
+			// every later slot only holds deadlines after its own tick
+			if (best <= tick)
+				break;
+		}
+		return Math.max(1, best * tickMs - now);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getTickMs() {
+		return tickMs;
+	}
+}
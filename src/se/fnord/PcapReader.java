@@ -1,5 +1,6 @@
 package se.fnord;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -8,12 +9,13 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
 
-public class PcapReader implements Iterable<PcapRecord> {
+public class PcapReader implements Iterable<PcapRecord>, Closeable {
 	private interface StructReader<T> {
 		int size();
 
@@ -217,28 +219,99 @@ public class PcapReader implements Iterable<PcapRecord> {
 
 	}
 
+	/**
+	 * Largest part of the file that is mapped at once. Windows start at a record, a
+	 * record that does not fit into the rest of a window starts the next one.
+	 */
+	public static volatile int mapWindow = 1 << 30;
+
 	public static PcapReader create(Path path) throws IOException {
 		FileChannel fileChannel =
 		    path.getFileSystem().provider().newFileChannel(
 		    		path, Collections.singleton(StandardOpenOption.READ));
-		MappedByteBuffer buffer = fileChannel.map(MapMode.READ_ONLY, 0, fileChannel.size());
-		GlobalHeader globalHeader = new GlobalHeaderReader().deserialize(buffer);
-		buffer.order(globalHeader.byteOrder());
-		return new PcapReader(globalHeader, buffer);
+		GlobalHeaderReader headerReader = new GlobalHeaderReader();
+		MappedByteBuffer headerBuffer = fileChannel.map(MapMode.READ_ONLY, 0, headerReader.size());
+		GlobalHeader globalHeader = headerReader.deserialize(headerBuffer);
+		return new PcapReader(globalHeader, fileChannel, headerReader.size(), fileChannel.size());
 	}
 
 	private final GlobalHeader header;
-	private final ByteBuffer buffer;
+	private final FileChannel channel;
+	private final long dataStart;
+	private final long fileSize;
+	// window at dataStart, shared by all iterators
+	private final ByteBuffer firstWindow;
 
-	private PcapReader(GlobalHeader header, ByteBuffer buffer) {
+	private PcapReader(GlobalHeader header, FileChannel channel, long dataStart, long fileSize) throws IOException {
 		this.header = header;
-		this.buffer = buffer;
+		this.channel = channel;
+		this.dataStart = dataStart;
+		this.fileSize = fileSize;
+		this.firstWindow = map(dataStart);
+	}
+
+	/**
+	 * Map the window starting at a file offset.
+	 */
+	private ByteBuffer map(long position) throws IOException {
+		long length = Math.min(mapWindow, fileSize - position);
+		MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, Math.max(0, length));
+		window.order(header.byteOrder());
+		return window;
+	}
+
+	/**
+	 * Sequential reader over the windows of the file.
+	 */
+	private final class WindowCursor {
+		private ByteBuffer window;
+		private long windowStart;
+
+		WindowCursor() {
+			window = firstWindow.duplicate().order(header.byteOrder());
+			windowStart = dataStart;
+		}
+
+		WindowCursor(long position) throws IOException {
+			if (position == dataStart) {
+				window = firstWindow.duplicate().order(header.byteOrder());
+			} else {
+				window = map(position);
+			}
+			windowStart = position;
+		}
+
+		long position() {
+			return windowStart + window.position();
+		}
+
+		/**
+		 * Make sure the next bytes are inside the window, mapping the next one if needed.
+		 *
+		 * @return false at the end of the file
+		 */
+		boolean ensure(int bytes) {
+			if (window.remaining() >= bytes)
+				return true;
+			long position = windowStart + window.position();
+			if (fileSize - position < bytes)
+				return false;
+			if (bytes > mapWindow)
+				throw new IllegalStateException("record of " + bytes + " bytes at " + position
+				    + " does not fit the map window of " + mapWindow);
+			try {
+				window = map(position);
+			} catch (IOException e) {
+				throw new IllegalStateException("can not map " + position, e);
+			}
+			windowStart = position;
+			return true;
+		}
 	}
 
 	@Override
 	public Iterator<PcapRecord> iterator() {
-		final ByteBuffer iteratorBuffer = buffer.slice();
-		iteratorBuffer.order(header.byteOrder());
+		final WindowCursor cursor = new WindowCursor();
 		final RecordHeaderReader reader = new RecordHeaderReader();
 		return new Iterator<PcapRecord>() {
 			private int index = 0;
@@ -248,12 +321,13 @@ public class PcapReader implements Iterable<PcapRecord> {
 			public boolean hasNext() {
 				if (currentFrame != null)
 					return true;
-				if (iteratorBuffer.remaining() < reader.size())
+				if (!cursor.ensure(reader.size()))
 					return false;
-				RecordHeader recordHeader = reader.deserialize(iteratorBuffer);
-				int capturedLength = recordHeader.capturedLength();
-				if (iteratorBuffer.remaining() < capturedLength)
+				int capturedLength = cursor.window.getInt(cursor.window.position() + 8);
+				if (capturedLength < 0 || !cursor.ensure(reader.size() + capturedLength))
 					return false;
+				ByteBuffer iteratorBuffer = cursor.window;
+				RecordHeader recordHeader = reader.deserialize(iteratorBuffer);
 
 				int oldLimit = iteratorBuffer.limit();
 				int endOfRecord = iteratorBuffer.position() + capturedLength;
@@ -284,6 +358,168 @@ public class PcapReader implements Iterable<PcapRecord> {
 		};
 	}
 
+	/**
+	 * Callback of {@link PcapReader#scan(RecordVisitor)}, called once per record.
+	 */
+	public interface RecordVisitor {
+		/**
+		 * @param buffer the current map window, only valid during the call and not to be modified
+		 * @param offset absolute offset of the captured bytes in buffer
+		 * @param capturedLength
+		 * @param timestamp nanoseconds
+		 */
+		void visit(ByteBuffer buffer, int offset, int capturedLength, long timestamp);
+	}
+
+	/**
+	 * Walk the records without creating frame objects or slices; the visitor
+	 * reads the packet bytes in place with absolute gets.
+	 *
+	 * @return number of records visited
+	 */
+	public long scan(RecordVisitor visitor) {
+		return scan(new WindowCursor(), fileSize, visitor);
+	}
+
+	/**
+	 * Same as {@link #scan(RecordVisitor)} over the records starting in [from, to).
+	 *
+	 * @param from a record boundary, see {@link #split(int)}
+	 * @param to a record boundary or the file size
+	 * @throws IOException if the records from {@code from} do not end at {@code to},
+	 *     one of the two was not a record boundary
+	 */
+	public long scan(long from, long to, RecordVisitor visitor) throws IOException {
+		WindowCursor cursor = new WindowCursor(from);
+		long count = scan(cursor, to, visitor);
+		// a short last range is a truncated capture, as with scan(RecordVisitor)
+		if (cursor.position() != to && to < fileSize)
+			throw new IOException("records from " + from + " end at " + cursor.position() + ", not at " + to);
+		return count;
+	}
+
+	private long scan(WindowCursor cursor, long to, RecordVisitor visitor) {
+		final long subUnit = header.timestampUnit().toNanos(1);
+		long count = 0;
+		while (cursor.position() < to && cursor.ensure(16)) {
+			ByteBuffer bb = cursor.window;
+			int pos = bb.position();
+			int capturedLength = bb.getInt(pos + 8);
+			if (capturedLength < 0 || !cursor.ensure(16 + capturedLength))
+				break;
+			// the window may have moved
+			bb = cursor.window;
+			pos = bb.position();
+			long ts_sec = bb.getInt(pos) & 0xffffffffL;
+			long ts_usec = bb.getInt(pos + 4) & 0xffffffffL;
+			visitor.visit(bb, pos + 16, capturedLength, ts_sec * 1000000000L + ts_usec * subUnit);
+			bb.position(pos + 16 + capturedLength);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Cut the records into about n ranges of similar size; range i is
+	 * [bounds[i], bounds[i + 1]). Every cut starts at an even share of the file
+	 * size and moves forward to the next record header, see {@link #resync(long)},
+	 * so only a few headers are read per cut instead of all of them.
+	 *
+	 * @return record aligned file offsets, first and last included
+	 */
+	public long[] split(int n) {
+		long[] bounds = new long[n + 1];
+		int ranges = 0;
+		bounds[0] = dataStart;
+		for (int i = 1; i < n; i++) {
+			long target = dataStart + (fileSize - dataStart) * i / n;
+			if (target <= bounds[ranges])
+				continue;
+			long cut = resync(target);
+			if (cut >= fileSize)
+				break;
+			if (cut > bounds[ranges])
+				bounds[++ranges] = cut;
+		}
+		bounds[++ranges] = fileSize;
+		return Arrays.copyOf(bounds, ranges + 1);
+	}
+
+	// record headers that have to chain up at a cut
+	private static final int RESYNC_CHAIN = 4;
+	// largest jump in seconds between the timestamps of a chain
+	private static final long RESYNC_GAP = 3600;
+
+	/**
+	 * First record boundary at or after position: the next {@link #RESYNC_CHAIN}
+	 * record headers from there must be plausible (subseconds in range, captured
+	 * length up to the snaplen, the map window and the original length, original
+	 * length above 0, close timestamps) and follow each other, or end the file
+	 * exactly.
+	 *
+	 * @return fileSize if there is none
+	 */
+	long resync(long position) {
+		final long subseconds = header.timestampUnit().convert(1, TimeUnit.SECONDS);
+		final int maxLength = Math.min(header.snaplen() > 0 ? header.snaplen() : Integer.MAX_VALUE,
+		    mapWindow - 16);
+		ByteBuffer window = null;
+		long windowStart = 0;
+		for (long p = position; p + 16 <= fileSize; p++) {
+			if (window == null || p + 16 > windowStart + window.limit()) {
+				window = mapAt(p);
+				windowStart = p;
+			}
+			if (chainsAt(window, windowStart, p, subseconds, maxLength))
+				return p;
+		}
+		return fileSize;
+	}
+
+	private ByteBuffer mapAt(long position) {
+		try {
+			return map(position);
+		} catch (IOException e) {
+			throw new IllegalStateException("can not map " + position, e);
+		}
+	}
+
+	private boolean chainsAt(ByteBuffer window, long windowStart, long p, long subseconds, int maxLength) {
+		long previous = -1;
+		for (int k = 0; k < RESYNC_CHAIN; k++) {
+			if (p == fileSize)
+				return true;
+			if (p + 16 > fileSize)
+				return false;
+			if (p + 16 > windowStart + window.limit()) {
+				// only a chain that looked right so far gets here
+				window = mapAt(p);
+				windowStart = p;
+			}
+			int at = (int) (p - windowStart);
+			long seconds = window.getInt(at) & 0xffffffffL;
+			long sub = window.getInt(at + 4) & 0xffffffffL;
+			int capturedLength = window.getInt(at + 8);
+			int originalLength = window.getInt(at + 12);
+			if (sub >= subseconds || capturedLength < 0 || capturedLength > maxLength
+			    || originalLength <= 0 || originalLength < capturedLength)
+				return false;
+			if (previous >= 0 && Math.abs(seconds - previous) > RESYNC_GAP)
+				return false;
+			previous = seconds;
+			p += 16 + capturedLength;
+		}
+		return true;
+	}
+
+	/**
+	 * Release the file; records already handed out stay readable.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
 	public int getLinkType() {
 		return header.network();
 	}
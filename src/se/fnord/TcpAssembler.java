@@ -2,12 +2,11 @@ package se.fnord;
 
 import java.util.ArrayDeque;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import se.fnord.TcpFrame.TcpFlag;
 import se.fnord.TcpSessionEvent.Direction;
@@ -19,61 +18,43 @@ public class TcpAssembler implements IteratorFactory<TcpFrame, TcpSessionEvent>
 		CLOSED, OPEN;
 	}
 
-	private static class TcpSessionKey {
-		private final Direction direction;
-		private final TcpSessionId id;
+	/** idle time, in packet time, after which a session is ended */
+	public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toNanos(5);
+	/** live sessions kept at most; the least recently seen one is ended for a new one */
+	public static final int DEFAULT_MAX_SESSIONS = 1 << 20;
 
-		public TcpSessionKey(Direction direction, TcpSessionId id) {
-			this.direction = direction;
-			this.id = id;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (!(obj instanceof TcpSessionKey))
-				return false;
-			TcpSessionKey other = (TcpSessionKey) obj;
-			return this.direction == other.direction && this.id.equals(other.id);
-		}
-
-		@Override
-		public int hashCode() {
-			return direction.hashCode() * 31 + id.hashCode();
-		}
-
-		public TcpSessionKey reverse() {
-			return new TcpSessionKey(direction.reverse(), id);
-		}
+	private final long idleTimeout;
+	private final int maxSessions;
 
-		@Override
-		public String toString() {
-			return String.format("%s/%s", id, direction);
-		}
-	}
-
-
-
-	private static TcpSessionKey fromServer(Ipv4Frame ip, TcpFrame tcp) {
-		return new TcpSessionKey(Direction.FROM_SERVER, new TcpSessionId(ip.dstIp(), tcp.dstPort(), ip.srcIp(), tcp.srcPort()));
+	public TcpAssembler() {
+		this(DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_SESSIONS);
 	}
 
-	private static TcpSessionKey fromClient(Ipv4Frame ip, TcpFrame tcp) {
-		return new TcpSessionKey(Direction.FROM_CLIENT, new TcpSessionId(ip.srcIp(), tcp.srcPort(), ip.dstIp(), tcp.dstPort()));
+	/**
+	 * @param idleTimeout ns of packet time without a packet before a session is
+	 *        ended, 0 to keep idle sessions
+	 * @param maxSessions live sessions kept at most
+	 */
+	public TcpAssembler(long idleTimeout, int maxSessions) {
+		this.idleTimeout = idleTimeout;
+		this.maxSessions = Math.max(1, maxSessions);
 	}
 
 	private static final Set<TcpFlag> SYN = TcpDecoder.flags(TcpFlag.SYN);
 	private static final Set<TcpFlag> SYN_ACK = TcpDecoder.flags(TcpFlag.SYN, TcpFlag.ACK);
 
-	private static TcpSessionKey guessDirection(Ipv4Frame ip, TcpFrame tcp) {
+	private static Direction guessDirection(TcpFrame tcp) {
 		if (SYN.equals(tcp.flags()))
-			return fromClient(ip, tcp);
+			return Direction.FROM_CLIENT;
 		if (SYN_ACK.equals(tcp.flags()))
-			return fromServer(ip, tcp);
+			return Direction.FROM_SERVER;
 		if (tcp.srcPort() > tcp.dstPort())
-			return fromClient(ip, tcp);
-		return fromServer(ip, tcp);
+			return Direction.FROM_CLIENT;
+		return Direction.FROM_SERVER;
+	}
+
+	private static boolean closes(TcpFrame tcp) {
+		return tcp.flags().contains(TcpFlag.FIN) || tcp.flags().contains(TcpFlag.RST);
 	}
 
 	private class EventIterator implements Iterator<TcpSessionEvent> {
@@ -143,6 +124,14 @@ public class TcpAssembler implements IteratorFactory<TcpFrame, TcpSessionEvent>
 			}
 
 			private final TcpSessionId sessionKey;
+			// client and server address, client and server port
+			private final long ips;
+			private final int ports;
+			// packet time and index of the last packet
+			private long lastSeen;
+			private int lastIndex;
+			// neighbours in the order the sessions were last seen
+			private TcpSession older, newer;
 			private State state = State.CLOSED;
 			private Sequence server = new Sequence(Direction.FROM_SERVER);
 			private Sequence client = new Sequence(Direction.FROM_CLIENT);
@@ -181,8 +170,10 @@ public class TcpAssembler implements IteratorFactory<TcpFrame, TcpSessionEvent>
 				pending.add(new TcpSessionMissingData(sessionKey, direction, index, length));
 			}
 
-			public TcpSession(TcpSessionId key) {
+			public TcpSession(TcpSessionId key, long ips, int ports) {
 				this.sessionKey = key;
+				this.ips = ips;
+				this.ports = ports;
 			}
 
 			private Sequence sequenceFor(Direction direction) {
@@ -211,7 +202,14 @@ public class TcpAssembler implements IteratorFactory<TcpFrame, TcpSessionEvent>
 			}
 		}
 
-		private final Map<TcpSessionKey, TcpSession> sessions = new HashMap<>();
+		// live sessions, open addressing on the 4-tuple; ips and ports are the
+		// keys of the slots, so a lookup reads no session but the one it finds
+		private long[] ips = new long[1024];
+		private int[] ports = new int[1024];
+		private TcpSession[] sessions = new TcpSession[1024];
+		private int size = 0;
+		// least and most recently seen live session
+		private TcpSession oldest, newest;
 		private final Queue<TcpSessionEvent> pending = new ArrayDeque<>();
 		private final Iterator<TcpFrame> iterator;
 		private TcpSessionEvent next = null;
@@ -220,36 +218,143 @@ public class TcpAssembler implements IteratorFactory<TcpFrame, TcpSessionEvent>
 			this.iterator = iterator;
 		}
 
-		private TcpSession getSession(TcpSessionKey key, TcpFrame tcp) {
-			TcpSession session;
-			session = sessions.get(key);
-			if (session == null) {
-				session = sessions.get(key.reverse());
-				if (session == null) {
-					session = new TcpSession(key.id);
-				}
+		private int slot(long ip, int port) {
+			long h = (ip ^ ((long) port << 17)) * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & (sessions.length - 1);
+		}
 
-				if (!tcp.flags().contains(TcpFlag.FIN) && !tcp.flags().contains(TcpFlag.RST)) {
-					sessions.put(key, session);
-				}
+		private int find(long ip, int port) {
+			int mask = sessions.length - 1;
+			for (int i = slot(ip, port); sessions[i] != null; i = (i + 1) & mask) {
+				if (ips[i] == ip && ports[i] == port)
+					return i;
+			}
+			return -1;
+		}
+
+		private void put(TcpSession session) {
+			if ((size + 1) * 2 > sessions.length)
+				grow();
+			int mask = sessions.length - 1;
+			int i = slot(session.ips, session.ports);
+			while (sessions[i] != null)
+				i = (i + 1) & mask;
+			ips[i] = session.ips;
+			ports[i] = session.ports;
+			sessions[i] = session;
+			size++;
+		}
+
+		private void grow() {
+			long[] oldIps = ips;
+			int[] oldPorts = ports;
+			TcpSession[] old = sessions;
+			ips = new long[old.length * 2];
+			ports = new int[old.length * 2];
+			sessions = new TcpSession[old.length * 2];
+			size = 0;
+			for (int i = 0; i < old.length; i++) {
+				if (old[i] != null)
+					put(old[i]);
+			}
+		}
+
+		private void delete(TcpSession session) {
+			int i = find(session.ips, session.ports);
+			if (i < 0)
+				return;
+			unlink(session);
+			// shift the run after the slot back, so no lookup stops at the hole
+			int mask = sessions.length - 1;
+			for (int j = (i + 1) & mask; sessions[j] != null; j = (j + 1) & mask) {
+				int k = slot(ips[j], ports[j]);
+				if (i <= j ? (i < k && k <= j) : (i < k || k <= j))
+					continue;
+				ips[i] = ips[j];
+				ports[i] = ports[j];
+				sessions[i] = sessions[j];
+				i = j;
 			}
-			return session;
+			sessions[i] = null;
+			size--;
 		}
 
-		private void removeSession(TcpSessionKey key) {
-			sessions.remove(key);
+		private void unlink(TcpSession session) {
+			if (session.older != null)
+				session.older.newer = session.newer;
+			else if (oldest == session)
+				oldest = session.newer;
+			if (session.newer != null)
+				session.newer.older = session.older;
+			else if (newest == session)
+				newest = session.older;
+			session.older = session.newer = null;
+		}
+
+		private void touch(TcpSession session, PcapRecord frame) {
+			session.lastSeen = frame.timestamp();
+			session.lastIndex = frame.index();
+			if (newest == session)
+				return;
+			unlink(session);
+			session.older = newest;
+			if (newest != null)
+				newest.newer = session;
+			newest = session;
+			if (oldest == null)
+				oldest = session;
+		}
+
+		/**
+		 * end the session as if both sides had closed it at its last packet
+		 */
+		private void evict(TcpSession session) {
+			delete(session);
+			session.end(session.lastIndex, Direction.NONE, true);
+		}
+
+		private void expire(long now) {
+			while (oldest != null && idleTimeout > 0 && now - oldest.lastSeen > idleTimeout)
+				evict(oldest);
 		}
 
 		public void assemble(TcpFrame tcp) {
 			Ipv4Frame ip = (Ipv4Frame) tcp.parentFrame();
-			TcpSessionKey key = guessDirection(ip, tcp);
-			TcpSession session = getSession(key, tcp);
+			PcapRecord frame = tcp.rootFrame();
+			expire(frame.timestamp());
+
+			Direction direction = guessDirection(tcp);
+			boolean client = direction == Direction.FROM_CLIENT;
+			int clientIp = client ? ip.srcIp() : ip.dstIp();
+			int clientPort = client ? tcp.srcPort() : tcp.dstPort();
+			int serverIp = client ? ip.dstIp() : ip.srcIp();
+			int serverPort = client ? tcp.dstPort() : tcp.srcPort();
+			long ip4 = ((long) clientIp << 32) | (serverIp & 0xffffffffL);
+			int port4 = (clientPort << 16) | (serverPort & 0xffff);
+
+			boolean closing = closes(tcp);
+			int i = find(ip4, port4);
+			TcpSession session;
+			if (i >= 0) {
+				session = sessions[i];
+			} else {
+				session = new TcpSession(new TcpSessionId(clientIp, clientPort, serverIp, serverPort), ip4, port4);
+				if (!closing) {
+					if (size >= maxSessions)
+						evict(oldest);
+					put(session);
+				}
+			}
 
-			session.handle(key.direction, tcp);
+			session.handle(direction, tcp);
 
-			if (tcp.flags().contains(TcpFlag.FIN) || tcp.flags().contains(TcpFlag.RST)) {
-				removeSession(key);
-			}
+			// a reset closes both sides
+			if (tcp.flags().contains(TcpFlag.RST))
+				session.end(frame.index(), Direction.NONE, true);
+			if (closing && session.openDirection.isEmpty())
+				delete(session);
+			else if (i >= 0 || !closing)
+				touch(session, frame);
 		}
 
 
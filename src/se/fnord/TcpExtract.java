@@ -50,6 +50,7 @@ import se.fnord.decoder.EthernetDecoder;
 import se.fnord.decoder.Ipv4Decoder;
 import se.fnord.decoder.Ipv4Frame;
 import se.fnord.decoder.SLLDecoder;
+import edu.harvard.syrah.sbon.async.Config;
 import util.async.MathUtil;
 import util.async.Util;
 import util.bloom.Apache.Key;
@@ -69,7 +70,7 @@ public class TcpExtract {
 		    Protocols.<Ipv4Frame, TcpFrame> select().addProtocol(6, new TcpDecoder<Ipv4Frame>()).build();
 
 		IteratorFactory<TcpFrame, TcpSessionEvent> tcpSession =
-		    stack(new TcpAssembler(), new FilterFactory<>(new FilterFunction<TcpSessionEvent, TcpSessionEvent>() {
+		    stack(assembler(), new FilterFactory<>(new FilterFunction<TcpSessionEvent, TcpSessionEvent>() {
 			    @Override
 			    public boolean test(TcpSessionEvent from) {
 				    // return from.session().serverPort() == serverPort;
@@ -79,6 +80,17 @@ public class TcpExtract {
 		return stack(eth, ip, tcp, tcpSession);
 	}
 
+	/**
+	 * sessions idle for tcpIdleTimeout s of packet time are ended, and at most
+	 * tcpMaxSessions are kept
+	 */
+	private static TcpAssembler assembler() {
+		long idle = (long) (Double.parseDouble(Config.getConfigProps().getProperty("tcpIdleTimeout", "300")) * 1e9);
+		int max = Integer.parseInt(Config.getConfigProps().getProperty("tcpMaxSessions",
+		    Integer.toString(TcpAssembler.DEFAULT_MAX_SESSIONS)));
+		return new TcpAssembler(idle, max);
+	}
+
 	private static final ByteBuffer MISSING_DATA = ByteBuffer.wrap("XXX".getBytes(Charset.forName("UTF-8")));
 
 	private static void extractPackets(Path destination, Iterable<TcpSessionEvent> events) throws IOException {
@@ -408,7 +420,7 @@ public class TcpExtract {
 		//Map<TcpSessionId, FileWriter> streams_to_client = new HashMap<>();
 		//Map<TcpSessionId, FileWriter> streams_to_server = new HashMap<>();
 
-		FileWriter w = null;
+		BufferedWriter w = null;
 		long counter=0;
 		for (TcpSessionEvent f : events) {
 		
@@ -417,7 +429,7 @@ public class TcpExtract {
 
 		if (f instanceof TcpSessionData) {
 			if (w == null) {
-				w = new FileWriter(destination);//FileChannel.open(destination, TRUNCATE_EXISTING, WRITE, CREATE);
+				w = new BufferedWriter(new FileWriter(destination), 1 << 16);//FileChannel.open(destination, TRUNCATE_EXISTING, WRITE, CREATE);
 				//streams.put(f.session(), w);
 			}
 			TcpSessionData d = (TcpSessionData) f;
@@ -430,7 +442,6 @@ public class TcpExtract {
 			String str=(ts+" "+seq+" "+ack+" "+check+" "+d.session().toString()+" "+PacketLen+" "+f.direction()+"\n");
 			//System.out.println(str);
 			w.write(str);
-			w.flush();
 			counter++;
 			//ByteBuffer sendBuffer=ByteBuffer.wrap(str.getBytes("UTF-8"));
 			//System.out.println(str);
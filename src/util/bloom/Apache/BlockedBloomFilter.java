@@ -0,0 +1,288 @@
+package util.bloom.Apache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * cache line blocked Bloom filter: the high half of the key hash picks a
+ * block of 8 longs (64 bytes), the k bits of the key are 9 bit positions
+ * inside that block. A test reads one block instead of k random words;
+ * the bits are set by CAS, no lock.
+ *
+ * for the same bits per key the false positive rate is somewhat higher than
+ * with k independent bits, more so below 1e-4
+ */
+public class BlockedBloomFilter extends Filter {
+
+	private static final long serialVersionUID = 5164367735926434178L;
+
+	static final int BLOCK_WORDS = 8;
+	static final int BLOCK_BITS = BLOCK_WORDS << 6;
+
+	public AtomicLongArray words;
+	int blocks;
+
+	final AtomicLong inserted = new AtomicLong(0);
+
+	public BlockedBloomFilter() {
+	}
+
+	/**
+	 * @param vectorSize bits, rounded up to whole blocks
+	 * @param nbHash bits per key
+	 * @param hashType
+	 */
+	public BlockedBloomFilter(int vectorSize, int nbHash, int hashType) {
+		super(vectorSize, nbHash, hashType);
+		blocks = blocksFor(vectorSize);
+		words = new AtomicLongArray(blocks * BLOCK_WORDS);
+	}
+
+	static int blocksFor(long bits) {
+		return (int) Math.max(1, (bits + BLOCK_BITS - 1) / BLOCK_BITS);
+	}
+
+	/**
+	 * expected false positive rate: the keys per block are Poisson, a block
+	 * holding j keys answers yes with (1-(1-1/512)^(kj))^k
+	 * @param keys
+	 * @param bits
+	 * @param k
+	 * @return
+	 */
+	public static double falsePositive(long keys, long bits, int k) {
+		double lambda = (double) keys * BLOCK_BITS / Math.max(bits, BLOCK_BITS);
+		int last = (int) (lambda + 10 * Math.sqrt(lambda) + 20);
+		double logZero = Math.log1p(-1.0 / BLOCK_BITS);
+		double pj = Math.exp(-lambda);
+		double fp = 0;
+		for (int j = 1; j <= last; j++) {
+			pj *= lambda / j;
+			fp += pj * Math.pow(-Math.expm1(k * j * logZero), k);
+		}
+		return fp;
+	}
+
+	/**
+	 * smallest size, then smallest k, that meets the rate; the blocks fill
+	 * unevenly, so this is more than m = -n ln p / (ln 2)^2 below 1e-4
+	 * @param keys
+	 * @param falsePositive
+	 * @return {bits, k}
+	 */
+	public static long[] sizeFor(long keys, double falsePositive) {
+		keys = Math.max(1, keys);
+		double bitsPerKey = Math.max(1, -Math.log(falsePositive) / (Math.log(2) * Math.log(2)));
+		while (true) {
+			long bits = (long) blocksFor((long) Math.ceil(bitsPerKey * keys)) * BLOCK_BITS;
+			int best = (int) Math.max(1, Math.round(bitsPerKey * Math.log(2)));
+			for (int k = Math.max(1, best / 2); k <= best + 2; k++) {
+				if (falsePositive(keys, bits, k) <= falsePositive) {
+					return new long[] { bits, k };
+				}
+			}
+			if (bits >= (long) Integer.MAX_VALUE * BLOCK_WORDS) {
+				return new long[] { bits, best };
+			}
+			bitsPerKey *= 1.05;
+		}
+	}
+
+	/**
+	 * first word of the block of the key
+	 */
+	static int block(long hash64, int blocks) {
+		return (int) (((hash64 >>> 32) * blocks) >>> 32) * BLOCK_WORDS;
+	}
+
+	/**
+	 * the next 9 bit position, re-mixed every 7 positions
+	 */
+	static long next(long x, int i) {
+		return (i % 7 == 6) ? mix(x) : Long.rotateLeft(x, 9);
+	}
+
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @param words
+	 * @param base from block()
+	 * @param hash64
+	 * @param k
+	 * @return true if all k bits are set
+	 */
+	static boolean testBlock(AtomicLongArray words, int base, long hash64, int k) {
+		long x = mix(hash64);
+		long missing = 0;
+		for (int i = 0; i < k; i++) {
+			int pos = (int) (x >>> 55);
+			missing |= ~words.get(base + (pos >>> 6)) & (1L << pos);
+			x = next(x, i);
+		}
+		return missing == 0;
+	}
+
+	/**
+	 * @return true if at least one bit was set by this call
+	 */
+	static boolean setBlock(AtomicLongArray words, int base, long hash64, int k) {
+		long x = mix(hash64);
+		boolean changed = false;
+		for (int i = 0; i < k; i++) {
+			int pos = (int) (x >>> 55);
+			long bit = 1L << pos;
+			int index = base + (pos >>> 6);
+			long prev;
+			do {
+				prev = words.get(index);
+				if ((prev & bit) != 0) {
+					break;
+				}
+				if (words.compareAndSet(index, prev, prev | bit)) {
+					changed = true;
+					break;
+				}
+			} while (true);
+			x = next(x, i);
+		}
+		return changed;
+	}
+
+	@Override
+	public void addHashed(long hash64) {
+		setBlock(words, block(hash64, blocks), hash64, nbHash);
+		inserted.incrementAndGet();
+	}
+
+	@Override
+	public boolean membershipTestHashed(long hash64) {
+		return testBlock(words, block(hash64, blocks), hash64, nbHash);
+	}
+
+	/**
+	 * one pass for both, the caller knows if the key is new
+	 * @param hash64
+	 * @return true if the key was not in the filter
+	 */
+	public boolean addIfAbsentHashed(long hash64) {
+		if (setBlock(words, block(hash64, blocks), hash64, nbHash)) {
+			inserted.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void add(Key key) {
+		if (key == null) {
+			throw new NullPointerException("key cannot be null");
+		}
+		byte[] b = key.getBytes();
+		addHashed(hash.hash64(b, 0, b.length));
+	}
+
+	@Override
+	public boolean membershipTest(Key key) {
+		if (key == null) {
+			throw new NullPointerException("key cannot be null");
+		}
+		byte[] b = key.getBytes();
+		return membershipTestHashed(hash.hash64(b, 0, b.length));
+	}
+
+	BlockedBloomFilter same(Filter filter, String op) {
+		if (filter == null || !(filter instanceof BlockedBloomFilter) || filter.vectorSize != this.vectorSize
+				|| filter.nbHash != this.nbHash) {
+			throw new IllegalArgumentException("filters cannot be " + op);
+		}
+		return (BlockedBloomFilter) filter;
+	}
+
+	@Override
+	public void and(Filter filter) {
+		BlockedBloomFilter f = same(filter, "and-ed");
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, words.get(i) & f.words.get(i));
+		}
+	}
+
+	@Override
+	public void or(Filter filter) {
+		BlockedBloomFilter f = same(filter, "or-ed");
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, words.get(i) | f.words.get(i));
+		}
+	}
+
+	@Override
+	public void xor(Filter filter) {
+		BlockedBloomFilter f = same(filter, "xor-ed");
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, words.get(i) ^ f.words.get(i));
+		}
+	}
+
+	@Override
+	public void not() {
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, ~words.get(i));
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, 0);
+		}
+		inserted.set(0);
+	}
+
+	public long getNumInserted() {
+		return inserted.get();
+	}
+
+	/**
+	 * estimate from the fill of the words, blocks are assumed to fill evenly
+	 * @return
+	 */
+	public double getFalsePositive() {
+		long ones = 0;
+		for (int i = 0; i < words.length(); i++) {
+			ones += Long.bitCount(words.get(i));
+		}
+		return Math.pow((double) ones / ((long) words.length() << 6), nbHash);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		super.write(out);
+		out.writeInt(blocks);
+		for (int i = 0; i < words.length(); i++) {
+			out.writeLong(words.get(i));
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		super.readFields(in);
+		blocks = in.readInt();
+		words = new AtomicLongArray(blocks * BLOCK_WORDS);
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, in.readLong());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "blocked " + blocks + "x" + BLOCK_BITS + " bits, k=" + nbHash;
+	}
+}
@@ -295,6 +295,31 @@ public class BloomFilter extends Filter {
         return true;
     }
 
+    @Override
+    public void addHashed(long hash64) {
+        NumInserted++;
+        try {
+            BFOps.acquire();
+            for (int i = 0; i < nbHash; i++) {
+                bits.set(hash.index(hash64, i));
+            }
+            BFOps.release();
+        } catch (InterruptedException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean membershipTestHashed(long hash64) {
+        for (int i = 0; i < nbHash; i++) {
+            if (!bits.get(hash.index(hash64, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * get the hashed Key
      * @param key
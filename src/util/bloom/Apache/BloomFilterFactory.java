@@ -50,6 +50,17 @@ public class BloomFilterFactory {
 	public static Filter createCountingBloomFilter(int vectorSize, int nbHash, int hashType) {
 		return new CountingBloomFilter(vectorSize, nbHash, hashType);
 	}
+
+	/**
+	 * one 64 byte block per key, lock free add
+	 * @param vectorSize bits, rounded up to 512
+	 * @param nbHash bits per key
+	 * @param hashType
+	 * @return
+	 */
+	public static Filter createBlockedBloomFilter(int vectorSize, int nbHash, int hashType) {
+		return new BlockedBloomFilter(vectorSize, nbHash, hashType);
+	}
 	 /**
 	   * Constructor.
 	   * <p>
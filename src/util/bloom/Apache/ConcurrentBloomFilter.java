@@ -258,6 +258,26 @@ private static final byte[] bitvalues = new byte[] {
     return true;
   }
 
+  @Override
+  public void addHashed(long hash64) {
+    NumInserted++;
+    synchronized(bits){
+    for(int i = 0; i < nbHash; i++) {
+      bits.set(hash.index(hash64, i));
+    }
+    }
+  }
+
+  @Override
+  public boolean membershipTestHashed(long hash64) {
+    for(int i = 0; i < nbHash; i++) {
+      if(!bits.get(hash.index(hash64, i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * get the hashed Key
    * @param key
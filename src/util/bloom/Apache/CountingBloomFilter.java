@@ -439,6 +439,23 @@ public final class CountingBloomFilter extends Filter {
     return true;
   }
 
+  @Override
+  public void addHashed(long hash64) {
+    for(int i = 0; i < nbHash; i++) {
+       values[hash.index(hash64, i)]++;
+    }
+  }
+
+  @Override
+  public boolean membershipTestHashed(long hash64) {
+    for(int i = 0; i < nbHash; i++) {
+    	if(values[hash.index(hash64, i)]==0){
+    		return false;
+    	}
+    }
+    return true;
+  }
+
   /**
    * This method calculates an approximate count of the key, i.e. how many
    * times the key was added to the filter. This allows the filter to be
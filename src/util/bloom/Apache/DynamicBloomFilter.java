@@ -209,6 +209,32 @@ public class DynamicBloomFilter extends Filter {
     return false;
   }
 
+  @Override
+  public void addHashed(long hash64) {
+    BloomFilter bf = getActiveStandardBF();
+
+    if (bf == null) {
+      addRow();
+      bf = matrix[matrix.length - 1];
+      currentNbRecord = 0;
+    }
+
+    bf.addHashed(hash64);
+
+    currentNbRecord++;
+  }
+
+  @Override
+  public boolean membershipTestHashed(long hash64) {
+    for (int i = 0; i < matrix.length; i++) {
+      if (matrix[i].membershipTestHashed(hash64)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
   @Override
   public void not() {
     for (int i = 0; i < matrix.length; i++) {
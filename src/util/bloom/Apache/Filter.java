@@ -69,6 +69,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 
@@ -181,6 +182,50 @@ public abstract class Filter implements Writable, Serializable {
      */
     public abstract boolean membershipTest(Key key);
 
+    /**
+     * Adds a key already hashed by {@link HashFunction#hash64(long)}.
+     * @param hash64
+     */
+    public abstract void addHashed(long hash64);
+
+    /**
+     * Tests a key already hashed by {@link HashFunction#hash64(long)}.
+     * @param hash64
+     * @return
+     */
+    public abstract boolean membershipTestHashed(long hash64);
+
+    /**
+     * Adds a 64 bit key without a Key object or an index array.
+     * @param key
+     */
+    public void add(long key) {
+        addHashed(hash.hash64(key));
+    }
+
+    public boolean membershipTest(long key) {
+        return membershipTestHashed(hash.hash64(key));
+    }
+
+    /**
+     * Adds the bytes b[off, off+len) as a key.
+     */
+    public void add(byte[] b, int off, int len) {
+        addHashed(hash.hash64(b, off, len));
+    }
+
+    public boolean membershipTest(byte[] b, int off, int len) {
+        return membershipTestHashed(hash.hash64(b, off, len));
+    }
+
+    public void add(ByteBuffer bb, int off, int len) {
+        addHashed(hash.hash64(bb, off, len));
+    }
+
+    public boolean membershipTest(ByteBuffer bb, int off, int len) {
+        return membershipTestHashed(hash.hash64(bb, off, len));
+    }
+
     /**
      * Peforms a logical AND between <i>this</i> filter and a specified filter.
      * <p>
@@ -77,6 +77,7 @@ import edu.harvard.syrah.prp.POut;
 
 import sun.util.logging.resources.logging;
 import util.bloom.Apache.Hash.Hash;
+import util.bloom.Apache.Hash.hashing.LongHashFunction;
 
 
 /**
@@ -182,6 +183,67 @@ public final class HashFunction implements Serializable {
     public void clear() {
     }
 
+    /**
+     * 64 bit hash for the stateless methods below, seeded by the group
+     */
+    private transient LongHashFunction indexHash;
+
+    LongHashFunction indexHash() {
+        LongHashFunction f = indexHash;
+        if (f == null) {
+            f = LongHashFunction.xx(indexGroup);
+            indexHash = f;
+        }
+        return f;
+    }
+
+    /**
+     * Stateless hashing: the key is hashed once to 64 bits and the k indexes
+     * are h1 + i * h2 over its two halves (Kirsch and Mitzenmacher). Nothing
+     * is allocated and nothing is kept between calls, so threads can share
+     * one HashFunction. The indexes differ from hash(Key), a filter holds
+     * either kind of key.
+     * @param key
+     * @return
+     */
+    public long hash64(long key) {
+        return indexHash().hashLong(key);
+    }
+
+    public long hash64(byte[] b, int off, int len) {
+        return indexHash().hashBytes(b, off, len);
+    }
+
+    public long hash64(ByteBuffer bb, int off, int len) {
+        return indexHash().hashBytes(bb, off, len);
+    }
+
+    /**
+     * @param hash64 from hash64()
+     * @param i 0 .. nbHash-1
+     * @return the i-th index
+     */
+    public int index(long hash64, int i) {
+        int combined = (int) hash64 + i * (int) (hash64 >>> 32);
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % maxValue;
+    }
+
+    /**
+     * all nbHash indexes into the caller's buffer
+     * @param hash64
+     * @param result at least nbHash long
+     * @return result
+     */
+    public int[] indexes(long hash64, int[] result) {
+        for (int i = 0; i < nbHash; i++) {
+            result[i] = index(hash64, i);
+        }
+        return result;
+    }
+
     /**
      * Hashes a specified key into several integers.
      * @param k The specified key.
@@ -293,6 +293,33 @@ public class IndependentHashBloomFilter extends Filter {
 	    return true;
 	  }
 
+	  /**
+	   * the location seed is folded into the hash, as hash(key,seed) does
+	   */
+	  long seeded(long hash64) {
+	    return hash64 ^ (seed * 0x9E3779B97F4A7C15L);
+	  }
+
+	  @Override
+	  public void addHashed(long hash64) {
+	    NumInserted++;
+	    long h = seeded(hash64);
+	    for(int i = 0; i < nbHash; i++) {
+	      bits.set(hash.index(h, i));
+	    }
+	  }
+
+	  @Override
+	  public boolean membershipTestHashed(long hash64) {
+	    long h = seeded(hash64);
+	    for(int i = 0; i < nbHash; i++) {
+	      if(!bits.get(hash.index(h, i))) {
+	        return false;
+	      }
+	    }
+	    return true;
+	  }
+
 	  /**
 	   * get the hashed Key
 	   * @param key
@@ -0,0 +1,227 @@
+package util.bloom.Apache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * duplicate filter over a sliding window: a ring of generation Bloom filters,
+ * keys go into the current generation and are looked up in all of them.
+ * A generation is closed when its time span ends or when it holds its share
+ * of keys, so the false positive rate stays bounded however long the
+ * collection runs, and the memory is fixed when the filter is built.
+ *
+ * one generation of the ring is always empty: it is cleared when it becomes
+ * the next one to write, while nobody writes it yet
+ *
+ * insert and test are lock free, the bits are set by CAS; only the switch
+ * to the next generation is synchronized. The generations are cache line
+ * blocked (see BlockedBloomFilter) and share the block of a key, so a
+ * lookup costs one miss per generation instead of k
+ */
+public class RotatingBloomFilter {
+
+	public static final int DEFAULT_GENERATIONS = 4;
+
+	final int generations;
+	//bits per generation, whole blocks
+	final long bits;
+	final int blocks;
+	final int nbHash;
+	//keys per generation
+	final long perGeneration;
+	//time per generation, in the unit of the timestamps
+	final long span;
+
+	final AtomicLongArray[] words;
+	final AtomicLongArray counts;
+	//generations opened so far, the current one is generation % generations
+	final AtomicLong generation = new AtomicLong(0);
+	//timestamp that closes the current generation, MIN_VALUE: set by the first key
+	final AtomicLong generationEnd = new AtomicLong(Long.MIN_VALUE);
+
+	final AtomicLong inserted = new AtomicLong(0);
+
+	/**
+	 * @param capacity keys expected within the window
+	 * @param window how long a key is remembered, in the unit of the timestamps
+	 * @param _generations at least 3
+	 * @param falsePositive bound over the whole ring
+	 */
+	public RotatingBloomFilter(long capacity, long window, int _generations, double falsePositive) {
+		generations = Math.max(3, _generations);
+		//the window is covered by the closed generations, one is spare
+		int full = generations - 2;
+		perGeneration = Math.max(1, (capacity + full - 1) / full);
+		span = Math.max(1, window / full);
+		//union bound over the generations that are looked up
+		double p = falsePositive / (generations - 1);
+		long[] size = BlockedBloomFilter.sizeFor(perGeneration, p);
+		blocks = BlockedBloomFilter.blocksFor(size[0]);
+		bits = (long) blocks * BlockedBloomFilter.BLOCK_BITS;
+		nbHash = (int) size[1];
+		words = new AtomicLongArray[generations];
+		for (int i = 0; i < generations; i++) {
+			words[i] = new AtomicLongArray(blocks * BlockedBloomFilter.BLOCK_WORDS);
+		}
+		counts = new AtomicLongArray(generations);
+	}
+
+	/**
+	 * @param totalPackets packets expected in one measurement period
+	 * @param measurementPeriod
+	 * @param falsePositive
+	 * @return
+	 */
+	public static RotatingBloomFilter forPeriod(long totalPackets, long measurementPeriod, double falsePositive) {
+		return new RotatingBloomFilter(totalPackets, measurementPeriod, DEFAULT_GENERATIONS, falsePositive);
+	}
+
+	/**
+	 * @param h1 first half of a 128 bit hash
+	 * @param h2 second half
+	 * @param ts timestamp of the key
+	 * @return true if the key was not seen within the window, it is recorded then
+	 */
+	public boolean addIfAbsent(long h1, long h2, long ts) {
+		int current = advance(ts);
+		int base = BlockedBloomFilter.block(h1, blocks);
+		if (contains(base, h2, current)) {
+			return false;
+		}
+		if (!BlockedBloomFilter.setBlock(words[current], base, h2, nbHash)) {
+			//another thread recorded the same key
+			return false;
+		}
+		counts.incrementAndGet(current);
+		inserted.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * for a 64 bit id, the second hash is derived from it
+	 */
+	public boolean addIfAbsent(long hash, long ts) {
+		return addIfAbsent(hash, mix(hash), ts);
+	}
+
+	public boolean membershipTest(long h1, long h2) {
+		return contains(BlockedBloomFilter.block(h1, blocks), h2, (int) (generation.get() % generations));
+	}
+
+	public boolean membershipTest(long hash) {
+		return membershipTest(hash, mix(hash));
+	}
+
+	/**
+	 * current generation, closed and opened as the time and the count say
+	 */
+	int advance(long ts) {
+		while (true) {
+			long g = generation.get();
+			long end = generationEnd.get();
+			int current = (int) (g % generations);
+			if (end != Long.MIN_VALUE && ts < end && counts.get(current) < perGeneration) {
+				return current;
+			}
+			rotate(g, ts);
+		}
+	}
+
+	/**
+	 * once per span, the only place that takes a lock;
+	 * the end is published before the generation, so a thread that sees the
+	 * new generation also sees its end
+	 */
+	synchronized void rotate(long g, long ts) {
+		if (generation.get() != g) {
+			return;
+		}
+		long end = generationEnd.get();
+		if (end == Long.MIN_VALUE) {
+			generationEnd.set(ts + span);
+			return;
+		}
+		//the one after the new current becomes the spare
+		int spare = (int) ((g + 2) % generations);
+		AtomicLongArray w = words[spare];
+		for (int i = 0; i < w.length(); i++) {
+			w.set(i, 0);
+		}
+		counts.set(spare, 0);
+		if (ts < end) {
+			//full before its time
+			generationEnd.set(ts + span);
+		} else if (ts < end + span) {
+			generationEnd.set(end + span);
+		} else {
+			//idle for longer than a span
+			generationEnd.set(ts + span);
+		}
+		generation.set(g + 1);
+	}
+
+	/**
+	 * @param base block of the key, from h1
+	 * @param h2 picks the bits in the block
+	 */
+	boolean contains(int base, long h2, int current) {
+		int spare = (current + 1) % generations;
+		for (int gen = 0; gen < generations; gen++) {
+			if (gen != spare && BlockedBloomFilter.testBlock(words[gen], base, h2, nbHash)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h | 1;
+	}
+
+	public synchronized void clear() {
+		for (int gen = 0; gen < generations; gen++) {
+			AtomicLongArray w = words[gen];
+			for (int i = 0; i < w.length(); i++) {
+				w.set(i, 0);
+			}
+			counts.set(gen, 0);
+		}
+		generation.set(0);
+		generationEnd.set(Long.MIN_VALUE);
+		inserted.set(0);
+	}
+
+	/**
+	 * keys recorded since the last clear
+	 * @return
+	 */
+	public long getNumInserted() {
+		return inserted.get();
+	}
+
+	/**
+	 * false positive rate of a lookup with the generations as full as they are now
+	 * @return
+	 */
+	public double getFalsePositive() {
+		int current = (int) (generation.get() % generations);
+		int spare = (current + 1) % generations;
+		double miss = 1;
+		for (int gen = 0; gen < generations; gen++) {
+			if (gen == spare) {
+				continue;
+			}
+			miss *= 1 - BlockedBloomFilter.falsePositive(counts.get(gen), bits, nbHash);
+		}
+		return 1 - miss;
+	}
+
+	public long sizeInBytes() {
+		return generations * (bits >>> 3);
+	}
+}
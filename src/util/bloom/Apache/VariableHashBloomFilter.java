@@ -201,6 +201,31 @@ public class VariableHashBloomFilter extends Filter {
 	    return true;
 	  }
 
+	  @Override
+	  public void addHashed(long hash64) {
+	    boolean isAllTrue=true;
+	    for(int i = 0; i < nbHash; i++) {
+	      int index = hash.index(hash64, i);
+	      if(!bits.get(index)){
+	        isAllTrue=false;
+	        bits.set(index);
+	      }
+	    }
+	    if(!isAllTrue){
+	      NumInserted++;
+	    }
+	  }
+
+	  @Override
+	  public boolean membershipTestHashed(long hash64) {
+	    for(int i = 0; i < nbHash; i++) {
+	      if(!bits.get(hash.index(hash64, i))) {
+	        return false;
+	      }
+	    }
+	    return true;
+	  }
+
 	  /**
 	   * get the hashed Key
 	   * @param key
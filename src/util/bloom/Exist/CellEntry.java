@@ -61,6 +61,20 @@ public class CellEntry  implements Writable ,Serializable{
 				+", hashSum: "+this.hashSum.toString());*/
 	}
 
+	/**
+	 * add a 4 byte key and its check, in place
+	 * @param key
+	 * @param c
+	 */
+	public void add(int key, int c) {
+		for(int i=0;i<len;i++){
+			int shift=8*(len-1-i);
+			idSum[i]^=(byte)(key>>>shift);
+			hashSum[i]^=(byte)(c>>>shift);
+		}
+		count=count+1;
+	}
+
 	/**
 	 * set the cell
 	 * @param counter_
@@ -97,49 +97,67 @@ public class InvertedBloomFilter extends Filter{
 	
 	@Override
 	public void add(Key key) {
-		// TODO Auto-generated method stub
-	
 		if(key == null) {
 		      throw new NullPointerException("key cannot be null");
 		    }
+		addCell(cellKey(key.getBytes(), 0, key.getBytes().length));
+	}
 
-		    /**
-		     * h
-		     */
-		    int[] h = hash.hash(key);
-		    
-		    /**
-		     * h_c
-		     */
-		    int[] h2 = hashC.hash(key);
-		    
-		    /**
-		     * s
-		     */
-		    byte[]ss=key.getBytes();
-		    
-		    //BigInteger keyVal = new BigInteger(ss);
-		    
-		    /**
-		     * h_c(s)
-		     */
-		    //log.debug("real c: "+h2[0]);
-		    //BigInteger c = new BigInteger(ByteBuffer.allocate(4).putInt(h2[0]).array());
-		    //BigInteger c = new BigInteger(h2[0]+"");
-
-		    
-		    
-		    hash.clear();
-		    log.debug("\n################\n");
-		    for(int i = 0; i < nbHash; i++) {     
-		      instance[h[i]].add(ss,ByteBuffer.allocate(4).putInt(h2[0]).array());		    	
-		    }
-		    
-		    h=null;
-		    ss=null;
-		    h2=null;
-		    //c=null;
-		    //keyVal=null;
+	/**
+	 * a cell keeps 4 bytes of a key, the first ones, as an int;
+	 * the cells of a key and its check are hashed from those 4 bytes, so
+	 * decode() finds them again from a pure cell
+	 * @param b
+	 * @param off
+	 * @param len shorter keys are padded with zeros
+	 * @return
+	 */
+	static int cellKey(byte[] b, int off, int len) {
+		int k = 0;
+		for(int i = 0; i < 4; i++) {
+			k = (k << 8) | (i < len ? b[off + i] & 0xff : 0);
+		}
+		return k;
+	}
+
+	static int cellKey(ByteBuffer bb, int off, int len) {
+		int k = 0;
+		for(int i = 0; i < 4; i++) {
+			k = (k << 8) | (i < len ? bb.get(off + i) & 0xff : 0);
+		}
+		return k;
+	}
+
+	/**
+	 * h_c(s)
+	 */
+	int check(int cellKey) {
+		return hashC.index(hashC.hash64(cellKey), 0);
+	}
+
+	/**
+	 * the nbHash cells of a key
+	 */
+	int[] positions(int cellKey, int[] result) {
+		return hash.indexes(hash.hash64(cellKey), result);
+	}
+
+	void addCell(int cellKey) {
+		long hash64 = hash.hash64(cellKey);
+		int c = check(cellKey);
+		for(int i = 0; i < nbHash; i++) {
+			instance[hash.index(hash64, i)].add(cellKey, c);
+		}
+	}
+
+	boolean containsCell(int cellKey) {
+		long hash64 = hash.hash64(cellKey);
+		for(int i = 0; i < nbHash; i++) {
+			if(instance[hash.index(hash64, i)].count<=0) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -166,19 +184,11 @@ public class InvertedBloomFilter extends Filter{
 				tmp.count==-1){		
 						
 			
-			//int[] hashedVal=hashC.hash(new Key(ByteBuffer.allocate(4).putInt(tmp.idSum.intValue()).array()));			
-			int[] hashedVal=hashC.hash(new Key(tmp.idSum));
-			
-			if(Util.equalsByte(tmp.hashSum,ByteBuffer.allocate(4).putInt(hashedVal[0]).array())){
+			if(cellKey(tmp.hashSum, 0, 4)==check(cellKey(tmp.idSum, 0, 4))){
 				log.debug("cell at "+idx+" passed!");
-				
-				hashedVal=null;
-				
 				return true;
 			}else{
 				log.debug("cell at "+idx+" NOT passed!");
-				hashedVal=null;
-				
 				return false;
 			}
 		}else{
@@ -270,10 +280,11 @@ public class InvertedBloomFilter extends Filter{
 			
 			
 			
-			int[] hc2 = hashC.hash(new Key(s));
+			int k = cellKey(s, 0, 4);
+			int[] hc2 = {check(k)};
 			
 			//update
-			int[] h = hash.hash(new Key(s));
+			int[] h = positions(k, new int[nbHash]);
 			
 			
 			//todo: h does not include the position of i
@@ -384,16 +395,53 @@ public class InvertedBloomFilter extends Filter{
 	 * test the membership
 	 */
 	public boolean membershipTest(Key key) {
-		// TODO Auto-generated method stub
-		int[] h = hash.hash(key);
-	    hash.clear();
-	    for(int i = 0; i < nbHash; i++) {
-	    	//System.out.println("$: "+h[i]+", "+bits.get(h[i]));
-	      if(instance[i].count<=0) {
-	        return false;
-	      }
-	    }
-	    return true;
+		return containsCell(cellKey(key.getBytes(), 0, key.getBytes().length));
+	}
+
+	/**
+	 * a long keeps its low 32 bits, ids below 2^32 decode as themselves
+	 */
+	@Override
+	public void add(long key) {
+		addCell((int) key);
+	}
+
+	@Override
+	public boolean membershipTest(long key) {
+		return containsCell((int) key);
+	}
+
+	@Override
+	public void add(byte[] b, int off, int len) {
+		addCell(cellKey(b, off, len));
+	}
+
+	@Override
+	public boolean membershipTest(byte[] b, int off, int len) {
+		return containsCell(cellKey(b, off, len));
+	}
+
+	@Override
+	public void add(ByteBuffer bb, int off, int len) {
+		addCell(cellKey(bb, off, len));
+	}
+
+	@Override
+	public boolean membershipTest(ByteBuffer bb, int off, int len) {
+		return containsCell(cellKey(bb, off, len));
+	}
+
+	/**
+	 * the hash stands for the key, its low 32 bits are kept and decoded
+	 */
+	@Override
+	public void addHashed(long hash64) {
+		addCell((int) hash64);
+	}
+
+	@Override
+	public boolean membershipTestHashed(long hash64) {
+		return containsCell((int) hash64);
 	}
 
 	@Override
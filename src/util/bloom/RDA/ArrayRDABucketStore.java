@@ -0,0 +1,192 @@
+package util.bloom.RDA;
+
+import java.util.Arrays;
+
+/**
+ * struct-of-arrays buckets, one primitive array per field
+ */
+public class ArrayRDABucketStore extends RDABucketStore {
+
+	private static final long serialVersionUID = 5512338086212935110L;
+
+	public int[] Counter;
+	public float[] TS;
+	public long[] keySum;
+	//null without the check column
+	public long[] keyCheck;
+
+	public ArrayRDABucketStore(int _size, boolean _withKeyCheck) {
+		super(_size, _withKeyCheck);
+		Counter = new int[_size];
+		TS = new float[_size];
+		keySum = new long[_size];
+		if (_withKeyCheck) {
+			keyCheck = new long[_size];
+		}
+	}
+
+	@Override
+	public int getCounter(int index) {
+		return Counter[index];
+	}
+
+	@Override
+	public float getTS(int index) {
+		return TS[index];
+	}
+
+	@Override
+	public long getKeySum(int index) {
+		return keySum[index];
+	}
+
+	@Override
+	public long getKeyCheck(int index) {
+		return keyCheck == null ? 0 : keyCheck[index];
+	}
+
+	@Override
+	public void set(int index, int _Counter, float _TS, long _keySum, long _keyCheck) {
+		Counter[index] = _Counter;
+		TS[index] = _TS;
+		keySum[index] = _keySum;
+		if (keyCheck != null) {
+			keyCheck[index] = _keyCheck;
+		}
+	}
+
+	@Override
+	public void update(int index, long _Counter, double _TS, long id, long idCheck) {
+		Counter[index] += _Counter;
+		TS[index] += _TS;
+		keySum[index] ^= id;
+		if (keyCheck != null) {
+			keyCheck[index] ^= idCheck;
+		}
+	}
+
+	@Override
+	public void reset(int index) {
+		Counter[index] = 0;
+		TS[index] = 0;
+		keySum[index] = 0;
+		if (keyCheck != null) {
+			keyCheck[index] = 0;
+		}
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(Counter, 0);
+		Arrays.fill(TS, 0);
+		Arrays.fill(keySum, 0);
+		if (keyCheck != null) {
+			Arrays.fill(keyCheck, 0);
+		}
+	}
+
+	@Override
+	public RDABucketStore newStore(int _size) {
+		return new ArrayRDABucketStore(_size, withKeyCheck);
+	}
+
+	@Override
+	public void copyFrom(RDABucketStore you, int from, int to, int len) {
+		if (!(you instanceof ArrayRDABucketStore)) {
+			super.copyFrom(you, from, to, len);
+			return;
+		}
+		ArrayRDABucketStore a = (ArrayRDABucketStore) you;
+		System.arraycopy(a.Counter, from, Counter, to, len);
+		System.arraycopy(a.TS, from, TS, to, len);
+		System.arraycopy(a.keySum, from, keySum, to, len);
+		if (keyCheck != null) {
+			if (a.keyCheck != null) {
+				System.arraycopy(a.keyCheck, from, keyCheck, to, len);
+			} else {
+				Arrays.fill(keyCheck, to, to + len, 0);
+			}
+		}
+	}
+
+	@Override
+	public void subtract(RDABucketStore you, int from, int to, int len) {
+		if (!(you instanceof ArrayRDABucketStore)) {
+			super.subtract(you, from, to, len);
+			return;
+		}
+		ArrayRDABucketStore a = (ArrayRDABucketStore) you;
+		for (int i = 0; i < len; i++) {
+			Counter[to + i] -= a.Counter[from + i];
+		}
+		for (int i = 0; i < len; i++) {
+			TS[to + i] -= a.TS[from + i];
+		}
+		for (int i = 0; i < len; i++) {
+			keySum[to + i] ^= a.keySum[from + i];
+		}
+		if (keyCheck != null && a.keyCheck != null) {
+			for (int i = 0; i < len; i++) {
+				keyCheck[to + i] ^= a.keyCheck[from + i];
+			}
+		}
+	}
+
+	@Override
+	public void subtractInto(RDABucketStore you, RDABucketStore dest) {
+		if (!(you instanceof ArrayRDABucketStore) || !(dest instanceof ArrayRDABucketStore)) {
+			super.subtractInto(you, dest);
+			return;
+		}
+		ArrayRDABucketStore a = (ArrayRDABucketStore) you;
+		ArrayRDABucketStore d = (ArrayRDABucketStore) dest;
+		int[] c = Counter, ac = a.Counter, dc = d.Counter;
+		for (int i = 0; i < size; i++) {
+			dc[i] = c[i] - ac[i];
+		}
+		float[] t = TS, at = a.TS, dt = d.TS;
+		for (int i = 0; i < size; i++) {
+			dt[i] = t[i] - at[i];
+		}
+		xor(keySum, a.keySum, d.keySum, size);
+		if (d.keyCheck != null) {
+			//a missing column is 0
+			if (keyCheck != null && a.keyCheck != null) {
+				xor(keyCheck, a.keyCheck, d.keyCheck, size);
+			} else if (keyCheck != null || a.keyCheck != null) {
+				System.arraycopy(keyCheck != null ? keyCheck : a.keyCheck, 0, d.keyCheck, 0, size);
+			} else {
+				Arrays.fill(d.keyCheck, 0, size, 0);
+			}
+		}
+	}
+
+	@Override
+	public void add(RDABucketStore you) {
+		if (!(you instanceof ArrayRDABucketStore)) {
+			super.add(you);
+			return;
+		}
+		ArrayRDABucketStore a = (ArrayRDABucketStore) you;
+		for (int i = 0; i < size; i++) {
+			Counter[i] += a.Counter[i];
+		}
+		for (int i = 0; i < size; i++) {
+			TS[i] += a.TS[i];
+		}
+		xor(keySum, a.keySum, keySum, size);
+		if (keyCheck != null && a.keyCheck != null) {
+			xor(keyCheck, a.keyCheck, keyCheck, size);
+		}
+	}
+
+	/**
+	 * d = x ^ y; one column per loop, so that the JIT compiles the
+	 * subtractions to SIMD
+	 */
+	static void xor(long[] x, long[] y, long[] d, int len) {
+		for (int i = 0; i < len; i++) {
+			d[i] = x[i] ^ y[i];
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package util.bloom.RDA;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * heap buckets updated with CAS, so that several capture threads
+ * can insert into one table without the BFOps semaphore;
+ * Counter and keySum/keyCheck are commutative, a bucket read is only
+ * consistent once the writers have stopped
+ */
+public class AtomicRDABucketStore extends RDABucketStore {
+
+	private static final long serialVersionUID = 2960581357441925176L;
+
+	final AtomicIntegerArray Counter;
+	//float bits
+	final AtomicIntegerArray TS;
+	final AtomicLongArray keySum;
+	//null without the check column
+	final AtomicLongArray keyCheck;
+
+	public AtomicRDABucketStore(int _size, boolean _withKeyCheck) {
+		super(_size, _withKeyCheck);
+		Counter = new AtomicIntegerArray(_size);
+		TS = new AtomicIntegerArray(_size);
+		keySum = new AtomicLongArray(_size);
+		keyCheck = _withKeyCheck ? new AtomicLongArray(_size) : null;
+	}
+
+	@Override
+	public boolean isThreadSafe() {
+		return true;
+	}
+
+	@Override
+	public int getCounter(int index) {
+		return Counter.get(index);
+	}
+
+	@Override
+	public float getTS(int index) {
+		return Float.intBitsToFloat(TS.get(index));
+	}
+
+	@Override
+	public long getKeySum(int index) {
+		return keySum.get(index);
+	}
+
+	@Override
+	public long getKeyCheck(int index) {
+		return keyCheck == null ? 0 : keyCheck.get(index);
+	}
+
+	@Override
+	public void set(int index, int _Counter, float _TS, long _keySum, long _keyCheck) {
+		Counter.set(index, _Counter);
+		TS.set(index, Float.floatToRawIntBits(_TS));
+		keySum.set(index, _keySum);
+		if (keyCheck != null) {
+			keyCheck.set(index, _keyCheck);
+		}
+	}
+
+	@Override
+	public void update(int index, long _Counter, double _TS, long id, long idCheck) {
+		Counter.addAndGet(index, (int) _Counter);
+		addTS(index, _TS);
+		xor(keySum, index, id);
+		if (keyCheck != null) {
+			xor(keyCheck, index, idCheck);
+		}
+	}
+
+	/**
+	 * TS+=v, same float rounding as the plain stores
+	 */
+	private void addTS(int index, double v) {
+		int prev, next;
+		do {
+			prev = TS.get(index);
+			next = Float.floatToRawIntBits((float) (Float.intBitsToFloat(prev) + v));
+		} while (!TS.compareAndSet(index, prev, next));
+	}
+
+	private static void xor(AtomicLongArray a, int index, long v) {
+		long prev;
+		do {
+			prev = a.get(index);
+		} while (!a.compareAndSet(index, prev, prev ^ v));
+	}
+
+	@Override
+	public void reset(int index) {
+		set(index, 0, 0, 0, 0);
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			reset(i);
+		}
+	}
+
+	@Override
+	public RDABucketStore newStore(int _size) {
+		return new AtomicRDABucketStore(_size, withKeyCheck);
+	}
+}
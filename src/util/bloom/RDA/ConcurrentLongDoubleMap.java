@@ -0,0 +1,135 @@
+package util.bloom.RDA;
+
+/**
+ * lock striped version: the keys are spread over segments, every segment
+ * is an OpenLongDoubleMap guarded by its own monitor, so the capture thread
+ * and the request handlers only meet on the same segment
+ */
+public class ConcurrentLongDoubleMap extends LongDoubleMap {
+
+	static final int SEGMENTS = 16;
+
+	final OpenLongDoubleMap[] segments;
+
+	/**
+	 * @param expected number of keys
+	 * @param direct slots off heap
+	 */
+	public ConcurrentLongDoubleMap(int expected, boolean direct) {
+		segments = new OpenLongDoubleMap[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new OpenLongDoubleMap(expected / SEGMENTS, direct);
+		}
+	}
+
+	public ConcurrentLongDoubleMap(int expected) {
+		this(expected, offHeap);
+	}
+
+	/**
+	 * high bits, the segment maps probe with the low ones
+	 */
+	final OpenLongDoubleMap segment(long key) {
+		long h = key * 0xC2B2AE3D27D4EB4FL;
+		return segments[(int) (h >>> 60)];
+	}
+
+	@Override
+	public boolean containsKey(long key) {
+		OpenLongDoubleMap s = segment(key);
+		synchronized (s) {
+			return s.containsKey(key);
+		}
+	}
+
+	@Override
+	public double get(long key, double missing) {
+		OpenLongDoubleMap s = segment(key);
+		synchronized (s) {
+			return s.get(key, missing);
+		}
+	}
+
+	@Override
+	public long getLong(long key, long missing) {
+		OpenLongDoubleMap s = segment(key);
+		synchronized (s) {
+			return s.getLong(key, missing);
+		}
+	}
+
+	@Override
+	public void put(long key, double value) {
+		OpenLongDoubleMap s = segment(key);
+		synchronized (s) {
+			s.put(key, value);
+		}
+	}
+
+	@Override
+	public void putLong(long key, long value) {
+		OpenLongDoubleMap s = segment(key);
+		synchronized (s) {
+			s.putLong(key, value);
+		}
+	}
+
+	@Override
+	public boolean putIfAbsent(long key, double value) {
+		OpenLongDoubleMap s = segment(key);
+		synchronized (s) {
+			return s.putIfAbsent(key, value);
+		}
+	}
+
+	@Override
+	public boolean remove(long key) {
+		OpenLongDoubleMap s = segment(key);
+		synchronized (s) {
+			return s.remove(key);
+		}
+	}
+
+	/**
+	 * segment by segment, not a snapshot of the whole map
+	 */
+	@Override
+	public void forEachEntry(Procedure p) {
+		for (OpenLongDoubleMap s : segments) {
+			synchronized (s) {
+				s.forEachEntry(p);
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		int n = 0;
+		for (OpenLongDoubleMap s : segments) {
+			synchronized (s) {
+				n += s.size();
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public void clear() {
+		for (OpenLongDoubleMap s : segments) {
+			synchronized (s) {
+				s.clear();
+			}
+		}
+	}
+
+	@Override
+	public long sizeInBytes() {
+		long n = 0;
+		for (OpenLongDoubleMap s : segments) {
+			synchronized (s) {
+				n += s.sizeInBytes();
+			}
+		}
+		return n;
+	}
+}
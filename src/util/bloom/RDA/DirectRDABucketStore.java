@@ -0,0 +1,126 @@
+package util.bloom.RDA;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * off-heap buckets, fixed stride in one direct buffer:
+ * keySum(8) Counter(4) TS(4) [keyCheck(8)]
+ */
+public class DirectRDABucketStore extends RDABucketStore {
+
+	private static final long serialVersionUID = -1187706229911720365L;
+
+	static final int KEYSUM = 0;
+	static final int COUNTER = 8;
+	static final int TS = 12;
+	static final int KEYCHECK = 16;
+
+	final int stride;
+	transient ByteBuffer buckets;
+
+	public DirectRDABucketStore(int _size, boolean _withKeyCheck) {
+		super(_size, _withKeyCheck);
+		stride = bytesPerBucket(_withKeyCheck);
+		if ((long) _size * stride > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many buckets for one buffer: " + _size);
+		}
+		buckets = ByteBuffer.allocateDirect(_size * stride).order(ByteOrder.nativeOrder());
+	}
+
+	@Override
+	public int getCounter(int index) {
+		return buckets.getInt(index * stride + COUNTER);
+	}
+
+	@Override
+	public float getTS(int index) {
+		return buckets.getFloat(index * stride + TS);
+	}
+
+	@Override
+	public long getKeySum(int index) {
+		return buckets.getLong(index * stride + KEYSUM);
+	}
+
+	@Override
+	public long getKeyCheck(int index) {
+		return withKeyCheck ? buckets.getLong(index * stride + KEYCHECK) : 0;
+	}
+
+	@Override
+	public void set(int index, int Counter, float _TS, long keySum, long keyCheck) {
+		int off = index * stride;
+		buckets.putLong(off + KEYSUM, keySum);
+		buckets.putInt(off + COUNTER, Counter);
+		buckets.putFloat(off + TS, _TS);
+		if (withKeyCheck) {
+			buckets.putLong(off + KEYCHECK, keyCheck);
+		}
+	}
+
+	@Override
+	public void update(int index, long Counter, double _TS, long id, long idCheck) {
+		int off = index * stride;
+		buckets.putLong(off + KEYSUM, buckets.getLong(off + KEYSUM) ^ id);
+		buckets.putInt(off + COUNTER, (int) (buckets.getInt(off + COUNTER) + Counter));
+		buckets.putFloat(off + TS, (float) (buckets.getFloat(off + TS) + _TS));
+		if (withKeyCheck) {
+			buckets.putLong(off + KEYCHECK, buckets.getLong(off + KEYCHECK) ^ idCheck);
+		}
+	}
+
+	@Override
+	public void reset(int index) {
+		int off = index * stride;
+		for (int i = 0; i < stride; i += 8) {
+			buckets.putLong(off + i, 0);
+		}
+	}
+
+	@Override
+	public void clear() {
+		int len = size * stride;
+		for (int i = 0; i < len; i += 8) {
+			buckets.putLong(i, 0);
+		}
+	}
+
+	@Override
+	public RDABucketStore newStore(int _size) {
+		return new DirectRDABucketStore(_size, withKeyCheck);
+	}
+
+	@Override
+	public void copyFrom(RDABucketStore you, int from, int to, int len) {
+		if (!(you instanceof DirectRDABucketStore) || ((DirectRDABucketStore) you).stride != stride) {
+			super.copyFrom(you, from, to, len);
+			return;
+		}
+		ByteBuffer src = ((DirectRDABucketStore) you).buckets.duplicate();
+		src.limit((from + len) * stride).position(from * stride);
+		ByteBuffer dst = buckets.duplicate();
+		dst.position(to * stride);
+		dst.put(src);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		int len = size * stride;
+		for (int i = 0; i < len; i += 8) {
+			out.writeLong(buckets.getLong(i));
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int len = size * stride;
+		buckets = ByteBuffer.allocateDirect(len).order(ByteOrder.nativeOrder());
+		for (int i = 0; i < len; i += 8) {
+			buckets.putLong(i, in.readLong());
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package util.bloom.RDA;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * long -> double (or long) map for the per packet timestamp tables,
+ * 16 bytes per slot and about 32 bytes per packet once the power of two
+ * tables are 3/8 to 3/4 full (28 to 42 measured), instead of about 88 for a
+ * Hashtable of boxed Long, boxed Double and an entry;
+ * the primitive methods are the fast path, the Map methods box
+ */
+public abstract class LongDoubleMap extends AbstractMap<Long, Double> {
+
+	/**
+	 * keep the slots in direct buffers
+	 */
+	public volatile static boolean offHeap = false;
+
+	/**
+	 * @param expected number of keys, the map grows beyond it
+	 * @param concurrent several writers, or readers next to the writer
+	 * @return
+	 */
+	public static LongDoubleMap create(int expected, boolean concurrent) {
+		if (concurrent) {
+			return new ConcurrentLongDoubleMap(expected, offHeap);
+		}
+		return new OpenLongDoubleMap(expected, offHeap);
+	}
+
+	/**
+	 * visits the entries
+	 */
+	public interface Procedure {
+		void apply(long key, double value);
+	}
+
+	public abstract boolean containsKey(long key);
+
+	/**
+	 * @param key
+	 * @param missing returned if the key is not there
+	 * @return
+	 */
+	public abstract double get(long key, double missing);
+
+	public abstract void put(long key, double value);
+
+	/**
+	 * @return false if the key was there, the old value is kept
+	 */
+	public abstract boolean putIfAbsent(long key, double value);
+
+	/**
+	 * @return true if the key was there
+	 */
+	public abstract boolean remove(long key);
+
+	/**
+	 * long values are kept bit for bit
+	 */
+	public abstract long getLong(long key, long missing);
+
+	public abstract void putLong(long key, long value);
+
+	public abstract void forEachEntry(Procedure p);
+
+	/**
+	 * callers check containsKey() first, as with the boxed tables
+	 * @param key
+	 * @return NaN if the key is not there
+	 */
+	public double get(long key) {
+		return get(key, Double.NaN);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Long && containsKey(((Long) key).longValue());
+	}
+
+	@Override
+	public Double get(Object key) {
+		if (!(key instanceof Long)) {
+			return null;
+		}
+		long k = ((Long) key).longValue();
+		return containsKey(k) ? Double.valueOf(get(k, 0)) : null;
+	}
+
+	@Override
+	public Double put(Long key, Double value) {
+		Double old = get(key);
+		put(key.longValue(), value.doubleValue());
+		return old;
+	}
+
+	@Override
+	public Double remove(Object key) {
+		Double old = get(key);
+		if (old != null) {
+			remove(((Long) key).longValue());
+		}
+		return old;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * boxed copy of the entries, for the Map API only
+	 */
+	@Override
+	public Set<Entry<Long, Double>> entrySet() {
+		final List<Entry<Long, Double>> entries = new ArrayList<Entry<Long, Double>>(size());
+		forEachEntry(new Procedure() {
+			public void apply(long key, double value) {
+				entries.add(new SimpleImmutableEntry<Long, Double>(key, value));
+			}
+		});
+		return new AbstractSet<Entry<Long, Double>>() {
+			@Override
+			public Iterator<Entry<Long, Double>> iterator() {
+				return entries.iterator();
+			}
+
+			@Override
+			public int size() {
+				return entries.size();
+			}
+		};
+	}
+
+	/**
+	 * bytes held by the slots
+	 * @return
+	 */
+	public abstract long sizeInBytes();
+
+	/**
+	 * count, then key and value bits of every entry
+	 * @param out
+	 * @param map may be null
+	 * @throws IOException
+	 */
+	public static void write(final DataOutput out, LongDoubleMap map) throws IOException {
+		if (map == null) {
+			out.writeInt(-1);
+			return;
+		}
+		final long[] pairs = new long[map.size() << 1];
+		final int[] n = { 0 };
+		//the size may grow while a concurrent map is walked
+		map.forEachEntry(new Procedure() {
+			public void apply(long key, double value) {
+				if (n[0] < pairs.length) {
+					pairs[n[0]++] = key;
+					pairs[n[0]++] = Double.doubleToRawLongBits(value);
+				}
+			}
+		});
+		out.writeInt(n[0] >> 1);
+		for (int i = 0; i < n[0]; i++) {
+			out.writeLong(pairs[i]);
+		}
+	}
+
+	//entries a map read off the wire may hold
+	public static int maxReadEntries = 1 << 26;
+	//presized for at most this many, the map grows as the entries arrive
+	static final int READ_PRESIZE = 1 << 16;
+
+	/**
+	 * @param in
+	 * @return a single writer map, or null
+	 * @throws IOException if the count is above maxReadEntries, or the
+	 * stream ends before the entries do
+	 */
+	public static LongDoubleMap read(DataInput in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) {
+			return null;
+		}
+		if (n > maxReadEntries) {
+			throw new IOException("map of " + n + " entries, at most " + maxReadEntries);
+		}
+		//a count that the stream does not back ends in EOFException, not in a huge table
+		LongDoubleMap map = new OpenLongDoubleMap(Math.min(n, READ_PRESIZE));
+		for (int i = 0; i < n; i++) {
+			long key = in.readLong();
+			map.putLong(key, in.readLong());
+		}
+		return map;
+	}
+}
@@ -0,0 +1,231 @@
+package util.bloom.RDA;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * single writer open addressing map: keys and value bits in two long
+ * columns, linear probing, key 0 is kept aside since 0 marks a free slot
+ */
+public class OpenLongDoubleMap extends LongDoubleMap {
+
+	static final float LOAD = 0.75f;
+
+	final boolean direct;
+	LongBuffer keys;
+	LongBuffer values;
+	int mask;
+	int size = 0;
+	int resizeAt;
+
+	boolean hasZero = false;
+	long zeroValue = 0;
+
+	/**
+	 * @param expected number of keys
+	 * @param _direct slots off heap
+	 */
+	public OpenLongDoubleMap(int expected, boolean _direct) {
+		direct = _direct;
+		allocate(capacityFor(expected));
+	}
+
+	public OpenLongDoubleMap(int expected) {
+		this(expected, offHeap);
+	}
+
+	static int capacityFor(int expected) {
+		long n = (long) Math.ceil(Math.max(expected, 4) / LOAD);
+		return Integer.highestOneBit((int) Math.min(n - 1, 1 << 29)) << 1;
+	}
+
+	void allocate(int capacity) {
+		if (direct) {
+			keys = ByteBuffer.allocateDirect(capacity << 3).order(ByteOrder.nativeOrder()).asLongBuffer();
+			values = ByteBuffer.allocateDirect(capacity << 3).order(ByteOrder.nativeOrder()).asLongBuffer();
+		} else {
+			keys = LongBuffer.wrap(new long[capacity]);
+			values = LongBuffer.wrap(new long[capacity]);
+		}
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * LOAD);
+	}
+
+	final int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * @return slot of the key, or -(free slot)-1
+	 */
+	final int find(long key) {
+		int i = slot(key);
+		while (true) {
+			long k = keys.get(i);
+			if (k == key) {
+				return i;
+			}
+			if (k == 0) {
+				return -i - 1;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	@Override
+	public boolean containsKey(long key) {
+		if (key == 0) {
+			return hasZero;
+		}
+		return find(key) >= 0;
+	}
+
+	@Override
+	public long getLong(long key, long missing) {
+		if (key == 0) {
+			return hasZero ? zeroValue : missing;
+		}
+		int i = find(key);
+		return i >= 0 ? values.get(i) : missing;
+	}
+
+	@Override
+	public double get(long key, double missing) {
+		if (key == 0) {
+			return hasZero ? Double.longBitsToDouble(zeroValue) : missing;
+		}
+		int i = find(key);
+		return i >= 0 ? Double.longBitsToDouble(values.get(i)) : missing;
+	}
+
+	@Override
+	public void put(long key, double value) {
+		putLong(key, Double.doubleToRawLongBits(value));
+	}
+
+	@Override
+	public void putLong(long key, long value) {
+		if (key == 0) {
+			if (!hasZero) {
+				hasZero = true;
+				size++;
+			}
+			zeroValue = value;
+			return;
+		}
+		int i = find(key);
+		if (i >= 0) {
+			values.put(i, value);
+			return;
+		}
+		insertAt(-i - 1, key, value);
+	}
+
+	@Override
+	public boolean putIfAbsent(long key, double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		if (key == 0) {
+			if (hasZero) {
+				return false;
+			}
+			hasZero = true;
+			zeroValue = bits;
+			size++;
+			return true;
+		}
+		int i = find(key);
+		if (i >= 0) {
+			return false;
+		}
+		insertAt(-i - 1, key, bits);
+		return true;
+	}
+
+	void insertAt(int i, long key, long value) {
+		keys.put(i, key);
+		values.put(i, value);
+		if (++size > resizeAt) {
+			rehash(keys.capacity() << 1);
+		}
+	}
+
+	void rehash(int capacity) {
+		LongBuffer oldKeys = keys;
+		LongBuffer oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.capacity(); i++) {
+			long k = oldKeys.get(i);
+			if (k != 0) {
+				int j = -find(k) - 1;
+				keys.put(j, k);
+				values.put(j, oldValues.get(i));
+			}
+		}
+	}
+
+	@Override
+	public boolean remove(long key) {
+		if (key == 0) {
+			if (!hasZero) {
+				return false;
+			}
+			hasZero = false;
+			size--;
+			return true;
+		}
+		int i = find(key);
+		if (i < 0) {
+			return false;
+		}
+		//shift the rest of the run back, no tombstones
+		int free = i;
+		int j = (i + 1) & mask;
+		long k;
+		while ((k = keys.get(j)) != 0) {
+			int home = slot(k);
+			if (((j - home) & mask) >= ((j - free) & mask)) {
+				keys.put(free, k);
+				values.put(free, values.get(j));
+				free = j;
+			}
+			j = (j + 1) & mask;
+		}
+		keys.put(free, 0);
+		size--;
+		return true;
+	}
+
+	@Override
+	public void forEachEntry(Procedure p) {
+		if (hasZero) {
+			p.apply(0, Double.longBitsToDouble(zeroValue));
+		}
+		for (int i = 0; i < keys.capacity(); i++) {
+			long k = keys.get(i);
+			if (k != 0) {
+				p.apply(k, Double.longBitsToDouble(values.get(i)));
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < keys.capacity(); i++) {
+			keys.put(i, 0);
+		}
+		hasZero = false;
+		size = 0;
+	}
+
+	@Override
+	public long sizeInBytes() {
+		return (long) keys.capacity() << 4;
+	}
+}
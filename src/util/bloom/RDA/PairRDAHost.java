@@ -2,14 +2,15 @@ package util.bloom.RDA;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -86,6 +87,9 @@ public class PairRDAHost {
             .getConfigProps().getProperty("RDAEntries", "1000"));
     public static final int hashFuncNum = Integer.parseInt(Config
             .getConfigProps().getProperty("hashFuncNum", "2"));
+    //workers that read a pcap trace, 0 one per core
+    public static final int pcapThreads = Integer.parseInt(Config
+            .getConfigProps().getProperty("pcapThreads", "0"));
 
     //my address
     public static AddressIF me;
@@ -306,6 +310,16 @@ public class PairRDAHost {
      */
     public void parseFiles(String FileName, SimpleRDAMeasurementPoint _host) {
 
+        if (PcapRDAIngest.isPcap(FileName)) {
+            try {
+                long n = PcapRDAIngest.ingestParallel(Paths.get(FileName), _host, 1.0, pcapThreads);
+                log.main("pcap packets: " + n);
+            } catch (IOException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            return;
+        }
 
         Scanner sc;
         boolean ret = false;
@@ -560,9 +574,9 @@ public class PairRDAHost {
             RDAResponseMsg msg;
             if (arg1.isA) {
                 log.main("B's RDA!");
-                msg = new RDAResponseMsg(_hostB.sender.hashTable);
+                msg = new RDAResponseMsg(_hostB.sender.copyTable());
             } else {
-                msg = new RDAResponseMsg(_hostA.sender.hashTable);
+                msg = new RDAResponseMsg(_hostA.sender.copyTable());
             }
             sendResponseMessage("RDARequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
         }
@@ -587,10 +601,10 @@ public class PairRDAHost {
             } else {
                 _host = _hostB;
             }
-            Hashtable<Long, Double> hashTable = new Hashtable<Long, Double>();
+            LongDoubleMap hashTable = LongDoubleMap.create(nodes.size(), false);
             Iterator<Long> ier = nodes.iterator();
             while (ier.hasNext()) {
-                Long key = ier.next();
+                long key = ier.next();
                 if (_host.SenderTSTable.containsKey(key)) {
                     hashTable.put(key, _host.SenderTSTable.get(key));
                 }
@@ -644,13 +658,12 @@ public class PairRDAHost {
                                             switch (result.state) {
                                                 case OK: {
 
-                                                    log.main("received RDA response: " + arg1._hashTable.length);
+                                                    log.main("received RDA response: " + arg1._table.getNumBuckets());
                                                     //milli  ms级
                                                     double delay = (receiveTS - sendStamp) / 1000000.0;
 
-                                                    RDATableEntry[] you = arg1._hashTable;
                                                     //call compute
-                                                    RDATable receiver = RDATable.getRDATable(you);
+                                                    RDATable receiver = arg1._table;
                                                     //ids
                                                     HashSet<Long> SenderItems = new HashSet<Long>();
                                                     HashSet<Long> ReceiverItems = new HashSet<Long>();
@@ -688,7 +701,7 @@ public class PairRDAHost {
                                                                                     long missResponseTS = System.nanoTime();
                                                                                     double delayMiss = (missResponseTS - missMsgTS) / 1000.0;
                                                                                     //return packets
-                                                                                    Hashtable<Long, Double> ReceiverTSTable = argMiss._hashTable;
+                                                                                    LongDoubleMap ReceiverTSTable = argMiss._hashTable;
                                                                                     //repair
                                                                                     long repairT1 = System.nanoTime();
 
@@ -9,8 +9,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -27,8 +27,18 @@ import edu.NUDT.RDAComm.DateRequestMsg;
 import edu.NUDT.RDAComm.DateResponseMsg;
 import edu.NUDT.RDAComm.MissingNodeTSRequestMsg2;
 import edu.NUDT.RDAComm.MissingResponseMsg;
+import edu.NUDT.RDAComm.RDAChunkRequestMsg;
+import edu.NUDT.RDAComm.RDAChunkResponseMsg;
+import edu.NUDT.RDAComm.RDALevelRequestMsg;
+import edu.NUDT.RDAComm.RDALevelResponseMsg;
+import edu.NUDT.RDAComm.RDAWindowRequestMsg;
+import edu.NUDT.RDAComm.RDAWindowResponseMsg;
 import edu.NUDT.RDAComm.RDARequestMsg;
 import edu.NUDT.RDAComm.RDAResponseMsg;
+import edu.NUDT.RDAComm.RDASketchRequestMsg;
+import edu.NUDT.RDAComm.RDASketchResponseMsg;
+import edu.NUDT.RDAComm.RDAShardRequestMsg;
+import edu.NUDT.RDAComm.RDAShardResponseMsg;
 import edu.NUDT.RDAComm.SRDARequestMsg;
 import edu.NUDT.RDAComm.SRDAResponseMsg;
 import edu.NUDT.control.EndPointControllerPeriod;
@@ -104,6 +114,15 @@ public class PassiveRDAHost {
 		_hostRDA = new SimpleRDAMeasurementPoint(PassiveCollectorPeriod.RDAEntries,PassiveCollectorPeriod.TotalPackets,PassiveCollectorPeriod.hashFuncNum);	
 		
 		_hostSRDA = new SimpleRDAMeasurementPointSRDA(PassiveCollectorPeriod.RDAEntries,PassiveCollectorPeriod.TotalPackets,PassiveCollectorPeriod.hashFuncNum);	
+		_hostSRDA.window = newWindow();
+		if(PassiveCollectorPeriod.epochSwap){
+			//the id maps of an epoch hold the packets of a period, not the buckets
+			_hostRDA.enableEpochs(epochPackets());
+			_hostSRDA.enableEpochs(epochPackets());
+		}
+		if(PassiveCollectorPeriod.flowShards>0){
+			_hostSRDA.enableFlows(PassiveCollectorPeriod.flowShards, PassiveCollectorPeriod.flowShardBuckets);
+		}
 		
 		//repeat the request
 		tickControlRDA = new CB0() {
@@ -131,6 +150,14 @@ public class PassiveRDAHost {
 	_hostRDA = new SimpleRDAMeasurementPoint(PassiveCollectorPeriod.RDAEntries,PassiveCollectorPeriod.TotalPackets,PassiveCollectorPeriod.hashFuncNum);	
 	
 	_hostSRDA = new SimpleRDAMeasurementPointSRDA(PassiveCollectorPeriod.RDAEntries,PassiveCollectorPeriod.TotalPackets,PassiveCollectorPeriod.hashFuncNum);	
+	_hostSRDA.window = newWindow();
+	if(PassiveCollectorPeriod.epochSwap){
+		_hostRDA.enableEpochs(epochPackets());
+		_hostSRDA.enableEpochs(epochPackets());
+	}
+	if(PassiveCollectorPeriod.flowShards>0){
+		_hostSRDA.enableFlows(PassiveCollectorPeriod.flowShards, PassiveCollectorPeriod.flowShardBuckets);
+	}
 	
 	//repeat the request
 	//repeat the request
@@ -170,10 +197,21 @@ public class PassiveRDAHost {
 	 * @param id
 	 * @param ts
 	 */
-	public void parseRecord(Long id,long ts){
+	public void parseRecord(long id,long ts){
 		_hostRDA.packetIncoming(id, ts);
 		_hostSRDA.packetIncoming(id, ts);
 	}
+
+	/**
+	 * a packet record with its flow, for the flow shards
+	 * @param id
+	 * @param flow PcapRDAIngest.flowId
+	 * @param ts
+	 */
+	public void parseRecord(long id,long flow,long ts){
+		_hostRDA.packetIncoming(id, ts);
+		_hostSRDA.packetIncoming(id, flow, ts);
+	}
 	
 	/**
 	 * parse the ts  没用到
@@ -290,13 +328,120 @@ public class PassiveRDAHost {
 
 	
 
+	/**
+	 * packets expected in an epoch, sizes the id map of each epoch
+	 * @return
+	 */
+	static int epochPackets(){
+		return (int)Math.min(Integer.MAX_VALUE, PassiveCollectorPeriod.TotalPackets);
+	}
+
+	/**
+	 * sliding window of RDA.slidingWindow ms, null if 0
+	 * @return
+	 */
+	static SlidingRDATable newWindow(){
+		if(PassiveCollectorPeriod.slidingWindow<=0){
+			return null;
+		}
+		long expected = PassiveCollectorPeriod.TotalPackets*PassiveCollectorPeriod.slidingWindow
+				/Math.max(1, PassiveCollectorPeriod.measurementPeriod);
+		return new SlidingRDATable(PassiveCollectorPeriod.RDAEntries, PassiveCollectorPeriod.slidingWindow,
+				PassiveCollectorPeriod.slidingSlots, (int)Math.min(Math.max(expected, 1024), Integer.MAX_VALUE));
+	}
+
+	/**
+	 * ask for the window every RDA.slidingQueryInterval ms, apart from the periods
+	 */
+	public void registerWindowTimer(){
+		registerWindowTimer(PassiveCollectorPeriod.target[0]);
+	}
+
+	public void registerWindowTimer(final String target){
+		EL.get().registerTimerCB(PassiveCollectorPeriod.slidingQueryInterval, new CB0(){
+			@Override
+			protected void cb(CBResult result) {
+				doRDARequestWindow(target, new CB0(){
+					@Override
+					protected void cb(CBResult result0) {
+						log.main("["+target+"] window: "+result0.toString());
+						registerWindowTimer(target);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * delay and loss over the last window: both hosts cut their window at my
+	 * clock now, the difference is decoded and repaired out of the two copies
+	 * @param target
+	 * @param cbDone
+	 */
+	public void doRDARequestWindow(String target, final CB0 cbDone) {
+		final AddressIF addr=NetAddress.createUnresolved(target, PassiveCollectorPeriod.COMM_PORT);
+		final double end = System.currentTimeMillis()-PassiveCollectorPeriod.TSConstant;
+		final SimpleRDATable local = _hostSRDA.window.snapshot(end);
+		final long packets = _hostSRDA.window.size();
+		RDAWindowRequestMsg msg = new RDAWindowRequestMsg(me, end);
+		final long sendStamp = System.nanoTime();
+		comm.sendRequestMessage(msg, addr,
+				new ObjCommRRCB<RDAWindowResponseMsg>() {
+
+					@Override
+					protected void cb(CBResult result, RDAWindowResponseMsg arg1, AddressIF arg2, Long arg3) {
+						long receiveTS = System.nanoTime();
+						switch (result.state) {
+						case OK: {
+							if(arg1.packets<0||arg1._table.getNumBuckets()!=local.getNumBuckets()){
+								cbDone.call(CBResult.ERROR("window of "+arg1._table.getNumBuckets()
+										+" buckets, mine has "+local.getNumBuckets()));
+								break;
+							}
+							double delay =  (receiveTS - sendStamp)/1000000.0;
+							SimpleRDATable receiver = arg1._table;
+							HashSet<Long> SenderItems = new HashSet<Long>();
+							HashSet<Long>  ReceiverItems= new HashSet<Long>();
+							long decodeTS = System.nanoTime();
+							boolean decoded=_hostSRDA.decodeSet(local, receiver, SenderItems, ReceiverItems);
+							long d2=System.nanoTime();
+							double decodeDelay = (d2 - decodeTS)/1000000.0;
+							log.main("["+addr+"] window SRDA: "+packets+" packets, "+arg1.packets+" received, decoded: "+decoded
+									+", lost: "+SenderItems.size()+", extra: "+ReceiverItems.size());
+							//my side is repaired from the window, not from the period cache
+							_hostSRDA.window.repair(local, SenderItems);
+							repairAndComputeSRDA(addr, local, receiver, new HashSet<Long>(), ReceiverItems, delay, decodeDelay, true, result, cbDone);
+							break;
+						}
+						case TIMEOUT:
+						case ERROR: {
+							cbDone.call(result);
+							break;
+						}
+						default:
+							break;
+						}
+					}
+
+				});
+	}
+
 	/**
 	 * remote call
 	 * @param cbDone
 	 */
 	public void RemoteRDAComputeTest(CB0 cbDone){
+		RemoteRDAComputeTest(PassiveCollectorPeriod.target[0], cbDone);
+	}
+
+	/**
+	 * one round against the target: RDA, then SRDA, then the direct compute
+	 * @param target
+	 * @param cbDone
+	 */
+	public void RemoteRDAComputeTest(final String target, final CB0 cbDone){
 	
-		doRDARequestRDA(PassiveCollectorPeriod.target[0],  new  CB0(){
+		CB0 cbRDA = new  CB0(){
 		@Override
 		protected void cb(CBResult result1) {
 			// TODO Auto-generated method stub
@@ -304,13 +449,24 @@ public class PassiveRDAHost {
 			//cbDone.call(result);
 			switch (result1.state) {
 			case OK: {
-				doRDARequestSRDA(PassiveCollectorPeriod.target[0],  new  CB0(){
+				CB0 cbSRDA = new  CB0(){
 					@Override
 					protected void cb(CBResult result2) {
 						// TODO Auto-generated method stub
 						switch (result2.state) {
 						case OK: {
-							doDirectCompute(NetAddress.createUnresolved(PassiveCollectorPeriod.target[0], PassiveCollectorPeriod.COMM_PORT), cbDone);
+							final AddressIF addr = NetAddress.createUnresolved(target, PassiveCollectorPeriod.COMM_PORT);
+							if(_hostSRDA.flows==null){
+								doDirectCompute(addr, cbDone);
+								break;
+							}
+							doRDARequestFlows(target, new CB0(){
+								@Override
+								protected void cb(CBResult result3) {
+									log.main("["+target+"] flows: "+result3.toString());
+									doDirectCompute(addr, cbDone);
+								}
+							});
 							break;
 							}
 						case ERROR:
@@ -319,8 +475,12 @@ public class PassiveRDAHost {
 							break;
 							}
 					}
-					}}
-				);
+					}};
+				if(PassiveCollectorPeriod.adaptiveRDA){
+					doRDARequestSRDAAdaptive(target, cbSRDA);
+				}else{
+					doRDARequestSRDA(target, cbSRDA);
+				}
 			break;
 			}
 			case ERROR:
@@ -330,7 +490,14 @@ public class PassiveRDAHost {
 				}
 			}
 		}						
-	}) ;
+	};
+		if(PassiveCollectorPeriod.pyramidMinBuckets>0){
+			doRDARequestRDAPyramid(target, cbRDA);
+		}else if(PassiveCollectorPeriod.streamChunkBuckets>0){
+			doRDARequestRDAStream(target, cbRDA);
+		}else{
+			doRDARequestRDA(target, cbRDA);
+		}
 	}
 	
 	/*
@@ -358,7 +525,7 @@ public class PassiveRDAHost {
 							long CacheResponseTS=System.nanoTime();
 							double delayCache=(CacheResponseTS-CacheMsgTS)/1000000.0;
 							//return packets
-							Hashtable<Long, Double> ReceiverTSTable=argMiss._hashTable;
+							LongDoubleMap ReceiverTSTable=argMiss._hashTable;
 							//repair
 							long repairT1=System.nanoTime();
 							double[] sta=_hostRDA.computeDirect(ReceiverTSTable);
@@ -367,7 +534,7 @@ public class PassiveRDAHost {
 							double eraseDelay = (repairT2 - repairT1)/1000000.0;
 							
 							//sendRDA,sendMiss
-							log.main("direct: sendDelay: "+delayCache+", compute: "+eraseDelay+",  sta: "+POut.toString(sta));
+							log.main("["+addr+"] direct: sendDelay: "+delayCache+", compute: "+eraseDelay+",  sta: "+POut.toString(sta));
 							cbDone.call(result);
 							break;
 						}
@@ -423,13 +590,12 @@ public class PassiveRDAHost {
 										switch (result.state) {
 										case OK: {											
 											
-											//log.main("received RDA response: "+arg1._hashTable.length);
+											//log.main("received RDA response: "+arg1._table.getNumBuckets());
 											//milli
 											double delay =  (receiveTS - sendStamp)/1000000.0;
 											
-											RDATableEntry[] you = arg1._hashTable;
 											//call compute
-											RDATable receiver = RDATable.getRDATable(you);
+											RDATable receiver = arg1._table;
 											//ids
 											HashSet<Long> SenderItems = new HashSet<Long>();
 											HashSet<Long>  ReceiverItems= new HashSet<Long>();
@@ -438,72 +604,11 @@ public class PassiveRDAHost {
 											boolean decoded=_hostRDA.decodeSet(receiver, SenderItems, ReceiverItems);//.decodeSetDiffWithTime(receiver);
 											long d2=System.nanoTime();
 											
-											log.main("Table: "+arg1._hashTable.length+", decoded: "+decoded+", "+SenderItems.size()+", "+ReceiverItems.size());
+											log.main("["+addr+"] Table: "+arg1._table.getNumBuckets()+", decoded: "+decoded+", "+SenderItems.size()+", "+ReceiverItems.size());
 											
 											double decodeDelay = (d2 - decodeTS)/1000000.0;
-											//no need to repair
-											if(SenderItems.isEmpty()&& ReceiverItems.isEmpty()){
-												double[] sta = computeStatisticsRDA(receiver);												
-												log.main("sendDelay: "+delay+", decodeDelay: "+decodeDelay+", sta: "+POut.toString(sta));
-												cbDone.call(result);
-												break;
-											}else{
-											//request the other's packets
-											if(!ReceiverItems.isEmpty()){
-												//request 
-												MissingNodeTSRequestMsg2 msg2 = new MissingNodeTSRequestMsg2(
-														me,ReceiverItems);
-												long missMsgTS = System.nanoTime();
-												comm.sendRequestMessage(msg2, addr,
-														new ObjCommRRCB<MissingResponseMsg>() {
-
-															@Override
-															protected void cb(CBResult result, MissingResponseMsg argMiss,
-																	AddressIF arg2, Long arg3) {
-																// TODO Auto-generated method stub
-																switch (result.state) {
-																case OK: {
-																	long missResponseTS=System.nanoTime();
-																	double delayMiss=(missResponseTS-missMsgTS)/1000000.0;
-																	//return packets
-																	Hashtable<Long, Double> ReceiverTSTable=argMiss._hashTable;
-																	//repair
-																	long repairT1=System.nanoTime();
-																	_hostRDA.repairDirect(SenderItems,receiver,ReceiverItems, ReceiverTSTable);
-																	long repairT2=System.nanoTime();
-																	double[] sta = computeStatisticsRDA(receiver);
-																	long repairT3=System.nanoTime();
-																	double eraseDelay = (repairT2 - repairT1)/1000000.0;
-																	double computeDelay = (repairT3 - repairT2)/1000000.0;
-																	//sendRDA,sendMiss
-																	log.main("sendDelay: "+delay+", decodeDelay: "+
-																	decodeDelay+", missRequestDelay: "+delayMiss+", eraseDelay: "+eraseDelay+", computeDelay: "+computeDelay+",  sta: "+POut.toString(sta));
-																	cbDone.call(result);
-																	break;
-																}
-																case TIMEOUT:
-																case ERROR: {
-																	//failure
-																	cbDone.call(result);
-																	break;
-																}
-															}
-															}
-												}
-													
-												);
-											}else{
-												//me repair only, no send
-												if(!SenderItems.isEmpty()){
-													//_host.repair(receiver,null);
-													_hostRDA.repairDirect(SenderItems,receiver,ReceiverItems, null);
-												}
-												double[] sta = computeStatisticsRDA(receiver);
-												log.main("sendDelay: "+delay+", decodeDelay: "+decodeDelay+", sta: "+POut.toString(sta));
-								
-												cbDone.call(result);
-											}
-											}
+											RDATable local = _hostRDA.sender.copyFromPool();
+											repairAndComputeRDA(addr, local, receiver, SenderItems, ReceiverItems, delay, decodeDelay, result, giveBack(local, cbDone));
 											//log.main("finished!");
 											
 											break;
@@ -529,6 +634,383 @@ public class PassiveRDAHost {
 		
 	}
 	
+	/**
+	 * request the remote RDA table chunk by chunk and peel while it arrives
+	 * @param target
+	 * @param cbDone
+	 */
+	public void doRDARequestRDAStream(String target, final CB0 cbDone) {
+		final AddressIF addr=NetAddress.createUnresolved(target, PassiveCollectorPeriod.COMM_PORT);
+		log.main("doRDARequestStream: "+target);
+		RDAChunkTransfer transfer = new RDAChunkTransfer(addr, cbDone);
+		synchronized (transfer) {
+			transfer.begin();
+		}
+	}
+
+	/**
+	 * one streamed table: up to streamWindow chunk requests in flight, the
+	 * chunks go into the decoder in order; a transfer whose chunks do not all
+	 * come from one snapshot of the remote table starts over from bucket 0
+	 */
+	class RDAChunkTransfer {
+		//starts over at most this often
+		static final int MAX_RESTARTS = 2;
+
+		final AddressIF addr;
+		final CB0 cbDone;
+		final long sendStamp = System.nanoTime();
+		long decodeNanos = 0;
+		//pooled copy of my table the chunks are subtracted from, repaired at the end
+		RDATable local;
+		RDAStreamDecoder decoder;
+		//responses of an earlier try are dropped
+		int attempt = -1;
+		//next bucket to request
+		int next;
+		int inFlight;
+		//0 until the first chunk names it
+		long snapshot;
+		//chunks that came before the ones ahead of them, by start
+		Map<Integer, RDAChunkResponseMsg> early;
+		boolean done = false;
+
+		RDAChunkTransfer(AddressIF _addr, CB0 _cbDone) {
+			addr = _addr;
+			cbDone = _cbDone;
+		}
+
+		void begin() {
+			attempt++;
+			release();
+			local = _hostRDA.sender.copyFromPool();
+			decoder = new RDAStreamDecoder(local);
+			next = 0;
+			inFlight = 0;
+			snapshot = 0;
+			early = new HashMap<Integer, RDAChunkResponseMsg>();
+			fill();
+		}
+
+		void fill() {
+			while (!done && inFlight < Math.max(1, PassiveCollectorPeriod.streamWindow) && next < decoder.size()) {
+				int start = next;
+				next += RDAStreamDecoder.chunkLength(decoder.size(), RDATable.N_HASH, start,
+						Math.max(1, PassiveCollectorPeriod.streamChunkBuckets));
+				inFlight++;
+				send(start, attempt);
+			}
+		}
+
+		void send(int start, final int tried) {
+			RDAChunkRequestMsg msg = new RDAChunkRequestMsg(me, false, start,
+					PassiveCollectorPeriod.streamChunkBuckets);
+			comm.sendRequestMessage(msg, addr,
+					new ObjCommRRCB<RDAChunkResponseMsg>() {
+
+						@Override
+						protected void cb(CBResult result, RDAChunkResponseMsg arg1, AddressIF arg2, Long arg3) {
+							//the responses may come back on different reactors
+							synchronized (RDAChunkTransfer.this) {
+								if(done||tried!=attempt){
+									return;
+								}
+								inFlight--;
+								switch (result.state) {
+								case OK: {
+									onChunk(arg1, result);
+									break;
+								}
+								case TIMEOUT:
+								case ERROR: {
+									fail(result);
+									break;
+								}
+								default:
+									break;
+								}
+							}
+						}
+
+					});
+		}
+
+		void restart(String why) {
+			if(attempt>=MAX_RESTARTS){
+				fail(CBResult.ERROR(why));
+				return;
+			}
+			log.warn("stream starts over: "+why);
+			begin();
+		}
+
+		void fail(CBResult result) {
+			done = true;
+			release();
+			cbDone.call(result);
+		}
+
+		void release() {
+			if(decoder!=null){
+				decoder.release();
+			}
+			if(local!=null){
+				local.giveToPool();
+			}
+		}
+
+		void onChunk(RDAChunkResponseMsg arg1, CBResult result) {
+			if(arg1.total<0){
+				restart("no transfer at the remote for chunk "+arg1.start);
+				return;
+			}
+			if(arg1.total!=decoder.size()){
+				fail(CBResult.ERROR("chunk "+arg1.start+" of "+arg1.total+", expected a table of "+decoder.size()));
+				return;
+			}
+			if(snapshot==0){
+				snapshot = arg1.snapshot;
+			}else if(snapshot!=arg1.snapshot){
+				restart("chunk "+arg1.start+" is from another snapshot");
+				return;
+			}
+			early.put(arg1.start, arg1);
+			RDAChunkResponseMsg c;
+			while((c = early.remove(decoder.getReceived()))!=null){
+				long decodeTS = System.nanoTime();
+				decoder.onChunk(c.start, c.chunk);
+				decodeNanos += System.nanoTime() - decodeTS;
+			}
+			if(!decoder.isComplete()){
+				fill();
+				return;
+			}
+			done = true;
+			long d1 = System.nanoTime();
+			boolean decoded = decoder.finish();
+			long d2 = System.nanoTime();
+			decodeNanos += d2 - d1;
+			//milli, the whole transfer
+			double delay = (d2 - sendStamp)/1000000.0;
+			double decodeDelay = decodeNanos/1000000.0;
+
+			HashSet<Long> SenderItems = new HashSet<Long>();
+			HashSet<Long>  ReceiverItems= new HashSet<Long>();
+			for(long id: decoder.getPositive()){
+				SenderItems.add(id);
+			}
+			for(long id: decoder.getNegative()){
+				ReceiverItems.add(id);
+			}
+			//the remote table is rebuilt in the buckets of the difference
+			RDATable receiver = RDATable.getRDATable(decoder.remote(local.buckets));
+			log.main("["+addr+"] Table: "+decoder.size()+", streamed, decoded: "+decoded+", "+SenderItems.size()+", "+ReceiverItems.size());
+			repairAndComputeRDA(addr, local, receiver, SenderItems, ReceiverItems, delay, decodeDelay, result,
+					giveBack(local, giveBack(receiver, cbDone)));
+		}
+	}
+
+	/**
+	 * request the remote RDA table as folded levels, coarsest first; a finer
+	 * level is asked for only when a level does not peel or its mean delay is
+	 * too noisy, most rounds move a fraction of the full table
+	 * @param target
+	 * @param cbDone
+	 */
+	public void doRDARequestRDAPyramid(String target, final CB0 cbDone) {
+		final AddressIF addr=NetAddress.createUnresolved(target, PassiveCollectorPeriod.COMM_PORT);
+		log.main("doRDARequestPyramid: "+target);
+		RDATable full = _hostRDA.sender.copyFromPool();
+		RDAPyramid local = new RDAPyramid(full.buckets, RDATable.N_HASH,
+				PassiveCollectorPeriod.pyramidMinBuckets);
+		requestRDALevel(addr, local, -1, System.nanoTime(), new long[1], giveBack(full, cbDone));
+	}
+
+	/**
+	 * @param addr
+	 * @param local my levels, folded the same way
+	 * @param level -1 for the coarsest
+	 * @param sendStamp start of the round
+	 * @param moved buckets received so far
+	 * @param cbDone
+	 */
+	void requestRDALevel(final AddressIF addr, final RDAPyramid local, int level, final long sendStamp,
+			final long[] moved, final CB0 cbDone) {
+		RDALevelRequestMsg msg = new RDALevelRequestMsg(me, level);
+		comm.sendRequestMessage(msg, addr,
+				new ObjCommRRCB<RDALevelResponseMsg>() {
+
+					@Override
+					protected void cb(CBResult result, RDALevelResponseMsg arg1, AddressIF arg2, Long arg3) {
+						switch (result.state) {
+						case OK: {
+							if(arg1.fullSize!=local.getLevel(0).size()||arg1.level>=local.getLevels()
+									||arg1.buckets.size()!=local.getLevel(arg1.level).size()){
+								cbDone.call(CBResult.ERROR("level "+arg1.level+" of "+arg1.fullSize
+										+" buckets, mine has "+local.getLevel(0).size()));
+								break;
+							}
+							moved[0] += arg1.buckets.size();
+							long decodeTS = System.nanoTime();
+							RDATable mine = RDATable.getRDATable(local.getLevel(arg1.level).copy());
+							RDATable receiver = RDATable.getRDATable(arg1.buckets);
+							HashSet<Long> SenderItems = new HashSet<Long>();
+							HashSet<Long>  ReceiverItems= new HashSet<Long>();
+							boolean decoded=_hostRDA.decodeSet(mine, receiver, SenderItems, ReceiverItems);
+							boolean refine = arg1.level > 0 && (!decoded || tooNoisy(mine, receiver));
+							long d2 = System.nanoTime();
+							log.main("["+addr+"] Table level "+arg1.level+": "+arg1.buckets.size()+", decoded: "+decoded
+									+", refine: "+refine+", "+SenderItems.size()+", "+ReceiverItems.size());
+							if(refine){
+								requestRDALevel(addr, local, arg1.level-1, sendStamp, moved, cbDone);
+								break;
+							}
+							//milli, the whole round
+							double delay = (d2 - sendStamp)/1000000.0;
+							double decodeDelay = (d2 - decodeTS)/1000000.0;
+							log.main("moved "+moved[0]+" of "+arg1.fullSize+" buckets");
+							repairAndComputeRDA(addr, mine, receiver, SenderItems, ReceiverItems, delay, decodeDelay, result, cbDone);
+							break;
+						}
+						case TIMEOUT:
+						case ERROR: {
+							cbDone.call(result);
+							break;
+						}
+						default:
+							break;
+						}
+					}
+
+				});
+	}
+
+	/**
+	 * cbDone that first gives the copy of my table a round worked on back to
+	 * RDATablePool
+	 * @param scratch from copyFromPool(), not used once the round is done
+	 * @param cbDone
+	 * @return
+	 */
+	static CB0 giveBack(final RDATable scratch, final CB0 cbDone) {
+		return new CB0() {
+			@Override
+			protected void cb(CBResult result) {
+				scratch.giveToPool();
+				cbDone.call(result);
+			}
+		};
+	}
+
+	static CB0 giveBack(final SimpleRDATable scratch, final CB0 cbDone) {
+		return new CB0() {
+			@Override
+			protected void cb(CBResult result) {
+				scratch.giveToPool();
+				cbDone.call(result);
+			}
+		};
+	}
+
+	/**
+	 * standard error of the mean delay over the matching buckets, against the mean
+	 * @param mine
+	 * @param receiver
+	 * @return
+	 */
+	boolean tooNoisy(RDATable mine, RDATable receiver) {
+		if(PassiveCollectorPeriod.pyramidMaxRelError<=0){
+			return false;
+		}
+		double good = mine.getGoodPackets(receiver);
+		if(good<=1){
+			return true;
+		}
+		double avg = mine.getAvgTS(receiver);
+		double std = mine.getSTD(receiver, avg);
+		return std/Math.sqrt(good) > PassiveCollectorPeriod.pyramidMaxRelError*Math.abs(avg);
+	}
+
+	/**
+	 * repair both tables with the decoded ids, then compute the statistics
+	 * @param addr
+	 * @param local my table, the same size as the receiver's
+	 * @param receiver
+	 * @param SenderItems
+	 * @param ReceiverItems
+	 * @param delay
+	 * @param decodeDelay
+	 * @param result
+	 * @param cbDone
+	 */
+	void repairAndComputeRDA(final AddressIF addr, final RDATable local, final RDATable receiver, final HashSet<Long> SenderItems,
+			final HashSet<Long> ReceiverItems, final double delay, final double decodeDelay,
+			final CBResult result, final CB0 cbDone) {
+		//no need to repair
+		if(SenderItems.isEmpty()&& ReceiverItems.isEmpty()){
+			double[] sta = computeStatisticsRDA(local, receiver);												
+			log.main("["+addr+"] sendDelay: "+delay+", decodeDelay: "+decodeDelay+", sta: "+POut.toString(sta));
+			cbDone.call(result);
+			return;
+		}else{
+		//request the other's packets
+		if(!ReceiverItems.isEmpty()){
+			//request 
+			MissingNodeTSRequestMsg2 msg2 = new MissingNodeTSRequestMsg2(
+					me,ReceiverItems);
+			long missMsgTS = System.nanoTime();
+			comm.sendRequestMessage(msg2, addr,
+					new ObjCommRRCB<MissingResponseMsg>() {
+
+						@Override
+						protected void cb(CBResult result, MissingResponseMsg argMiss,
+								AddressIF arg2, Long arg3) {
+							// TODO Auto-generated method stub
+							switch (result.state) {
+							case OK: {
+								long missResponseTS=System.nanoTime();
+								double delayMiss=(missResponseTS-missMsgTS)/1000000.0;
+								//return packets
+								LongDoubleMap ReceiverTSTable=argMiss._hashTable;
+								//repair
+								long repairT1=System.nanoTime();
+								_hostRDA.repairDirect(local,SenderItems,receiver,ReceiverItems, ReceiverTSTable);
+								long repairT2=System.nanoTime();
+								double[] sta = computeStatisticsRDA(local, receiver);
+								long repairT3=System.nanoTime();
+								double eraseDelay = (repairT2 - repairT1)/1000000.0;
+								double computeDelay = (repairT3 - repairT2)/1000000.0;
+								//sendRDA,sendMiss
+								log.main("["+addr+"] sendDelay: "+delay+", decodeDelay: "+
+								decodeDelay+", missRequestDelay: "+delayMiss+", eraseDelay: "+eraseDelay+", computeDelay: "+computeDelay+",  sta: "+POut.toString(sta));
+								cbDone.call(result);
+								break;
+							}
+							case TIMEOUT:
+							case ERROR: {
+								//failure
+								cbDone.call(result);
+								break;
+							}
+						}
+						}
+			}
+		
+			);
+		}else{
+			//me repair only, no send
+			if(!SenderItems.isEmpty()){
+				//_host.repair(receiver,null);
+				_hostRDA.repairDirect(local,SenderItems,receiver,ReceiverItems, null);
+			}
+			double[] sta = computeStatisticsRDA(local, receiver);
+			log.main("["+addr+"] sendDelay: "+delay+", decodeDelay: "+decodeDelay+", sta: "+POut.toString(sta));
+
+			cbDone.call(result);
+		}
+		}
+	}
+	
 	/**
 	 * SRDA request
 	 * @param target
@@ -571,88 +1053,26 @@ public class PassiveRDAHost {
 										switch (result.state) {
 										case OK: {											
 											
-											//log.main("received RDA response: "+arg1._hashTable.length);
+											//log.main("received RDA response: "+arg1._table.getNumBuckets());
 											//milli
 											double delay =  (receiveTS - sendStamp)/1000000.0;
 											
-											SimpleRDATableEntry[] you = arg1._hashTable;
 											//call compute
-											SimpleRDATable receiver = SimpleRDATable.getRDATable(you);
+											SimpleRDATable receiver = arg1._table;
 											//ids
 											HashSet<Long> SenderItems = new HashSet<Long>();
 											HashSet<Long>  ReceiverItems= new HashSet<Long>();
 											//decode
-											log.main("SRDA decode:");
+											log.main("["+addr+"] SRDA decode:");
 											long decodeTS = System.nanoTime();
 											boolean decoded=_hostSRDA.decodeSet(receiver, SenderItems, ReceiverItems);//.decodeSetDiffWithTime(receiver);
 											long d2=System.nanoTime();
 											
-											log.main("SRDA Table: "+arg1._hashTable.length+", decoded: "+decoded+", "+SenderItems.size()+", "+ReceiverItems.size());
+											log.main("["+addr+"] SRDA Table: "+arg1._table.getNumBuckets()+", decoded: "+decoded+", "+SenderItems.size()+", "+ReceiverItems.size());
 											
 											double decodeDelay = (d2 - decodeTS)/1000000.0;
-											//no need to repair
-											if(SenderItems.isEmpty()&& ReceiverItems.isEmpty()){
-												double[] sta = computeStatisticsSRDA(receiver);												
-												log.main("SRDA: sendDelay: "+delay+", decodeDelay: "+decodeDelay+", sta: "+POut.toString(sta));
-												cbDone.call(result);
-												break;
-											}else{
-											//request the other's packets
-											if(!ReceiverItems.isEmpty()){
-												//request 
-												MissingNodeTSRequestMsg2 msg2 = new MissingNodeTSRequestMsg2(
-														me,ReceiverItems);
-												long missMsgTS = System.nanoTime();
-												comm.sendRequestMessage(msg2, addr,
-														new ObjCommRRCB<MissingResponseMsg>() {
-
-															@Override
-															protected void cb(CBResult result, MissingResponseMsg argMiss,
-																	AddressIF arg2, Long arg3) {
-																// TODO Auto-generated method stub
-																switch (result.state) {
-																case OK: {
-																	long missResponseTS=System.nanoTime();
-																	double delayMiss=(missResponseTS-missMsgTS)/1000000.0;
-																	//return packets
-																	Hashtable<Long, Double> ReceiverTSTable=argMiss._hashTable;
-																	//repair
-																	long repairT1=System.nanoTime();
-																	_hostSRDA.repairDirect(SenderItems,receiver,ReceiverItems, ReceiverTSTable);
-																	long repairT2=System.nanoTime();
-																	double[] sta = computeStatisticsSRDA(receiver);
-																	long repairT3=System.nanoTime();
-																	double eraseDelay = (repairT2 - repairT1)/1000000.0;
-																	double computeDelay = (repairT3 - repairT2)/1000000.0;
-																	//sendRDA,sendMiss
-																	log.main("SRDA: sendDelay: "+delay+", decodeDelay: "+
-																	decodeDelay+", missRequestDelay: "+delayMiss+", eraseDelay: "+eraseDelay+", computeDelay: "+computeDelay+",  sta: "+POut.toString(sta));
-																	cbDone.call(result);
-																	break;
-																}
-																case TIMEOUT:
-																case ERROR: {
-																	//failure
-																	cbDone.call(result);
-																	break;
-																}
-															}
-															}
-												}
-													
-												);
-											}else{
-												//me repair only, no send
-												if(!SenderItems.isEmpty()){
-													//_host.repair(receiver,null);
-													_hostSRDA.repairDirect(SenderItems,receiver,ReceiverItems, null);
-												}
-												double[] sta = computeStatisticsSRDA(receiver);
-												log.main("SRDA: sendDelay: "+delay+", decodeDelay: "+decodeDelay+", sta: "+POut.toString(sta));
-								
-												cbDone.call(result);
-											}
-											}
+											SimpleRDATable local = _hostSRDA.sender.copyFromPool();
+											repairAndComputeSRDA(addr, local, receiver, SenderItems, ReceiverItems, delay, decodeDelay, result, giveBack(local, cbDone));
 											//log.main("finished!");
 											
 											break;
@@ -660,7 +1080,7 @@ public class PassiveRDAHost {
 										case TIMEOUT:
 										case ERROR: {
 											
-											RemoteRDAComputeTest(new  CB0(){
+											RemoteRDAComputeTest(target, new  CB0(){
 												@Override
 												protected void cb(CBResult result0) {
 													// TODO Auto-generated method stub					
@@ -682,15 +1102,289 @@ public class PassiveRDAHost {
 					}
 		
 	}
+	/**
+	 * SRDA: repair both tables with the decoded ids, then compute the statistics
+	 * @param addr
+	 * @param local my table, the same size as the receiver's
+	 * @param receiver
+	 * @param SenderItems
+	 * @param ReceiverItems
+	 * @param delay
+	 * @param decodeDelay
+	 * @param result
+	 * @param cbDone
+	 */
+	void repairAndComputeSRDA(final AddressIF addr, final SimpleRDATable local, final SimpleRDATable receiver,
+			final HashSet<Long> SenderItems, final HashSet<Long> ReceiverItems, final double delay,
+			final double decodeDelay, final CBResult result, final CB0 cbDone) {
+		repairAndComputeSRDA(addr, local, receiver, SenderItems, ReceiverItems, delay, decodeDelay, false, result, cbDone);
+	}
+
+	/**
+	 * @param window the tables are window snapshots, the peer answers from its window
+	 */
+	void repairAndComputeSRDA(final AddressIF addr, final SimpleRDATable local, final SimpleRDATable receiver,
+			final HashSet<Long> SenderItems, final HashSet<Long> ReceiverItems, final double delay,
+			final double decodeDelay, final boolean window, final CBResult result, final CB0 cbDone) {
+		//no need to repair
+		if(SenderItems.isEmpty()&& ReceiverItems.isEmpty()){
+			double[] sta = computeStatisticsSRDA(local, receiver);
+			log.main("["+addr+"] SRDA: sendDelay: "+delay+", decodeDelay: "+decodeDelay+", sta: "+POut.toString(sta));
+			cbDone.call(result);
+			return;
+		}
+		//request the other's packets
+		if(!ReceiverItems.isEmpty()){
+			MissingNodeTSRequestMsg2 msg2 = new MissingNodeTSRequestMsg2(
+					me,ReceiverItems);
+			msg2.window = window;
+			final long missMsgTS = System.nanoTime();
+			comm.sendRequestMessage(msg2, addr,
+					new ObjCommRRCB<MissingResponseMsg>() {
+
+						@Override
+						protected void cb(CBResult result, MissingResponseMsg argMiss,
+								AddressIF arg2, Long arg3) {
+							switch (result.state) {
+							case OK: {
+								long missResponseTS=System.nanoTime();
+								double delayMiss=(missResponseTS-missMsgTS)/1000000.0;
+								//return packets
+								LongDoubleMap ReceiverTSTable=argMiss._hashTable;
+								//repair
+								long repairT1=System.nanoTime();
+								_hostSRDA.repairDirect(local,SenderItems,receiver,ReceiverItems, ReceiverTSTable);
+								long repairT2=System.nanoTime();
+								double[] sta = computeStatisticsSRDA(local, receiver);
+								long repairT3=System.nanoTime();
+								double eraseDelay = (repairT2 - repairT1)/1000000.0;
+								double computeDelay = (repairT3 - repairT2)/1000000.0;
+								//sendRDA,sendMiss
+								log.main("["+addr+"] SRDA: sendDelay: "+delay+", decodeDelay: "+
+								decodeDelay+", missRequestDelay: "+delayMiss+", eraseDelay: "+eraseDelay+", computeDelay: "+computeDelay+",  sta: "+POut.toString(sta));
+								cbDone.call(result);
+								break;
+							}
+							case TIMEOUT:
+							case ERROR: {
+								//failure
+								cbDone.call(result);
+								break;
+							}
+							}
+						}
+			});
+		}else{
+			//me repair only, no send
+			_hostSRDA.repairDirect(local,SenderItems,receiver,ReceiverItems, null);
+			double[] sta = computeStatisticsSRDA(local, receiver);
+			log.main("["+addr+"] SRDA: sendDelay: "+delay+", decodeDelay: "+decodeDelay+", sta: "+POut.toString(sta));
+			cbDone.call(result);
+		}
+	}
+
+	/**
+	 * estimated loss/reorder difference of the last sized SRDA round, -1 before the first
+	 */
+	public volatile long lastDifferenceEstimate = -1;
+	/**
+	 * buckets of the last sized SRDA table
+	 */
+	public volatile int lastSizedBuckets = 0;
+
+	/**
+	 * SRDA with a table sized to the difference: my strata go with the
+	 * request, the other host estimates the difference and answers with a
+	 * table of that size, I build mine of the same size from my cache.
+	 * A table that does not decode is asked for again at twice the size, once
+	 * @param target
+	 * @param cbDone
+	 */
+	public void doRDARequestSRDAAdaptive(String target, final CB0 cbDone) {
+		final AddressIF addr=NetAddress.createUnresolved(target, PassiveCollectorPeriod.COMM_PORT);
+		log.main("doRDARequestAdaptive: "+target);
+		requestSizedSRDA(addr, _hostSRDA.buildEstimator(), 0, 1, cbDone);
+	}
+
+	void requestSizedSRDA(final AddressIF addr, final RDADifferenceEstimator sketch, int minBuckets,
+			final int retries, final CB0 cbDone) {
+		RDASketchRequestMsg msg = new RDASketchRequestMsg(me, sketch, minBuckets);
+		final long sendStamp = System.nanoTime();
+		comm.sendRequestMessage(msg, addr,
+				new ObjCommRRCB<RDASketchResponseMsg>() {
+
+					@Override
+					protected void cb(CBResult result, RDASketchResponseMsg arg1, AddressIF arg2, Long arg3) {
+						long receiveTS = System.nanoTime();
+						switch (result.state) {
+						case OK: {
+							double delay =  (receiveTS - sendStamp)/1000000.0;
+							SimpleRDATable receiver = arg1._table;
+							int buckets = receiver.getNumBuckets();
+							lastDifferenceEstimate = arg1.estimate;
+							lastSizedBuckets = buckets;
+
+							long decodeTS = System.nanoTime();
+							SimpleRDATable local = _hostSRDA.buildTable(buckets);
+							HashSet<Long> SenderItems = new HashSet<Long>();
+							HashSet<Long>  ReceiverItems= new HashSet<Long>();
+							boolean decoded=_hostSRDA.decodeSet(local, receiver, SenderItems, ReceiverItems);
+							long d2=System.nanoTime();
+							double decodeDelay = (d2 - decodeTS)/1000000.0;
+
+							log.main("["+addr+"] sized SRDA Table: "+buckets+", estimate: "+arg1.estimate+", decoded: "+decoded+", "+SenderItems.size()+", "+ReceiverItems.size());
+							if(!decoded&&retries>0){
+								requestSizedSRDA(addr, sketch, 2*buckets, retries-1, cbDone);
+								break;
+							}
+							repairAndComputeSRDA(addr, local, receiver, SenderItems, ReceiverItems, delay, decodeDelay, result, cbDone);
+							break;
+						}
+						case TIMEOUT:
+						case ERROR: {
+							cbDone.call(result);
+							break;
+						}
+						default:
+							break;
+						}
+					}
+
+				});
+	}
+
+	/**
+	 * per flow shard of the last flow round: {shard, packets, lost, extra, avg, std}
+	 */
+	public volatile double[][] lastFlowStats = new double[0][];
+
+	/**
+	 * delay and loss per flow shard: the other host sends the shards of
+	 * RDA.flowShardQuery (all if empty) packed, every shard is decoded,
+	 * repaired and scored on its own; the timestamps of the extra ids of all
+	 * shards are asked for in one request
+	 * @param target
+	 * @param cbDone
+	 */
+	public void doRDARequestFlows(String target, final CB0 cbDone) {
+		final AddressIF addr=NetAddress.createUnresolved(target, PassiveCollectorPeriod.COMM_PORT);
+		final ShardedRDATable flows = _hostSRDA.flows;
+		final int[] shards = flows.validShards(PassiveCollectorPeriod.flowShardQuery);
+		RDAShardRequestMsg msg = new RDAShardRequestMsg(me, shards);
+		final long sendStamp = System.nanoTime();
+		comm.sendRequestMessage(msg, addr,
+				new ObjCommRRCB<RDAShardResponseMsg>() {
+
+					@Override
+					protected void cb(CBResult result, RDAShardResponseMsg arg1, AddressIF arg2, Long arg3) {
+						long receiveTS = System.nanoTime();
+						switch (result.state) {
+						case OK: {
+							if(arg1.numShards!=flows.getNumShards()||arg1.shardBuckets!=flows.getShardBuckets()){
+								cbDone.call(CBResult.ERROR(arg1.numShards+" shards of "+arg1.shardBuckets
+										+" buckets, mine are "+flows.getNumShards()+" of "+flows.getShardBuckets()));
+								break;
+							}
+							double delay = (receiveTS - sendStamp)/1000000.0;
+							int n = arg1.shards.length;
+							final SimpleRDATable[] local = new SimpleRDATable[n];
+							final SimpleRDATable[] receiver = new SimpleRDATable[n];
+							final List<HashSet<Long>> SenderItems = new ArrayList<HashSet<Long>>(n);
+							final List<HashSet<Long>> ReceiverItems = new ArrayList<HashSet<Long>>(n);
+							final HashSet<Long> missing = new HashSet<Long>();
+							int decoded = 0;
+							long decodeTS = System.nanoTime();
+							for(int k=0;k<n;k++){
+								local[k] = flows.shard(arg1.shards[k]);
+								receiver[k] = ShardedRDATable.cut(arg1.buckets, k, arg1.shardBuckets);
+								SenderItems.add(new HashSet<Long>());
+								ReceiverItems.add(new HashSet<Long>());
+								if(_hostSRDA.decodeSet(local[k], receiver[k], SenderItems.get(k), ReceiverItems.get(k))){
+									decoded++;
+								}
+								missing.addAll(ReceiverItems.get(k));
+							}
+							double decodeDelay = (System.nanoTime() - decodeTS)/1000000.0;
+							log.main("["+addr+"] flow shards: "+n+", decoded: "+decoded+", sendDelay: "+delay+", decodeDelay: "+decodeDelay);
+							if(missing.isEmpty()){
+								computeFlows(arg1.shards, local, receiver, SenderItems, ReceiverItems, null);
+								cbDone.call(result);
+								break;
+							}
+							MissingNodeTSRequestMsg2 msg2 = new MissingNodeTSRequestMsg2(me, missing);
+							comm.sendRequestMessage(msg2, addr,
+									new ObjCommRRCB<MissingResponseMsg>() {
+
+										@Override
+										protected void cb(CBResult result0, MissingResponseMsg argMiss,
+												AddressIF arg2, Long arg3) {
+											switch (result0.state) {
+											case OK: {
+												computeFlows(arg1.shards, local, receiver, SenderItems, ReceiverItems, argMiss._hashTable);
+												cbDone.call(result0);
+												break;
+											}
+											case TIMEOUT:
+											case ERROR: {
+												cbDone.call(result0);
+												break;
+											}
+											default:
+												break;
+											}
+										}
+							});
+							break;
+						}
+						case TIMEOUT:
+						case ERROR: {
+							cbDone.call(result);
+							break;
+						}
+						default:
+							break;
+						}
+					}
+
+				});
+	}
+
+	/**
+	 * repair and score every shard
+	 * @param shards
+	 * @param local
+	 * @param receiver
+	 * @param SenderItems
+	 * @param ReceiverItems
+	 * @param ReceiverTSTable timestamps of the extra ids, null if there are none
+	 */
+	void computeFlows(int[] shards, SimpleRDATable[] local, SimpleRDATable[] receiver, List<HashSet<Long>> SenderItems,
+			List<HashSet<Long>> ReceiverItems, LongDoubleMap ReceiverTSTable) {
+		double[][] stats = new double[shards.length][];
+		for(int k=0;k<shards.length;k++){
+			long packets = ShardedRDATable.packets(local[k].buckets, 0, local[k].getNumBuckets());
+			_hostSRDA.repairDirect(local[k], SenderItems.get(k), receiver[k], ReceiverItems.get(k), ReceiverTSTable);
+			double[] sta = computeStatisticsSRDA(local[k], receiver[k]);
+			stats[k] = new double[]{shards[k], packets, SenderItems.get(k).size(), ReceiverItems.get(k).size(), sta[0], sta[1]};
+			log.main("flow shard "+shards[k]+": packets: "+packets+", lost: "+SenderItems.get(k).size()
+					+", extra: "+ReceiverItems.get(k).size()+", sta: "+POut.toString(sta));
+		}
+		lastFlowStats = stats;
+	}
+
 	/**
 	 * directly compute statistics
 	 * @param receiver
 	 */
 	public double[] computeStatisticsRDA(RDATable  receiver){
+		return computeStatisticsRDA(_hostRDA.sender, receiver);
+	}
+	
+	public double[] computeStatisticsRDA(RDATable local,RDATable  receiver){
 		long TS1 = System.nanoTime();
-		double avg = _hostRDA.getAverage(receiver);
+		double avg = _hostRDA.getAverage(local, receiver);
 		long TS2=System.nanoTime();
-		double std = _hostRDA.getStandardDeviation(avg, receiver);
+		double std = _hostRDA.getStandardDeviation(local, avg, receiver);
 		long TS3=System.nanoTime();
 		log.main("avgDelay: "+(TS2-TS1)/1000000.0+", stdDelay: "+(TS3-TS2)/1000000.0);
 		double[] recs={avg,std};
@@ -702,10 +1396,14 @@ public class PassiveRDAHost {
 	 * @return
 	 */
 	public double[] computeStatisticsSRDA(SimpleRDATable  receiver){
+		return computeStatisticsSRDA(_hostSRDA.sender, receiver);
+	}
+	
+	public double[] computeStatisticsSRDA(SimpleRDATable local,SimpleRDATable  receiver){
 		long TS1 = System.nanoTime();
-		double avg = _hostSRDA.getAverage(receiver);
+		double avg = _hostSRDA.getAverage(local, receiver);
 		long TS2=System.nanoTime();
-		double std = _hostSRDA.getStandardDeviation(avg, receiver);
+		double std = _hostSRDA.getStandardDeviation(local, avg, receiver);
 		long TS3=System.nanoTime();
 		log.main("avgDelay: "+(TS2-TS1)/1000000.0+", stdDelay: "+(TS3-TS2)/1000000.0);
 		double[] recs={avg,std};
@@ -719,7 +1417,7 @@ public class PassiveRDAHost {
 		/*
 		 * Create the event loop
 		 */
-		EL.set(new EL(Long.valueOf(Config.getConfigProps().getProperty(
+		EL.set(EL.create(Long.valueOf(Config.getConfigProps().getProperty(
 				"sbon.eventloop.statedump", "600000")), Boolean.valueOf(Config
 				.getConfigProps().getProperty("sbon.eventloop.showidle",
 						"false"))));
@@ -746,6 +1444,15 @@ public class PassiveRDAHost {
 		this._hostSRDA.clear();
 	}
 
+	/**
+	 * end of the period: the tables captured so far are frozen for the round,
+	 * the capture goes on into fresh ones; once per period
+	 */
+	public void freezeEpoch() {
+		_hostRDA.freeze();
+		_hostSRDA.freeze();
+	}
+
 	/**
 	 * parse the cache
 	 * @param senderTSTable0
@@ -785,13 +1492,32 @@ public class PassiveRDAHost {
 	 * @return
 	 */
 	public double getTimeStampForGivenID(long id){
+		return getTimeStampForGivenID(id, false);
+	}
+
+	/**
+	 * @param id
+	 * @param window look in the sliding window first; the period caches hold the
+	 * frozen epoch and are emptied every period, most window ids are not there
+	 * @return
+	 */
+	public double getTimeStampForGivenID(long id, boolean window){
+		if(window && _hostSRDA.window!=null){
+			double ts = _hostSRDA.window.getTS(id, -1);
+			if(ts>=0){
+				return ts;
+			}
+		}
 		
-		if(!_hostSRDA.SenderTSTable.isEmpty()&&_hostSRDA.SenderTSTable.containsKey(id)){
-			return _hostSRDA.SenderTSTable.get(id);
+		//one lookup per map, NaN is never stored
+		double ts = _hostSRDA.SenderTSTable.get(id, Double.NaN);
+		if(!Double.isNaN(ts)){
+			return ts;
 		}
 		
-		if(!_hostRDA.SenderTSTable.isEmpty()&&_hostRDA.SenderTSTable.containsKey(id)){
-			return _hostRDA.SenderTSTable.get(id);
+		ts = _hostRDA.SenderTSTable.get(id, Double.NaN);
+		if(!Double.isNaN(ts)){
+			return ts;
 		}
 		
 		return -1;
@@ -0,0 +1,473 @@
+package util.bloom.RDA;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import se.fnord.PcapReader;
+import util.bloom.Apache.Hash.hashing.LongHashFunction;
+
+/**
+ * pcap trace straight into an RDA table: the link, IPv4 and TCP headers
+ * are read in place from the mapped file and the packet id is hashed
+ * from the same bytes, no frames, strings or text files in between
+ *
+ * the id covers the IPv4 addresses, the options and the TCP header
+ * (ports, seq, ack, flags, window, checksum); TTL and the IP checksum
+ * change on the path and are left out
+ */
+public class PcapRDAIngest implements PcapReader.RecordVisitor {
+
+	static final int LINKTYPE_ETHERNET = 1;
+	static final int LINKTYPE_RAW = 101;
+	static final int LINKTYPE_LINUX_SLL = 113;
+
+	/**
+	 * packet id hash
+	 */
+	public static LongHashFunction packetHash = LongHashFunction.xx(1256422325);
+
+	/**
+	 * flow hash, for the shard of a packet
+	 */
+	public static LongHashFunction flowHash = LongHashFunction.xx(1482065348);
+
+	private static ExecutorService parallelIngest = null;
+
+	final int linkType;
+	final double scaleTS;
+	//one of the three
+	final SimpleRDATable table;
+	final SimpleRDAMeasurementPoint host;
+	//a range of a parallel ingest into a measurement point: its own shard and ids
+	final RDATable shard;
+	final LongDoubleMap ids;
+
+	public long records = 0;
+	public long inserted = 0;
+
+	PcapRDAIngest(int _linkType, double _scaleTS, SimpleRDATable _table, SimpleRDAMeasurementPoint _host) {
+		linkType = _linkType;
+		scaleTS = _scaleTS;
+		table = _table;
+		host = _host;
+		shard = null;
+		ids = null;
+	}
+
+	PcapRDAIngest(int _linkType, double _scaleTS, RDATable _shard, LongDoubleMap _ids) {
+		linkType = _linkType;
+		scaleTS = _scaleTS;
+		table = null;
+		host = null;
+		shard = _shard;
+		ids = _ids;
+	}
+
+	/**
+	 * insert every TCP packet of the trace into the table
+	 * @param reader
+	 * @param table
+	 * @param scaleTS multiplied with the nanosecond timestamp
+	 * @return packets inserted
+	 */
+	public static long ingest(PcapReader reader, SimpleRDATable table, double scaleTS) {
+		PcapRDAIngest in = new PcapRDAIngest(reader.getLinkType(), scaleTS, table, null);
+		reader.scan(in);
+		return in.inserted;
+	}
+
+	static synchronized ExecutorService getPool() {
+		if (parallelIngest == null) {
+			ThreadFactory ingestFactory = new ThreadFactoryBuilder().setNameFormat("Pcap-%d")
+					.setDaemon(true).build();
+			parallelIngest = Executors.newCachedThreadPool(ingestFactory);
+		}
+		return parallelIngest;
+	}
+
+	/**
+	 * split the trace into record aligned ranges, every worker fills its own
+	 * shard and the shards are added into the table at the end; if a range
+	 * does not end at the next cut, the trace is read again serially
+	 * @param reader
+	 * @param table
+	 * @param scaleTS
+	 * @param threads
+	 * @return packets inserted
+	 */
+	public static long ingestParallel(final PcapReader reader, SimpleRDATable table, final double scaleTS,
+			int threads) {
+		if (threads <= 1) {
+			return ingest(reader, table, scaleTS);
+		}
+		final long[] bounds = reader.split(threads);
+		int ranges = bounds.length - 1;
+		final PcapRDAIngest[] workers = new PcapRDAIngest[ranges];
+		for (int i = 0; i < ranges; i++) {
+			workers[i] = new PcapRDAIngest(reader.getLinkType(), scaleTS, table.newShard(), null);
+		}
+		if (!scan(reader, bounds, workers)) {
+			//a cut was not a record boundary, nothing is merged yet
+			return ingest(reader, table, scaleTS);
+		}
+		long inserted = 0;
+		for (PcapRDAIngest w : workers) {
+			table.merge(w.table);
+			inserted += w.inserted;
+		}
+		return inserted;
+	}
+
+	/**
+	 * range i of bounds goes to workers[i], the caller takes the first one
+	 * @return false if a range did not end at the next bound, the workers are
+	 * then not to be merged
+	 */
+	static boolean scan(final PcapReader reader, final long[] bounds, final PcapRDAIngest[] workers) {
+		int ranges = workers.length;
+		final AtomicBoolean aligned = new AtomicBoolean(true);
+		final Semaphore done = new Semaphore(0);
+		ExecutorService pool = getPool();
+		for (int i = 1; i < ranges; i++) {
+			final int r = i;
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						reader.scan(bounds[r], bounds[r + 1], workers[r]);
+					} catch (IOException e) {
+						aligned.set(false);
+						e.printStackTrace();
+					} finally {
+						done.release();
+					}
+				}
+			});
+		}
+		try {
+			reader.scan(bounds[0], bounds[1], workers[0]);
+		} catch (IOException e) {
+			aligned.set(false);
+			e.printStackTrace();
+		}
+		try {
+			done.acquire(ranges - 1);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			aligned.set(false);
+		}
+		return aligned.get();
+	}
+
+	/**
+	 * same for a measurement point, which also keeps the timestamps for the repair
+	 * and drops duplicates
+	 * @param reader
+	 * @param host
+	 * @param scaleTS
+	 * @return packets inserted
+	 */
+	public static long ingest(PcapReader reader, SimpleRDAMeasurementPoint host, double scaleTS) {
+		PcapRDAIngest in = new PcapRDAIngest(reader.getLinkType(), scaleTS, null, host);
+		reader.scan(in);
+		return in.inserted;
+	}
+
+	public static long ingest(Path trace, SimpleRDAMeasurementPoint host, double scaleTS) throws IOException {
+		PcapReader reader = PcapReader.create(trace);
+		try {
+			return ingest(reader, host, scaleTS);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * the ranges of the trace go to parallel workers, every worker fills its
+	 * own shard and id map and drops the duplicates inside its range. The
+	 * ranges are merged into the host in trace order, an id already in the
+	 * host is erased from the shard before it is added, so the first
+	 * occurrence in the trace is kept as with a serial ingest
+	 * @param reader
+	 * @param host
+	 * @param scaleTS
+	 * @param threads 0 for one per core
+	 * @return packets inserted
+	 */
+	public static long ingestParallel(PcapReader reader, SimpleRDAMeasurementPoint host, double scaleTS,
+			int threads) {
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		if (threads == 1) {
+			return ingest(reader, host, scaleTS);
+		}
+		long[] bounds = reader.split(threads);
+		PcapRDAIngest[] workers = new PcapRDAIngest[bounds.length - 1];
+		//ids per range, the map grows past it
+		int expected = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(16, host.maximumTotalPackets / workers.length));
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new PcapRDAIngest(reader.getLinkType(), scaleTS, host.sender.newShard(),
+					LongDoubleMap.create(expected, false));
+		}
+		if (!scan(reader, bounds, workers)) {
+			return ingest(reader, host, scaleTS);
+		}
+		long inserted = 0;
+		for (PcapRDAIngest w : workers) {
+			inserted += w.mergeInto(host);
+		}
+		return inserted;
+	}
+
+	/**
+	 * ids of this range that are already in the host come out of the shard,
+	 * then the shard is added to the host's table
+	 * @param host
+	 * @return packets of this range kept
+	 */
+	long mergeInto(final SimpleRDAMeasurementPoint host) {
+		final long[] kept = { 0 };
+		ids.forEachEntry(new LongDoubleMap.Procedure() {
+			public void apply(long id, double ts) {
+				if (host.SenderTSTable.putIfAbsent(id, ts)) {
+					kept[0]++;
+				} else {
+					shard.erase(id, ts, 1);
+				}
+			}
+		});
+		host.sender.merge(shard);
+		return kept[0];
+	}
+
+	public static long ingestParallel(Path trace, SimpleRDAMeasurementPoint host, double scaleTS, int threads)
+			throws IOException {
+		PcapReader reader = PcapReader.create(trace);
+		try {
+			return ingestParallel(reader, host, scaleTS, threads);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * trace files are read as pcap if they end with .pcap
+	 * @param fileName
+	 * @return
+	 */
+	public static boolean isPcap(String fileName) {
+		return fileName.toLowerCase().endsWith(".pcap");
+	}
+
+	@Override
+	public void visit(ByteBuffer bb, int offset, int capturedLength, long timestamp) {
+		records++;
+		long id = packetId(bb, offset, capturedLength, linkType);
+		if (id == 0) {
+			return;
+		}
+		double ts = scaleTS * timestamp;
+		if (table != null) {
+			table.insert(id, ts, 1);
+			inserted++;
+		} else if (shard != null) {
+			if (ids.putIfAbsent(id, ts)) {
+				shard.insert(id, ts, 1);
+				inserted++;
+			}
+		} else if (host.packetIncomingIgnoreDuplicate(id, ts)) {
+			inserted++;
+		}
+	}
+
+	/**
+	 * network order, whatever the order of the buffer
+	 */
+	static int u16(ByteBuffer bb, int index) {
+		return ((bb.get(index) & 0xff) << 8) | (bb.get(index + 1) & 0xff);
+	}
+
+	/**
+	 * @param bb
+	 * @param offset first captured byte
+	 * @param capturedLength
+	 * @param linkType
+	 * @return the packet id, 0 if the record is not a complete IPv4/TCP header
+	 */
+	public static long packetId(ByteBuffer bb, int offset, int capturedLength, int linkType) {
+		int end = offset + capturedLength;
+		int ip;
+		int etherType;
+		switch (linkType) {
+		case LINKTYPE_ETHERNET: {
+			if (capturedLength < 14) {
+				return 0;
+			}
+			ip = offset + 14;
+			etherType = u16(bb, offset + 12);
+			//VLAN tags
+			while ((etherType == 0x8100 || etherType == 0x88a8 || etherType == 0x9100) && ip + 4 <= end) {
+				etherType = u16(bb, ip + 2);
+				ip += 4;
+			}
+			break;
+		}
+		case LINKTYPE_LINUX_SLL: {
+			if (capturedLength < 16) {
+				return 0;
+			}
+			ip = offset + 16;
+			etherType = u16(bb, offset + 14);
+			break;
+		}
+		case LINKTYPE_RAW: {
+			ip = offset;
+			etherType = 0x0800;
+			break;
+		}
+		default:
+			return 0;
+		}
+		if (etherType != 0x0800 || ip + 20 > end) {
+			return 0;
+		}
+		int versionIhl = bb.get(ip) & 0xff;
+		int ihl = (versionIhl & 0x0f) << 2;
+		//IPv4, TCP, first fragment
+		if ((versionIhl >> 4) != 4 || ihl < 20 || bb.get(ip + 9) != 6
+				|| (u16(bb, ip + 6) & 0x1fff) != 0) {
+			return 0;
+		}
+		int tcp = ip + ihl;
+		if (tcp + 20 > end) {
+			return 0;
+		}
+		int tcpLen = ((bb.get(tcp + 12) & 0xff) >> 4) << 2;
+		//options cut off by the snap length are left out
+		int idEnd = Math.min(end, tcp + Math.max(20, tcpLen));
+		long id = packetHash.hashBytes(bb, ip + 12, idEnd - ip - 12);
+		//0 means no packet
+		return id == 0 ? 1 : id;
+	}
+
+	static int u16(byte[] b, int index) {
+		return ((b[index] & 0xff) << 8) | (b[index + 1] & 0xff);
+	}
+
+	/**
+	 * IPv4 address at index, network order
+	 */
+	public static int ipv4(byte[] b, int index) {
+		return (u16(b, index) << 16) | u16(b, index + 2);
+	}
+
+	/**
+	 * the same header walk as packetId(ByteBuffer,...) over a captured frame
+	 * @param frame
+	 * @param offset
+	 * @param capturedLength
+	 * @param linkType
+	 * @return offset of the IPv4 header, -1 if the frame has no complete IPv4/TCP header
+	 */
+	public static int tcpIpv4Offset(byte[] frame, int offset, int capturedLength, int linkType) {
+		int end = offset + capturedLength;
+		int ip;
+		int etherType;
+		switch (linkType) {
+		case LINKTYPE_ETHERNET: {
+			if (capturedLength < 14) {
+				return -1;
+			}
+			ip = offset + 14;
+			etherType = u16(frame, offset + 12);
+			while ((etherType == 0x8100 || etherType == 0x88a8 || etherType == 0x9100) && ip + 4 <= end) {
+				etherType = u16(frame, ip + 2);
+				ip += 4;
+			}
+			break;
+		}
+		case LINKTYPE_LINUX_SLL: {
+			if (capturedLength < 16) {
+				return -1;
+			}
+			ip = offset + 16;
+			etherType = u16(frame, offset + 14);
+			break;
+		}
+		case LINKTYPE_RAW: {
+			ip = offset;
+			etherType = 0x0800;
+			break;
+		}
+		default:
+			return -1;
+		}
+		if (etherType != 0x0800 || ip + 20 > end) {
+			return -1;
+		}
+		int versionIhl = frame[ip] & 0xff;
+		int ihl = (versionIhl & 0x0f) << 2;
+		if ((versionIhl >> 4) != 4 || ihl < 20 || frame[ip + 9] != 6
+				|| (u16(frame, ip + 6) & 0x1fff) != 0 || ip + ihl + 20 > end) {
+			return -1;
+		}
+		return ip;
+	}
+
+	/**
+	 * @param frame
+	 * @param ip from tcpIpv4Offset()
+	 * @param end end of the captured bytes
+	 * @return the same id as packetId(ByteBuffer,...)
+	 */
+	public static long packetId(byte[] frame, int ip, int end) {
+		int tcp = ip + ((frame[ip] & 0x0f) << 2);
+		int tcpLen = ((frame[tcp + 12] & 0xff) >> 4) << 2;
+		int idEnd = Math.min(end, tcp + Math.max(20, tcpLen));
+		long id = packetHash.hashBytes(frame, ip + 12, idEnd - ip - 12);
+		return id == 0 ? 1 : id;
+	}
+
+	/**
+	 * the id of packetId(ByteBuffer,...) for the bytes of an IPv4 packet without
+	 * link header, as pcap4j hands them over; both capture modes of a collector
+	 * have to give the peer the same id for the same packet
+	 * @param packet
+	 * @param length
+	 * @return the packet id, 0 if the packet is not a complete IPv4/TCP header
+	 */
+	public static long ipv4PacketId(byte[] packet, int length) {
+		int ip = tcpIpv4Offset(packet, 0, length, LINKTYPE_RAW);
+		return ip < 0 ? 0 : packetId(packet, ip, length);
+	}
+
+	/**
+	 * the 5-tuple of a TCP packet: addresses and ports, the protocol is TCP
+	 * @param frame
+	 * @param ip offset of the IPv4 header, 0 for the bytes of an IpV4Packet
+	 * @param end end of the captured bytes
+	 * @return the flow hash, ShardedRDATable.NO_FLOW if the packet is not IPv4/TCP
+	 */
+	public static long flowId(byte[] frame, int ip, int end) {
+		if (ip + 20 > end || (frame[ip] & 0xf0) != 0x40 || frame[ip + 9] != 6) {
+			return ShardedRDATable.NO_FLOW;
+		}
+		int tcp = ip + ((frame[ip] & 0x0f) << 2);
+		if (tcp + 4 > end) {
+			return ShardedRDATable.NO_FLOW;
+		}
+		long hosts = ((long) ipv4(frame, ip + 12) << 32) | (ipv4(frame, ip + 16) & 0xffffffffL);
+		//source and destination port
+		long ports = ipv4(frame, tcp) & 0xffffffffL;
+		long flow = flowHash.hashLong(hosts ^ (ports * 0x9E3779B97F4A7C15L));
+		return flow == ShardedRDATable.NO_FLOW ? 1 : flow;
+	}
+}
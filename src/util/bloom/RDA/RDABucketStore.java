@@ -0,0 +1,219 @@
+package util.bloom.RDA;
+
+import java.io.Serializable;
+
+/**
+ * bucket storage behind an RDA table, one bucket = (Counter, TS, keySum[, keyCheck])
+ * the table keeps the hashing and peeling logic, the store only keeps the numbers,
+ * so the layout (heap arrays, off-heap buffer) can be chosen per deployment
+ */
+public abstract class RDABucketStore implements Serializable {
+
+	private static final long serialVersionUID = -3180977352745937462L;
+
+	/**
+	 * allocate the buckets outside of the heap
+	 */
+	public volatile static boolean offHeap = false;
+
+	/**
+	 * CAS updated buckets, inserts skip the table lock
+	 */
+	public volatile static boolean concurrent = false;
+
+	//number of buckets
+	protected int size;
+	//RDATable keeps a check sum, SimpleRDATable does not
+	protected boolean withKeyCheck;
+
+	protected RDABucketStore(int _size, boolean _withKeyCheck) {
+		size = _size;
+		withKeyCheck = _withKeyCheck;
+	}
+
+	/**
+	 * allocate a store with the configured layout
+	 * @param size
+	 * @param withKeyCheck
+	 * @return
+	 */
+	public static RDABucketStore allocate(int size, boolean withKeyCheck) {
+		if (concurrent) {
+			return new AtomicRDABucketStore(size, withKeyCheck);
+		} else if (offHeap) {
+			return new DirectRDABucketStore(size, withKeyCheck);
+		} else {
+			return new ArrayRDABucketStore(size, withKeyCheck);
+		}
+	}
+
+	/**
+	 * number of buckets
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean hasKeyCheck() {
+		return withKeyCheck;
+	}
+
+	/**
+	 * update() may be called by several threads at once
+	 * @return
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
+
+	public abstract int getCounter(int index);
+
+	public abstract float getTS(int index);
+
+	public abstract long getKeySum(int index);
+
+	/**
+	 * 0 if the store has no check column
+	 * @param index
+	 * @return
+	 */
+	public abstract long getKeyCheck(int index);
+
+	/**
+	 * overwrite a bucket
+	 */
+	public abstract void set(int index, int Counter, float TS, long keySum, long keyCheck);
+
+	/**
+	 * Counter+=, TS+=, keySum^=, keyCheck^=
+	 */
+	public abstract void update(int index, long Counter, double TS, long id, long idCheck);
+
+	public abstract void reset(int index);
+
+	/**
+	 * reset all buckets
+	 */
+	public abstract void clear();
+
+	/**
+	 * an empty store of the same layout
+	 * @param size
+	 * @return
+	 */
+	public abstract RDABucketStore newStore(int size);
+
+	/**
+	 * copy all buckets
+	 * @return
+	 */
+	public RDABucketStore copy() {
+		RDABucketStore a = newStore(size);
+		a.copyFrom(this, 0, 0, size);
+		return a;
+	}
+
+	/**
+	 * copy len buckets of you, starting at from, into this store at to
+	 */
+	public void copyFrom(RDABucketStore you, int from, int to, int len) {
+		for (int i = 0; i < len; i++) {
+			set(to + i, you.getCounter(from + i), you.getTS(from + i),
+					you.getKeySum(from + i), you.getKeyCheck(from + i));
+		}
+	}
+
+	/**
+	 * this = this - you, bucket by bucket
+	 * @param you, same size
+	 */
+	public void subtract(RDABucketStore you) {
+		subtract(you, 0, 0, size);
+	}
+
+	/**
+	 * subtract len buckets of you, starting at from, from this store at to
+	 */
+	public void subtract(RDABucketStore you, int from, int to, int len) {
+		for (int i = 0; i < len; i++) {
+			int a = to + i;
+			int b = from + i;
+			set(a, getCounter(a) - you.getCounter(b), getTS(a) - you.getTS(b),
+					getKeySum(a) ^ you.getKeySum(b), getKeyCheck(a) ^ you.getKeyCheck(b));
+		}
+	}
+
+	/**
+	 * dest = this - you, bucket by bucket, without copying this first
+	 * @param you same size
+	 * @param dest same size, overwritten
+	 */
+	public void subtractInto(RDABucketStore you, RDABucketStore dest) {
+		for (int i = 0; i < size; i++) {
+			dest.set(i, getCounter(i) - you.getCounter(i), getTS(i) - you.getTS(i),
+					getKeySum(i) ^ you.getKeySum(i), getKeyCheck(i) ^ you.getKeyCheck(i));
+		}
+	}
+
+	/**
+	 * this = this + you, bucket by bucket, i.e. the union of the inserts
+	 * @param you, same size
+	 */
+	public void add(RDABucketStore you) {
+		for (int i = 0; i < size; i++) {
+			set(i, getCounter(i) + you.getCounter(i), getTS(i) + you.getTS(i),
+					getKeySum(i) ^ you.getKeySum(i), getKeyCheck(i) ^ you.getKeyCheck(i));
+		}
+	}
+
+	/**
+	 * half the buckets: the upper half of every bank is added onto its lower
+	 * half. A bank position is h % bucketsPerBank, so this is the table the
+	 * same ids give with half the buckets per bank
+	 * @param nHash number of banks
+	 * @return
+	 */
+	public RDABucketStore fold(int nHash) {
+		int bank = size / nHash;
+		if (bank % 2 != 0 || bank * nHash != size) {
+			throw new IllegalArgumentException("cannot fold " + size + " buckets in " + nHash + " banks");
+		}
+		int half = bank / 2;
+		RDABucketStore a = newStore(size / 2);
+		for (int b = 0; b < nHash; b++) {
+			for (int j = 0; j < half; j++) {
+				int lo = b * bank + j;
+				int hi = lo + half;
+				a.set(b * half + j, getCounter(lo) + getCounter(hi), getTS(lo) + getTS(hi),
+						getKeySum(lo) ^ getKeySum(hi), getKeyCheck(lo) ^ getKeyCheck(hi));
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * the number of items
+	 * @param index
+	 * @return
+	 */
+	public long getNumItems(int index) {
+		return Math.abs(getCounter(index));
+	}
+
+	public boolean empty(int index) {
+		return getCounter(index) == 0 && getKeySum(index) == 0 && getKeyCheck(index) == 0;
+	}
+
+	/**
+	 * bytes used by the buckets
+	 * @return
+	 */
+	public long sizeInBytes() {
+		return (long) size * bytesPerBucket(withKeyCheck);
+	}
+
+	public static int bytesPerBucket(boolean withKeyCheck) {
+		return withKeyCheck ? 24 : 16;
+	}
+}
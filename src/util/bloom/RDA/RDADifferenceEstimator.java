@@ -0,0 +1,143 @@
+package util.bloom.RDA;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashSet;
+
+import util.async.Writable;
+import util.bloom.Apache.Hash.hashing.LongHashFunction;
+
+/**
+ * strata estimator of the loss/reorder set difference of two hosts, the same
+ * scheme as util.bloom.Exist.StrataEstimator but over packet ids: an id goes
+ * into stratum i with probability 2^-(i+1), every stratum is a small
+ * SimpleRDATable. The two estimators are subtracted stratum by stratum from the
+ * top; the first stratum that does not peel stops it and the ids peeled so far
+ * are scaled by 2^(i+1).
+ *
+ * a few KB on the wire, exchanged before the RDA table so that the table can be
+ * sized to the difference instead of RDAEntries
+ */
+public class RDADifferenceEstimator implements Writable {
+
+	public static final int STRATA = 32;
+	//buckets per stratum, the paper's 80 cells
+	public static final int DEFAULT_CELLS = 80;
+
+	public static int seed = 7331;
+	static LongHashFunction strataHash = LongHashFunction.xx(seed);
+
+	public SimpleRDATable[] strata;
+
+	public RDADifferenceEstimator() {
+	}
+
+	/**
+	 * @param cells buckets per stratum, rounded up to the hash functions
+	 */
+	public RDADifferenceEstimator(int cells) {
+		int n = SimpleRDATable.N_HASH * ((Math.max(cells, 1) + SimpleRDATable.N_HASH - 1) / SimpleRDATable.N_HASH);
+		strata = new SimpleRDATable[STRATA];
+		for (int i = 0; i < STRATA; i++) {
+			strata[i] = new SimpleRDATable(n);
+		}
+	}
+
+	/**
+	 * @param ids the id -> timestamp cache of a measurement point
+	 * @return
+	 */
+	public static RDADifferenceEstimator of(LongDoubleMap ids) {
+		final RDADifferenceEstimator e = new RDADifferenceEstimator(DEFAULT_CELLS);
+		ids.forEachEntry(new LongDoubleMap.Procedure() {
+			public void apply(long key, double value) {
+				e.encode(key);
+			}
+		});
+		return e;
+	}
+
+	static int stratum(long id) {
+		return Math.min(Long.numberOfTrailingZeros(strataHash.hashLong(id)), STRATA - 1);
+	}
+
+	public void encode(long id) {
+		strata[stratum(id)].insert(id, 0, 1);
+	}
+
+	/**
+	 * @param other estimator of the other host, same cells
+	 * @return estimated number of ids in one set only
+	 */
+	public long estimate(RDADifferenceEstimator other) {
+		if (other.strata.length != strata.length) {
+			throw new IllegalArgumentException("strata cannot be subtracted");
+		}
+		HashSet<Long> positive = new HashSet<Long>();
+		HashSet<Long> negative = new HashSet<Long>();
+		long count = 0;
+		for (int i = STRATA - 1; i >= 0; i--) {
+			SimpleRDATable subtract = strata[i].subtractIBLT(other.strata[i]);
+			positive.clear();
+			negative.clear();
+			boolean decoded = subtract.decodeIDs(positive, negative);
+			if (!decoded) {
+				return (count + 1) << (i + 1);
+			}
+			count += positive.size() + negative.size();
+		}
+		return count;
+	}
+
+	/**
+	 * buckets for a difference: (1+slack) times the buckets per id that peel
+	 * at least 95% of the time, plus a floor for small differences.
+	 * SimpleRDATable has no key check, a cell with ids of both signs is taken
+	 * for pure with probability N_HASH/buckets, so this is well above the
+	 * peeling threshold (measured: 6 per id at 2 hash functions, 3 at 3 or 4)
+	 * @param difference
+	 * @param numHash
+	 * @param slack covers the estimation error
+	 * @return a multiple of numHash
+	 */
+	public static int bucketsFor(long difference, int numHash, double slack) {
+		double perId = numHash <= 2 ? 6 : 3;
+		double buckets = (1 + slack) * perId * difference + 8 * numHash;
+		long n = (long) Math.ceil(buckets / numHash) * numHash;
+		return (int) Math.min(n, Integer.MAX_VALUE / numHash * numHash);
+	}
+
+	/**
+	 * bytes on the wire
+	 * @return
+	 */
+	public int getSize() {
+		int n = 0;
+		for (SimpleRDATable s : strata) {
+			n += RDATableCodec.encode(s.buckets).remaining() + 4;
+		}
+		return n;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(strata.length);
+		for (SimpleRDATable s : strata) {
+			s.write(out);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		int n = in.readInt();
+		if (n < 0 || n > STRATA) {
+			throw new IOException("bad strata count: " + n);
+		}
+		strata = new SimpleRDATable[n];
+		for (int i = 0; i < n; i++) {
+			strata[i] = new SimpleRDATable();
+			strata[i].readFields(in);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package util.bloom.RDA;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * epochs of a measurement point: the capture writes the live epoch, the
+ * rounds read the frozen one. At a period boundary the live epoch is frozen
+ * and a cleared one takes its place with one reference swap, so the capture
+ * never waits for a round and a round never sees a table that is written or
+ * cleared under it.
+ *
+ * three epochs at most: live, frozen, and the spare the frozen one of the
+ * round before is cleared into; clearing happens on the thread that swaps,
+ * never on the capture thread
+ *
+ * @param <T> the table
+ */
+public class RDAEpochs<T> {
+
+	/**
+	 * makes and clears the tables
+	 */
+	public interface Factory<T> {
+		T create();
+
+		void clear(T table);
+	}
+
+	public static class Epoch<T> {
+		public final T table;
+		//id -> timestamp of the packets in the table
+		public final LongDoubleMap ids;
+		//writers inside insert, the swap waits for them
+		final AtomicInteger writers = new AtomicInteger(0);
+		//epoch of the follower written together with this one, see lead()
+		Epoch<?> companion;
+
+		Epoch(T _table, LongDoubleMap _ids) {
+			table = _table;
+			ids = _ids;
+		}
+	}
+
+	final Factory<T> factory;
+	final int expected;
+
+	volatile Epoch<T> live;
+	volatile Epoch<T> frozen;
+	Epoch<T> spare;
+	//the live epoch has not been frozen in this period
+	boolean open = true;
+	long swaps = 0;
+	//swapped together with this one, see lead()
+	RDAEpochs<?> follower;
+
+	/**
+	 * @param _factory
+	 * @param _expected packets per period
+	 */
+	public RDAEpochs(Factory<T> _factory, int _expected) {
+		factory = _factory;
+		expected = _expected;
+		live = newEpoch();
+		frozen = newEpoch();
+	}
+
+	Epoch<T> newEpoch() {
+		return new Epoch<T>(factory.create(), LongDoubleMap.create(expected, true));
+	}
+
+	/**
+	 * swap f in the same step as this one: a writer that entered an epoch here
+	 * writes the epoch of f paired with it, see companion(), and
+	 * freeze()/reopen() here move both, so a packet never lands in one period
+	 * here and in another one in f. f is not frozen or reopened on its own
+	 * afterwards.
+	 * @param f
+	 */
+	public synchronized void lead(RDAEpochs<?> f) {
+		follower = f;
+		live.companion = f.live;
+		frozen.companion = f.frozen;
+	}
+
+	/**
+	 * @param e an epoch entered on the leader
+	 * @return the epoch of the follower paired with e
+	 */
+	@SuppressWarnings("unchecked")
+	public static <U> Epoch<U> companion(Epoch<?> e) {
+		return (Epoch<U>) e.companion;
+	}
+
+	/**
+	 * the live epoch, held until exit(); a writer that raced with a swap
+	 * goes to the new epoch
+	 * @return
+	 */
+	public Epoch<T> enter() {
+		while (true) {
+			Epoch<T> e = live;
+			e.writers.incrementAndGet();
+			if (e == live) {
+				return e;
+			}
+			e.writers.decrementAndGet();
+		}
+	}
+
+	public void exit(Epoch<T> e) {
+		e.writers.decrementAndGet();
+	}
+
+	/**
+	 * freeze the live epoch, once per period; later calls in the same period
+	 * return the same frozen epoch
+	 * @return the frozen epoch
+	 */
+	public synchronized Epoch<T> freeze() {
+		if (!open) {
+			return frozen;
+		}
+		Epoch<T> next = take();
+		Epoch<T> old = frozen;
+		if (follower != null) {
+			synchronized (follower) {
+				next.companion = follower.take();
+				frozen = swap(next);
+				//the writers of the old live epoch here were the only ones of its companion
+				advance(follower, next.companion, true);
+			}
+		} else {
+			frozen = swap(next);
+		}
+		recycle(old);
+		open = false;
+		return frozen;
+	}
+
+	/**
+	 * a new period: the packets written since the freeze (or the whole period
+	 * if it was never frozen) are dropped, the frozen epoch stays for the
+	 * rounds still in flight
+	 */
+	public synchronized void reopen() {
+		Epoch<T> next = take();
+		if (follower != null) {
+			synchronized (follower) {
+				next.companion = follower.take();
+				recycle(swap(next));
+				advance(follower, next.companion, false);
+			}
+		} else {
+			recycle(swap(next));
+		}
+		open = true;
+	}
+
+	Epoch<T> take() {
+		Epoch<T> next = spare != null ? spare : newEpoch();
+		spare = null;
+		return next;
+	}
+
+	/**
+	 * the follower side of freeze()/reopen(), under the locks of both
+	 */
+	@SuppressWarnings("unchecked")
+	static <U> void advance(RDAEpochs<U> f, Epoch<?> next, boolean freeze) {
+		Epoch<U> old = f.swap((Epoch<U>) next);
+		if (freeze) {
+			//frozen moves on before the old one is cleared, as in freeze()
+			Epoch<U> stale = f.frozen;
+			f.frozen = old;
+			f.recycle(stale);
+		} else {
+			f.recycle(old);
+		}
+		f.open = !freeze;
+	}
+
+	/**
+	 * @param next the new live epoch
+	 * @return the old live epoch, with no writer left
+	 */
+	Epoch<T> swap(Epoch<T> next) {
+		Epoch<T> old = live;
+		live = next;
+		while (old.writers.get() > 0) {
+			Thread.yield();
+		}
+		swaps++;
+		return old;
+	}
+
+	void recycle(Epoch<T> e) {
+		factory.clear(e.table);
+		e.ids.clear();
+		spare = e;
+	}
+
+	public Epoch<T> getLive() {
+		return live;
+	}
+
+	public Epoch<T> getFrozen() {
+		return frozen;
+	}
+
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	public synchronized long getSwaps() {
+		return swaps;
+	}
+}
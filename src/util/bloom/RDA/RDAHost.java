@@ -2,14 +2,15 @@ package util.bloom.RDA;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -82,6 +83,9 @@ public class RDAHost {
 			.getConfigProps().getProperty("RDAEntries", "1000"));		
 	public static final int hashFuncNum = Integer.parseInt(Config
 			.getConfigProps().getProperty("hashFuncNum", "2"));	
+	//workers that read a pcap trace, 0 one per core
+	public static final int pcapThreads = Integer.parseInt(Config
+			.getConfigProps().getProperty("pcapThreads", "0"));
 	
 	//my address
 	public static	AddressIF me;
@@ -289,6 +293,16 @@ public class RDAHost {
 	 */
 	public void parseFiles(){
 		
+		if(PcapRDAIngest.isPcap(SessionFileName)){
+			try {
+				long n = PcapRDAIngest.ingestParallel(Paths.get(SessionFileName), _host, 1.0, pcapThreads);
+				log.main("pcap packets: "+n);
+			} catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+			return;
+		}
 		Scanner sc;
 		try {
 			sc = new Scanner(new File(SessionFileName));
@@ -454,7 +468,7 @@ public class RDAHost {
 			final AddressIF fromNode = arg1.from;
 			//和pair比 就少了一个arg1.isA的判断
 			//store my hashtable
-			RDAResponseMsg msg = new RDAResponseMsg(_host.sender.hashTable);
+			RDAResponseMsg msg = new RDAResponseMsg(_host.sender.copyTable());
 			sendResponseMessage("RDARequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
 		}
 
@@ -468,10 +482,10 @@ public class RDAHost {
 			final AddressIF fromNode = arg1.from;
 			//store nodes
 			Set<Long> nodes = arg1.ids;
-			Hashtable<Long,Double> hashTable = new Hashtable<Long,Double>();
+			LongDoubleMap hashTable = LongDoubleMap.create(nodes.size(), false);
 			Iterator<Long> ier = nodes.iterator();
 			while(ier.hasNext()){
-				Long key = ier.next();				
+				long key = ier.next();				
 				if(_host.SenderTSTable.containsKey(key)){
 					hashTable.put(key, _host.SenderTSTable.get(key));
 				}
@@ -524,9 +538,8 @@ public class RDAHost {
 											//milli
 											double delay =  (receiveTS - sendStamp)/1000000.0;
 											
-											RDATableEntry[] you = arg1._hashTable;
 											//call compute
-											RDATable receiver = RDATable.getRDATable(you);
+											RDATable receiver = arg1._table;
 											//ids
 											HashSet<Long> SenderItems = new HashSet<Long>();
 											HashSet<Long>  ReceiverItems= new HashSet<Long>();
@@ -562,7 +575,7 @@ public class RDAHost {
 																	long missResponseTS=System.nanoTime();
 																	double delayMiss=(missResponseTS-missMsgTS)/1000.0;
 																	//return packets
-																	Hashtable<Long, Double> ReceiverTSTable=argMiss._hashTable;
+																	LongDoubleMap ReceiverTSTable=argMiss._hashTable;
 																	//repair
 																	long repairT1=System.nanoTime();
 																	_host.repairDirect(SenderItems,receiver,ReceiverItems, ReceiverTSTable);
@@ -5,7 +5,6 @@ import java.io.FileNotFoundException;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
@@ -611,7 +610,7 @@ public class RDAHostSimpleLossReorder {
             // TODO Auto-generated method stub
             final AddressIF fromNode = arg1.from;
             //store my hashtable
-            RDAResponseMsg msg = new RDAResponseMsg(_hostReceiver.sender.hashTable);
+            RDAResponseMsg msg = new RDAResponseMsg(_hostReceiver.sender.copyTable());
             sendResponseMessage("RDARequest", fromNode, msg, arg1.getMsgId(), null, cbHandled);
         }
 
@@ -625,10 +624,10 @@ public class RDAHostSimpleLossReorder {
             final AddressIF fromNode = arg1.from;
             //store nodes
             Set<Long> nodes = arg1.ids;
-            Hashtable<Long, Double> hashTable = new Hashtable<Long, Double>();
+            LongDoubleMap hashTable = LongDoubleMap.create(nodes.size(), false);
             Iterator<Long> ier = nodes.iterator();
             while (ier.hasNext()) {
-                Long key = ier.next();
+                long key = ier.next();
                 if (_hostReceiver.SenderTSTable.containsKey(key)) {
                     hashTable.put(key, _hostReceiver.SenderTSTable.get(key));
                 }
@@ -677,13 +676,12 @@ public class RDAHostSimpleLossReorder {
                                             switch (result.state) {
                                                 case OK: {
 
-                                                    log.main("received RDA response: " + arg1._hashTable.length);
+                                                    log.main("received RDA response: " + arg1._table.getNumBuckets());
                                                     //milli
                                                     double delay = (receiveTS - sendStamp) / 1000000.0;
 
-                                                    RDATableEntry[] you = arg1._hashTable;
                                                     //call compute
-                                                    RDATable receiver = RDATable.getRDATable(you);
+                                                    RDATable receiver = arg1._table;
                                                     //ids
                                                     HashSet<Long> SenderItems = new HashSet<Long>();
                                                     HashSet<Long> ReceiverItems = new HashSet<Long>();
@@ -719,7 +717,7 @@ public class RDAHostSimpleLossReorder {
                                                                                     long missResponseTS = System.nanoTime();
                                                                                     double delayMiss = (missResponseTS - missMsgTS) / 1000.0;
                                                                                     //return packets
-                                                                                    Hashtable<Long, Double> ReceiverTSTable = argMiss._hashTable;
+                                                                                    LongDoubleMap ReceiverTSTable = argMiss._hashTable;
                                                                                     //repair
                                                                                     long repairT1 = System.nanoTime();
                                                                                     _hostSender.repairDirect(SenderItems, receiver, ReceiverItems, ReceiverTSTable);
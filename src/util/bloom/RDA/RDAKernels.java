@@ -0,0 +1,255 @@
+package util.bloom.RDA;
+
+/**
+ * end of round statistics over the buckets of two tables of the same size,
+ * one pass each and no table built on the way: the subtraction, the
+ * collapsed pair of CoordinatedCollapseAdjacentBank and the boxed index
+ * lists are folded into the loops.
+ *
+ * heap stores are read from their arrays, two lanes per step and the per
+ * bucket tests as masks, so the JIT keeps the loops free of bounds checks and
+ * branches; the other layouts take the same loops through the accessors.
+ * The key check column is compared when both stores have one.
+ */
+final class RDAKernels {
+
+	private RDAKernels() {
+	}
+
+	static ArrayRDABucketStore arrays(RDABucketStore s) {
+		return s instanceof ArrayRDABucketStore ? (ArrayRDABucketStore) s : null;
+	}
+
+	/**
+	 * getAvgTS: buckets with the same ids and counters on both sides
+	 * @param a this side
+	 * @param b the receiver
+	 * @return {sum of |TS a - TS b|, items, good buckets, buckets with ids}
+	 */
+	static double[] avgTS(RDABucketStore a, RDABucketStore b) {
+		ArrayRDABucketStore x = arrays(a);
+		ArrayRDABucketStore y = arrays(b);
+		if (x != null && y != null) {
+			return avgTS(x, y);
+		}
+		double sum = 0;
+		long c = 0;
+		int good = 0;
+		int total = 0;
+		for (int i = 0; i < a.size(); i++) {
+			int ca = a.getCounter(i);
+			boolean sameIds = a.getKeySum(i) == b.getKeySum(i);
+			boolean m = ca == b.getCounter(i) & sameIds & ca != 0 & a.getKeyCheck(i) == b.getKeyCheck(i);
+			sum += m ? Math.abs(a.getTS(i) - b.getTS(i)) : 0;
+			c += m ? Math.abs(ca) : 0;
+			good += m ? 1 : 0;
+			total += (m | !sameIds) ? 1 : 0;
+		}
+		return new double[] { sum, c, good, total };
+	}
+
+	static double[] avgTS(ArrayRDABucketStore a, ArrayRDABucketStore b) {
+		final int[] ca = a.Counter, cb = b.Counter;
+		final float[] ta = a.TS, tb = b.TS;
+		final long[] ka = a.keySum, kb = b.keySum;
+		final long[] kca = a.keyCheck, kcb = b.keyCheck;
+		final boolean check = kca != null && kcb != null;
+		final int n = Math.min(a.size(), b.size());
+		double s0 = 0, s1 = 0;
+		long c0 = 0, c1 = 0;
+		int good = 0, total = 0;
+		int i = 0;
+		for (; i + 1 < n; i += 2) {
+			int j = i + 1;
+			boolean id0 = ka[i] == kb[i];
+			boolean id1 = ka[j] == kb[j];
+			boolean m0 = ca[i] == cb[i] & id0 & ca[i] != 0 & (!check || kca[i] == kcb[i]);
+			boolean m1 = ca[j] == cb[j] & id1 & ca[j] != 0 & (!check || kca[j] == kcb[j]);
+			s0 += m0 ? Math.abs(ta[i] - tb[i]) : 0;
+			s1 += m1 ? Math.abs(ta[j] - tb[j]) : 0;
+			c0 += m0 ? Math.abs(ca[i]) : 0;
+			c1 += m1 ? Math.abs(ca[j]) : 0;
+			good += (m0 ? 1 : 0) + (m1 ? 1 : 0);
+			total += ((m0 | !id0) ? 1 : 0) + ((m1 | !id1) ? 1 : 0);
+		}
+		for (; i < n; i++) {
+			boolean id0 = ka[i] == kb[i];
+			boolean m0 = ca[i] == cb[i] & id0 & ca[i] != 0 & (!check || kca[i] == kcb[i]);
+			s0 += m0 ? Math.abs(ta[i] - tb[i]) : 0;
+			c0 += m0 ? Math.abs(ca[i]) : 0;
+			good += m0 ? 1 : 0;
+			total += (m0 | !id0) ? 1 : 0;
+		}
+		return new double[] { s0 + s1, c0 + c1, good, total };
+	}
+
+	/**
+	 * getGoodPackets: items in the non empty buckets with the same ids
+	 * @param a
+	 * @param b
+	 * @return the items, not divided by the hash functions
+	 */
+	static double goodPackets(RDABucketStore a, RDABucketStore b) {
+		ArrayRDABucketStore x = arrays(a);
+		ArrayRDABucketStore y = arrays(b);
+		if (x != null && y != null) {
+			return goodPackets(x, y);
+		}
+		double good = 0;
+		for (int i = 0; i < a.size(); i++) {
+			boolean m = !a.empty(i) & !b.empty(i) & a.getKeySum(i) == b.getKeySum(i)
+					& a.getKeyCheck(i) == b.getKeyCheck(i);
+			good += m ? b.getNumItems(i) : 0;
+		}
+		return good;
+	}
+
+	static double goodPackets(ArrayRDABucketStore a, ArrayRDABucketStore b) {
+		final int[] ca = a.Counter, cb = b.Counter;
+		final long[] ka = a.keySum, kb = b.keySum;
+		final long[] kca = a.keyCheck, kcb = b.keyCheck;
+		final boolean check = kca != null && kcb != null;
+		final int n = Math.min(a.size(), b.size());
+		long g0 = 0, g1 = 0;
+		int i = 0;
+		for (; i + 1 < n; i += 2) {
+			int j = i + 1;
+			g0 += good(ca[i], cb[i], ka[i], kb[i], check ? kca[i] : 0, check ? kcb[i] : 0);
+			g1 += good(ca[j], cb[j], ka[j], kb[j], check ? kca[j] : 0, check ? kcb[j] : 0);
+		}
+		for (; i < n; i++) {
+			g0 += good(ca[i], cb[i], ka[i], kb[i], check ? kca[i] : 0, check ? kcb[i] : 0);
+		}
+		return g0 + g1;
+	}
+
+	/**
+	 * |cb| if both buckets hold something and the ids are the same
+	 */
+	static int good(int ca, int cb, long ka, long kb, long kca, long kcb) {
+		//ka == kb, so a bucket is empty if its counter and checks are 0
+		boolean m = ka == kb & kca == kcb & (ca != 0 | ka != 0 | kca != 0) & (cb != 0 | kb != 0 | kcb != 0);
+		return m ? Math.abs(cb) : 0;
+	}
+
+	/**
+	 * getFScoreByCollapse without the collapsed tables: per bank, the buckets
+	 * with the same counters (and checks) are paired in order, the first of a
+	 * pair with + and the second with -, and the pairs with the same ids give
+	 * the squared delay differences; the bank's mean is the mean |TS a - TS b|
+	 * of the paired buckets. As in the scan of the collapsed tables, bank k is
+	 * scored over the pairs of the banks up to k, a bank without a bucket to
+	 * pair has no pairs of its own, and the scan ends at the first bank
+	 * without a pair so far.
+	 * @param a this side
+	 * @param b the other side
+	 * @param nHash banks
+	 * @return {mean over the banks of |E[d^2] - mean^2|, fraction of pairs with different ids},
+	 * -1 if no bank has a bucket to pair
+	 */
+	static double[] collapsedVariance(RDABucketStore a, RDABucketStore b, int nHash) {
+		ArrayRDABucketStore x = arrays(a);
+		ArrayRDABucketStore y = arrays(b);
+		boolean fast = x != null && y != null;
+		final boolean check = fast && x.keyCheck != null && y.keyCheck != null;
+		int per = b.size() / nHash;
+		//per bank with a bucket to pair, sums over the pairs so far
+		double[] branchAvg = new double[nHash];
+		double[] squared = new double[nHash];
+		double[] items = new double[nHash];
+		long[] pairs = new long[nHash];
+		long[] unequal = new long[nHash];
+		int intervals = 0;
+		double sq = 0;
+		double it = 0;
+		long np = 0;
+		long ne = 0;
+		for (int bank = 0; bank < nHash; bank++) {
+			int start = bank * per;
+			int end = start + per;
+			double absSum = 0;
+			int counterPackets = 0;
+			int matches = 0;
+			int pending = -1;
+			for (int i = start; i < end; i++) {
+				int ca, cb;
+				float ta, tb;
+				if (fast) {
+					ca = x.Counter[i];
+					cb = y.Counter[i];
+					if (ca != cb || (check && x.keyCheck[i] != y.keyCheck[i])) {
+						continue;
+					}
+					ta = x.TS[i];
+					tb = y.TS[i];
+				} else {
+					ca = a.getCounter(i);
+					cb = b.getCounter(i);
+					if (ca != cb || a.getKeyCheck(i) != b.getKeyCheck(i)) {
+						continue;
+					}
+					ta = a.getTS(i);
+					tb = b.getTS(i);
+				}
+				matches++;
+				absSum += Math.abs(ta - tb);
+				counterPackets += ca;
+				if (pending < 0) {
+					pending = i;
+					continue;
+				}
+				int p = pending;
+				pending = -1;
+				np++;
+				long idsA, idsB;
+				float meTS, youTS;
+				if (fast) {
+					idsA = x.keySum[p] ^ x.keySum[i];
+					idsB = y.keySum[p] ^ y.keySum[i];
+					meTS = x.TS[p] - ta;
+					youTS = y.TS[p] - tb;
+				} else {
+					idsA = a.getKeySum(p) ^ a.getKeySum(i);
+					idsB = b.getKeySum(p) ^ b.getKeySum(i);
+					meTS = a.getTS(p) - ta;
+					youTS = b.getTS(p) - tb;
+				}
+				if (idsA != idsB) {
+					ne++;
+					continue;
+				}
+				it += ca + (fast ? x.Counter[p] : a.getCounter(p));
+				double d = (double) youTS - (double) meTS;
+				sq += d * d;
+			}
+			//0/0 if nothing matched, as the collapse has it
+			branchAvg[bank] = absSum / counterPackets;
+			if (matches == 0) {
+				continue;
+			}
+			squared[intervals] = sq;
+			items[intervals] = it;
+			pairs[intervals] = np;
+			unequal[intervals] = ne;
+			intervals++;
+		}
+		if (intervals == 0) {
+			return new double[] { -1, Double.NaN };
+		}
+		double avg = 0;
+		long countAll = 0;
+		long countUnequal = 0;
+		for (int k = 0; k < intervals; k++) {
+			if (pairs[k] == 0) {
+				break;
+			}
+			countAll += pairs[k];
+			countUnequal += unequal[k];
+			if (items[k] == 0) {
+				continue;
+			}
+			avg += Math.abs(squared[k] / items[k] - branchAvg[k] * branchAvg[k]);
+		}
+		return new double[] { avg / nHash, countUnequal / (countAll + 0.0) };
+	}
+}
@@ -1,14 +1,14 @@
 package util.bloom.RDA;
 
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Random;
 
 public class RDAMeasurementPoint {
 
     RDATable sender;
-    Hashtable<Long, Double> SenderTSTable;
+    LongDoubleMap SenderTSTable;
 
     long maximumTotalPackets = 0;
 
@@ -20,7 +20,7 @@ public class RDAMeasurementPoint {
     public RDAMeasurementPoint(int _expectedNumEntries) {
 
         sender = new RDATable(_expectedNumEntries);      //这种构造的RDATable 参数requiredLeadingZeros=0
-        SenderTSTable = new Hashtable<Long, Double>();
+        SenderTSTable = LongDoubleMap.create(_expectedNumEntries, false);
     }
 
     public RDAMeasurementPoint(int _expectedNumEntries, long totalPackets, int hashNum) {
@@ -29,7 +29,7 @@ public class RDAMeasurementPoint {
 
         sender.setHash(hashNum);
 
-        SenderTSTable = new Hashtable<Long, Double>();
+        SenderTSTable = LongDoubleMap.create(_expectedNumEntries, false);
 
         maximumTotalPackets = totalPackets;
         sender.sampleProbability = 1;
@@ -40,7 +40,7 @@ public class RDAMeasurementPoint {
 
         sender = new RDATable(_expectedNumEntries);
 
-        SenderTSTable = new Hashtable<Long, Double>();
+        SenderTSTable = LongDoubleMap.create(_expectedNumEntries, false);
 
         maximumTotalPackets = totalPackets;
         sender.sampleProbability = samplingProb;
@@ -52,7 +52,7 @@ public class RDAMeasurementPoint {
         sender = new RDATable(_expectedNumEntries);
         //receiver = new RDATable(_expectedNumEntries);
 
-        SenderTSTable = new Hashtable<Long, Double>();
+        SenderTSTable = LongDoubleMap.create(_expectedNumEntries, false);
         //ReceiverTSTable = new Hashtable<Long,Double>();
         //maximumTotalPackets=totalPackets;
         sender.sampleProbability = samplingProb;
@@ -181,7 +181,7 @@ public class RDAMeasurementPoint {
      *
      * @return
      */
-    public void repair(RDATable receiver, Hashtable<Long, Double> ReceiverTSTable) {
+    public void repair(RDATable receiver, Map<Long, Double> ReceiverTSTable) {
         /**
          * subtract, a new TBFTable
          */
@@ -214,7 +214,7 @@ public class RDAMeasurementPoint {
      * @param ReceiverItems
      * @param ReceiverMiss
      */
-    public void repairDirect(HashSet<Long> SenderItems, RDATable receiver, HashSet<Long> ReceiverItems, Hashtable<Long, Double> ReceiverMiss) {
+    public void repairDirect(HashSet<Long> SenderItems, RDATable receiver, HashSet<Long> ReceiverItems, Map<Long, Double> ReceiverMiss) {
         /**
          * subtract, a new TBFTable
          */
@@ -245,7 +245,7 @@ public class RDAMeasurementPoint {
      */
 
 
-    public double[] repairNow(double percent, RDATable receiver, Hashtable<Long, Double> ReceiverTSTable) {
+    public double[] repairNow(double percent, RDATable receiver, Map<Long, Double> ReceiverTSTable) {
         /**
          * subtract, a new TBFTable
          */
@@ -310,11 +310,11 @@ public class RDAMeasurementPoint {
         }
 
         double good = 0;
-        for (int i = 0; i < sender.hashTable.length; i++) {
-            if (sender.hashTable[i].keyCheck == receiver.hashTable[i].keyCheck &&
-                    sender.hashTable[i].Counter > 0 &&
-                    sender.hashTable[i].keySum == receiver.hashTable[i].keySum) {
-                good += sender.hashTable[i].Counter;
+        for (int i = 0; i < sender.buckets.size(); i++) {
+            if (sender.buckets.getKeyCheck(i) == receiver.buckets.getKeyCheck(i) &&
+                    sender.buckets.getCounter(i) > 0 &&
+                    sender.buckets.getKeySum(i) == receiver.buckets.getKeySum(i)) {
+                good += sender.buckets.getCounter(i);
             }
         }
 
@@ -323,7 +323,7 @@ public class RDAMeasurementPoint {
         return result;
     }
 
-    public double repair(double percent, RDATable receiver, Hashtable<Long, Double> ReceiverTSTable) {
+    public double repair(double percent, RDATable receiver, Map<Long, Double> ReceiverTSTable) {
         /**
          * subtract, a new TBFTable
          */
@@ -392,11 +392,11 @@ public class RDAMeasurementPoint {
 
         //修复后的good packet总数
         double good = 0;
-        for (int i = 0; i < sender.hashTable.length; i++) {
-            if (sender.hashTable[i].keyCheck == receiver.hashTable[i].keyCheck &&
-                    sender.hashTable[i].Counter > 0 &&
-                    sender.hashTable[i].keySum == receiver.hashTable[i].keySum) {
-                good += sender.hashTable[i].Counter;
+        for (int i = 0; i < sender.buckets.size(); i++) {
+            if (sender.buckets.getKeyCheck(i) == receiver.buckets.getKeyCheck(i) &&
+                    sender.buckets.getCounter(i) > 0 &&
+                    sender.buckets.getKeySum(i) == receiver.buckets.getKeySum(i)) {
+                good += sender.buckets.getCounter(i);
             }
         }
 
@@ -421,7 +421,7 @@ public class RDAMeasurementPoint {
      * @param avg, average number
      * @return
      */
-    public double getStandardDeviation(double avg, RDATable receiver, Hashtable<Long, Double> ReceiverTSTable) {
+    public double getStandardDeviation(double avg, RDATable receiver, Map<Long, Double> ReceiverTSTable) {
         return sender.getSTD(receiver, avg);
 
         //return receiver.getVarianceStatistics(sender, avg);
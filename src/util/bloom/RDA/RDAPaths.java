@@ -0,0 +1,150 @@
+package util.bloom.RDA;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * per path state of a hub, keyed by the (src,dst) IPv4 pair packed into a
+ * long. Open addressing over two arrays; the capture looks a path up on every
+ * packet without a lock or an object, paths are added rarely, so an add copies
+ * the arrays and publishes them with one reference write.
+ *
+ * key 0 (0.0.0.0 to 0.0.0.0) marks a free slot and is never a path
+ *
+ * @param <T> the state of a path
+ */
+public class RDAPaths<T> {
+
+	static final class Slots {
+		final long[] keys;
+		final Object[] values;
+		final int mask;
+		final int size;
+
+		Slots(int capacity, int _size) {
+			keys = new long[capacity];
+			values = new Object[capacity];
+			mask = capacity - 1;
+			size = _size;
+		}
+	}
+
+	volatile Slots slots = new Slots(8, 0);
+
+	/**
+	 * @param src IPv4 source, big endian as PcapRDAIngest.ipv4 reads it
+	 * @param dst IPv4 destination
+	 * @return
+	 */
+	public static long key(int src, int dst) {
+		return ((long) src << 32) | (dst & 0xffffffffL);
+	}
+
+	public static int src(long key) {
+		return (int) (key >>> 32);
+	}
+
+	public static int dst(long key) {
+		return (int) key;
+	}
+
+	static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * @param src
+	 * @param dst
+	 * @return the state of the path, null if it is not measured
+	 */
+	public T get(int src, int dst) {
+		return get(key(src, dst));
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(long key) {
+		Slots s = slots;
+		int i = slot(key, s.mask);
+		while (true) {
+			long k = s.keys[i];
+			if (k == key) {
+				return (T) s.values[i];
+			}
+			if (k == 0) {
+				return null;
+			}
+			i = (i + 1) & s.mask;
+		}
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return the state already kept for the path, or value
+	 */
+	public synchronized T putIfAbsent(long key, T value) {
+		if (key == 0) {
+			throw new IllegalArgumentException("0.0.0.0 to 0.0.0.0 is not a path");
+		}
+		T old = get(key);
+		if (old != null) {
+			return old;
+		}
+		Slots s = slots;
+		//at most half full
+		int capacity = s.keys.length;
+		while ((s.size + 1) * 2 > capacity) {
+			capacity <<= 1;
+		}
+		Slots next = new Slots(capacity, s.size + 1);
+		for (int i = 0; i < s.keys.length; i++) {
+			if (s.keys[i] != 0) {
+				insert(next, s.keys[i], s.values[i]);
+			}
+		}
+		insert(next, key, value);
+		slots = next;
+		return value;
+	}
+
+	static void insert(Slots s, long key, Object value) {
+		int i = slot(key, s.mask);
+		while (s.keys[i] != 0) {
+			i = (i + 1) & s.mask;
+		}
+		s.keys[i] = key;
+		s.values[i] = value;
+	}
+
+	public int size() {
+		return slots.size;
+	}
+
+	/**
+	 * @return the keys of the paths, in no order
+	 */
+	public long[] keys() {
+		Slots s = slots;
+		long[] out = new long[s.size];
+		int n = 0;
+		for (int i = 0; i < s.keys.length; i++) {
+			if (s.keys[i] != 0) {
+				out[n++] = s.keys[i];
+			}
+		}
+		return out;
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<T> values() {
+		Slots s = slots;
+		List<T> out = new ArrayList<T>(s.size);
+		for (int i = 0; i < s.keys.length; i++) {
+			if (s.keys[i] != 0) {
+				out.add((T) s.values[i]);
+			}
+		}
+		return out;
+	}
+}
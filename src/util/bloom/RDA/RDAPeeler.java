@@ -0,0 +1,450 @@
+package util.bloom.RDA;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import util.bloom.Apache.Hash.hashing.LongHashFunction;
+
+/**
+ * worklist peeling of an RDA table in place:
+ * the pure cells are found by one scan, after that only the cells
+ * touched by a peel are checked again
+ *
+ * the parallel mode peels one bank per round, every bank has one owning
+ * thread that removes the peeled ids from its own cells
+ */
+public class RDAPeeler {
+
+	private static ExecutorService parallelPeel = null;
+
+	//small rounds are not worth a hand off
+	static int minParallelBatch = 256;
+
+	final RDABucketStore buckets;
+	final int nHash;
+	final int bucketsPerBank;
+	final LongHashFunction[] posHash;
+	//null: a cell is pure if its key hashes back to it (SimpleRDATable)
+	final LongHashFunction checkHash;
+
+	LongList positive = new LongList(16);
+	LongList negative = new LongList(16);
+	//TS of the peeled cells, by the index in positive and negative, for unpeel()
+	FloatList positiveTS = new FloatList(16);
+	FloatList negativeTS = new FloatList(16);
+	boolean decoded = false;
+
+	//streaming: cells below ready hold their final values, -1 all do
+	int ready = -1;
+	IntList streamQueue = null;
+
+	/**
+	 * @param _buckets peeled in place
+	 * @param _nHash number of banks
+	 * @param _posHash hash of each bank
+	 * @param _checkHash hash of the keyCheck column, or null
+	 */
+	public RDAPeeler(RDABucketStore _buckets, int _nHash, LongHashFunction[] _posHash,
+			LongHashFunction _checkHash) {
+		buckets = _buckets;
+		nHash = _nHash;
+		bucketsPerBank = _buckets.size() / _nHash;
+		posHash = _posHash;
+		checkHash = _checkHash;
+	}
+
+	static synchronized ExecutorService getPool() {
+		if (parallelPeel == null) {
+			ThreadFactory peelFactory = new ThreadFactoryBuilder().setNameFormat("Peel-%d")
+					.setDaemon(true).build();
+			parallelPeel = Executors.newCachedThreadPool(peelFactory);
+		}
+		return parallelPeel;
+	}
+
+	/**
+	 * @param parallel one thread per bank
+	 * @return true if all buckets are empty afterwards
+	 */
+	public boolean peel(boolean parallel) {
+		positive.n = 0;
+		negative.n = 0;
+		positiveTS.n = 0;
+		negativeTS.n = 0;
+		if (parallel && nHash > 1) {
+			peelBanks();
+		} else {
+			peelQueue();
+		}
+		decoded = allEmpty();
+		return decoded;
+	}
+
+	/**
+	 * ids with Counter 1
+	 * @return
+	 */
+	public long[] getPositive() {
+		return positive.toArray();
+	}
+
+	/**
+	 * ids with Counter -1
+	 * @return
+	 */
+	public long[] getNegative() {
+		return negative.toArray();
+	}
+
+	public boolean isDecoded() {
+		return decoded;
+	}
+
+	int position(long id, int bank) {
+		int h = (int) Math.abs(posHash[bank].hashLong(id) % Integer.MAX_VALUE);
+		return bank * bucketsPerBank + h % bucketsPerBank;
+	}
+
+	boolean isPure(int index) {
+		int counter = buckets.getCounter(index);
+		if (counter != 1 && counter != -1) {
+			return false;
+		}
+		long keySum = buckets.getKeySum(index);
+		if (checkHash != null) {
+			return checkHash.hashLong(keySum) == buckets.getKeyCheck(index);
+		}
+		int bank = index / bucketsPerBank;
+		return bank < nHash && position(keySum, bank) == index;
+	}
+
+	/**
+	 * cheap filter before the hash check
+	 */
+	boolean maybePure(int index) {
+		int counter = buckets.getCounter(index);
+		return counter == 1 || counter == -1;
+	}
+
+	/**
+	 * a table of m cells holds at most m peelable ids; more means a cell was
+	 * taken for pure by chance and the peel is feeding on its own garbage
+	 */
+	boolean exhausted() {
+		return positive.n + negative.n >= buckets.size();
+	}
+
+	void record(long keySum, int counter, float ts) {
+		if (counter == 1) {
+			positive.add(keySum);
+			positiveTS.add(ts);
+		} else {
+			negative.add(keySum);
+			negativeTS.add(ts);
+		}
+	}
+
+	/**
+	 * add the peeled ids back into their cells, the buckets then hold what
+	 * they held before the peel, up to the rounding of the TS sums
+	 */
+	public void unpeel() {
+		unpeel(positive, positiveTS, 1);
+		unpeel(negative, negativeTS, -1);
+	}
+
+	void unpeel(LongList keys, FloatList ts, int counter) {
+		for (int j = 0; j < keys.n; j++) {
+			long keySum = keys.a[j];
+			long keyCheck = checkHash == null ? 0 : checkHash.hashLong(keySum);
+			for (int bank = 0; bank < nHash; bank++) {
+				buckets.update(position(keySum, bank), counter, ts.a[j], keySum, keyCheck);
+			}
+		}
+	}
+
+	/**
+	 * peel a table whose buckets arrive in order, chunk by chunk;
+	 * removing an id from a cell that has not arrived yet is fine,
+	 * the chunk is subtracted on top of it later
+	 */
+	public void beginStream() {
+		positive.n = 0;
+		negative.n = 0;
+		positiveTS.n = 0;
+		negativeTS.n = 0;
+		decoded = false;
+		ready = 0;
+		streamQueue = new IntList(1024);
+	}
+
+	/**
+	 * the cells below end are complete, peel as far as they allow
+	 * @param end
+	 */
+	public void advance(int end) {
+		int n = Math.min(end, nHash * bucketsPerBank);
+		for (int i = ready; i < n; i++) {
+			if (isPure(i)) {
+				streamQueue.add(i);
+			}
+		}
+		ready = end;
+		drain(streamQueue);
+	}
+
+	/**
+	 * all chunks are in
+	 * @return true if all buckets are empty
+	 */
+	public boolean finishStream() {
+		advance(buckets.size());
+		ready = -1;
+		streamQueue = null;
+		decoded = allEmpty();
+		return decoded;
+	}
+
+	/**
+	 * single thread, LIFO worklist
+	 */
+	void peelQueue() {
+		int n = nHash * bucketsPerBank;
+		IntList queue = new IntList(1024);
+		for (int i = 0; i < n; i++) {
+			if (isPure(i)) {
+				queue.add(i);
+			}
+		}
+		drain(queue);
+	}
+
+	void drain(IntList queue) {
+		while (queue.n > 0 && !exhausted()) {
+			int i = queue.a[--queue.n];
+			//may have been peeled through another cell
+			if (!isPure(i)) {
+				continue;
+			}
+			long keySum = buckets.getKeySum(i);
+			int counter = buckets.getCounter(i);
+			float ts = buckets.getTS(i);
+			long keyCheck = checkHash == null ? 0 : checkHash.hashLong(keySum);
+			record(keySum, counter, ts);
+			for (int bank = 0; bank < nHash; bank++) {
+				int index = position(keySum, bank);
+				buckets.update(index, -counter, -ts, keySum, keyCheck);
+				//checked when popped, cells not arrived yet are scanned by advance()
+				if (index != i && (ready < 0 || index < ready) && maybePure(index)) {
+					queue.add(index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * round robin over the banks: collect the pure cells of one bank,
+	 * then every bank owner removes the collected ids from its cells
+	 * and keeps the cells that became pure for its own round
+	 */
+	void peelBanks() {
+		final IntList[] pending = new IntList[nHash];
+		for (int bank = 0; bank < nHash; bank++) {
+			pending[bank] = new IntList(1024);
+		}
+		final Batch batch = new Batch(1024);
+		long[] taken = new long[(buckets.size() >> 6) + 1];
+
+		//seed
+		runBanks(new BankTask() {
+			public void run(int bank) {
+				int end = (bank + 1) * bucketsPerBank;
+				for (int i = bank * bucketsPerBank; i < end; i++) {
+					if (isPure(i)) {
+						pending[bank].add(i);
+					}
+				}
+			}
+		});
+
+		int idle = 0;
+		int round = 0;
+		while (idle < nHash && !exhausted()) {
+			final int bank = round;
+			round = (round + 1) % nHash;
+
+			IntList cand = pending[bank];
+			batch.n = 0;
+			for (int j = 0; j < cand.n; j++) {
+				int i = cand.a[j];
+				if ((taken[i >> 6] & (1L << i)) != 0 || !isPure(i)) {
+					continue;
+				}
+				taken[i >> 6] |= 1L << i;
+				batch.add(i, buckets.getKeySum(i), buckets.getCounter(i), buckets.getTS(i));
+				record(batch.keySum[batch.n - 1], batch.counter[batch.n - 1], batch.ts[batch.n - 1]);
+			}
+			cand.n = 0;
+			for (int j = 0; j < batch.n; j++) {
+				int i = batch.cell[j];
+				taken[i >> 6] &= ~(1L << i);
+			}
+			if (batch.n == 0) {
+				idle++;
+				continue;
+			}
+			idle = 0;
+
+			BankTask remove = new BankTask() {
+				public void run(int owner) {
+					IntList next = pending[owner];
+					for (int j = 0; j < batch.n; j++) {
+						long keySum = batch.keySum[j];
+						long keyCheck = checkHash == null ? 0 : checkHash.hashLong(keySum);
+						int index = position(keySum, owner);
+						buckets.update(index, -batch.counter[j], -batch.ts[j], keySum, keyCheck);
+						if (owner != bank && maybePure(index)) {
+							next.add(index);
+						}
+					}
+				}
+			};
+			if (batch.n < minParallelBatch) {
+				for (int owner = 0; owner < nHash; owner++) {
+					remove.run(owner);
+				}
+			} else {
+				runBanks(remove);
+			}
+		}
+	}
+
+	interface BankTask {
+		void run(int bank);
+	}
+
+	/**
+	 * run the task for every bank, bank 0 on the calling thread,
+	 * returns when all banks are done
+	 */
+	void runBanks(final BankTask task) {
+		final Semaphore done = new Semaphore(0);
+		ExecutorService pool = getPool();
+		for (int bank = 1; bank < nHash; bank++) {
+			final int b = bank;
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						task.run(b);
+					} finally {
+						done.release();
+					}
+				}
+			});
+		}
+		task.run(0);
+		try {
+			done.acquire(nHash - 1);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	boolean allEmpty() {
+		for (int i = 0; i < buckets.size(); i++) {
+			if (!buckets.empty(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static class IntList {
+		int[] a;
+		int n = 0;
+
+		IntList(int capacity) {
+			a = new int[capacity];
+		}
+
+		void add(int v) {
+			if (n == a.length) {
+				a = Arrays.copyOf(a, n << 1);
+			}
+			a[n++] = v;
+		}
+	}
+
+	static class LongList {
+		long[] a;
+		int n = 0;
+
+		LongList(int capacity) {
+			a = new long[capacity];
+		}
+
+		void add(long v) {
+			if (n == a.length) {
+				a = Arrays.copyOf(a, n << 1);
+			}
+			a[n++] = v;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(a, n);
+		}
+	}
+
+	static class FloatList {
+		float[] a;
+		int n = 0;
+
+		FloatList(int capacity) {
+			a = new float[capacity];
+		}
+
+		void add(float v) {
+			if (n == a.length) {
+				a = Arrays.copyOf(a, n << 1);
+			}
+			a[n++] = v;
+		}
+	}
+
+	/**
+	 * the cells peeled in one round
+	 */
+	static class Batch {
+		int[] cell;
+		long[] keySum;
+		int[] counter;
+		float[] ts;
+		int n = 0;
+
+		Batch(int capacity) {
+			cell = new int[capacity];
+			keySum = new long[capacity];
+			counter = new int[capacity];
+			ts = new float[capacity];
+		}
+
+		void add(int i, long k, int c, float t) {
+			if (n == cell.length) {
+				cell = Arrays.copyOf(cell, n << 1);
+				keySum = Arrays.copyOf(keySum, n << 1);
+				counter = Arrays.copyOf(counter, n << 1);
+				ts = Arrays.copyOf(ts, n << 1);
+			}
+			cell[n] = i;
+			keySum[n] = k;
+			counter[n] = c;
+			ts[n] = t;
+			n++;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package util.bloom.RDA;
+
+/**
+ * multi-resolution RDA table: level 0 is the table, every further level folds
+ * the one below to half the buckets (RDABucketStore.fold), down to a minimum
+ * bank size. Every level is a valid table of the same ids, so two hosts can
+ * subtract and peel at any level; the receiver asks for the coarsest one
+ * first and for a finer one only when that does not peel or is too noisy
+ */
+public class RDAPyramid {
+
+	final int nHash;
+	final RDABucketStore[] levels;
+
+	/**
+	 * @param full level 0, kept as is
+	 * @param _nHash number of banks
+	 * @param minBucketsPerBank no level below this bank size
+	 */
+	public RDAPyramid(RDABucketStore full, int _nHash, int minBucketsPerBank) {
+		nHash = _nHash;
+		int n = numLevels(full.size(), _nHash, minBucketsPerBank);
+		levels = new RDABucketStore[n];
+		levels[0] = full;
+		for (int i = 1; i < n; i++) {
+			levels[i] = levels[i - 1].fold(_nHash);
+		}
+	}
+
+	/**
+	 * levels a table of the given size can be folded into, at least 1
+	 * @param size
+	 * @param nHash
+	 * @param minBucketsPerBank
+	 * @return
+	 */
+	public static int numLevels(int size, int nHash, int minBucketsPerBank) {
+		int bank = size / nHash;
+		int n = 1;
+		while (bank % 2 == 0 && bank / 2 >= Math.max(1, minBucketsPerBank)) {
+			bank /= 2;
+			n++;
+		}
+		return n;
+	}
+
+	public int getLevels() {
+		return levels.length;
+	}
+
+	/**
+	 * @param level 0 is the full table
+	 * @return shared, copy before changing it
+	 */
+	public RDABucketStore getLevel(int level) {
+		return levels[level];
+	}
+
+	public int coarsest() {
+		return levels.length - 1;
+	}
+
+	/**
+	 * buckets of all levels together
+	 * @return
+	 */
+	public long getNumBuckets() {
+		long n = 0;
+		for (RDABucketStore s : levels) {
+			n += s.size();
+		}
+		return n;
+	}
+}
@@ -0,0 +1,142 @@
+package util.bloom.RDA;
+
+import util.bloom.Apache.Hash.hashing.LongHashFunction;
+
+/**
+ * receiving side of a chunked table transfer:
+ * every chunk of the remote table is subtracted from a copy of the local
+ * table as it arrives, and peeling runs on the buckets that are complete,
+ * so decoding is mostly done when the last chunk lands; the remote table
+ * is not kept, remote() rebuilds it in the buckets of the difference
+ *
+ * chunks are bank aligned and arrive in order, see chunkLength()
+ */
+public class RDAStreamDecoder {
+
+	//local - remote, from RDATablePool
+	RDABucketStore diff;
+	final int size;
+	final int nHash;
+	final RDAPeeler peeler;
+
+	int received = 0;
+
+	/**
+	 * @param local this side's table, not written while the decoder is in use
+	 */
+	public RDAStreamDecoder(RDATable local) {
+		this(local.buckets, RDATable.N_HASH, RDATable.LongHashFunction4PosHash,
+				RDATable.LongHashFunction4PKeyHash);
+	}
+
+	/**
+	 * @param local this side's table, not written while the decoder is in use
+	 */
+	public RDAStreamDecoder(SimpleRDATable local) {
+		this(local.buckets, SimpleRDATable.N_HASH, SimpleRDATable.LongHashFunction4PosHash,
+				null);
+	}
+
+	RDAStreamDecoder(RDABucketStore local, int _nHash, LongHashFunction[] posHash,
+			LongHashFunction checkHash) {
+		nHash = _nHash;
+		size = local.size();
+		diff = RDATablePool.get().take(local, _nHash);
+		diff.copyFrom(local, 0, 0, local.size());
+		peeler = new RDAPeeler(diff, _nHash, posHash, checkHash);
+		peeler.beginStream();
+	}
+
+	/**
+	 * buckets of the first chunk starting at start, never crossing a bank
+	 * @param size table size
+	 * @param nHash
+	 * @param start
+	 * @param maxBuckets
+	 * @return
+	 */
+	public static int chunkLength(int size, int nHash, int start, int maxBuckets) {
+		int bucketsPerBank = size / nHash;
+		int bankEnd = size;
+		if (bucketsPerBank > 0 && start < nHash * bucketsPerBank) {
+			bankEnd = (start / bucketsPerBank + 1) * bucketsPerBank;
+		}
+		return Math.max(0, Math.min(maxBuckets, bankEnd - start));
+	}
+
+	/**
+	 * subtract the next chunk of the remote table and peel
+	 * @param start first bucket of the chunk
+	 * @param chunk
+	 */
+	public void onChunk(int start, RDABucketStore chunk) {
+		int len = chunk.size();
+		if (start != received || start + len > size) {
+			throw new IllegalStateException("chunk out of order: " + start + "+" + len
+					+ ", expected " + received + " of " + size);
+		}
+		diff.subtract(chunk, 0, start, len);
+		received += len;
+		peeler.advance(received);
+	}
+
+	/**
+	 * next bucket to request
+	 * @return
+	 */
+	public int getReceived() {
+		return received;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isComplete() {
+		return received == size;
+	}
+
+	/**
+	 * peel what is left after the last chunk
+	 * @return true if the difference is fully decoded
+	 */
+	public boolean finish() {
+		return peeler.finishStream();
+	}
+
+	public long[] getPositive() {
+		return peeler.getPositive();
+	}
+
+	public long[] getNegative() {
+		return peeler.getNegative();
+	}
+
+	/**
+	 * the remote table, after finish(): the peeled ids go back into the
+	 * difference and the difference is taken from the local table, in place.
+	 * The decoder is done afterwards, the store goes back to RDATablePool
+	 * with the table that wraps it
+	 * @param local the table the decoder was made from, unchanged since
+	 * @return
+	 */
+	public RDABucketStore remote(RDABucketStore local) {
+		peeler.unpeel();
+		//local - (local - remote)
+		local.subtractInto(diff, diff);
+		RDABucketStore remote = diff;
+		diff = null;
+		return remote;
+	}
+
+	/**
+	 * give the difference back to RDATablePool, for a transfer that ends
+	 * without remote()
+	 */
+	public void release() {
+		if (diff != null) {
+			RDATablePool.get().give(diff, nHash);
+			diff = null;
+		}
+	}
+}
@@ -13,6 +13,7 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
@@ -48,7 +49,8 @@ public class RDATable implements Writable, Serializable {
     public static double scaleBucketFactor = 1;   //桶大小
 
     public int valueSize = 0;
-    public RDATableEntry[] hashTable = null;
+    //Counter, TS, keySum, keyCheck of every bucket
+    public RDABucketStore buckets = null;
 
     int expectedNumEntries = 0;
 
@@ -83,7 +85,7 @@ public class RDATable implements Writable, Serializable {
     }
 
     public RDATable() {
-        hashTable = null;
+        buckets = null;
         sampleProbability = 1;
 
         //semaphore
@@ -113,11 +115,7 @@ public class RDATable implements Writable, Serializable {
 
         //nEntries= Math.max(_expectedNumEntries, _expectedNumEntries/2)
 
-        hashTable = new RDATableEntry[expectedNumEntries];
-
-        for (int i = 0; i < expectedNumEntries; i++) {
-            hashTable[i] = new RDATableEntry();//.setElementAt(, i);
-        }
+        buckets = RDABucketStore.allocate(expectedNumEntries, true);
         sampleProbability = 1;
 
         for (int i = 0; i < N_HASH; i++) {
@@ -136,10 +134,7 @@ public class RDATable implements Writable, Serializable {
         this.valueSize = valueSize;
         this.expectedNumEntries = _expectedNumEntries;
 
-        hashTable = new RDATableEntry[NumEntries];
-        for (int i = 0; i < NumEntries; i++) {
-            hashTable[i] = new RDATableEntry();//.setElementAt(, i);
-        }
+        buckets = RDABucketStore.allocate(NumEntries, true);
 
         ////System.out.println("expectedNumEntries: "+expectedNumEntries+",HT Size: "+hashTable.length);
         sampleProbability = 1;
@@ -166,10 +161,7 @@ public class RDATable implements Writable, Serializable {
 
         //nEntries= Math.max(_expectedNumEntries, _expectedNumEntries/2)
 
-        hashTable = new RDATableEntry[expectedNumEntries];
-        for (int i = 0; i < expectedNumEntries; i++) {
-            hashTable[i] = new RDATableEntry();//.setElementAt(, i);
-        }
+        buckets = RDABucketStore.allocate(expectedNumEntries, true);
 
         for (int i = 0; i < N_HASH; i++) {
             LongHashFunction4PosHash[i] = LongHashFunction.xx(i);
@@ -247,10 +239,7 @@ public class RDATable implements Writable, Serializable {
         //while (N_HASH * (nEntries/N_HASH) != nEntries) ++nEntries;
         this.expectedNumEntries = _expectedNumEntries;
 
-        hashTable = new RDATableEntry[expectedNumEntries];
-        for (int i = 0; i < expectedNumEntries; i++) {
-            hashTable[i] = new RDATableEntry();//.setElementAt(, i);
-        }
+        buckets = RDABucketStore.allocate(expectedNumEntries, true);
 
         ////System.out.println("expectedNumEntries: "+expectedNumEntries+",HT Size: "+hashTable.length);
 
@@ -264,17 +253,73 @@ public class RDATable implements Writable, Serializable {
      */
     public RDATable copyTable() {
         RDATable a = new RDATable();
-        a.hashTable = new RDATableEntry[this.hashTable.length];
+        a.buckets = this.buckets.copy();
+        a.valueSize = this.valueSize;
+        a.expectedNumEntries = this.expectedNumEntries;
+        return a;
+
+    }
+
+    /**
+     * add a table of the same size, e.g. a shard filled by another thread
+     *
+     * @param shard
+     */
+    public void merge(RDATable shard) {
+        buckets.add(shard.buckets);
+    }
+
+    /**
+     * an empty table of the same size, single writer heap buckets
+     *
+     * @return
+     */
+    public RDATable newShard() {
+        RDATable a = new RDATable();
+        a.buckets = new ArrayRDABucketStore(buckets.size(), buckets.hasKeyCheck());
         a.valueSize = this.valueSize;
         a.expectedNumEntries = this.expectedNumEntries;
-        int count = 0;
-        while (count < this.hashTable.length) {
-            RDATableEntry aa = this.hashTable[count].clone();
-            a.hashTable[count] = aa;
-            count++;
-        }
         return a;
+    }
 
+    /**
+     * copy a table onto a store from RDATablePool, end with giveToPool()
+     *
+     * @return
+     */
+    public RDATable copyFromPool() {
+        RDATable a = new RDATable();
+        a.buckets = RDATablePool.get().take(buckets, N_HASH);
+        a.buckets.copyFrom(buckets, 0, 0, buckets.size());
+        a.valueSize = this.valueSize;
+        a.expectedNumEntries = this.expectedNumEntries;
+        return a;
+    }
+
+    /**
+     * this - other onto a store from RDATablePool, end with giveToPool()
+     *
+     * @param other same size
+     * @return
+     */
+    public RDATable subtractFromPool(RDATable other) {
+        RDATable a = new RDATable();
+        a.buckets = RDATablePool.get().take(buckets, N_HASH);
+        a.valueSize = this.valueSize;
+        a.expectedNumEntries = this.expectedNumEntries;
+        buckets.subtractInto(other.buckets, a.buckets);
+        return a;
+    }
+
+    /**
+     * hand the buckets of a copyFromPool()/subtractFromPool() table back,
+     * the table is not used afterwards
+     */
+    public void giveToPool() {
+        if (buckets != null) {
+            RDATablePool.get().give(buckets, N_HASH);
+            buckets = null;
+        }
     }
 
     /**
@@ -285,18 +330,68 @@ public class RDATable implements Writable, Serializable {
      */
     public static RDATable getRDATable(RDATableEntry[] you) {
         RDATable a = new RDATable();
-        a.hashTable = new RDATableEntry[you.length];
+        a.buckets = RDABucketStore.allocate(you.length, true);
 
         a.expectedNumEntries = you.length;
-        int count = 0;
-        while (count < you.length) {
-            RDATableEntry aa = you[count].clone();
-            a.hashTable[count] = aa;
-            count++;
+        for (int i = 0; i < you.length; i++) {
+            a.buckets.set(i, you[i].Counter, you[i].TS, you[i].keySum, you[i].keyCheck);
         }
         return a;
     }
 
+    /**
+     * wrap received buckets
+     *
+     * @param you
+     * @return
+     */
+    public static RDATable getRDATable(RDABucketStore you) {
+        RDATable a = new RDATable();
+        a.buckets = you;
+        a.expectedNumEntries = you.size();
+        return a;
+    }
+
+    /**
+     * the buckets as entry objects, for the message layer
+     *
+     * @return
+     */
+    public RDATableEntry[] toEntries() {
+        RDATableEntry[] you = new RDATableEntry[buckets.size()];
+        for (int i = 0; i < you.length; i++) {
+            RDATableEntry entry = new RDATableEntry();
+            entry.Counter = buckets.getCounter(i);
+            entry.TS = buckets.getTS(i);
+            entry.keySum = buckets.getKeySum(i);
+            entry.keyCheck = buckets.getKeyCheck(i);
+            you[i] = entry;
+        }
+        return you;
+    }
+
+    /**
+     * number of buckets
+     *
+     * @return
+     */
+    public int getNumBuckets() {
+        return buckets.size();
+    }
+
+    /**
+     * |Counter|==1 and the check sum matches the key sum
+     *
+     * @param index
+     * @return
+     */
+    public boolean isPure(int index) {
+        if (Math.abs(buckets.getCounter(index)) == 1) {  //这个在论文里就是delta  为正负1时  才是pure桶
+            return LongHashFunction4PKeyHash.hashLong(buckets.getKeySum(index)) == buckets.getKeyCheck(index);
+        }
+        return false;
+    }
+
     /**
      * insert items
      *
@@ -327,27 +422,45 @@ public class RDATable implements Writable, Serializable {
 
         //int sign;
         //assert(v.length ==valueSize);
+        //CAS buckets, no lock
+        if (buckets.isThreadSafe()) {
+            updateBuckets(id, TS, Counter);
+            return;
+        }
         try {
             BFOps.acquire();
 
-            int index;
-            //byte[] kVec=IBLTEntry.ToByteArray(id);
-            int bucketsPerHash = hashTable.length / N_HASH;
-            for (int i = 0; i < N_HASH; i++) {
-                int startEntry = i * bucketsPerHash;
-
-                //int[] h=IBLTEntry.hashC.hash(id,i);
-                int h = hashPos(id, i);   //第二次hash  定桶的下标
-
-                index = startEntry + (h % bucketsPerHash);//桶下标？
-                RDATableEntry entry = hashTable[index];  //获得该桶的信息   //为什么一个包要存两次?
-                //if(TS>0){
-                //add
-                entry.Counter += Counter;  //加上这个数据包
-                //}else{//erase
-                //	entry.Counter--;
-                //}
-                entry.TS += TS;  //加上这个时间戳
+            updateBuckets(id, TS, Counter);
+
+            //kVec=null;
+            BFOps.release();
+        } catch (InterruptedException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * add the item to its N_HASH buckets
+     *
+     * @param id
+     * @param TS
+     * @param Counter
+     */
+    private void updateBuckets(long id, double TS, long Counter) {
+        int index;
+        //byte[] kVec=IBLTEntry.ToByteArray(id);
+        int bucketsPerHash = buckets.size() / N_HASH;
+        long idCheck = LongHashFunction4PKeyHash.hashLong(id);
+        for (int i = 0; i < N_HASH; i++) {
+            int startEntry = i * bucketsPerHash;
+
+            //int[] h=IBLTEntry.hashC.hash(id,i);
+            int h = hashPos(id, i);   //第二次hash  定桶的下标
+
+            index = startEntry + (h % bucketsPerHash);//桶下标？
+            //加上这个数据包和时间戳, erase with a negative Counter
+            buckets.update(index, Counter, TS, id, idCheck);
 
 				/*
 				int[] xx = IBLTEntry.hashC.hash(new Key(kVec),seedSign);
@@ -358,28 +471,12 @@ public class RDATable implements Writable, Serializable {
 				entry.STS-=TS;
 				}
 				*/
-                entry.keySum ^= id;
-                //h=HashTableEntry.hashC.hash(new Key(kVec),HashTableEntry.N_HASHCHECK);
+            //h=HashTableEntry.hashC.hash(new Key(kVec),HashTableEntry.N_HASHCHECK);
 
-
-                entry.keyCheck ^= LongHashFunction4PKeyHash.hashLong(id);
-
-                //FineComb.sHash64.hash(ByteBuffer.allocate(8).putLong(id).array());
-                //if(entry.empty()){
-                //	entry.valueSum=ByteBuffer.allocate(entry.valueArrayLen).putLong(0).array();
-                //}else{
-                //entry.addValue(v);
-                hashTable[index] = entry;  // 更新桶
-                //h=null;
-            }
-            //kVec=null;
-            BFOps.release();
-        } catch (InterruptedException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            //FineComb.sHash64.hash(ByteBuffer.allocate(8).putLong(id).array());
+            //h=null;
         }
 
-
     }
 
 
@@ -512,7 +609,7 @@ public class RDATable implements Writable, Serializable {
 //        // it, peel blind!!!delete these items permanantly
 //	    RDATable peeled = this;
 //	    int nErased = 0;
-//	    for(int i=0;i<peeled.hashTable.length;i++){
+//	    for(int i=0;i<peeled.buckets.size();i++){
 //	    	RDATableEntry entry = peeled.hashTable[i];
 //	    	if(entry.isPure()){
 //	    		if(entry.keySum==k){
@@ -548,7 +645,7 @@ public class RDATable implements Writable, Serializable {
 //		  int nErased = 0;
 //		  while(nErased > 0){
 //			  nErased = 0;
-//			  for(int i=0;i<peeled.hashTable.length;i++){
+//			  for(int i=0;i<peeled.buckets.size();i++){
 //				 RDATableEntry entry = peeled.hashTable[i];
 //				  if(entry.isPure()){
 //					  if(entry.Counter==1){
@@ -567,8 +664,8 @@ public class RDATable implements Writable, Serializable {
 //		  }//end
 //		    // If any buckets for one of the hash functions is not empty,
 //		    // then we didn't peel them all:
-//		    for (int i = 0; i < peeled.hashTable.length/N_HASH; i++) {
-//		        if (peeled.hashTable[i].empty() != true) return false;
+//		    for (int i = 0; i < peeled.buckets.size()/N_HASH; i++) {
+//		        if (peeled.buckets.empty(i) != true) return false;
 //		    }
 //		    return true; 
 //	}
@@ -581,47 +678,48 @@ public class RDATable implements Writable, Serializable {
      * @return
      */
     public boolean decodeIDs(HashSet<Long> positive, HashSet<Long> negative) {
+        return decodeIDs(positive, negative, false);
+    }
 
-        RDATable peeled = this.copyTable();
-        int nErased = 0;
-        //////System.out.println("peeled: "+peeled.hashTable.length);
-        while (true) {
-            nErased = 0;
-            for (int i = 0; i < peeled.hashTable.length; i++) {
-                RDATableEntry entry = peeled.hashTable[i];
-                //////System.out.println("$Decode: "+entry.toString());
-                if (entry.isPure()) {   //pure桶
-                    //////System.out.print(" pure!!!\n");
-                    if (entry.Counter == 1) {
-                        positive.add(entry.keySum);  //1表示 坏包来自发送方   即发生了丢包
-                    } else {
-                        negative.add(entry.keySum);  //-1表示 接收方多宝  即发生了乱序
-                    }
-
-                    nErased++;
-                    peeled._insert(entry.keySum, -entry.TS, -entry.Counter);
-
-                }
-
-            }
-
-            if (nErased <= 0) {
-                break;
-            }
-        }//end
-
-        //////System.out.println("IDs: "+positive.size()+", you: "+negative.size());
-        // If any buckets for one of the hash functions is not empty,
-        // then we didn't peel them all:
-        for (int i = 0; i < peeled.hashTable.length; i++) {
+    /**
+     * peel a copy of this table
+     *
+     * @param positive Counter 1, lost packets
+     * @param negative Counter -1
+     * @param parallel one thread per bank
+     * @return true if the copy is empty afterwards
+     */
+    public boolean decodeIDs(HashSet<Long> positive, HashSet<Long> negative, boolean parallel) {
+        //the copy is a pooled scratch
+        RDATablePool pool = RDATablePool.get();
+        RDABucketStore scratch = pool.take(buckets, N_HASH);
+        try {
+            scratch.copyFrom(buckets, 0, 0, buckets.size());
+            return collect(new RDAPeeler(scratch, N_HASH, LongHashFunction4PosHash, LongHashFunction4PKeyHash),
+                    parallel, positive, negative);
+        } finally {
+            pool.give(scratch, N_HASH);
+        }
+    }
 
-            if (!peeled.hashTable[i].empty()) {
-                //证明有坏桶
-                ////System.out.println("peel: "+peeled.hashTable[i].toString());
-                return false;
-            }
+    static boolean collect(RDAPeeler peeler, boolean parallel, HashSet<Long> positive, HashSet<Long> negative) {
+        boolean decoded = peeler.peel(parallel);  //表示解码成功
+        for (long id : peeler.getPositive()) {
+            positive.add(id);
         }
-        return true;  //表示解码成功
+        for (long id : peeler.getNegative()) {
+            negative.add(id);
+        }
+        return decoded;
+    }
+
+    /**
+     * worklist decoder on the buckets of this table
+     *
+     * @return
+     */
+    public RDAPeeler peeler() {
+        return new RDAPeeler(buckets, N_HASH, LongHashFunction4PosHash, LongHashFunction4PKeyHash);
     }
 
     /**
@@ -634,14 +732,13 @@ public class RDATable implements Writable, Serializable {
 
     public int decodeIDs() {
 
-        RDATable peeled = this.copyTable();
-        //////System.out.println("peeled: "+peeled.hashTable.length);
+        RDATable peeled = this.copyFromPool();
+        try {
+        //////System.out.println("peeled: "+peeled.buckets.size());
         Queue<Integer> indexPureBuckets = new LinkedList<Integer>();
         //遍历所有的桶 找出pure桶添加到queue
-        for (int i = 0; i < peeled.hashTable.length; i++) {
-            RDATableEntry entry = peeled.hashTable[i];
-            //////System.out.println("$Decode: "+entry.toString());
-            if (entry.isPure()) {
+        for (int i = 0; i < peeled.buckets.size(); i++) {
+            if (peeled.isPure(i)) {
                 indexPureBuckets.add(i);  //这里没有指明l  即bank  所以后面对这个id进行hash时  可能得到本身的id  因为可能用到另一个bank的hash函数进行hash恰好得到了这个id
             }//add index
         }
@@ -649,31 +746,33 @@ public class RDATable implements Writable, Serializable {
         int totalCount = 0;
         while (!indexPureBuckets.isEmpty()) {
             Integer index = indexPureBuckets.remove();  //等同于poll出队
-            RDATableEntry entry = peeled.hashTable[index];  //获得pure桶
+            long keySum = peeled.buckets.getKeySum(index);  //获得pure桶
             totalCount++;
-            peeled._insert(entry.keySum, -entry.TS, -entry.Counter);
+            peeled._insert(keySum, -peeled.buckets.getTS(index), -peeled.buckets.getCounter(index));
             //get the indexes   这个桶的id含的是有问题的包 感觉这一步 是这个有问题的桶的包 应该放到哪个桶id中  不确定不确定不确定不确定
-            Vector<Integer> newPositions = getHashLocation(entry.keySum, index);//对这个id进行hash时  可能得到本身的id  因为可能用到另一个bank的hash函数进行hash恰好得到了这个id
+            Vector<Integer> newPositions = getHashLocation(keySum, index);//对这个id进行hash时  可能得到本身的id  因为可能用到另一个bank的hash函数进行hash恰好得到了这个id
             if (!newPositions.isEmpty()) {
                 indexPureBuckets.addAll(newPositions);  //新的pure桶入队
             }
         }//iterate the buckets
 
         return totalCount;
+        } finally {
+            peeled.giveToPool();
+        }
     }
 
 
     public long[] decodeIDsTime() {
 
-        RDATable peeled = this.copyTable();
-        //////System.out.println("peeled: "+peeled.hashTable.length);
+        RDATable peeled = this.copyFromPool();
+        try {
+        //////System.out.println("peeled: "+peeled.buckets.size());
         Queue<Integer> indexPureBuckets = new LinkedList<Integer>();
 
         long time1 = System.nanoTime();
-        for (int i = 0; i < peeled.hashTable.length; i++) {
-            RDATableEntry entry = peeled.hashTable[i];
-            //////System.out.println("$Decode: "+entry.toString());
-            if (entry.isPure()) {
+        for (int i = 0; i < peeled.buckets.size(); i++) {
+            if (peeled.isPure(i)) {
                 indexPureBuckets.add(i);
             }//add index
         }
@@ -681,11 +780,11 @@ public class RDATable implements Writable, Serializable {
         int totalCount = 0;
         while (!indexPureBuckets.isEmpty()) {
             Integer index = indexPureBuckets.remove();
-            RDATableEntry entry = peeled.hashTable[index];
+            long keySum = peeled.buckets.getKeySum(index);
             totalCount++;
-            peeled._insert(entry.keySum, -entry.TS, -entry.Counter);
+            peeled._insert(keySum, -peeled.buckets.getTS(index), -peeled.buckets.getCounter(index));
             //get the indexes
-            Vector<Integer> newPositions = getHashLocation(entry.keySum, index);
+            Vector<Integer> newPositions = getHashLocation(keySum, index);
             if (!newPositions.isEmpty()) {
                 indexPureBuckets.addAll(newPositions);
             }
@@ -696,6 +795,9 @@ public class RDATable implements Writable, Serializable {
         long delay1 = time3 - time1;
         long[] results = {totalCount, delay1};
         return results;
+        } finally {
+            peeled.giveToPool();
+        }
     }
 
     /**
@@ -711,7 +813,7 @@ public class RDATable implements Writable, Serializable {
         Vector<Integer> indexes = new Vector<Integer>();
         int index;
         //byte[] kVec=IBLTEntry.ToByteArray(id);
-        int bucketsPerHash = hashTable.length / N_HASH;
+        int bucketsPerHash = buckets.size() / N_HASH;
         for (int i = 0; i < N_HASH; i++) {
             int startEntry = i * bucketsPerHash;
 
@@ -719,15 +821,13 @@ public class RDATable implements Writable, Serializable {
             int h = hashPos(id, i); //i是用第几个hash函数  这个值是IDSH?
 
             index = startEntry + (h % bucketsPerHash);
-            RDATableEntry entry;
             if (index == removeIndex) { //对这个id进行hash时  可能得到本身的id  因为可能用到另一个bank的hash函数进行hash恰好得到了这个id  而这个桶id不是所要的
                 continue;
-            } else
-                entry = hashTable[index];
-            if (entry.empty()) {
+            }
+            if (buckets.empty(index)) {
                 continue;
             }
-            if (entry.isPure()) {
+            if (isPure(index)) {
                 indexes.add(index);
             }
 
@@ -737,21 +837,21 @@ public class RDATable implements Writable, Serializable {
 
     public Set<Long> decodeAllIDs() {
         Set<Long> ids = new HashSet<Long>();
-        RDATable peeled = this.copyTable();
+        RDATable peeled = this.copyFromPool();
+        try {
         int nErased = 0;
-        //////System.out.println("peeled: "+peeled.hashTable.length);
+        //////System.out.println("peeled: "+peeled.buckets.size());
         //int totalCount=0;
         while (true) {
             nErased = 0;
-            for (int i = 0; i < peeled.hashTable.length; i++) {
-                RDATableEntry entry = peeled.hashTable[i];
-                //////System.out.println("$Decode: "+entry.toString());
-                if (entry.isPure()) {
+            for (int i = 0; i < peeled.buckets.size(); i++) {
+                if (peeled.isPure(i)) {
                     //////System.out.print(" pure!!!\n");
                     // totalCount++;
-                    ids.add(entry.keySum);
+                    long keySum = peeled.buckets.getKeySum(i);
+                    ids.add(keySum);
                     nErased++;
-                    peeled._insert(entry.keySum, -entry.TS, -entry.Counter);
+                    peeled._insert(keySum, -peeled.buckets.getTS(i), -peeled.buckets.getCounter(i));
 
                 }
 
@@ -764,40 +864,67 @@ public class RDATable implements Writable, Serializable {
 
         return ids;
         //return totalCount;
+        } finally {
+            peeled.giveToPool();
+        }
     }
 
     // Subtract two IBLTs   应减去的  即坏的包？
     public RDATable subtractIBLT(RDATable other) {
         // IBLT's must be same params/size:
         //assert(valueSize == other.valueSize);
-        //assert(hashTable.length == other.hashTable.length);
-
-        RDATable result = this.copyTable();
-        int size = result.hashTable.length;
-        ////System.out.println("$subtractSize: "+size);
-        for (int i = 0; i < size; i++) {
-            RDATableEntry e1 = result.hashTable[i];
-            RDATableEntry e2 = other.hashTable[i];
-            //e1.Counter-=e2.Counter;
-            // e1.TS -= e2.TS;
-            //e1.STS-=e2.STS;
-            //e1.keySum ^= e2.keySum;
-            //e1.keyCheck ^= e2.keyCheck;
-
-            RDATableEntry newItem = e1.XORHashTable(e2);
-
-//	        if (e1.empty()) {
-//	            e1.valueSum=ByteBuffer.allocate(e1.valueArrayLen).putLong(0).array();
-//	        }
-//	        else {
-
-            // }
-            result.hashTable[i] = newItem;
-        }
+        //assert(hashTable.length == other.buckets.size());
+
+        RDATable result = new RDATable();
+        result.buckets = buckets.newStore(buckets.size());
+        result.valueSize = this.valueSize;
+        result.expectedNumEntries = this.expectedNumEntries;
+        //Counter-=, TS-=, keySum^=, keyCheck^=, in one pass instead of copy then subtract
+        buckets.subtractInto(other.buckets, result.buckets);
 
         return result;
     }
 
+    /**
+     * dest = this - other, no copy of this is made
+     *
+     * @param other same size
+     * @param dest  same size, overwritten, e.g. a pooled scratch
+     * @return dest
+     */
+    public RDATable subtractInto(RDATable other, RDATable dest) {
+        buckets.subtractInto(other.buckets, dest.buckets);
+        return dest;
+    }
+
+    /**
+     * subtract other into scratch and peel it there, this and other stay as they are
+     *
+     * @param other    same size
+     * @param scratch  same size, overwritten
+     * @param positive ids only in this
+     * @param negative ids only in other
+     * @return true if the difference peeled completely
+     */
+    public boolean decodeInto(RDATable other, RDATable scratch, HashSet<Long> positive, HashSet<Long> negative) {
+        return collect(new RDAPeeler(subtractInto(other, scratch).buckets, N_HASH, LongHashFunction4PosHash,
+                LongHashFunction4PKeyHash), false, positive, negative);
+    }
+
+    /**
+     * decodeInto on a scratch from RDATablePool, given back afterwards
+     */
+    public boolean decodeInto(RDATable other, HashSet<Long> positive, HashSet<Long> negative) {
+        RDATablePool pool = RDATablePool.get();
+        RDATable scratch = new RDATable();
+        scratch.buckets = pool.take(buckets, N_HASH);
+        try {
+            return decodeInto(other, scratch, positive, negative);
+        } finally {
+            pool.give(scratch.buckets, N_HASH);
+        }
+    }
+
 
     /**
      * 移除丢包和乱序包
@@ -806,7 +933,7 @@ public class RDATable implements Writable, Serializable {
      * @param ids,     decoded ids
      * @param TSTable, id, timestamp
      */
-    public void RepairTBF(HashSet<Long> ids, Hashtable<Long, Double> TSTable) {
+    public void RepairTBF(HashSet<Long> ids, Map<Long, Double> TSTable) {
         Iterator<Long> ier = ids.iterator();
         while (ier.hasNext()) {
             long id = ier.next();
@@ -824,7 +951,7 @@ public class RDATable implements Writable, Serializable {
      * @param TSTable, id, timestamp
      */
     public void RepairTBF(HashSet<Long> ids,
-                          Hashtable<Long, Double> TSTable,
+                          Map<Long, Double> TSTable,
                           Hashtable<Long, byte[]> valueTable) {
         Iterator<Long> ier = ids.iterator();
 
@@ -848,7 +975,7 @@ public class RDATable implements Writable, Serializable {
      * @param valueTable
      * @param percent
      */
-    public void RepairTBF(HashSet<Long> ids, Hashtable<Long, Double> TSTable,
+    public void RepairTBF(HashSet<Long> ids, Map<Long, Double> TSTable,
                           double percent) {
         Iterator<Long> ier = ids.iterator();
         Random r = new Random(System.currentTimeMillis());
@@ -879,11 +1006,11 @@ public class RDATable implements Writable, Serializable {
 
         int c = 0;
         double sum = 0;
-        for (int i = 0; i < subtractTBF.hashTable.length; i++) {
+        for (int i = 0; i < subtractTBF.buckets.size(); i++) {
             //use only buckets that have insertions
-            long t = repairedTBF.hashTable[i].getNumItems();
+            long t = repairedTBF.buckets.getNumItems(i);
             if (t > 0) {
-                sum += Math.abs(subtractTBF.hashTable[i].TS);
+                sum += Math.abs(subtractTBF.buckets.getTS(i));
                 c += t;
             }
         }
@@ -898,40 +1025,12 @@ public class RDATable implements Writable, Serializable {
      * @return
      */
     public double getAvgTS(RDATable RReceiver) {  //repaired receiver的简称？
-        RDATable subtractTBF = this.subtractIBLT(RReceiver);
-        int c = 0;
-        double sum = 0;
-        int total = 0;
-        int good = 0;
-        int size = subtractTBF.hashTable.length;
-        //////System.out.println("$size: "+size+", receiverSize: "+RReceiver.hashTable.length);
-        for (int i = 0; i < size; i++) {
-            //useful
-            if (subtractTBF.hashTable[i].Counter == 0 &&//说明两个桶包个数一样
-                    !RReceiver.hashTable[i].empty() && !this.hashTable[i].empty() &&  //两端的这个桶非空
-                    this.hashTable[i].Counter != 0 && //有包
-                    this.hashTable[i].keyCheck == RReceiver.hashTable[i].keyCheck &&  //两端桶的索引一样
-                    this.hashTable[i].keySum == RReceiver.hashTable[i].keySum) {  //两端桶内包id的异或值相同
-                //use only buckets that have insertions
-
-                long t = Math.abs(RReceiver.hashTable[i].getNumItems()); //就是Counter
-                //////System.out.println("$size:"+t);
-                if (t > 0) {
-                    sum += Math.abs(subtractTBF.hashTable[i].TS);  //时间戳
-                    c += t;  //个数
-                }
-                good++;
-                total++;
-            } else {
-                if (this.hashTable[i].keySum != RReceiver.hashTable[i].keySum) {
-                    total++;
-                }
-//				System.err.println("Incorrect: "+
-//			this.hashTable[i].keyCheck+"="+RReceiver.hashTable[i].keyCheck+","+
-//						this.hashTable[i].keySum+"="+RReceiver.hashTable[i].keySum+","+
-//						subtractTBF.hashTable[i].Counter);
-            }
-        }
+        //两端桶的包个数、索引、包id的异或值都相同且有包的桶
+        double[] r = RDAKernels.avgTS(this.buckets, RReceiver.buckets);
+        double sum = r[0];
+        long c = (long) r[1];
+        int good = (int) r[2];
+        int total = (int) r[3];
 
         log.main("total: "+total+" good: "+good+" sum: "+sum+" c: "+c);  //total 每次都是17663  good 0 sum 0 c 0 所以最后的avgUnUsed是1
         log.main("AvgUnUsed: " + (total - good + 0.0) / total);
@@ -964,10 +1063,11 @@ public class RDATable implements Writable, Serializable {
         //for each part, skip the empty buckets
         //for a pair, construct the adjacent pair
 
-        int halvedSizePart = this.hashTable.length / N_HASH;
+        int halvedSizePart = this.buckets.size() / N_HASH;
         //store the collapsed result
         RDATable CollapseTable = new RDATable();
-        Vector<RDATableEntry> collapsedRDA = new Vector<RDATableEntry>();
+        RDABucketStore collapsedRDA = buckets.newStore(buckets.size() / 2 + 1);
+        int collapsed = 0;
         CollapseTable.N_HASH = this.N_HASH;
 
         //global index
@@ -978,27 +1078,23 @@ public class RDATable implements Writable, Serializable {
             for (int i = start; i < indexHash * halvedSizePart; i++) {
 
                 //skip
-                if ((i * 2 + 1) >= indexHash * halvedSizePart || this.hashTable[i * 2].empty() || this.hashTable[i * 2 + 1].empty()) {
+                if ((i * 2 + 1) >= indexHash * halvedSizePart || this.buckets.empty(i * 2) || this.buckets.empty(i * 2 + 1)) {
                     continue;
                 }
-                RDATableEntry entry = new RDATableEntry();
-                entry.TS = this.hashTable[i * 2].TS - this.hashTable[i * 2 + 1].TS;
-                entry.Counter = this.hashTable[i * 2].Counter + this.hashTable[i * 2 + 1].Counter;
-                entry.keySum = this.hashTable[i * 2].keySum ^ this.hashTable[i * 2 + 1].keySum;
-                entry.keyCheck = this.hashTable[i * 2].keyCheck ^ this.hashTable[i * 2 + 1].keyCheck;
-                collapsedRDA.add(entry);
+                collapsedRDA.set(collapsed++,
+                        this.buckets.getCounter(i * 2) + this.buckets.getCounter(i * 2 + 1),
+                        this.buckets.getTS(i * 2) - this.buckets.getTS(i * 2 + 1),
+                        this.buckets.getKeySum(i * 2) ^ this.buckets.getKeySum(i * 2 + 1),
+                        this.buckets.getKeyCheck(i * 2) ^ this.buckets.getKeyCheck(i * 2 + 1));
             }
             indexHash++;
             start += halvedSizePart;
 
         }
         //copy
-        CollapseTable.hashTable = new RDATableEntry[collapsedRDA.size()];
-        CollapseTable.expectedNumEntries = CollapseTable.hashTable.length;
-        for (int i = 0; i < CollapseTable.hashTable.length; i++) {
-            CollapseTable.hashTable[i] = collapsedRDA.get(i).clone();
-        }
-        collapsedRDA.clear();
+        CollapseTable.buckets = buckets.newStore(collapsed);
+        CollapseTable.buckets.copyFrom(collapsedRDA, 0, 0, collapsed);
+        CollapseTable.expectedNumEntries = collapsed;
         return CollapseTable;
     }
 
@@ -1022,14 +1118,16 @@ public class RDATable implements Writable, Serializable {
 
         //counterSum[0] = 0;
 
-        //int halvedSizePart=this.hashTable.length/N_HASH;
+        //int halvedSizePart=this.buckets.size()/N_HASH;
         //store the collapsed result
         RDATable[] aa = new RDATable[2];
         aa[0] = new RDATable();
         aa[1] = new RDATable();
 
-        Vector<RDATableEntry> meVec = new Vector<RDATableEntry>();
-        Vector<RDATableEntry> youVec = new Vector<RDATableEntry>();
+        //at most one collapsed bucket per pair
+        RDABucketStore meVec = buckets.newStore(buckets.size() / 2 + 1);
+        RDABucketStore youVec = you.buckets.newStore(buckets.size() / 2 + 1);
+        int collapsed = 0;
 
         RDATable CollapseTableMe = aa[0];
         CollapseTableMe.N_HASH = this.N_HASH;
@@ -1046,7 +1144,7 @@ public class RDATable implements Writable, Serializable {
         int indexHash = 1;
         int indexAInTable, indexBInTable;
 
-        int bucketsPerHash = you.hashTable.length / N_HASH;
+        int bucketsPerHash = you.buckets.size() / N_HASH;
 
         int[] sign = new int[bucketsPerHash];
         for (int i = 0; i < bucketsPerHash; i++) {
@@ -1074,9 +1172,9 @@ public class RDATable implements Writable, Serializable {
             int signAtom = 1;
             for (int i = startEntry; i < endEntry; i++) {
 
-                if (this.hashTable[i].Counter != you.hashTable[i].Counter ||
-                        //this.hashTable[i].keySum!=you.hashTable[i].keySum||
-                        this.hashTable[i].keyCheck != you.hashTable[i].keyCheck) {
+                if (this.buckets.getCounter(i) != you.buckets.getCounter(i) ||
+                        //this.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+                        this.buckets.getKeyCheck(i) != you.buckets.getKeyCheck(i)) {
                     continue;
                 } else {
                     computeIndexes.add(i);
@@ -1084,9 +1182,9 @@ public class RDATable implements Writable, Serializable {
                     // System.out.println("i: "+(i-startEntry)+", sign: "+signAtom);
                     signAtom *= -1;
                     //sum
-                    branchAvg[iii] += Math.abs(this.hashTable[i].TS - you.hashTable[i].TS);
+                    branchAvg[iii] += Math.abs(this.buckets.getTS(i) - you.buckets.getTS(i));
                     //avg
-                    counterPackets += this.hashTable[i].Counter;
+                    counterPackets += this.buckets.getCounter(i);
 
                 }
                 //}
@@ -1114,36 +1212,31 @@ public class RDATable implements Writable, Serializable {
                 int signB = SignIndexes.get(ii * 2 + 1);
 
                 //skip
-                RDATableEntry entry = new RDATableEntry();
-                entry.TS = signA * this.hashTable[indexAInTable].TS + signB * this.hashTable[indexBInTable].TS;  //signA  和signB 是一个+1 一个-1 时间戳累计
-                entry.Counter = this.hashTable[indexAInTable].Counter + this.hashTable[indexBInTable].Counter;  //包相加
-                entry.keySum = this.hashTable[indexAInTable].keySum ^ this.hashTable[indexBInTable].keySum;  //id异或
-                entry.keyCheck = this.hashTable[indexAInTable].keyCheck ^ this.hashTable[indexBInTable].keyCheck;  //桶的id的hash的异或？
-                meVec.add(entry);
-                //CollapseTableMe.hashTable.add(entry);
-
-                RDATableEntry YouEntry = new RDATableEntry();
-                YouEntry.TS = signA * you.hashTable[indexAInTable].TS + signB * you.hashTable[indexBInTable].TS;
-                YouEntry.Counter = you.hashTable[indexAInTable].Counter + you.hashTable[indexBInTable].Counter;
-                YouEntry.keySum = you.hashTable[indexAInTable].keySum ^ you.hashTable[indexBInTable].keySum;
-                YouEntry.keyCheck = you.hashTable[indexAInTable].keyCheck ^ you.hashTable[indexBInTable].keyCheck;
-                youVec.add(YouEntry);
-                //CollapseTableYou.hashTable.add(YouEntry);
+                meVec.set(collapsed,
+                        this.buckets.getCounter(indexAInTable) + this.buckets.getCounter(indexBInTable),  //包相加
+                        signA * this.buckets.getTS(indexAInTable) + signB * this.buckets.getTS(indexBInTable),  //signA  和signB 是一个+1 一个-1 时间戳累计
+                        this.buckets.getKeySum(indexAInTable) ^ this.buckets.getKeySum(indexBInTable),  //id异或
+                        this.buckets.getKeyCheck(indexAInTable) ^ this.buckets.getKeyCheck(indexBInTable));  //桶的id的hash的异或？
+
+                youVec.set(collapsed,
+                        you.buckets.getCounter(indexAInTable) + you.buckets.getCounter(indexBInTable),
+                        signA * you.buckets.getTS(indexAInTable) + signB * you.buckets.getTS(indexBInTable),
+                        you.buckets.getKeySum(indexAInTable) ^ you.buckets.getKeySum(indexBInTable),
+                        you.buckets.getKeyCheck(indexAInTable) ^ you.buckets.getKeyCheck(indexBInTable));
+                collapsed++;
 
                 //counterSum[0]+=YouEntry.Counter;
             }
-            interval = youVec.size();//CollapseTableYou.hashTable.length;
+            interval = collapsed;//CollapseTableYou.buckets.size();
             intervals.add(interval);
         }
         //copy
-        CollapseTableMe.hashTable = new RDATableEntry[meVec.size()];
-        CollapseTableYou.hashTable = new RDATableEntry[youVec.size()];
-        CollapseTableMe.expectedNumEntries = CollapseTableMe.hashTable.length;
-        CollapseTableYou.expectedNumEntries = CollapseTableYou.hashTable.length;
-        for (int i = 0; i < CollapseTableMe.expectedNumEntries; i++) {
-            CollapseTableMe.hashTable[i] = meVec.get(i).clone();
-            CollapseTableYou.hashTable[i] = youVec.get(i).clone();
-        }
+        CollapseTableMe.buckets = buckets.newStore(collapsed);
+        CollapseTableYou.buckets = you.buckets.newStore(collapsed);
+        CollapseTableMe.buckets.copyFrom(meVec, 0, 0, collapsed);
+        CollapseTableYou.buckets.copyFrom(youVec, 0, 0, collapsed);
+        CollapseTableMe.expectedNumEntries = collapsed;
+        CollapseTableYou.expectedNumEntries = collapsed;
 
         return aa;
     }
@@ -1156,7 +1249,7 @@ public class RDATable implements Writable, Serializable {
 //		//for each part, skip the empty buckets
 //		//for a pair, construct the adjacent pair
 //		
-//		//int halvedSizePart=this.hashTable.length/N_HASH;		
+//		//int halvedSizePart=this.buckets.size()/N_HASH;		
 //		//store the collapsed result
 //		RDATable[] aa = new RDATable[2];
 //		aa[0] = new RDATable();
@@ -1183,9 +1276,9 @@ public class RDATable implements Writable, Serializable {
 //			
 //			 computeIndexes.clear();
 //			for(int i=startEntry;i<endEntry;i++){
-//				if(this.hashTable[i].empty()||you.hashTable[i].empty()||
-//						this.hashTable[i].Counter!=you.hashTable[i].Counter||
-//						this.hashTable[i].keySum!=you.hashTable[i].keySum){
+//				if(this.buckets.empty(i)||you.buckets.empty(i)||
+//						this.buckets.getCounter(i)!=you.buckets.getCounter(i)||
+//						this.buckets.getKeySum(i)!=you.buckets.getKeySum(i)){
 //					continue;
 //				}else{
 //					 computeIndexes.add(i);
@@ -1207,21 +1300,21 @@ public class RDATable implements Writable, Serializable {
 //			
 //			//skip
 //			RDATableEntry entry = new RDATableEntry();
-//			entry.TS=this.hashTable[indexAInTable].TS-this.hashTable[indexBInTable].TS;
-//			entry.Counter=this.hashTable[indexAInTable].Counter+this.hashTable[indexBInTable].Counter;
-//			entry.keySum=this.hashTable[indexAInTable].keySum^this.hashTable[indexBInTable].keySum;
-//			entry.keyCheck=this.hashTable[indexAInTable].keyCheck^this.hashTable[indexBInTable].keyCheck;
+//			entry.TS=this.buckets.getTS(indexAInTable)-this.buckets.getTS(indexBInTable);
+//			entry.Counter=this.buckets.getCounter(indexAInTable)+this.buckets.getCounter(indexBInTable);
+//			entry.keySum=this.buckets.getKeySum(indexAInTable)^this.buckets.getKeySum(indexBInTable);
+//			entry.keyCheck=this.buckets.getKeyCheck(indexAInTable)^this.buckets.getKeyCheck(indexBInTable);
 //			CollapseTableMe.hashTable.add(entry);
 //			
 //			RDATableEntry YouEntry = new RDATableEntry();
-//			YouEntry.TS=you.hashTable[indexAInTable].TS-you.hashTable[indexBInTable].TS;
-//			YouEntry.Counter=you.hashTable[indexAInTable].Counter+you.hashTable[indexBInTable].Counter;
-//			YouEntry.keySum=you.hashTable[indexAInTable].keySum^you.hashTable[indexBInTable].keySum;
-//			YouEntry.keyCheck=you.hashTable[indexAInTable].keyCheck^you.hashTable[indexBInTable].keyCheck;
+//			YouEntry.TS=you.buckets.getTS(indexAInTable)-you.buckets.getTS(indexBInTable);
+//			YouEntry.Counter=you.buckets.getCounter(indexAInTable)+you.buckets.getCounter(indexBInTable);
+//			YouEntry.keySum=you.buckets.getKeySum(indexAInTable)^you.buckets.getKeySum(indexBInTable);
+//			YouEntry.keyCheck=you.buckets.getKeyCheck(indexAInTable)^you.buckets.getKeyCheck(indexBInTable);
 //			CollapseTableYou.hashTable.add(YouEntry);
 //			
 //		}
-//		interval=CollapseTableYou.hashTable.length;
+//		interval=CollapseTableYou.buckets.size();
 //		intervals.add(interval);
 //		}
 //		return aa;
@@ -1231,8 +1324,8 @@ public class RDATable implements Writable, Serializable {
         // TODO Auto-generated method stub
         List<Integer> ll = new ArrayList<Integer>();
         for (int i = start; i < end; i++) {
-            if (this.hashTable[i].empty() || you.hashTable[i].empty() ||
-                    this.hashTable[i].Counter != you.hashTable[i].Counter) {
+            if (this.buckets.empty(i) || you.buckets.empty(i) ||
+                    this.buckets.getCounter(i) != you.buckets.getCounter(i)) {
                 continue;
             } else {
                 ll.add(i);
@@ -1272,11 +1365,11 @@ public class RDATable implements Writable, Serializable {
         double stdOneRound = 0;
         //separate each hash procedure
         for (int indexHash = 0; indexHash < N_HASH; indexHash++) {
-            //////System.out.println("Table: "+you.hashTable.length+", "+me.hashTable.length);
+            //////System.out.println("Table: "+you.buckets.size()+", "+me.buckets.size());
             //////System.out.println("s: "+start+", end: "+end+", total: "+intervalHashs.get(intervalHashs.size()-1));
 
             //前面的参数是折叠后的size
-            end = Math.min(intervalHashs.get(indexHash), you.hashTable.length);
+            end = Math.min(intervalHashs.get(indexHash), you.buckets.size());
             //reset for each partition hashed
             if (end == 0) {
                 break;
@@ -1285,25 +1378,25 @@ public class RDATable implements Writable, Serializable {
             totalSumCounter = 0;
             allSquaredSum = 0;
             for (int i = start; i < end; i++) {
-                if (you.hashTable[i].empty() ||
-                        me.hashTable[i].empty() ||
-                        me.hashTable[i].Counter == 0) {
+                if (you.buckets.empty(i) ||
+                        me.buckets.empty(i) ||
+                        me.buckets.getCounter(i) == 0) {
                     System.err.println("empty");
                     continue;
                 }
-                if (me.hashTable[i].keySum != you.hashTable[i].keySum ||
-                        me.hashTable[i].Counter != you.hashTable[i].Counter) {
+                if (me.buckets.getKeySum(i) != you.buckets.getKeySum(i) ||
+                        me.buckets.getCounter(i) != you.buckets.getCounter(i)) {
                     //System.err.println("unequal! ");
                     continue;
                 }
 
-                //	if(me.hashTable[i].Counter!=0&&
-                //		me.hashTable[i].keySum==you.hashTable[i].keySum&&
-                //		me.hashTable[i].Counter==you.hashTable[i].Counter){
-                totalSumCounter += (me.hashTable[i].Counter);
-                TASum = me.hashTable[i].TS;
-                TBSum = you.hashTable[i].TS;
-                //System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
+                //	if(me.buckets.getCounter(i)!=0&&
+                //		me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+                //		me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+                totalSumCounter += (me.buckets.getCounter(i));
+                TASum = me.buckets.getTS(i);
+                TBSum = you.buckets.getTS(i);
+                //System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.buckets.getCounter(i)+"\n");
                 allSquaredSum += Math.pow(TBSum - TASum, 2);
 
                 //	}
@@ -1343,141 +1436,13 @@ public class RDATable implements Writable, Serializable {
      */
 
     public double getFScoreByCollapse(RDATable other11, double avg000) {
-
-        Vector<Integer> intervalHashs = new Vector<Integer>();
-        //branch average
-        double[] BranchAvg = new double[this.N_HASH];
-        for (int i = 0; i < this.N_HASH; i++) {
-            BranchAvg[i] = 0;
-        }
-        RDATable[] out = CoordinatedCollapseAdjacentBank(other11, intervalHashs, BranchAvg); //修改后的intervalHashs 是每部分折叠后的大小 修改后的BranchAvg的两部分是两端 前半部分的平均时延和 后半部分的平均时延   有2个hash  所以分了两部分
-        if (intervalHashs.isEmpty()) {
+        //CoordinatedCollapseAdjacentBank的配对，每个bank一遍，不建折叠后的表
+        double[] r = RDAKernels.collapsedVariance(this.buckets, other11.buckets, N_HASH);
+        if (r[0] < 0) {
             return -1;
         }
-        //do not collapse
-        RDATable me = out[0];
-        RDATable you = out[1];
-
-        double TASum = 0;
-        double TBSum = 0;
-        //double squaredDiff=0;
-        double allSquaredSum = 0;
-        double totalSumCounter = 0;
-        //double S= 0;
-        double oneRound = 0;
-        int start = 0;
-        int end = 0;
-        //int count = 0;
-        //double v0;
-        //separate each hash procedure
-			/*for(int i=0;i<you.hashTable.length;i++){
-				if(you.hashTable[i].empty()||
-						me.hashTable[i].empty()||
-						me.hashTable[i].Counter==0){
-					System.err.println("empty");
-					continue;
-				}
-				if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-						me.hashTable[i].Counter!=you.hashTable[i].Counter||
-						me.hashTable[i].keyCheck!=you.hashTable[i].keyCheck){
-					System.err.println("unequal! ");
-					continue;
-				}
-				
-				totalSumCounter+=(me.hashTable[i].Counter);	
-				TASum=me.hashTable[i].TS;
-				TBSum=you.hashTable[i].TS;
-				//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
-				allSquaredSum+=Math.pow(TBSum - TASum,2);	
-			}
-			*/
-
-        List<Double> eachValue = new ArrayList<Double>();
-        double avgDouble = 0;
-        double sumAllSquared = 0;
-        double countAll = 0;
-        double avgSquaredAll = 0;
-        double countAllItems = 0;
-        double countUnequalItems = 0;
-        for (int indexHash = 0; indexHash < N_HASH; indexHash++) {
-            //////System.out.println("Table: "+you.hashTable.length+", "+me.hashTable.length);
-            //////System.out.println("s: "+start+", end: "+end+", total: "+intervalHashs.get(intervalHashs.size()-1));
-
-
-            //end = intervalHashs.get(indexHash);
-            end = Math.min(intervalHashs.get(indexHash), you.hashTable.length);
-            //reset for each partition hashed
-            if (end == 0 || start == end) {
-                break;
-            }
-
-            allSquaredSum = 0;
-            totalSumCounter = 0;
-
-            for (int i = start; i < end; i++) {
-					/*if(you.hashTable[i].empty()||
-							me.hashTable[i].empty()||
-							me.hashTable[i].Counter==0){
-						System.err.println("empty");
-						continue;
-					}
-					*/
-                countAllItems++;
-                if (me.hashTable[i].keySum != you.hashTable[i].keySum ||
-                        me.hashTable[i].Counter != you.hashTable[i].Counter ||
-                        me.hashTable[i].keyCheck != you.hashTable[i].keyCheck) {
-                    //System.err.println("unequal! ");
-                    countUnequalItems++;
-                    continue;
-                }
-
-                //	if(me.hashTable[i].Counter!=0&&
-                //		me.hashTable[i].keySum==you.hashTable[i].keySum&&
-                //		me.hashTable[i].Counter==you.hashTable[i].Counter){
-                totalSumCounter += (me.hashTable[i].Counter);
-                TASum = me.hashTable[i].TS;
-                TBSum = you.hashTable[i].TS;
-                //System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
-                allSquaredSum += Math.pow(TBSum - TASum, 2);
-
-                //	}
-
-            }//end a round
-
-            if (totalSumCounter == 0) {
-                continue;
-            }
-
-            sumAllSquared += allSquaredSum;
-            countAll += totalSumCounter;
-            avgSquaredAll += BranchAvg[indexHash];
-            double stdValue = Math.abs(allSquaredSum / totalSumCounter - Math.pow(BranchAvg[indexHash], 2)); //这个才是正确的  上面的那个avg是固定写死的
-            eachValue.add(stdValue);
-            avgDouble += stdValue;
-            //System.out.print(" "+stdValue);
-        }
-
-        avgDouble /= N_HASH;
-        //double median = math.percentile(eachValue,.5);
-        //double avgDouble0 = Math.abs( sumAllSquared/countAll - Math.pow(avgSquaredAll/N_HASH,2));
-
-        //System.out.println("\n===========\n"+avgDouble+", "+avgDouble0+"\n===========\n");
-        //double stdValue= Math.abs(allSquaredSum/totalSumCounter - Math.pow(avg,2));
-        eachValue.clear();
-        log.main("StdUnequalFrac: " + countUnequalItems / (countAllItems + 0.0));
-
-        //double v=count>0?oneRound/count:-1;
-        //////System.out.print( "avg: "+v+"\n");
-
-        intervalHashs.clear();
-        intervalHashs = null;
-        me.clear();
-        you.clear();
-        me = null;
-        you = null;
-
-        return avgDouble;
-
+        log.main("StdUnequalFrac: " + r[1]);
+        return r[0];
     }
 
     MathUtil math = new MathUtil(100);
@@ -1514,35 +1479,35 @@ public class RDATable implements Writable, Serializable {
         //int count = 0;
         //double v0;
         //separate each hash procedure
-			/*for(int i=0;i<you.hashTable.length;i++){
-				if(you.hashTable[i].empty()||
-						me.hashTable[i].empty()||
-						me.hashTable[i].Counter==0){
+			/*for(int i=0;i<you.buckets.size();i++){
+				if(you.buckets.empty(i)||
+						me.buckets.empty(i)||
+						me.buckets.getCounter(i)==0){
 					System.err.println("empty");
 					continue;
 				}
-				if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-						me.hashTable[i].Counter!=you.hashTable[i].Counter||
-						me.hashTable[i].keyCheck!=you.hashTable[i].keyCheck){
+				if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+						me.buckets.getCounter(i)!=you.buckets.getCounter(i)||
+						me.buckets.getKeyCheck(i)!=you.buckets.getKeyCheck(i)){
 					System.err.println("unequal! ");
 					continue;
 				}
 				
-				totalSumCounter+=(me.hashTable[i].Counter);	
-				TASum=me.hashTable[i].TS;
-				TBSum=you.hashTable[i].TS;
-				//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
+				totalSumCounter+=(me.buckets.getCounter(i));	
+				TASum=me.buckets.getTS(i);
+				TBSum=you.buckets.getTS(i);
+				//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.buckets.getCounter(i)+"\n");
 				allSquaredSum+=Math.pow(TBSum - TASum,2);	
 			}
 			*/
 
         double avgDouble = 0;
         for (int indexHash = 0; indexHash < N_HASH; indexHash++) {
-            //////System.out.println("Table: "+you.hashTable.length+", "+me.hashTable.length);
+            //////System.out.println("Table: "+you.buckets.size()+", "+me.buckets.size());
             //////System.out.println("s: "+start+", end: "+end+", total: "+intervalHashs.get(intervalHashs.size()-1));
 
 
-            end = Math.min(intervalHashs.get(indexHash), you.hashTable.length);
+            end = Math.min(intervalHashs.get(indexHash), you.buckets.size());
             //reset for each partition hashed
             if (end == 0) {
                 break;
@@ -1552,26 +1517,26 @@ public class RDATable implements Writable, Serializable {
             totalSumCounter = 0;
 
             for (int i = start; i < end; i++) {
-                if (you.hashTable[i].empty() ||
-                        me.hashTable[i].empty() ||
-                        me.hashTable[i].Counter == 0) {
+                if (you.buckets.empty(i) ||
+                        me.buckets.empty(i) ||
+                        me.buckets.getCounter(i) == 0) {
                     System.err.println("empty");
                     continue;
                 }
-                if (me.hashTable[i].keySum != you.hashTable[i].keySum ||
-                        me.hashTable[i].Counter != you.hashTable[i].Counter ||
-                        me.hashTable[i].keyCheck != you.hashTable[i].keyCheck) {
+                if (me.buckets.getKeySum(i) != you.buckets.getKeySum(i) ||
+                        me.buckets.getCounter(i) != you.buckets.getCounter(i) ||
+                        me.buckets.getKeyCheck(i) != you.buckets.getKeyCheck(i)) {
                     System.err.println("unequal! ");
                     continue;
                 }
 
-                //	if(me.hashTable[i].Counter!=0&&
-                //		me.hashTable[i].keySum==you.hashTable[i].keySum&&
-                //		me.hashTable[i].Counter==you.hashTable[i].Counter){
-                totalSumCounter += (me.hashTable[i].Counter);
-                TASum = me.hashTable[i].TS;
-                TBSum = you.hashTable[i].TS;
-                //System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
+                //	if(me.buckets.getCounter(i)!=0&&
+                //		me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+                //		me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+                totalSumCounter += (me.buckets.getCounter(i));
+                TASum = me.buckets.getTS(i);
+                TBSum = you.buckets.getTS(i);
+                //System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.buckets.getCounter(i)+"\n");
                 allSquaredSum += Math.pow(TBSum - TASum, 2);
 
                 //	}
@@ -1626,11 +1591,11 @@ public class RDATable implements Writable, Serializable {
         double v0;
         //separate each hash procedure
         for (int indexHash = 0; indexHash < N_HASH; indexHash++) {
-            //////System.out.println("Table: "+you.hashTable.length+", "+me.hashTable.length);
+            //////System.out.println("Table: "+you.buckets.size()+", "+me.buckets.size());
             //////System.out.println("s: "+start+", end: "+end+", total: "+intervalHashs.get(intervalHashs.size()-1));
 
 
-            end = Math.min(intervalHashs.get(indexHash), you.hashTable.length);
+            end = Math.min(intervalHashs.get(indexHash), you.buckets.size());
             //reset for each partition hashed
             if (end == 0) {
                 break;
@@ -1638,25 +1603,25 @@ public class RDATable implements Writable, Serializable {
             S = 0;
             squaredDiff = 0;
             for (int i = start; i < end; i++) {
-                if (you.hashTable[i].empty() ||
-                        me.hashTable[i].empty() ||
-                        me.hashTable[i].Counter == 0) {
+                if (you.buckets.empty(i) ||
+                        me.buckets.empty(i) ||
+                        me.buckets.getCounter(i) == 0) {
                     System.err.println("empty");
                     continue;
                 }
-                if (me.hashTable[i].keySum != you.hashTable[i].keySum ||
-                        me.hashTable[i].Counter != you.hashTable[i].Counter) {
+                if (me.buckets.getKeySum(i) != you.buckets.getKeySum(i) ||
+                        me.buckets.getCounter(i) != you.buckets.getCounter(i)) {
                     //System.err.println("unequal! ");
                     continue;
                 }
 
-                //	if(me.hashTable[i].Counter!=0&&
-                //		me.hashTable[i].keySum==you.hashTable[i].keySum&&
-                //		me.hashTable[i].Counter==you.hashTable[i].Counter){
-                S += (me.hashTable[i].Counter);
-                TASum = me.hashTable[i].TS;
-                TBSum = you.hashTable[i].TS;
-                //System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
+                //	if(me.buckets.getCounter(i)!=0&&
+                //		me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+                //		me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+                S += (me.buckets.getCounter(i));
+                TASum = me.buckets.getTS(i);
+                TBSum = you.buckets.getTS(i);
+                //System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.buckets.getCounter(i)+"\n");
                 squaredDiff += Math.pow(TBSum - TASum, 2);
 
                 //	}
@@ -1688,40 +1653,40 @@ public class RDATable implements Writable, Serializable {
         you = null;
 
         return v;
-//		for(int i=0;i<me.hashTable.length;i++){
-//			////////System.out.println("keySum: "+me.hashTable[i].keySum+", "
-//		//+you.hashTable[i].keySum);
-//			if(me.hashTable[i].Counter!=0&&
-//					me.hashTable[i].keySum==you.hashTable[i].keySum&&
-//					me.hashTable[i].Counter==you.hashTable[i].Counter){
-//					S+=me.hashTable[i].Counter;	
+//		for(int i=0;i<me.buckets.size();i++){
+//			////////System.out.println("keySum: "+me.buckets.getKeySum(i)+", "
+//		//+you.buckets.getKeySum(i));
+//			if(me.buckets.getCounter(i)!=0&&
+//					me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+//					me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+//					S+=me.buckets.getCounter(i);	
 //			}
 //		}
 //		//////System.out.println("S: "+S);		
 //		/**
 //		 * 
-//						me.hashTable[i].keyCheck==you.hashTable[i].keyCheck&&
+//						me.buckets.getKeyCheck(i)==you.buckets.getKeyCheck(i)&&
 //						
 //		 */
 //		double v;
-//		for(int i=0;i<me.hashTable.length;i++){
+//		for(int i=0;i<me.buckets.size();i++){
 //			
-//			if(you.hashTable[i].empty()||me.hashTable[i].empty()||me.hashTable[i].Counter==0){
+//			if(you.buckets.empty(i)||me.buckets.empty(i)||me.buckets.getCounter(i)==0){
 //				System.err.println("empty");
 //				continue;
 //			}
-//			if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-//					me.hashTable[i].Counter!=you.hashTable[i].Counter){
+//			if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+//					me.buckets.getCounter(i)!=you.buckets.getCounter(i)){
 //				System.err.println("unequal! ");
 //				continue;
 //			}
 //			//only choose good pair
-//				//if(me.hashTable[i].keySum==you.hashTable[i].keySum&&
-//				//		me.hashTable[i].Counter==you.hashTable[i].Counter){					
-//					TASum=me.hashTable[i].TS;
-//					TBSum=you.hashTable[i].TS;
+//				//if(me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+//				//		me.buckets.getCounter(i)==you.buckets.getCounter(i)){					
+//					TASum=me.buckets.getTS(i);
+//					TBSum=you.buckets.getTS(i);
 //					v=TBSum - TASum;
-//					//////System.out.print(v+",#: "+me.hashTable[i].Counter+"\n");
+//					//////System.out.print(v+",#: "+me.buckets.getCounter(i)+"\n");
 //					squaredDiff+=Math.pow(v,2);		
 //					//////System.out.print("$: "+squaredDiff+"\n");	
 //				
@@ -1743,39 +1708,39 @@ public class RDATable implements Writable, Serializable {
 //		double squaredDiff=0;
 //		int S=0;
 //		
-//		for(int i=0;i<me.hashTable.length;i++){
-//			////System.out.println("keySum: "+me.hashTable[i].keySum+", "+you.hashTable[i].keySum);
-//			if(me.hashTable[i].Counter!=0&&
-//					me.hashTable[i].keySum==you.hashTable[i].keySum&&
-//					me.hashTable[i].Counter==you.hashTable[i].Counter){
-//					S+=me.hashTable[i].Counter;	
+//		for(int i=0;i<me.buckets.size();i++){
+//			////System.out.println("keySum: "+me.buckets.getKeySum(i)+", "+you.buckets.getKeySum(i));
+//			if(me.buckets.getCounter(i)!=0&&
+//					me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+//					me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+//					S+=me.buckets.getCounter(i);	
 //			}
 //		}
 //		////System.out.println("S: "+S);		
 //		/**
 //		 * 
-//						me.hashTable[i].keyCheck==you.hashTable[i].keyCheck&&
+//						me.buckets.getKeyCheck(i)==you.buckets.getKeyCheck(i)&&
 //						
 //		 */
 //		double v;
-//		for(int i=0;i<me.hashTable.length;i++){
+//		for(int i=0;i<me.buckets.size();i++){
 //			
-//			if(you.hashTable[i].empty()||me.hashTable[i].empty()||me.hashTable[i].Counter==0){
+//			if(you.buckets.empty(i)||me.buckets.empty(i)||me.buckets.getCounter(i)==0){
 //				System.err.println("empty");
 //				continue;
 //			}
-//			if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-//					me.hashTable[i].Counter!=you.hashTable[i].Counter){
+//			if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+//					me.buckets.getCounter(i)!=you.buckets.getCounter(i)){
 //				System.err.println("unequal! ");
 //				continue;
 //			}
 //			//only choose good pair
-//				if(me.hashTable[i].keySum==you.hashTable[i].keySum&&
-//						me.hashTable[i].Counter==you.hashTable[i].Counter){					
+//				if(me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+//						me.buckets.getCounter(i)==you.buckets.getCounter(i)){					
 //					TASum=me.hashTable[i].STS;
 //					TBSum=you.hashTable[i].STS;
 //					v=TBSum - TASum;
-//					//////System.out.print(v+",#: "+me.hashTable[i].Counter+"\n");
+//					//////System.out.print(v+",#: "+me.buckets.getCounter(i)+"\n");
 //					squaredDiff+=Math.pow(v,2);		
 //					//////System.out.print("$: "+squaredDiff+"\n");	
 //				
@@ -1795,11 +1760,9 @@ public class RDATable implements Writable, Serializable {
     public String dumpTable() {
         StringBuffer sb = new StringBuffer();
         sb.append("count keySum keyCheckMatch\n");
-        for (int i = 0; i < hashTable.length; i++) {
-            RDATableEntry entry = hashTable[i];
-            sb.append("# items: " + entry.getNumItems() + " " + entry.keySum + " ");
+        for (int i = 0; i < buckets.size(); i++) {
+            sb.append("# items: " + buckets.getNumItems(i) + " " + buckets.getKeySum(i) + " ");
 
-            byte[] kvec = IBLTEntry.ToByteArray(entry.keySum);
             //int[] hh = HashTableEntry.hashC.hash(new Key( kvec),HashTableEntry.N_HASHCHECK) ;
 
             // sb.append(FineComb.sHash64.hash(ByteBuffer.allocate(8).putLong(entry.keySum).array())==entry.keyCheck? "true" : "false");
@@ -1838,9 +1801,7 @@ public class RDATable implements Writable, Serializable {
         // TODO Auto-generated method stub
         try {
             BFOps.acquire();
-            for (int i = 0; i < hashTable.length; i++) {
-                hashTable[i].reset();
-            }
+            buckets.clear();
             BFOps.release();
 
         } catch (InterruptedException e) {
@@ -1859,40 +1820,24 @@ public class RDATable implements Writable, Serializable {
      * @return
      */
     public double getGoodPackets(RDATable RReceiver) {
-        // TODO Auto-generated method stub
-        double good = 0;
-
-        RDATable subtractTBF = this.subtractIBLT(RReceiver);
-        int c = 0;
-        double sum = 0;
-        int size = subtractTBF.hashTable.length;
-        //////System.out.println("$size: "+size+", receiverSize: "+RReceiver.hashTable.length);
-        for (int i = 0; i < size; i++) {
-            //useful
-            if (!RReceiver.hashTable[i].empty() && !this.hashTable[i].empty() &&
-                    this.hashTable[i].keyCheck == RReceiver.hashTable[i].keyCheck &&
-                    this.hashTable[i].keySum == RReceiver.hashTable[i].keySum) {
-                //use only buckets that have insertions
-
-                good += Math.abs(RReceiver.hashTable[i].getNumItems());//这里不应该是RReceiver的桶里的包 - subtractTBF桶里的包(存的乱序或丢的包的个数) 得到的才是good包吗
-                //////System.out.println("$size:"+t);
-            }
-
-        }
+        //use only buckets that have insertions
+        double good = RDAKernels.goodPackets(this.buckets, RReceiver.buckets);
         //averaged by the number of hash functions
         return good / N_HASH;
     }
 
     @Override
     public void write(DataOutput out) throws IOException {
-        // TODO Auto-generated method stub
-
+        RDATableCodec.write(out, buckets);
     }
 
     @Override
     public void readFields(DataInput in) throws IOException {
-        // TODO Auto-generated method stub
-
+        buckets = RDATableCodec.read(in);
+        expectedNumEntries = buckets.size();
+        if (BFOps == null) {
+            BFOps = new Semaphore(1);
+        }
     }
 
 
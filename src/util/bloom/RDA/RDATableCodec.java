@@ -0,0 +1,189 @@
+package util.bloom.RDA;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * binary format of the RDA buckets, column by column:
+ * version, flags, #buckets, [#stored, index gaps], Counters, TS, keySums, [keyChecks]
+ * Counters and gaps are varints, the rest is fixed width;
+ * tables with many empty buckets only ship the non-empty ones
+ */
+public class RDATableCodec {
+
+	static final byte VERSION = 1;
+	static final int KEYCHECK = 1;
+	static final int SPARSE = 2;
+
+	/**
+	 * leave out the empty buckets if that is smaller
+	 */
+	public volatile static boolean skipEmpty = true;
+
+	/**
+	 * length-prefixed table
+	 * @param out
+	 * @param buckets
+	 * @throws IOException
+	 */
+	public static void write(DataOutput out, RDABucketStore buckets) throws IOException {
+		ByteBuffer bb = encode(buckets);
+		out.writeInt(bb.remaining());
+		out.write(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+	}
+
+	/**
+	 * @param in
+	 * @return a store with the configured layout
+	 * @throws IOException
+	 */
+	public static RDABucketStore read(DataInput in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) {
+			throw new IOException("bad table length: " + len);
+		}
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+		return decode(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * bucket untouched since the table was cleared
+	 */
+	static boolean isBlank(RDABucketStore buckets, int i) {
+		return buckets.getCounter(i) == 0 && buckets.getKeySum(i) == 0
+				&& buckets.getKeyCheck(i) == 0 && buckets.getTS(i) == 0;
+	}
+
+	public static ByteBuffer encode(RDABucketStore buckets) {
+		int size = buckets.size();
+		boolean withKeyCheck = buckets.hasKeyCheck();
+
+		int stored = size;
+		if (skipEmpty) {
+			stored = 0;
+			for (int i = 0; i < size; i++) {
+				if (!isBlank(buckets, i)) {
+					stored++;
+				}
+			}
+		}
+		//an index gap costs about one byte, an empty bucket 13 or more
+		boolean sparse = skipEmpty && stored * 10L < size * 9L;
+		if (!sparse) {
+			stored = size;
+		}
+
+		long max = 2 + 5 + 5 + (long) stored * ((sparse ? 5 : 0) + 5 + 4 + 8 + (withKeyCheck ? 8 : 0));
+		if (max > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("table too large to encode: " + size);
+		}
+		ByteBuffer bb = ByteBuffer.allocate((int) max);
+		bb.put(VERSION);
+		bb.put((byte) ((withKeyCheck ? KEYCHECK : 0) | (sparse ? SPARSE : 0)));
+		putVarint(bb, size);
+
+		int[] index = null;
+		if (sparse) {
+			putVarint(bb, stored);
+			index = new int[stored];
+			int n = 0;
+			int last = -1;
+			for (int i = 0; i < size; i++) {
+				if (!isBlank(buckets, i)) {
+					index[n++] = i;
+					putVarint(bb, i - last - 1);
+					last = i;
+				}
+			}
+		}
+		for (int j = 0; j < stored; j++) {
+			int counter = buckets.getCounter(sparse ? index[j] : j);
+			//zigzag, small negative counters stay short
+			putVarint(bb, (counter << 1) ^ (counter >> 31));
+		}
+		for (int j = 0; j < stored; j++) {
+			bb.putFloat(buckets.getTS(sparse ? index[j] : j));
+		}
+		for (int j = 0; j < stored; j++) {
+			bb.putLong(buckets.getKeySum(sparse ? index[j] : j));
+		}
+		if (withKeyCheck) {
+			for (int j = 0; j < stored; j++) {
+				bb.putLong(buckets.getKeyCheck(sparse ? index[j] : j));
+			}
+		}
+		bb.flip();
+		return bb;
+	}
+
+	public static RDABucketStore decode(ByteBuffer bb) throws IOException {
+		byte version = bb.get();
+		if (version != VERSION) {
+			throw new IOException("unknown table version: " + version);
+		}
+		int flags = bb.get();
+		boolean withKeyCheck = (flags & KEYCHECK) != 0;
+		boolean sparse = (flags & SPARSE) != 0;
+		int size = getVarint(bb);
+		RDABucketStore buckets = RDABucketStore.allocate(size, withKeyCheck);
+
+		int stored = size;
+		int[] index = null;
+		if (sparse) {
+			stored = getVarint(bb);
+			if (stored < 0 || stored > size) {
+				throw new IOException("bad bucket count: " + stored);
+			}
+			index = new int[stored];
+			int last = -1;
+			for (int j = 0; j < stored; j++) {
+				last += getVarint(bb) + 1;
+				if (last >= size) {
+					throw new IOException("bucket index out of range: " + last);
+				}
+				index[j] = last;
+			}
+		}
+		int[] counter = new int[stored];
+		for (int j = 0; j < stored; j++) {
+			int v = getVarint(bb);
+			counter[j] = (v >>> 1) ^ -(v & 1);
+		}
+		long tsStart = bb.position();
+		long keySumStart = tsStart + 4L * stored;
+		long keyCheckStart = keySumStart + 8L * stored;
+		long end = keyCheckStart + (withKeyCheck ? 8L * stored : 0);
+		if (end > bb.limit()) {
+			throw new IOException("truncated table: " + bb.limit() + " < " + end);
+		}
+		for (int j = 0; j < stored; j++) {
+			buckets.set(sparse ? index[j] : j, counter[j], bb.getFloat((int) tsStart + 4 * j),
+					bb.getLong((int) keySumStart + 8 * j),
+					withKeyCheck ? bb.getLong((int) keyCheckStart + 8 * j) : 0);
+		}
+		return buckets;
+	}
+
+	static void putVarint(ByteBuffer bb, int v) {
+		while ((v & ~0x7F) != 0) {
+			bb.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		bb.put((byte) v);
+	}
+
+	static int getVarint(ByteBuffer bb) throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = bb.get();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+}
@@ -0,0 +1,147 @@
+package util.bloom.RDA;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * free bucket stores for the scratch tables of a round (the subtraction that
+ * is peeled, the copy a decode works on), keyed by size, banks and layout.
+ * A round takes its scratch and gives it back, so once every size has been
+ * seen a round allocates nothing in the size of the table.
+ *
+ * the free stores are bounded by maxBytes in total; when a give goes over,
+ * the sizes not taken for longest are dropped first, so the old sizes of an
+ * adaptive RDA do not stay behind
+ *
+ * the content of a store that is taken is undefined, it is overwritten by
+ * subtractInto or copyFrom
+ */
+public class RDATablePool {
+
+	//stores kept per key, rounds in flight at once
+	public static int maxPerKey = 4;
+
+	//bytes of free stores kept over all keys
+	public static long maxBytes = 256L << 20;
+
+	static final RDATablePool shared = new RDATablePool();
+
+	public static RDATablePool get() {
+		return shared;
+	}
+
+	/**
+	 * layout of a store, compared by fields
+	 */
+	static final class Key {
+		Class<?> type;
+		int size;
+		int nHash;
+		boolean keyCheck;
+
+		Key set(RDABucketStore like, int nHash) {
+			this.type = like.getClass();
+			this.size = like.size();
+			this.nHash = nHash;
+			this.keyCheck = like.hasKeyCheck();
+			return this;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return type == k.type && size == k.size && nHash == k.nHash && keyCheck == k.keyCheck;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((type.hashCode() * 31 + size) * 31 + nHash) * 2 + (keyCheck ? 1 : 0);
+		}
+	}
+
+	//access order, the first entry is the size not used for longest
+	final LinkedHashMap<Key, ArrayDeque<RDABucketStore>> free = new LinkedHashMap<Key, ArrayDeque<RDABucketStore>>(16, 0.75f, true);
+	//looked up under the lock, so take and give build no key
+	final Key probe = new Key();
+	long freeBytes = 0;
+	int allocated = 0;
+
+	/**
+	 * @param like size and layout of the store
+	 * @param nHash banks of the table
+	 * @return a store with the layout of like, not cleared
+	 */
+	public RDABucketStore take(RDABucketStore like, int nHash) {
+		synchronized (this) {
+			ArrayDeque<RDABucketStore> q = free.get(probe.set(like, nHash));
+			if (q != null) {
+				RDABucketStore s = q.poll();
+				if (q.isEmpty()) {
+					free.remove(probe);
+				}
+				freeBytes -= s.sizeInBytes();
+				return s;
+			}
+			allocated++;
+		}
+		return like.newStore(like.size());
+	}
+
+	/**
+	 * @param store no longer used by the caller
+	 * @param nHash
+	 */
+	public synchronized void give(RDABucketStore store, int nHash) {
+		long bytes = store.sizeInBytes();
+		if (bytes > maxBytes || maxPerKey <= 0) {
+			return;
+		}
+		ArrayDeque<RDABucketStore> q = free.get(probe.set(store, nHash));
+		if (q == null) {
+			q = new ArrayDeque<RDABucketStore>(maxPerKey);
+			free.put(new Key().set(store, nHash), q);
+		}
+		if (q.size() >= maxPerKey) {
+			return;
+		}
+		q.offer(store);
+		freeBytes += bytes;
+		//drop the least recently used sizes, then the older stores of this one
+		Iterator<Map.Entry<Key, ArrayDeque<RDABucketStore>>> it = free.entrySet().iterator();
+		while (freeBytes > maxBytes && it.hasNext()) {
+			ArrayDeque<RDABucketStore> old = it.next().getValue();
+			while (freeBytes > maxBytes && !old.isEmpty()) {
+				freeBytes -= old.poll().sizeInBytes();
+			}
+			if (old.isEmpty()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * stores allocated because none was free
+	 * @return
+	 */
+	public synchronized int getAllocated() {
+		return allocated;
+	}
+
+	/**
+	 * bytes of the free stores
+	 * @return
+	 */
+	public synchronized long getFreeBytes() {
+		return freeBytes;
+	}
+
+	public synchronized void clear() {
+		free.clear();
+		freeBytes = 0;
+	}
+}
@@ -0,0 +1,187 @@
+package util.bloom.RDA;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * SRDA table split by flow: the 5-tuple hash of a packet picks one of K
+ * shards, and the packet goes into the banks of that shard only. All shards
+ * live in one bucket store, shard s at [s*shardBuckets, (s+1)*shardBuckets),
+ * each laid out as a SimpleRDATable of shardBuckets buckets; a shard cut out
+ * of the store is decoded, repaired and scored by the SimpleRDATable code,
+ * and memory and transfer grow linearly with K instead of with the flows.
+ *
+ * a selection of shards is shipped packed, in the order it was asked for
+ */
+public class ShardedRDATable implements Serializable {
+
+	private static final long serialVersionUID = -2284016405736154398L;
+
+	//no 5-tuple, the packet stays out of the shards
+	public static final long NO_FLOW = 0;
+
+	final int numShards;
+	//buckets per shard, a multiple of the hash functions
+	final int shardBuckets;
+	//all shards, one after the other
+	public RDABucketStore buckets;
+
+	/**
+	 * @param _numShards
+	 * @param _shardBuckets rounded down to the hash functions
+	 */
+	public ShardedRDATable(int _numShards, int _shardBuckets) {
+		int nHash = SimpleRDATable.N_HASH;
+		numShards = Math.max(1, _numShards);
+		shardBuckets = Math.max(nHash, _shardBuckets - _shardBuckets % nHash);
+		buckets = RDABucketStore.allocate(numShards * shardBuckets, false);
+	}
+
+	/**
+	 * @param flow a 5-tuple hash, not NO_FLOW
+	 * @param numShards
+	 * @return
+	 */
+	public static int shardOf(long flow, int numShards) {
+		return (int) (((flow ^ (flow >>> 32)) & 0x7fffffff) % numShards);
+	}
+
+	public int shardOf(long flow) {
+		return shardOf(flow, numShards);
+	}
+
+	/**
+	 * the packet into the banks of its shard, where SimpleRDATable would put it
+	 * in a table of shardBuckets buckets
+	 * @param flow
+	 * @param id
+	 * @param ts
+	 */
+	public void insert(long flow, long id, double ts) {
+		if (buckets.isThreadSafe()) {
+			update(shardOf(flow) * shardBuckets, id, ts);
+			return;
+		}
+		synchronized (this) {
+			update(shardOf(flow) * shardBuckets, id, ts);
+		}
+	}
+
+	void update(int base, long id, double ts) {
+		int nHash = SimpleRDATable.N_HASH;
+		int bank = shardBuckets / nHash;
+		for (int i = 0; i < nHash; i++) {
+			int h = SimpleRDATable.hashPos(id, i);
+			buckets.update(base + i * bank + (h % bank), 1, ts, id, 0);
+		}
+	}
+
+	public int getNumShards() {
+		return numShards;
+	}
+
+	public int getShardBuckets() {
+		return shardBuckets;
+	}
+
+	/**
+	 * a copy of shard s
+	 * @param s
+	 * @return
+	 */
+	public SimpleRDATable shard(int s) {
+		return cut(buckets, s, shardBuckets);
+	}
+
+	/**
+	 * the index-th shard of a store of shards, as a table of its own
+	 * @param store the arena, or the packed shards of a response
+	 * @param index
+	 * @param shardBuckets
+	 * @return a copy
+	 */
+	public static SimpleRDATable cut(RDABucketStore store, int index, int shardBuckets) {
+		SimpleRDATable t = new SimpleRDATable();
+		t.buckets = store.newStore(shardBuckets);
+		t.buckets.copyFrom(store, index * shardBuckets, 0, shardBuckets);
+		t.expectedNumEntries = shardBuckets;
+		return t;
+	}
+
+	/**
+	 * @param shards from validShards()
+	 * @return the shards packed in the given order
+	 */
+	public RDABucketStore select(int[] shards) {
+		RDABucketStore out = buckets.newStore(shards.length * shardBuckets);
+		synchronized (this) {
+			for (int k = 0; k < shards.length; k++) {
+				out.copyFrom(buckets, shards[k] * shardBuckets, k * shardBuckets, shardBuckets);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * @param asked shard numbers, null or empty for all
+	 * @return the ones this table has, each once, in the order asked
+	 */
+	public int[] validShards(int[] asked) {
+		if (asked == null || asked.length == 0) {
+			int[] all = new int[numShards];
+			for (int s = 0; s < numShards; s++) {
+				all[s] = s;
+			}
+			return all;
+		}
+		boolean[] seen = new boolean[numShards];
+		int[] out = new int[asked.length];
+		int n = 0;
+		for (int s : asked) {
+			if (s >= 0 && s < numShards && !seen[s]) {
+				seen[s] = true;
+				out[n++] = s;
+			}
+		}
+		return Arrays.copyOf(out, n);
+	}
+
+	/**
+	 * packets in shard s, the counters of its first bank
+	 * @param s
+	 * @return
+	 */
+	public long packets(int s) {
+		return packets(buckets, s, shardBuckets);
+	}
+
+	public static long packets(RDABucketStore store, int index, int shardBuckets) {
+		int base = index * shardBuckets;
+		int bank = shardBuckets / SimpleRDATable.N_HASH;
+		long c = 0;
+		for (int i = base; i < base + bank; i++) {
+			c += store.getCounter(i);
+		}
+		return c;
+	}
+
+	public synchronized void clear() {
+		buckets.clear();
+	}
+
+	/**
+	 * @param list shard numbers, space or comma separated
+	 * @return
+	 */
+	public static int[] parse(String list) {
+		String[] parts = list.trim().split("[\\s,]+");
+		int[] out = new int[parts.length];
+		int n = 0;
+		for (String p : parts) {
+			if (!p.isEmpty()) {
+				out[n++] = Integer.parseInt(p);
+			}
+		}
+		return Arrays.copyOf(out, n);
+	}
+}
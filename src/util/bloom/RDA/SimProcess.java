@@ -346,11 +346,11 @@ public class SimProcess {
 			//us.clear();
 			//us=null;
 			double good = 0;
-			for(int i=0;i<sender.hashTable.length;i++){
-				if(sender.hashTable[i].keyCheck==receiver.hashTable[i].keyCheck&&
-						sender.hashTable[i].Counter>0&&
-						sender.hashTable[i].keySum==receiver.hashTable[i].keySum){
-					good+=sender.hashTable[i].Counter;
+			for(int i=0;i<sender.buckets.size();i++){
+				if(sender.buckets.getKeyCheck(i)==receiver.buckets.getKeyCheck(i)&&
+						sender.buckets.getCounter(i)>0&&
+						sender.buckets.getKeySum(i)==receiver.buckets.getKeySum(i)){
+					good+=sender.buckets.getCounter(i);
 				}
 			}
 			
@@ -475,11 +475,11 @@ public class SimProcess {
 			//us.clear();
 			//us=null;
 			double good = 0;
-			for(int i=0;i<sender.hashTable.length;i++){
-				if(sender.hashTable[i].keyCheck==receiver.hashTable[i].keyCheck&&
-						sender.hashTable[i].Counter>0&&
-						sender.hashTable[i].keySum==receiver.hashTable[i].keySum){
-					good+=sender.hashTable[i].Counter;
+			for(int i=0;i<sender.buckets.size();i++){
+				if(sender.buckets.getKeyCheck(i)==receiver.buckets.getKeyCheck(i)&&
+						sender.buckets.getCounter(i)>0&&
+						sender.buckets.getKeySum(i)==receiver.buckets.getKeySum(i)){
+					good+=sender.buckets.getCounter(i);
 				}
 			}
 			
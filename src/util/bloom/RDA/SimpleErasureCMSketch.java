@@ -51,9 +51,9 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
     public SimpleErasureCMSketchEntry[] hashTable = null;
 
     //hash function
-    public static LongHashFunction[] LongHashFunction4PosHash;//哈希函数
+    public static LongHashFunction[] LongHashFunction4PosHash = new LongHashFunction[N_HASH];//哈希函数
     //sign calculate
-    public static LongHashFunction[] LongHashFunction4PosHashSign;
+    public static LongHashFunction[] LongHashFunction4PosHashSign = new LongHashFunction[N_HASH];
 
     //create a lock on the data
     public Semaphore BFOps = null;
@@ -66,6 +66,21 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
     public double sampleProbability = 1;
     public int requiredLeadingZeros = 0;
 
+    //bumped by every change of the buckets or the stash, the decoded index is rebuilt when it is behind
+    volatile long version = 0;
+    //id -> value of the ids that peel off, see getDecodedIndex()
+    transient volatile LongDoubleMap decodedIndex = null;
+    //the buckets with the stash erased, read by the min/median fallback of the same version
+    transient volatile SimpleErasureCMSketch decodedView = null;
+    transient long decodedVersion = -1;
+    //values of one median query
+    static final ThreadLocal<double[]> medianScratch = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[N_HASH];
+        }
+    };
+
     public static Random getSingleton() {
         if (RandSign == null) {
             RandSign = new Random(seedSign);
@@ -95,6 +110,7 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
      */
     public void resetStashCache() {
         this.stashCache.clear();
+        version++;
     }
 
     /**
@@ -104,6 +120,7 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
     public boolean insert2Stash(long id, double value) {
         if (stashCache.size() < this.stashSize) {
             stashCache.put(id, value);
+            version++;
             return true;
         } else {
             return false;
@@ -145,8 +162,11 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
         //semaphore
         BFOps = new Semaphore(1);
 
+        //copies keep the hash functions of the sketch they copy
         for (int i = 0; i < N_HASH; i++) {
-            LongHashFunction4PosHash[i] = LongHashFunction.xx(i);
+            if (LongHashFunction4PosHash[i] == null) {
+                LongHashFunction4PosHash[i] = LongHashFunction.xx(i);
+            }
         }
 
     }
@@ -583,6 +603,7 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
                 hashTable[index] = entry;
 
             }
+            version++;
 
             //kVec=null;
             //release
@@ -1025,6 +1046,62 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
 
     public static int medianSketchChoice = 2;
 
+    /**
+     * to be called after the buckets were changed other than by
+     * insert/erase/clear, e.g. an entry of hashTable set directly
+     */
+    public void invalidate() {
+        version++;
+    }
+
+    /**
+     * ids that peel off a copy of the sketch once the stash is taken out,
+     * with their values. Decoded once per change of the sketch and shared by
+     * the queries until the next insert/erase/clear or stash change; a
+     * sketch from mergeIBLT/subtractIBLT is a new one with its own index
+     *
+     * @return read only, replaced rather than changed by a rebuild
+     */
+    public synchronized LongDoubleMap getDecodedIndex() {
+        long v = version;
+        LongDoubleMap index = decodedIndex;
+        if (index != null && decodedVersion == v) {
+            return index;
+        }
+        //remove stash first, from a copy that the fallback reads as well
+        SimpleErasureCMSketch view = this;
+        if (!stashCache.isEmpty()) {
+            view = this.copyTable();
+            Iterator<Map.Entry<Long, Double>> ier = stashCache.entrySet().iterator();
+            while (ier.hasNext()) {
+                Map.Entry<Long, Double> tmp = ier.next();
+                view.erase(tmp.getKey(), tmp.getValue());
+            }
+        }
+        SimpleErasureCMSketch peeled = view.copyTable();
+        index = LongDoubleMap.create(Math.max(16, hashTable.length / Math.max(1, N_HASH)), false);
+        int nErased;
+        while (true) {
+            nErased = 0;
+            for (int i = 0; i < peeled.hashTable.length; i++) {
+                SimpleErasureCMSketchEntry entry = peeled.hashTable[i];
+                if (EntryIsPure(peeled, i)) {
+                    index.put(entry.keySum, (double) entry.normalValueSum);
+                    //delete from the table
+                    nErased++;
+                    peeled._insert(entry.keySum, -entry.normalValueSum);
+                }
+            }
+            if (nErased <= 0) {
+                break;
+            }
+        }
+        decodedIndex = index;
+        decodedView = view;
+        decodedVersion = v;
+        return index;
+    }
+
     /**
      * portal for the query process, first exact, then approximate
      *
@@ -1033,28 +1110,65 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
      * @return
      */
     public double queryItemPortal(long id, int choiceOfType) {
+        //step1: decode, once per change of the sketch
+        LongDoubleMap decodedKeyValues;
+        SimpleErasureCMSketch view;
+        synchronized (this) {
+            decodedKeyValues = getDecodedIndex();
+            view = decodedView;
+        }
+        return query(id, choiceOfType, decodedKeyValues, view);
+    }
 
+    /**
+     * queryItemPortal for many ids against one decoded index
+     *
+     * @param ids
+     * @param out out[i] is the value of ids[i]
+     * @param choiceOfType, 1, min, 2, median
+     */
+    public void queryBatch(long[] ids, double[] out, int choiceOfType) {
+        LongDoubleMap decodedKeyValues;
+        SimpleErasureCMSketch view;
+        synchronized (this) {
+            decodedKeyValues = getDecodedIndex();
+            view = decodedView;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            out[i] = query(ids[i], choiceOfType, decodedKeyValues, view);
+        }
+    }
 
-        //step1: decode;
-        Hashtable<Long, Double> decodedKeyValues = decodeAllIDs();
+    /**
+     * queryBatch with the min estimate
+     *
+     * @param ids
+     * @param out
+     */
+    public void queryBatch(long[] ids, double[] out) {
+        queryBatch(ids, out, minSketchChoice);
+    }
 
+    /**
+     * @param view buckets without the stash, of the same version as decodedKeyValues
+     */
+    double query(long id, int choiceOfType, LongDoubleMap decodedKeyValues, SimpleErasureCMSketch view) {
         //stash first
-        if (stashCache.containsKey(id)) {
+        if (!stashCache.isEmpty() && stashCache.containsKey(id)) {
             return stashCache.get(id);
-        } else if (decodedKeyValues.containsKey(id)) {
-            return decodedKeyValues.get(id);
+        }
+        double v = decodedKeyValues.get(id, Double.NaN);
+        if (!Double.isNaN(v)) {
+            return v;
+        }
+        if (choiceOfType == minSketchChoice) {
+            return view.getMinBucketByArray(id);
+        } else if (choiceOfType == medianSketchChoice) {
+            return view.getMedianBucketByArray(id);
         } else {
-            if (choiceOfType == minSketchChoice) {
-                return getMinBucketByArray(id);
-            } else if (choiceOfType == medianSketchChoice) {
-                return getMedianBucketByArray(id);
-            } else {
-                //not supported
-                return -1;
-            }
-
+            //not supported
+            return -1;
         }
-
     }
 
 
@@ -1066,32 +1180,23 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
     public double getMinBucketByArray(long id) {
 
         int index;
-        //byte[] kVec=IBLTEntry.ToByteArray(id);
         int bucketsPerHash = hashTable.length / N_HASH;
 
-        /**
-         * cache the results
-         */
-        ArrayList<Double> results = new ArrayList<Double>();
-
+        double min = Double.POSITIVE_INFINITY;
         for (int i = 0; i < N_HASH; i++) {
             int startEntry = i * bucketsPerHash;
 
-            //int[] h=IBLTEntry.hashC.hash(new Key(kVec),i);
             int h = hashPos(id, i);
 
             index = startEntry + (h % bucketsPerHash);
-            SimpleErasureCMSketchEntry entry = hashTable[index];
-
-            results.add((double) entry.normalValueSum);
-
+            min = Math.min(min, hashTable[index].normalValueSum);
         }
-        return Collections.min(results);
+        return min;
 
     }
 
     /**
-     * median query by the table
+     * median query by the table, the upper median for an even number of hash functions
      *
      * @param id
      * @return
@@ -1099,29 +1204,33 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
     public double getMedianBucketByArray(long id) {
 
         int index;
-        //byte[] kVec=IBLTEntry.ToByteArray(id);
         int bucketsPerHash = hashTable.length / N_HASH;
 
         /**
-         * cache the results
+         * cache the results, sorted as they come
          */
-        ArrayList<Double> results = new ArrayList<Double>(1);
+        double[] results = medianScratch.get();
+        if (results.length < N_HASH) {
+            results = new double[N_HASH];
+            medianScratch.set(results);
+        }
 
         for (int i = 0; i < N_HASH; i++) {
             int startEntry = i * bucketsPerHash;
 
-            //int[] h=IBLTEntry.hashC.hash(new Key(kVec),i);
             int h = hashPos(id, i);
 
             index = startEntry + (h % bucketsPerHash);
-            SimpleErasureCMSketchEntry entry = hashTable[index];
-
-            results.add((double) entry.signedValueSum * hashSign(id, i));
-
+            double v = (double) hashTable[index].signedValueSum * hashSign(id, i);
+            int j = i;
+            while (j > 0 && results[j - 1] > v) {
+                results[j] = results[j - 1];
+                j--;
+            }
+            results[j] = v;
         }
-        Collections.sort(results);
-        int medianPos = (int) Math.round(results.size() / 2.0);
-        return results.get(medianPos);
+        int medianPos = Math.min((int) Math.round(N_HASH / 2.0), N_HASH - 1);
+        return results[medianPos];
 
     }
 
@@ -1168,6 +1277,7 @@ public class SimpleErasureCMSketch implements Writable, Serializable {
             for (int i = 0; i < hashTable.length; i++) {
                 hashTable[i].reset();
             }
+            version++;
             BFOps.release();
         } catch (InterruptedException e) {
             // TODO Auto-generated catch block
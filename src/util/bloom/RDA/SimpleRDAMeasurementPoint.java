@@ -4,20 +4,16 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.AbstractMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.Set;
 
-import com.google.common.collect.Sets;
-import com.google.common.collect.Sets.SetView;
-
 import edu.NUDT.control.PassiveCollectorPeriod;
 import edu.harvard.syrah.prp.Log;
 import util.async.HashMapCache;
-import util.async.java.util.concurrent.ConcurrentHashMap;
 
 
 public class SimpleRDAMeasurementPoint {
@@ -27,9 +23,11 @@ public class SimpleRDAMeasurementPoint {
 
     //RDA compute
     //public RDATable sender;
-    public RDATable sender;
+    public volatile RDATable sender;
     //cache for RDA
-    public ConcurrentHashMap<Long, Double> SenderTSTable;  //缓存数据包  在packetIncoming改变
+    public volatile LongDoubleMap SenderTSTable;
+    //capture into a live epoch, sender is the frozen one; null: capture into sender
+    public RDAEpochs<RDATable> epochs;  //缓存数据包  在packetIncoming改变
 
     long maximumTotalPackets = 0;
 
@@ -47,7 +45,7 @@ public class SimpleRDAMeasurementPoint {
 
         //sender = new RDATable(_expectedNumEntries);
         sender = new RDATable(_expectedNumEntries);
-        SenderTSTable = new ConcurrentHashMap<Long, Double>();
+        SenderTSTable = LongDoubleMap.create(_expectedNumEntries, true);
     }
 
     public SimpleRDAMeasurementPoint(int _expectedNumEntries, long totalPackets, int hashNum) {
@@ -56,7 +54,7 @@ public class SimpleRDAMeasurementPoint {
 
         sender.setHash(hashNum);
 
-        SenderTSTable = new ConcurrentHashMap<Long, Double>();
+        SenderTSTable = LongDoubleMap.create(_expectedNumEntries, true);
 
         maximumTotalPackets = totalPackets;
         sender.sampleProbability = 1;
@@ -67,7 +65,7 @@ public class SimpleRDAMeasurementPoint {
 
         sender = new RDATable(_expectedNumEntries);
 
-        SenderTSTable = new ConcurrentHashMap<Long, Double>();
+        SenderTSTable = LongDoubleMap.create(_expectedNumEntries, true);
 
         maximumTotalPackets = totalPackets;
         sender.sampleProbability = samplingProb;
@@ -79,7 +77,7 @@ public class SimpleRDAMeasurementPoint {
         sender = new RDATable(_expectedNumEntries);
         //receiver = new RDATable(_expectedNumEntries);
 
-        SenderTSTable = new ConcurrentHashMap<Long, Double>();
+        SenderTSTable = LongDoubleMap.create(_expectedNumEntries, true);
         //ReceiverTSTable = new Hashtable<Long,Double>();
         //maximumTotalPackets=totalPackets;
         sender.sampleProbability = samplingProb;
@@ -95,7 +93,7 @@ public class SimpleRDAMeasurementPoint {
         // TODO Auto-generated method stub
         log.main("stored: " + cache.size());
         for (Entry<Long, Long> e : cache.entrySet()) {
-            Long id = e.getKey();
+            long id = e.getKey();
             //这里随便调用一个读取scaleTS的类就行  精度？
             double ts = (PassiveCollectorPeriod.scaleTS * e.getValue());//(PassiveRDAHost.scaleTS*(e.getValue()-PassiveRDAHost.TSConstant));
             SenderTSTable.put(id, ts);
@@ -122,6 +120,17 @@ public class SimpleRDAMeasurementPoint {
      * @param ts
      */
     public void packetIncoming(long id, double ts) {
+        if (epochs != null) {
+            RDAEpochs.Epoch<RDATable> e = epochs.enter();
+            try {
+                if (e.ids.putIfAbsent(id, ts)) {
+                    e.table.insert(id, ts, 1);
+                }
+            } finally {
+                epochs.exit(e);
+            }
+            return;
+        }
         if (SenderTSTable.containsKey(id)) {
             //System.err.println("contains key: "+id+", "+ts);
             return;
@@ -152,13 +161,12 @@ public class SimpleRDAMeasurementPoint {
      */
     public boolean packetIncomingIgnoreDuplicate(long id,
                                                  double ts) {
-        if (SenderTSTable.containsKey(id)) {
+        //one check and put, parallel pcap workers may race on the same id
+        if (!SenderTSTable.putIfAbsent(id, ts)) {
             return false;
-        } else {
-            sender.insert(id, ts, 1);
-            SenderTSTable.put(id, ts);
-            return true;
         }
+        sender.insert(id, ts, 1);
+        return true;
     }
 
 
@@ -166,7 +174,7 @@ public class SimpleRDAMeasurementPoint {
         /**
          * subtract, a new TBFTable
          */
-        RDATable subtract = sender.subtractIBLT(receiver);
+        RDATable subtract = sender.subtractFromPool(receiver);
         HashSet<Long> SenderItems = new HashSet<Long>(2);
         HashSet<Long> ReceiverItems = new HashSet<Long>(2);
         //decode the ids
@@ -175,20 +183,28 @@ public class SimpleRDAMeasurementPoint {
 
         SenderItems.clear();
         ReceiverItems.clear();
-        subtract.clear();
+        subtract.giveToPool();
         return siz;
     }
 
     public boolean decodeSet(RDATable receiver, HashSet<Long> SenderItems, HashSet<Long> ReceiverItems) {
+        return decodeSet(sender, receiver, SenderItems, ReceiverItems);
+    }
+
+    /**
+     * @param local my table, the same size as the receiver's
+     * @param receiver
+     * @param SenderItems
+     * @param ReceiverItems
+     * @return
+     */
+    public boolean decodeSet(RDATable local, RDATable receiver, HashSet<Long> SenderItems, HashSet<Long> ReceiverItems) {
         /**
          * subtract, a new TBFTable
          */
 
-        RDATable subtract = sender.subtractIBLT(receiver);
-        //log.main("subtracted!");
-        //decode the ids
-
-        boolean decodable = subtract.decodeIDs(SenderItems, ReceiverItems); //一个是丢包的id集合  一个是乱序包的id集合
+        //subtract into a pooled scratch and decode there
+        boolean decodable = local.decodeInto(receiver, SenderItems, ReceiverItems); //一个是丢包的id集合  一个是乱序包的id集合
         //log.main("decoded!");
         //	SenderItems.clear();
         //	ReceiverItems.clear();
@@ -210,7 +226,7 @@ public class SimpleRDAMeasurementPoint {
 
         long time1 = System.nanoTime();
 
-        RDATable subtract = sender.subtractIBLT(receiver);
+        RDATable subtract = sender.subtractFromPool(receiver);
         long time3 = System.nanoTime();
 
         long delay1 = time3 - time1;
@@ -220,7 +236,7 @@ public class SimpleRDAMeasurementPoint {
 
         SenderItems.clear();
         ReceiverItems.clear();
-        subtract.clear();
+        subtract.giveToPool();
 
         long ts = (delay1 + delay2[1]) / 1000;
 
@@ -233,21 +249,21 @@ public class SimpleRDAMeasurementPoint {
      *
      * @return
      */
-    public void repair(RDATable receiver, Hashtable<Long, Double> ReceiverTSTable) {
+    public void repair(RDATable receiver, Map<Long, Double> ReceiverTSTable) {
         /**
          * subtract, a new TBFTable
          */
-        RDATable subtract = sender.subtractIBLT(receiver);
+        //subtract into a pooled scratch and peel it there
         HashSet<Long> SenderItems = new HashSet<Long>(2);
         HashSet<Long> ReceiverItems = new HashSet<Long>(2);
         //decode the ids
-        boolean decodable = subtract.decodeIDs(SenderItems, ReceiverItems);
+        boolean decodable = sender.decodeInto(receiver, SenderItems, ReceiverItems);
         System.out.println("decode: " + decodable + ",s: " + SenderItems.size() + ",r: " + ReceiverItems.size());
 
 
         //repair the sender
         if (!SenderItems.isEmpty()) {
-            sender.RepairTBF(SenderItems, new Hashtable<Long, Double>(SenderTSTable));
+            sender.RepairTBF(SenderItems, SenderTSTable);
             //repair(sender,SenderItems,SenderTSTable);
         }
         //repair the receiver
@@ -266,7 +282,11 @@ public class SimpleRDAMeasurementPoint {
      * @param ReceiverItems
      * @param ReceiverMiss
      */
-    public void repairDirect(HashSet<Long> SenderItems, RDATable receiver, HashSet<Long> ReceiverItems, Hashtable<Long, Double> ReceiverMiss) {
+    public void repairDirect(HashSet<Long> SenderItems, RDATable receiver, HashSet<Long> ReceiverItems, Map<Long, Double> ReceiverMiss) {
+        repairDirect(sender, SenderItems, receiver, ReceiverItems, ReceiverMiss);
+    }
+
+    public void repairDirect(RDATable local, HashSet<Long> SenderItems, RDATable receiver, HashSet<Long> ReceiverItems, Map<Long, Double> ReceiverMiss) {
         /**
          * subtract, a new TBFTable
          */
@@ -279,7 +299,7 @@ public class SimpleRDAMeasurementPoint {
 
         //repair the sender
         if (!SenderItems.isEmpty()) {
-            sender.RepairTBF(SenderItems, new Hashtable<Long, Double>(SenderTSTable));  //为什么传new  而不直接传SenderTSTable?
+            local.RepairTBF(SenderItems, SenderTSTable);
             //repair(sender,SenderItems,SenderTSTable);
         }
         //repair the receiver
@@ -297,16 +317,16 @@ public class SimpleRDAMeasurementPoint {
      */
 
 
-    public double[] repairNow(double percent, RDATable receiver, Hashtable<Long, Double> ReceiverTSTable) {
+    public double[] repairNow(double percent, RDATable receiver, Map<Long, Double> ReceiverTSTable) {
         /**
          * subtract, a new TBFTable
          */
-        RDATable subtract = sender.subtractIBLT(receiver);
+        //subtract into a pooled scratch and peel it there
         HashSet<Long> SenderItems = new HashSet<Long>(2);
         HashSet<Long> ReceiverItems = new HashSet<Long>(2);
         //decode the ids
         double t1 = System.currentTimeMillis();
-        boolean decodable = subtract.decodeIDs(SenderItems, ReceiverItems);
+        boolean decodable = sender.decodeInto(receiver, SenderItems, ReceiverItems);
         double delay = System.currentTimeMillis() - t1;
         System.out.println("decode: " + decodable + ",s: " + SenderItems.size() + ",r: " + ReceiverItems.size());
 
@@ -365,11 +385,11 @@ public class SimpleRDAMeasurementPoint {
 
 
         double good = 0;
-        for (int i = 0; i < sender.hashTable.length; i++) {
-            if (//sender.hashTable[i].keyCheck==receiver.hashTable[i].keyCheck&&
-                    sender.hashTable[i].Counter > 0 &&
-                            sender.hashTable[i].keySum == receiver.hashTable[i].keySum) {
-                good += sender.hashTable[i].Counter;
+        for (int i = 0; i < sender.buckets.size(); i++) {
+            if (//sender.buckets.getKeyCheck(i)==receiver.buckets.getKeyCheck(i)&&
+                    sender.buckets.getCounter(i) > 0 &&
+                            sender.buckets.getKeySum(i) == receiver.buckets.getKeySum(i)) {
+                good += sender.buckets.getCounter(i);
             }
         }
 
@@ -379,16 +399,16 @@ public class SimpleRDAMeasurementPoint {
         return result;
     }
 
-    public double repair(double percent, RDATable receiver, Hashtable<Long, Double> ReceiverTSTable) {
+    public double repair(double percent, RDATable receiver, Map<Long, Double> ReceiverTSTable) {
         /**
          * subtract, a new TBFTable
          */
-        RDATable subtract = sender.subtractIBLT(receiver);
+        //subtract into a pooled scratch and peel it there
         HashSet<Long> SenderItems = new HashSet<Long>(2);
         HashSet<Long> ReceiverItems = new HashSet<Long>(2);
         //decode the ids
 
-        boolean decodable = subtract.decodeIDs(SenderItems, ReceiverItems);
+        boolean decodable = sender.decodeInto(receiver, SenderItems, ReceiverItems);
         System.out.println("decode: " + decodable + ",s: " + SenderItems.size() + ",r: " + ReceiverItems.size());
 
 
@@ -448,11 +468,11 @@ public class SimpleRDAMeasurementPoint {
 
 
         double good = 0;
-        for (int i = 0; i < sender.hashTable.length; i++) {
-            if (//sender.hashTable[i].keyCheck==receiver.hashTable[i].keyCheck&&
-                    sender.hashTable[i].Counter > 0 &&
-                            sender.hashTable[i].keySum == receiver.hashTable[i].keySum) {
-                good += sender.hashTable[i].Counter;
+        for (int i = 0; i < sender.buckets.size(); i++) {
+            if (//sender.buckets.getKeyCheck(i)==receiver.buckets.getKeyCheck(i)&&
+                    sender.buckets.getCounter(i) > 0 &&
+                            sender.buckets.getKeySum(i) == receiver.buckets.getKeySum(i)) {
+                good += sender.buckets.getCounter(i);
             }
         }
 
@@ -470,6 +490,10 @@ public class SimpleRDAMeasurementPoint {
         return sender.getAvgTS(receiver);
     }
 
+    public double getAverage(RDATable local, RDATable receiver) {
+        return local.getAvgTS(receiver);
+    }
+
 
     /**
      * StandardDeviation
@@ -477,7 +501,7 @@ public class SimpleRDAMeasurementPoint {
      * @param avg, average number
      * @return
      */
-    public double getStandardDeviation(double avg, RDATable receiver, Hashtable<Long, Double> ReceiverTSTable) {
+    public double getStandardDeviation(double avg, RDATable receiver, Map<Long, Double> ReceiverTSTable) {
         return sender.getSTD(receiver, avg);
 
         //return receiver.getVarianceStatistics(sender, avg);
@@ -496,14 +520,56 @@ public class SimpleRDAMeasurementPoint {
         //return receiver.getVarianceStatistics(sender, avg);
     }
 
+    public double getStandardDeviation(RDATable local, double avg, RDATable receiver) {
+        return local.getSTD(receiver, avg);
+    }
+
     public String getBucketSize(RDATable receiver) {
         // TODO Auto-generated method stub
         return sender.expectedNumEntries + " " + receiver.expectedNumEntries + " ";
     }
 
+    /**
+     * capture into epochs from now on, the rounds read the frozen one
+     * @param expected packets per period
+     */
+    public void enableEpochs(int expected) {
+        final int size = sender.getNumBuckets();
+        final double p = sender.sampleProbability;
+        epochs = new RDAEpochs<RDATable>(new RDAEpochs.Factory<RDATable>() {
+            public RDATable create() {
+                RDATable t = new RDATable(size);
+                t.sampleProbability = p;
+                return t;
+            }
+
+            public void clear(RDATable table) {
+                table.clear();
+            }
+        }, expected);
+        sender = epochs.getFrozen().table;
+        SenderTSTable = epochs.getFrozen().ids;
+    }
+
+    /**
+     * end of a period: the live epoch becomes sender, once per period
+     */
+    public void freeze() {
+        if (epochs != null) {
+            RDAEpochs.Epoch<RDATable> e = epochs.freeze();
+            sender = e.table;
+            SenderTSTable = e.ids;
+        }
+    }
+
     public void clear() {
         // TODO Auto-generated method stub
         isParsed = false;
+        if (epochs != null) {
+            //the frozen table stays until the next freeze
+            epochs.reopen();
+            return;
+        }
         SenderTSTable.clear();
         //ReceiverTSTable.clear();
         //SenderTSTable=null;
@@ -524,49 +590,19 @@ public class SimpleRDAMeasurementPoint {
      * @param receiverTSTable
      * @return
      */
-    public double[] computeDirect(Hashtable<Long, Double> receiverTSTable) {
+    public double[] computeDirect(LongDoubleMap receiverTSTable) {
         // TODO Auto-generated method stub
         /**
          * read the trace
          * return the target
          */
-        double Ak = 0;  //平均时延
-        double AkMinusOne = 0;  //存储上一次的平均时延
-        double Qk = 0;  //标准差
-        double squareRTTSum = 0; //正常数据包 时延的平方和   论文中Algorithm的SqSum
-        double counter = 0;  //good packet的计数
-        double xk = 0;  //本次正常包的时延
-        //
-        SetView<Long> keys = Sets.intersection(SenderTSTable.keySet(), receiverTSTable.keySet());  //两个集合的交集  difference 是差集
-        int i = 0;
-        double[] TS = {0, 0};
-        if (!keys.isEmpty()) {  //有交集
-            Iterator<Long> ier = keys.iterator();
-            while (ier.hasNext()) {
-                Long nxt = ier.next();
-                TS[0] = SenderTSTable.get(nxt);  //发送方该包的时间戳
-                TS[1] = receiverTSTable.get(nxt);  //接收方该包的时间戳
-                //System.out.println("line: "+lines + ", "+timestamp);
-
-                if (Double.isInfinite(TS[0]) || Double.isNaN(TS[0]) ||
-                        Double.isInfinite(TS[1]) || Double.isNaN(TS[1])) {
-                    continue;
-                }
-                //good
-                //average over the delay
-                AkMinusOne = Ak;  //存储上一次的平均时延
-                xk = Math.abs(TS[0] - TS[1]);  //本次包传送的时延
-                //average
-                Ak = RDAHostSimpleLossReorder.onePassAvg(i + 1, Ak, xk);
-                //standard deviation
-                Qk = RDAHostSimpleLossReorder.onePassStandardDeviation(i + 1, AkMinusOne, Ak, Qk, xk);
-                i++;
-                counter += 1;
-                //square
-                squareRTTSum += Math.pow(xk, 2);
-            }
-
-        }
+        //两个集合的交集, 遍历接收方的表, 在发送方查
+        DirectDelay d = new DirectDelay(SenderTSTable);
+        receiverTSTable.forEachEntry(d);
+        double Ak = d.Ak;  //平均时延
+        double Qk = d.Qk;  //标准差
+        double squareRTTSum = d.squareRTTSum; //正常数据包 时延的平方和   论文中Algorithm的SqSum
+        double counter = d.counter;  //good packet的计数
         //keys.clear();
         //keys=null;
         /**
@@ -580,6 +616,40 @@ public class SimpleRDAMeasurementPoint {
         return result;
     }
 
+    /**
+     * one pass average and standard deviation over the ids both tables hold
+     */
+    static class DirectDelay implements LongDoubleMap.Procedure {
+        final LongDoubleMap senderTSTable;
+        double Ak = 0;
+        double Qk = 0;
+        double squareRTTSum = 0;
+        double counter = 0;
+        int i = 0;
+
+        DirectDelay(LongDoubleMap _senderTSTable) {
+            senderTSTable = _senderTSTable;
+        }
+
+        public void apply(long id, double receiverTS) {
+            if (!senderTSTable.containsKey(id)) {
+                return;
+            }
+            double senderTS = senderTSTable.get(id);
+            if (Double.isInfinite(senderTS) || Double.isNaN(senderTS) ||
+                    Double.isInfinite(receiverTS) || Double.isNaN(receiverTS)) {
+                return;
+            }
+            double AkMinusOne = Ak;
+            double xk = Math.abs(senderTS - receiverTS);
+            Ak = RDAHostSimpleLossReorder.onePassAvg(i + 1, Ak, xk);
+            Qk = RDAHostSimpleLossReorder.onePassStandardDeviation(i + 1, AkMinusOne, Ak, Qk, xk);
+            i++;
+            counter += 1;
+            squareRTTSum += Math.pow(xk, 2);
+        }
+    }
+
     /**
      * get stored ids
      *
@@ -4,19 +4,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.AbstractMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Scanner;
 
-import com.google.common.collect.Sets;
-import com.google.common.collect.Sets.SetView;
-
 import edu.NUDT.control.PassiveCollectorPeriod;
 import edu.harvard.syrah.prp.Log;
 import util.async.HashMapCache;
-import util.async.java.util.concurrent.ConcurrentHashMap;
 
 public class SimpleRDAMeasurementPointSRDA {
 
@@ -25,9 +21,17 @@ public class SimpleRDAMeasurementPointSRDA {
 	
 	//RDA compute  s
 	 //public SimpleRDATable sender;
-	public SimpleRDATable sender;
+	public volatile SimpleRDATable sender;
 	 //cache for RDA
-	public ConcurrentHashMap<Long,Double> SenderTSTable;
+	public volatile LongDoubleMap SenderTSTable;
+	//capture into a live epoch, sender is the frozen one; null: capture into sender
+	public RDAEpochs<SimpleRDATable> epochs;
+	//SRDA table of the last window, null if off; not cleared with the period
+	public SlidingRDATable window;
+	//flow shards of the served period, null if off
+	public volatile ShardedRDATable flows;
+	//live and frozen flow shards, flows is the frozen one; the ids are kept by epochs
+	public RDAEpochs<ShardedRDATable> flowEpochs;
 	
 	 long maximumTotalPackets=0;
 
@@ -46,7 +50,7 @@ public class SimpleRDAMeasurementPointSRDA {
 			
 			//sender = new SimpleRDATable(_expectedNumEntries);	
 			sender = new SimpleRDATable(_expectedNumEntries);	
-			SenderTSTable = new ConcurrentHashMap<Long,Double>();
+			SenderTSTable = LongDoubleMap.create(_expectedNumEntries, true);
 		}
 		
 		public SimpleRDAMeasurementPointSRDA(int _expectedNumEntries,long totalPackets,int hashNum){
@@ -55,7 +59,7 @@ public class SimpleRDAMeasurementPointSRDA {
 			
 			sender.setHash(hashNum);
 					
-			SenderTSTable = new ConcurrentHashMap<Long,Double>();
+			SenderTSTable = LongDoubleMap.create(_expectedNumEntries, true);
 			
 			maximumTotalPackets=totalPackets;
 			sender.sampleProbability=1;
@@ -66,7 +70,7 @@ public class SimpleRDAMeasurementPointSRDA {
 			
 			sender = new SimpleRDATable(_expectedNumEntries);
 			
-			SenderTSTable = new ConcurrentHashMap<Long,Double>();
+			SenderTSTable = LongDoubleMap.create(_expectedNumEntries, true);
 			
 			maximumTotalPackets=totalPackets;
 			sender.sampleProbability=samplingProb;
@@ -78,7 +82,7 @@ public class SimpleRDAMeasurementPointSRDA {
 			sender = new SimpleRDATable(_expectedNumEntries);
 			//receiver = new SimpleRDATable(_expectedNumEntries);
 
-			SenderTSTable = new ConcurrentHashMap<Long,Double>();
+			SenderTSTable = LongDoubleMap.create(_expectedNumEntries, true);
 			//ReceiverTSTable = new Hashtable<Long,Double>();
 			//maximumTotalPackets=totalPackets;
 			sender.sampleProbability=samplingProb;
@@ -91,13 +95,86 @@ public class SimpleRDAMeasurementPointSRDA {
 		 * @param ts
 		 */
 		public void packetIncoming(long id, double ts){
+			packetIncoming(id, ShardedRDATable.NO_FLOW, ts);
+		}
+
+		/**
+		 * new packet of a flow, also into the shard of the flow
+		 * @param id
+		 * @param flow 5-tuple hash, PcapRDAIngest.flowId
+		 * @param ts
+		 */
+		public void packetIncoming(long id, long flow, double ts){
+			if(epochs!=null){
+				RDAEpochs.Epoch<SimpleRDATable> e = epochs.enter();
+				try{
+					if(e.ids.putIfAbsent(id, ts)){
+						e.table.insert(id, ts,1);
+						if(window!=null){
+							window.insert(id, ts);
+						}
+						insertFlow(id, flow, ts, e);
+					}
+				}finally{
+					epochs.exit(e);
+				}
+				return;
+			}
 			if(SenderTSTable.containsKey(id)){
 				//System.err.println("contains key: "+id+", "+ts);
 				return;
 			}else{
 				sender.insert(id, ts,1);
 				SenderTSTable.put(id, (ts));
+				if(window!=null){
+					window.insert(id, ts);
+				}
+				insertFlow(id, flow, ts);
+			}
+		}
+
+		void insertFlow(long id, long flow, double ts){
+			if(flows==null||flow==ShardedRDATable.NO_FLOW){
+				return;
 			}
+			flows.insert(flow, id, ts);
+		}
+
+		/**
+		 * into the flow epoch paired with the SRDA epoch e, which the caller holds
+		 */
+		void insertFlow(long id, long flow, double ts, RDAEpochs.Epoch<SimpleRDATable> e){
+			if(flowEpochs==null||flow==ShardedRDATable.NO_FLOW){
+				insertFlow(id, flow, ts);
+				return;
+			}
+			RDAEpochs.Epoch<ShardedRDATable> f = RDAEpochs.companion(e);
+			f.table.insert(flow, id, ts);
+		}
+
+		/**
+		 * split the packets with a flow into shards as well; after enableEpochs
+		 * if the period is captured into epochs
+		 * @param numShards
+		 * @param shardBuckets
+		 */
+		public void enableFlows(final int numShards, final int shardBuckets){
+			if(epochs==null){
+				flows = new ShardedRDATable(numShards, shardBuckets);
+				return;
+			}
+			//the ids of an epoch are in the epochs of the SRDA table, these maps stay small
+			flowEpochs = new RDAEpochs<ShardedRDATable>(new RDAEpochs.Factory<ShardedRDATable>() {
+				public ShardedRDATable create() {
+					return new ShardedRDATable(numShards, shardBuckets);
+				}
+				public void clear(ShardedRDATable table) {
+					table.clear();
+				}
+			}, 16);
+			//swapped with the SRDA epochs in one step
+			epochs.lead(flowEpochs);
+			flows = flowEpochs.getFrozen().table;
 		}
 		
 		public void packetIncomingSample(long id, double ts){
@@ -133,7 +210,7 @@ public class SimpleRDAMeasurementPointSRDA {
 			/**
 			 * subtract, a new TBFTable
 			 */
-			SimpleRDATable subtract=sender.subtractIBLT(receiver);
+			SimpleRDATable subtract=sender.subtractFromPool(receiver);
 			HashSet<Long> SenderItems = new HashSet<Long>(2);
 			HashSet<Long> ReceiverItems = new HashSet<Long>(2);
 			//decode the ids
@@ -142,20 +219,28 @@ public class SimpleRDAMeasurementPointSRDA {
 			
 			SenderItems.clear();
 			ReceiverItems.clear();
-			subtract.clear();
+			subtract.giveToPool();
 			return siz;
 		}
 		
 		public boolean decodeSet(SimpleRDATable receiver,HashSet<Long> SenderItems,HashSet<Long>  ReceiverItems){
+			return decodeSet(sender, receiver, SenderItems, ReceiverItems);
+		}
+		
+		/**
+		 * @param local my table, the same size as the receiver's
+		 * @param receiver
+		 * @param SenderItems
+		 * @param ReceiverItems
+		 * @return
+		 */
+		public boolean decodeSet(SimpleRDATable local,SimpleRDATable receiver,HashSet<Long> SenderItems,HashSet<Long>  ReceiverItems){
 			/**
 			 * subtract, a new TBFTable
 			 */
 			
-			SimpleRDATable subtract=sender.subtractIBLT(receiver);
-			//log.main("subtracted!");
-			//decode the ids
-			
-			boolean decodable=subtract.decodeIDs(SenderItems,ReceiverItems);
+			//subtract into a pooled scratch and decode there
+			boolean decodable=local.decodeInto(receiver,SenderItems,ReceiverItems);
 			//log.main("decoded!");
 		//	SenderItems.clear();
 		//	ReceiverItems.clear();
@@ -176,7 +261,7 @@ public class SimpleRDAMeasurementPointSRDA {
 			
 			long time1=System.nanoTime();
 			
-			SimpleRDATable subtract=sender.subtractIBLT(receiver);
+			SimpleRDATable subtract=sender.subtractFromPool(receiver);
 			long time3 = System.nanoTime();
 			
 			long delay1=time3-time1;
@@ -186,7 +271,7 @@ public class SimpleRDAMeasurementPointSRDA {
 			
 			SenderItems.clear();
 			ReceiverItems.clear();
-			subtract.clear();
+			subtract.giveToPool();
 			
 			long ts=(delay1+delay2[1])/1000;
 			
@@ -198,21 +283,21 @@ public class SimpleRDAMeasurementPointSRDA {
 		 * repair the table of the sender and the receiver
 		 * @return
 		 */
-		public void repair(SimpleRDATable receiver,Hashtable<Long,Double> ReceiverTSTable){
+		public void repair(SimpleRDATable receiver,Map<Long, Double> ReceiverTSTable){
 			/**
 			 * subtract, a new TBFTable
 			 */
-			SimpleRDATable subtract=sender.subtractIBLT(receiver);
+			//subtract into a pooled scratch and peel it there
 			HashSet<Long> SenderItems = new HashSet<Long>(2);
 			HashSet<Long> ReceiverItems = new HashSet<Long>(2);
 			//decode the ids
-			boolean decodable=subtract.decodeIDs(SenderItems,ReceiverItems);
+			boolean decodable=sender.decodeInto(receiver,SenderItems,ReceiverItems);
 			System.out.println("decode: "+decodable+",s: "+SenderItems.size()+",r: "+ReceiverItems.size());
 
 			
 			//repair the sender
 			if(!SenderItems.isEmpty()){
-				sender.RepairTBF(SenderItems,new Hashtable<Long,Double>(SenderTSTable));
+				sender.RepairTBF(SenderItems,SenderTSTable);
 				//repair(sender,SenderItems,SenderTSTable);
 			}
 			//repair the receiver
@@ -230,7 +315,11 @@ public class SimpleRDAMeasurementPointSRDA {
 		 * @param ReceiverItems
 		 * @param ReceiverMiss
 		 */
-		public void repairDirect(HashSet<Long> SenderItems,SimpleRDATable receiver,HashSet<Long> ReceiverItems,Hashtable<Long,Double> ReceiverMiss){
+		public void repairDirect(HashSet<Long> SenderItems,SimpleRDATable receiver,HashSet<Long> ReceiverItems,Map<Long, Double> ReceiverMiss){
+			repairDirect(sender, SenderItems, receiver, ReceiverItems, ReceiverMiss);
+		}
+		
+		public void repairDirect(SimpleRDATable local,HashSet<Long> SenderItems,SimpleRDATable receiver,HashSet<Long> ReceiverItems,Map<Long, Double> ReceiverMiss){
 			/**
 			 * subtract, a new TBFTable
 			 */
@@ -243,7 +332,7 @@ public class SimpleRDAMeasurementPointSRDA {
 			
 			//repair the sender
 			if(!SenderItems.isEmpty()){
-				sender.RepairTBF(SenderItems,new Hashtable<Long,Double>(SenderTSTable));
+				local.RepairTBF(SenderItems,SenderTSTable);
 				//repair(sender,SenderItems,SenderTSTable);
 			}
 			//repair the receiver
@@ -260,16 +349,16 @@ public class SimpleRDAMeasurementPointSRDA {
 		 */
 		
 		
-		public double[] repairNow(double percent,SimpleRDATable receiver,Hashtable<Long,Double> ReceiverTSTable){
+		public double[] repairNow(double percent,SimpleRDATable receiver,Map<Long, Double> ReceiverTSTable){
 			/**
 			 * subtract, a new TBFTable
 			 */
-			SimpleRDATable subtract=sender.subtractIBLT(receiver);
+			//subtract into a pooled scratch and peel it there
 			HashSet<Long> SenderItems = new HashSet<Long>(2);
 			HashSet<Long> ReceiverItems = new HashSet<Long>(2);
 			//decode the ids
 			double t1=System.currentTimeMillis();
-			boolean decodable=subtract.decodeIDs(SenderItems,ReceiverItems);
+			boolean decodable=sender.decodeInto(receiver,SenderItems,ReceiverItems);
 			double delay = System.currentTimeMillis()-t1;
 			System.out.println("decode: "+decodable+",s: "+SenderItems.size()+",r: "+ReceiverItems.size());
 
@@ -330,11 +419,11 @@ public class SimpleRDAMeasurementPointSRDA {
 				
 		
 			double good = 0;
-			for(int i=0;i<sender.hashTable.length;i++){
-				if(//sender.hashTable[i].keyCheck==receiver.hashTable[i].keyCheck&&
-						sender.hashTable[i].Counter>0&&
-						sender.hashTable[i].keySum==receiver.hashTable[i].keySum){
-					good+=sender.hashTable[i].Counter;
+			for(int i=0;i<sender.buckets.size();i++){
+				if(//sender.buckets.getKeyCheck(i)==receiver.buckets.getKeyCheck(i)&&
+						sender.buckets.getCounter(i)>0&&
+						sender.buckets.getKeySum(i)==receiver.buckets.getKeySum(i)){
+					good+=sender.buckets.getCounter(i);
 				}
 			}
 			
@@ -344,16 +433,16 @@ public class SimpleRDAMeasurementPointSRDA {
 			return result;
 		}
 		
-		public double repair(double percent,SimpleRDATable receiver,Hashtable<Long,Double> ReceiverTSTable){
+		public double repair(double percent,SimpleRDATable receiver,Map<Long, Double> ReceiverTSTable){
 			/**
 			 * subtract, a new TBFTable
 			 */
-			SimpleRDATable subtract=sender.subtractIBLT(receiver);
+			//subtract into a pooled scratch and peel it there
 			HashSet<Long> SenderItems = new HashSet<Long>(2);
 			HashSet<Long> ReceiverItems = new HashSet<Long>(2);
 			//decode the ids
 			
-			boolean decodable=subtract.decodeIDs(SenderItems,ReceiverItems);
+			boolean decodable=sender.decodeInto(receiver,SenderItems,ReceiverItems);
 			System.out.println("decode: "+decodable+",s: "+SenderItems.size()+",r: "+ReceiverItems.size());
 
 			
@@ -415,11 +504,11 @@ public class SimpleRDAMeasurementPointSRDA {
 				
 		
 			double good = 0;
-			for(int i=0;i<sender.hashTable.length;i++){
-				if(//sender.hashTable[i].keyCheck==receiver.hashTable[i].keyCheck&&
-						sender.hashTable[i].Counter>0&&
-						sender.hashTable[i].keySum==receiver.hashTable[i].keySum){
-					good+=sender.hashTable[i].Counter;
+			for(int i=0;i<sender.buckets.size();i++){
+				if(//sender.buckets.getKeyCheck(i)==receiver.buckets.getKeyCheck(i)&&
+						sender.buckets.getCounter(i)>0&&
+						sender.buckets.getKeySum(i)==receiver.buckets.getKeySum(i)){
+					good+=sender.buckets.getCounter(i);
 				}
 			}
 			
@@ -436,13 +525,17 @@ public class SimpleRDAMeasurementPointSRDA {
 			return sender.getAvgTS(receiver);
 		}
 		
+		public double getAverage(SimpleRDATable local,SimpleRDATable receiver){	
+			return local.getAvgTS(receiver);
+		}
+		
 		
 		/**
 		 * StandardDeviation
 		 * @param avg, average number
 		 * @return
 		 */
-		public double getStandardDeviation(double avg,SimpleRDATable receiver,Hashtable<Long,Double> ReceiverTSTable){			
+		public double getStandardDeviation(double avg,SimpleRDATable receiver,Map<Long, Double> ReceiverTSTable){			
 			return sender.getSTD(receiver, avg);
 			
 			//return receiver.getVarianceStatistics(sender, avg);
@@ -459,14 +552,88 @@ public class SimpleRDAMeasurementPointSRDA {
 			
 			//return receiver.getVarianceStatistics(sender, avg);
 		}
+		
+		public double getStandardDeviation(SimpleRDATable local,double avg,SimpleRDATable receiver){			
+			return local.getSTD(receiver, avg);
+		}
+		
+		/**
+		 * a table of the given size from the cached packets, for a round whose
+		 * size was agreed with the other host; sender keeps collecting
+		 * @param numBuckets rounded down to the hash functions
+		 * @return
+		 */
+		public SimpleRDATable buildTable(int numBuckets){
+			int n = Math.max(SimpleRDATable.N_HASH, numBuckets - numBuckets % SimpleRDATable.N_HASH);
+			final SimpleRDATable table = new SimpleRDATable(n);
+			SenderTSTable.forEachEntry(new LongDoubleMap.Procedure() {
+				public void apply(long id, double ts) {
+					table.insert(id, ts, 1);
+				}
+			});
+			return table;
+		}
+		
+		/**
+		 * strata of the cached packets, for the difference estimate
+		 * @return
+		 */
+		public RDADifferenceEstimator buildEstimator(){
+			return RDADifferenceEstimator.of(SenderTSTable);
+		}
 		public String getBucketSize(SimpleRDATable receiver) {
 			// TODO Auto-generated method stub
 			return sender.expectedNumEntries+" "+receiver.expectedNumEntries+" ";
 		}
 
+		/**
+		 * capture into epochs from now on, the rounds read the frozen one
+		 * @param expected packets per period
+		 */
+		public void enableEpochs(int expected){
+			final int size = sender.getNumBuckets();
+			final double p = sender.sampleProbability;
+			epochs = new RDAEpochs<SimpleRDATable>(new RDAEpochs.Factory<SimpleRDATable>() {
+				public SimpleRDATable create() {
+					SimpleRDATable t = new SimpleRDATable(size);
+					t.sampleProbability = p;
+					return t;
+				}
+
+				public void clear(SimpleRDATable table) {
+					table.clear();
+				}
+			}, expected);
+			sender = epochs.getFrozen().table;
+			SenderTSTable = epochs.getFrozen().ids;
+		}
+
+		/**
+		 * end of a period: the live epoch becomes sender, once per period
+		 */
+		public void freeze(){
+			if(epochs!=null){
+				RDAEpochs.Epoch<SimpleRDATable> e = epochs.freeze();
+				sender = e.table;
+				SenderTSTable = e.ids;
+			}
+			if(flowEpochs!=null){
+				//frozen in the same step as the SRDA epoch
+				flows = flowEpochs.getFrozen().table;
+			}
+		}
+
 		public void clear() {
 			// TODO Auto-generated method stub
 			isParsed = false;
+			if(flowEpochs==null&&flows!=null){
+				flows.clear();
+			}
+			if(epochs!=null){
+				//the frozen table stays until the next freeze
+				epochs.reopen();
+				return;
+			}
 			SenderTSTable.clear();
 			//ReceiverTSTable.clear();
 			//SenderTSTable=null;
@@ -512,49 +679,18 @@ public class SimpleRDAMeasurementPointSRDA {
 		 * @param receiverTSTable
 		 * @return 
 		 */
-		public double[] computeDirect(Hashtable<Long, Double> receiverTSTable) {
+		public double[] computeDirect(LongDoubleMap receiverTSTable) {
 			// TODO Auto-generated method stub
 			/**
 			 * read the trace
 			 * return the target
 			 */				
-				double Ak=0;
-				double AkMinusOne=0;
-				double Qk=0;
-				double squareRTTSum=0;
-				double counter=0;
-				double xk=0;
-				//				
-				SetView<Long> keys = Sets.intersection(SenderTSTable.keySet(),receiverTSTable.keySet());
-				int i=0;
-				double[]TS = {0,0};
-				if(!keys.isEmpty()){
-					Iterator<Long> ier = keys.iterator();
-					while(ier.hasNext()){
-						Long nxt = ier.next();
-						TS[0]=SenderTSTable.get(nxt);
-						TS[1]=receiverTSTable.get(nxt);
-						 //System.out.println("line: "+lines + ", "+timestamp);
-				         
-				         if(Double.isInfinite(TS[0])||Double.isNaN(TS[0])||
-				        		 Double.isInfinite(TS[1])||Double.isNaN(TS[1])){								
-								continue;
-							}				         
-							//good							
-							//average over the delay
-							AkMinusOne = Ak;
-							xk=Math.abs(TS[0]-TS[1]);
-							//average
-							Ak=RDAHostSimpleLossReorder.onePassAvg(i+1,Ak,xk);
-							//standard deviation
-							Qk=RDAHostSimpleLossReorder.onePassStandardDeviation(i+1, AkMinusOne, Ak, Qk, xk);
-							i++;
-							counter+=1;
-							//square
-							squareRTTSum+=Math.pow(xk,2); 
-					}
-					
-				}
+				SimpleRDAMeasurementPoint.DirectDelay d = new SimpleRDAMeasurementPoint.DirectDelay(SenderTSTable);
+				receiverTSTable.forEachEntry(d);
+				double Ak=d.Ak;
+				double Qk=d.Qk;
+				double squareRTTSum=d.squareRTTSum;
+				double counter=d.counter;
 				//keys.clear();
 				//keys=null;
 				/**
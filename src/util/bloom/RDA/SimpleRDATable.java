@@ -13,6 +13,7 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
@@ -61,7 +62,8 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	public volatile static double scaleBucketFactor =1;
 	
 	public volatile int valueSize=0;
-	public SimpleRDATableEntry[] hashTable = null;
+	//Counter, TS, keySum of every bucket
+	public RDABucketStore buckets = null;
 	
 	//hash function
 	public static LongHashFunction[] LongHashFunction4PosHash=new LongHashFunction[N_HASH];
@@ -109,7 +111,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	
 	
 	public SimpleRDATable(){
-		hashTable = null;
+		buckets = null;
 		sampleProbability=1;
 		//semaphore
 		BFOps =  new Semaphore(1);
@@ -128,18 +130,17 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 */
 	
 	public boolean EntryIsPure(int index){
-		SimpleRDATableEntry entry = hashTable[index];
 		//fail cases
-		if(entry ==null||entry.empty()){
+		if(buckets.empty(index)){
 			return false;
 		}
 		
-		if(Math.abs(entry.Counter)!=1){
+		if(Math.abs(buckets.getCounter(index))!=1){
 			return false;
 		}
 		
-		long keySum = entry.keySum;		
-		int bucketsPerHash = hashTable.length/N_HASH;
+		long keySum = buckets.getKeySum(index);		
+		int bucketsPerHash = buckets.size()/N_HASH;
 		
 		int offsetInBank = index%bucketsPerHash;
 		int indexPortion = (index - offsetInBank)/bucketsPerHash;
@@ -166,18 +167,18 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	}
 	
 	public static boolean EntryIsPure(SimpleRDATable peeled,int index){
-		SimpleRDATableEntry entry = peeled.hashTable[index];
+		RDABucketStore store = peeled.buckets;
 		//fail cases
-		if(entry ==null||entry.empty()){
+		if(store.empty(index)){
 			return false;
 		}
 		
-		if(Math.abs(entry.Counter)!=1){
+		if(Math.abs(store.getCounter(index))!=1){
 			return false;
 		}
 		
-		long keySum = entry.keySum;		
-		int bucketsPerHash = peeled.hashTable.length/peeled.N_HASH;
+		long keySum = store.getKeySum(index);		
+		int bucketsPerHash = store.size()/peeled.N_HASH;
 		
 		int offsetInBank = index%bucketsPerHash;
 		int indexPortion = (index - offsetInBank)/bucketsPerHash;
@@ -224,10 +225,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	    
 	    //nEntries= Math.max(_expectedNumEntries, _expectedNumEntries/2)
 	    
-	    hashTable = new SimpleRDATableEntry[expectedNumEntries];
-		for(int i=0;i<expectedNumEntries;i++){
-			hashTable[i]=new SimpleRDATableEntry();//.setElementAt(, i);
-		}
+	    buckets = RDABucketStore.allocate(expectedNumEntries, false);
 		sampleProbability=1;
 		
 		for(int i=0;i<N_HASH;i++){
@@ -247,10 +245,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		this.valueSize=valueSize;
 		this.expectedNumEntries = _expectedNumEntries;
 		
-		hashTable = new SimpleRDATableEntry[NumEntries];
-		for(int i=0;i<NumEntries;i++){
-			hashTable[i]=new SimpleRDATableEntry();//.setElementAt(, i);
-		}
+		buckets = RDABucketStore.allocate(NumEntries, false);
 		
 		////System.out.println("expectedNumEntries: "+expectedNumEntries+",HT Size: "+hashTable.length);
 		sampleProbability=1;
@@ -276,10 +271,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	    
 	    //nEntries= Math.max(_expectedNumEntries, _expectedNumEntries/2)
 	    
-		hashTable = new SimpleRDATableEntry[expectedNumEntries];
-		for(int i=0;i<expectedNumEntries;i++){
-			hashTable[i]=new SimpleRDATableEntry();//.setElementAt(, i);
-		}
+		buckets = RDABucketStore.allocate(expectedNumEntries, false);
 		
 		for(int i=0;i<N_HASH;i++){
 			LongHashFunction4PosHash[i] = LongHashFunction.xx(i);
@@ -344,10 +336,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	    //while (N_HASH * (nEntries/N_HASH) != nEntries) ++nEntries;
 		this.expectedNumEntries = _expectedNumEntries;
 		
-		hashTable = new SimpleRDATableEntry[expectedNumEntries];
-		for(int i=0;i<expectedNumEntries;i++){
-			hashTable[i]=new SimpleRDATableEntry();//.setElementAt(, i);
-		}
+		buckets = RDABucketStore.allocate(expectedNumEntries, false);
 		
 		////System.out.println("expectedNumEntries: "+expectedNumEntries+",HT Size: "+hashTable.length);
 
@@ -360,17 +349,50 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 */
 	public SimpleRDATable copyTable(){
 		SimpleRDATable a = new SimpleRDATable();
-		a.hashTable = new SimpleRDATableEntry[hashTable.length];
+		a.buckets = buckets.copy();
 		a.valueSize=this.valueSize;
 		a.expectedNumEntries=this.expectedNumEntries;
-		int count=0;
-		while(count<hashTable.length){
-			a.hashTable[count] = hashTable[count].clone();
-			count++;
-		}
 		return a;
 		
 	}
+
+	/**
+	 * copy a table onto a store from RDATablePool, end with giveToPool()
+	 * @return
+	 */
+	public SimpleRDATable copyFromPool(){
+		SimpleRDATable a = new SimpleRDATable();
+		a.buckets = RDATablePool.get().take(buckets, N_HASH);
+		a.buckets.copyFrom(buckets, 0, 0, buckets.size());
+		a.valueSize=this.valueSize;
+		a.expectedNumEntries=this.expectedNumEntries;
+		return a;
+	}
+
+	/**
+	 * this - other onto a store from RDATablePool, end with giveToPool()
+	 * @param other same size
+	 * @return
+	 */
+	public SimpleRDATable subtractFromPool(SimpleRDATable other){
+		SimpleRDATable a = new SimpleRDATable();
+		a.buckets = RDATablePool.get().take(buckets, N_HASH);
+		a.valueSize=this.valueSize;
+		a.expectedNumEntries=this.expectedNumEntries;
+		buckets.subtractInto(other.buckets, a.buckets);
+		return a;
+	}
+
+	/**
+	 * hand the buckets of a copyFromPool()/subtractFromPool() table back,
+	 * the table is not used afterwards
+	 */
+	public void giveToPool(){
+		if(buckets!=null){
+			RDATablePool.get().give(buckets, N_HASH);
+			buckets=null;
+		}
+	}
 	
 	/**
 	 * get a RDA from the array
@@ -379,18 +401,39 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 */
 	public static SimpleRDATable getRDATable(SimpleRDATableEntry[] you){
 		SimpleRDATable a = new SimpleRDATable();
-		a.hashTable = new SimpleRDATableEntry[you.length];
+		a.buckets = RDABucketStore.allocate(you.length, false);
 
 		a.expectedNumEntries=you.length;
-		int count=0;
-		while(count<you.length){
-			SimpleRDATableEntry aa = you[count].clone();
-			a.hashTable[count] = aa;
-			count++;
+		for(int i=0;i<you.length;i++){
+			a.buckets.set(i, you[i].Counter, you[i].TS, you[i].keySum, 0);
 		}
 		return a;
 	}
 	
+	/**
+	 * the buckets as entry objects, for the message layer
+	 * @return
+	 */
+	public SimpleRDATableEntry[] toEntries(){
+		SimpleRDATableEntry[] you = new SimpleRDATableEntry[buckets.size()];
+		for(int i=0;i<you.length;i++){
+			SimpleRDATableEntry entry = new SimpleRDATableEntry();
+			entry.Counter = buckets.getCounter(i);
+			entry.TS = buckets.getTS(i);
+			entry.keySum = buckets.getKeySum(i);
+			you[i] = entry;
+		}
+		return you;
+	}
+	
+	/**
+	 * number of buckets
+	 * @return
+	 */
+	public int getNumBuckets(){
+		return buckets.size();
+	}
+	
 	/**
 	 * insert items
 	 * @param TS
@@ -456,13 +499,38 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		//assert(v.length ==valueSize);
 		
 		
+		//CAS buckets, no lock
+		if(buckets.isThreadSafe()){
+			updateBuckets(id,TS,Counter);
+			return;
+		}
 		//request permission
 		try {
 			BFOps.acquire();
 			
+			updateBuckets(id,TS,Counter);
+			
+			//kVec=null;
+			//release
+			BFOps.release();
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		
+		 
+	}
+	 
+	 /**
+	  * add the item to its N_HASH buckets
+	  * @param id
+	  * @param TS
+	  * @param Counter
+	  */
+	 private void updateBuckets(long id,double TS,long Counter){
 			 int index;
 				//byte[] kVec=IBLTEntry.ToByteArray(id);
-				int bucketsPerHash = hashTable.length/N_HASH;
+				int bucketsPerHash = buckets.size()/N_HASH;
 			for(int i=0;i<N_HASH;i++){
 				int startEntry = i*bucketsPerHash;
 				
@@ -470,14 +538,8 @@ public class SimpleRDATable  implements Writable ,Serializable{
 				int h = hashPos(id, i);
 								
 				index=startEntry+(h%bucketsPerHash);
-				SimpleRDATableEntry entry = hashTable[index];
-				//if(TS>0){
-					//add
-				entry.Counter+=Counter;
-				//}else{//erase
-				//	entry.Counter--;
-				//}
-				entry.TS+=TS;
+				//add, or erase with a negative Counter
+				buckets.update(index, Counter, TS, id, 0);
 				
 				/*
 				int[] xx = IBLTEntry.hashC.hash(new Key(kVec),seedSign);
@@ -488,29 +550,12 @@ public class SimpleRDATable  implements Writable ,Serializable{
 				entry.STS-=TS;
 				}
 				*/
-				entry.keySum ^= id;
 				//h=HashTableEntry.hashC.hash(new Key(kVec),HashTableEntry.N_HASHCHECK);
 				
 				//entry.keyCheck ^=FineComb.sHash64.hash(ByteBuffer.allocate(8).putLong(id).array());
-				//if(entry.empty()){
-				//	entry.valueSum=ByteBuffer.allocate(entry.valueArrayLen).putLong(0).array();
-				//}else{
-				//entry.addValue(v);
-				hashTable[index]=entry;
-				//}
 				//h=null;
 			}
-			
-			//kVec=null;
-			//release
-			BFOps.release();
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		
-		 
-	}
+	 }
 	
 	 /**
 	  * conditionally remove
@@ -597,7 +642,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 //        // it, peel blind!!!delete these items permanantly
 //	    RDATable peeled = this;
 //	    int nErased = 0;
-//	    for(int i=0;i<peeled.hashTable.length;i++){
+//	    for(int i=0;i<peeled.buckets.size();i++){
 //	    	SimpleRDATableEntry entry = peeled.hashTable[i];
 //	    	if(entry.isPure()){
 //	    		if(entry.keySum==k){
@@ -633,7 +678,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 //		  int nErased = 0;
 //		  while(nErased > 0){
 //			  nErased = 0;
-//			  for(int i=0;i<peeled.hashTable.length;i++){
+//			  for(int i=0;i<peeled.buckets.size();i++){
 //				 SimpleRDATableEntry entry = peeled.hashTable[i];
 //				  if(entry.isPure()){
 //					  if(entry.Counter==1){
@@ -652,8 +697,8 @@ public class SimpleRDATable  implements Writable ,Serializable{
 //		  }//end
 //		    // If any buckets for one of the hash functions is not empty,
 //		    // then we didn't peel them all:
-//		    for (int i = 0; i < peeled.hashTable.length/N_HASH; i++) {
-//		        if (peeled.hashTable[i].empty() != true) return false;
+//		    for (int i = 0; i < peeled.buckets.size()/N_HASH; i++) {
+//		        if (peeled.buckets.empty(i) != true) return false;
 //		    }
 //		    return true; 
 //	}
@@ -665,62 +710,34 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 * @return
 	 */
 	public boolean decodeIDs(HashSet<Long> positive,HashSet<Long> negative){
-		
-		  //SimpleRDATable peeled = this.copyTable();
-		 // int nErased = 0;
-		  //////System.out.println("peeled: "+peeled.hashTable.length);
-		  HashSet<Integer> tobeRemoved = new HashSet<Integer>();
-		  HashSet<Integer> leftIDs = new HashSet<Integer>();
-		  for(int i=0;i<hashTable.length;i++){
-			  leftIDs.add(i);
-		  }
-		  while(true){
-			  //nErased = 0;
-			  //current ids
-			  tobeRemoved.clear();
-			  Iterator<Integer> ier = leftIDs.iterator();
-			  while(ier.hasNext()){
-				  //id
-				  int i = ier.next();
-				  //check
-				  SimpleRDATableEntry entry = hashTable[i];
-					 boolean state = EntryIsPure(i);
-					 	//////System.out.println("$Decode: "+entry.toString());
-					  if(state&&(leftIDs.contains(i))){
-						  tobeRemoved.add(i);					  
-						  //log.main("find pured!");
-						  //////System.out.print(" pure!!!\n");
-						  if(entry.Counter==1){
-							  positive.add(entry.keySum);
-						  }else{
-							  negative.add(entry.keySum);
-						  }
-						  //change id
-				    	_insert(entry.keySum,-entry.TS,-entry.Counter);
-					  }else if(state&&(!tobeRemoved.contains(i))){
-						  log.warn("repeat removing: "+i+", "+entry.keySum);
-					  }
-			  }
-			  //delete now
-			  if(!tobeRemoved.isEmpty()){
-				  leftIDs.removeAll(tobeRemoved);
-			  }else{
-				  break;
-			  }
-		  }//end
-		  
-		  //////System.out.println("IDs: "+positive.size()+", you: "+negative.size());
-		    // If any buckets for one of the hash functions is not empty,
-		    // then we didn't peel them all:
-		    //for (int i = 0; i < hashTable.length; i++) {
-		    	
-		        if (!leftIDs.isEmpty()){
-		        	////System.out.println("peel: "+peeled.hashTable[i].toString());
-		        	leftIDs.clear();
-		        	return false;
-		        	}
-		    //}
-		    return true; 
+		return decodeIDs(positive,negative,false);
+	}
+	
+	/**
+	 * peel this table in place
+	 * @param positive, Counter 1
+	 * @param negative, Counter -1
+	 * @param parallel, one thread per bank
+	 * @return true if all buckets are empty afterwards
+	 */
+	public boolean decodeIDs(HashSet<Long> positive,HashSet<Long> negative,boolean parallel){
+		RDAPeeler peeler = peeler();
+		boolean decoded = peeler.peel(parallel);
+		for(long id: peeler.getPositive()){
+			positive.add(id);
+		}
+		for(long id: peeler.getNegative()){
+			negative.add(id);
+		}
+		return decoded;
+	}
+	
+	/**
+	 * worklist decoder on the buckets of this table
+	 * @return
+	 */
+	public RDAPeeler peeler(){
+		return new RDAPeeler(buckets,N_HASH,LongHashFunction4PosHash,null);
 	}
 	
 	/**
@@ -729,21 +746,22 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 */
 	public Hashtable<Long,Double> decodeAllIDs(){
 		Hashtable<Long,Double> ids = new Hashtable<Long,Double>();
-		 SimpleRDATable peeled = this.copyTable();
+		 SimpleRDATable peeled = this.copyFromPool();
+		 try{
 		  int nErased = 0;
-		  //////System.out.println("peeled: "+peeled.hashTable.length);
+		  //////System.out.println("peeled: "+peeled.buckets.size());
 		  //int totalCount=0;
 		  while(true){
 			  nErased = 0;
-			  for(int i=0;i<peeled.hashTable.length;i++){
-				 SimpleRDATableEntry entry = peeled.hashTable[i];
-				 	//////System.out.println("$Decode: "+entry.toString());
+			  for(int i=0;i<peeled.buckets.size();i++){
 				  if(EntryIsPure(peeled,i)){
 					  //////System.out.print(" pure!!!\n");
 					// totalCount++;
-					  ids.put(entry.keySum,(double)entry.TS);
+					  long keySum = peeled.buckets.getKeySum(i);
+					  float ts = peeled.buckets.getTS(i);
+					  ids.put(keySum,(double)ts);
 					nErased++;
-			    	peeled._insert(entry.keySum,-entry.TS,-entry.Counter);
+			    	peeled._insert(keySum,-ts,-peeled.buckets.getCounter(i));
 
 				  }
 				  
@@ -756,6 +774,9 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		  
 		  return ids;
 		  //return totalCount;
+		}finally{
+			peeled.giveToPool();
+		}
 	}
 	/**
 	 * decode ids
@@ -766,12 +787,11 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	
 	public int decodeIDs(){
 		
-		  SimpleRDATable peeled = this.copyTable();
-		  //////System.out.println("peeled: "+peeled.hashTable.length);
+		  SimpleRDATable peeled = this.copyFromPool();
+		  try{
+		  //////System.out.println("peeled: "+peeled.buckets.size());
 		  Queue<Integer> indexPureBuckets = new  LinkedList<Integer>();
-		  for(int i=0;i<peeled.hashTable.length;i++){
-			  //SimpleRDATableEntry entry = peeled.hashTable[i];
-			 	//////System.out.println("$Decode: "+entry.toString());
+		  for(int i=0;i<peeled.buckets.size();i++){
 			  if(EntryIsPure(peeled,i)){
 				  indexPureBuckets.add(i);
 			  }//add index
@@ -780,30 +800,32 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		  int totalCount=0;
 		  while(!indexPureBuckets.isEmpty()){
 			  Integer index = indexPureBuckets.remove();
-			  SimpleRDATableEntry entry = peeled.hashTable[index];
+			  long keySum = peeled.buckets.getKeySum(index);
 			  totalCount++;			
-				peeled._insert(entry.keySum,-entry.TS,-entry.Counter);
+				peeled._insert(keySum,-peeled.buckets.getTS(index),-peeled.buckets.getCounter(index));
 				//get the indexes
-				Vector<Integer> newPositions = getHashLocation(entry.keySum,index);
+				Vector<Integer> newPositions = getHashLocation(keySum,index);
 				if(!newPositions.isEmpty()){
 					indexPureBuckets.addAll(newPositions);
 				}
 		  }//iterate the buckets
 		  
 		  return totalCount;
+		}finally{
+			peeled.giveToPool();
+		}
 	}
 	
 	
 	public long[] decodeIDsTime(){
 		
-		  SimpleRDATable peeled = this.copyTable();
-		  //////System.out.println("peeled: "+peeled.hashTable.length);
+		  SimpleRDATable peeled = this.copyFromPool();
+		  try{
+		  //////System.out.println("peeled: "+peeled.buckets.size());
 		  Queue<Integer> indexPureBuckets = new  LinkedList<Integer>();
 		  		  
 		  long time1=System.nanoTime();
-		  for(int i=0;i<peeled.hashTable.length;i++){
-			  //SimpleRDATableEntry entry = peeled.hashTable[i];
-			 	//////System.out.println("$Decode: "+entry.toString());
+		  for(int i=0;i<peeled.buckets.size();i++){
 			  if(EntryIsPure(peeled,i) ){//entry.isPure()
 				  indexPureBuckets.add(i);
 			  }//add index
@@ -812,11 +834,11 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		  int totalCount=0;
 		  while(!indexPureBuckets.isEmpty()){
 			  Integer index = indexPureBuckets.remove();
-			  SimpleRDATableEntry entry = peeled.hashTable[index];
+			  long keySum = peeled.buckets.getKeySum(index);
 			  totalCount++;			
-				peeled._insert(entry.keySum,-entry.TS,-entry.Counter);
+				peeled._insert(keySum,-peeled.buckets.getTS(index),-peeled.buckets.getCounter(index));
 				//get the indexes
-				Vector<Integer> newPositions = getHashLocation(entry.keySum,index);
+				Vector<Integer> newPositions = getHashLocation(keySum,index);
 				if(!newPositions.isEmpty()){
 					indexPureBuckets.addAll(newPositions);
 				}
@@ -827,6 +849,9 @@ public class SimpleRDATable  implements Writable ,Serializable{
 			long delay1=time3-time1;
 			long[] results={totalCount,delay1};
 		  return results;
+		}finally{
+			peeled.giveToPool();
+		}
 	}
 	/**
 	 * get pure positions
@@ -839,7 +864,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		Vector<Integer> indexes=new Vector<Integer>();
 		 int index;
 			//byte[] kVec=IBLTEntry.ToByteArray(id);
-			int bucketsPerHash = hashTable.length/N_HASH;
+			int bucketsPerHash = buckets.size()/N_HASH;
 			for(int i=0;i<N_HASH;i++){
 				int startEntry = i*bucketsPerHash;
 				
@@ -847,12 +872,10 @@ public class SimpleRDATable  implements Writable ,Serializable{
 				int h = hashPos(id,i);
 				
 				index=startEntry+(h%bucketsPerHash);
-				SimpleRDATableEntry entry;
 				if(index == removeIndex){
 					continue;
-				}else
-				entry= hashTable[index];
-				if(entry.empty()){//entry.empty()
+				}
+				if(buckets.empty(index)){//entry.empty()
 					continue;
 				}
 				if(EntryIsPure(this,index)){
@@ -865,20 +888,19 @@ public class SimpleRDATable  implements Writable ,Serializable{
 
 	public int decodeIDs00(){
 		
-		  SimpleRDATable peeled = this.copyTable();
+		  SimpleRDATable peeled = this.copyFromPool();
+		  try{
 		  int nErased = 0;
-		  //////System.out.println("peeled: "+peeled.hashTable.length);
+		  //////System.out.println("peeled: "+peeled.buckets.size());
 		  int totalCount=0;
 		  while(true){
 			  nErased = 0;
-			  for(int i=0;i<peeled.hashTable.length;i++){
-				 SimpleRDATableEntry entry = peeled.hashTable[i];
-				 	//////System.out.println("$Decode: "+entry.toString());
+			  for(int i=0;i<peeled.buckets.size();i++){
 				  if(EntryIsPure(peeled,i)){//entry.isPure()
 					  //////System.out.print(" pure!!!\n");
 					 totalCount++;
 					nErased++;
-			    	peeled._insert(entry.keySum,-entry.TS,-entry.Counter);
+			    	peeled._insert(peeled.buckets.getKeySum(i),-peeled.buckets.getTS(i),-peeled.buckets.getCounter(i));
 
 				  }
 				  
@@ -890,40 +912,88 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		  }//end
 		  
 		  return totalCount;
+		}finally{
+			peeled.giveToPool();
+		}
+	}
+	
+	/**
+	 * add the inserts of another table of the same size, e.g. a shard built by another thread
+	 * @param shard
+	 */
+	public void merge(SimpleRDATable shard){
+		buckets.add(shard.buckets);
+	}
+
+	/**
+	 * an empty table of the same size, single writer heap buckets
+	 * @return
+	 */
+	public SimpleRDATable newShard(){
+		SimpleRDATable a = new SimpleRDATable();
+		a.buckets = new ArrayRDABucketStore(buckets.size(), false);
+		a.valueSize=this.valueSize;
+		a.expectedNumEntries=this.expectedNumEntries;
+		return a;
 	}
 	
 	 // Subtract two IBLTs
 	public SimpleRDATable subtractIBLT(SimpleRDATable other){
 	    // IBLT's must be same params/size:
 	    //assert(valueSize == other.valueSize);
-	    //assert(hashTable.length == other.hashTable.length);
-		
-	    SimpleRDATable result = this.copyTable();
-	    int size=result.hashTable.length;
-	    ////System.out.println("$subtractSize: "+size);
-	    for (int i = 0; i < size; i++) {
-	        SimpleRDATableEntry e1 = result.hashTable[i];
-	        SimpleRDATableEntry e2 = other.hashTable[i];
-	        //e1.Counter-=e2.Counter;
-	       // e1.TS -= e2.TS;
-	        //e1.STS-=e2.STS;
-	        //e1.keySum ^= e2.keySum;
-	        //e1.keyCheck ^= e2.keyCheck;
-	        
-	        SimpleRDATableEntry newItem = e1.XORHashTable(e2);
-	        
-//	        if (e1.empty()) {
-//	            e1.valueSum=ByteBuffer.allocate(e1.valueArrayLen).putLong(0).array();
-//	        }
-//	        else {
-	        
-	       // }
-	        result.hashTable[i]= newItem;
-	    }
+	    //assert(hashTable.length == other.buckets.size());
+		
+	    SimpleRDATable result = new SimpleRDATable();
+	    result.buckets = buckets.newStore(buckets.size());
+	    result.valueSize=this.valueSize;
+	    result.expectedNumEntries=this.expectedNumEntries;
+	    //Counter-=, TS-=, keySum^=, in one pass instead of copy then subtract
+	    buckets.subtractInto(other.buckets, result.buckets);
 
 	    return result;
 	}
 
+	/**
+	 * dest = this - other, no copy of this is made
+	 * @param other same size
+	 * @param dest same size, overwritten, e.g. a pooled scratch
+	 * @return dest
+	 */
+	public SimpleRDATable subtractInto(SimpleRDATable other, SimpleRDATable dest){
+		buckets.subtractInto(other.buckets, dest.buckets);
+		return dest;
+	}
+
+	/**
+	 * subtract other into scratch and peel it there, this and other stay as they are
+	 * @param other same size
+	 * @param scratch same size, overwritten
+	 * @param positive ids only in this
+	 * @param negative ids only in other
+	 * @return true if the difference peeled completely
+	 */
+	public boolean decodeInto(SimpleRDATable other, SimpleRDATable scratch, HashSet<Long> positive, HashSet<Long> negative){
+		return subtractInto(other, scratch).decodeIDs(positive, negative);
+	}
+
+	/**
+	 * decodeInto on a scratch from RDATablePool, given back afterwards
+	 * @param other
+	 * @param positive
+	 * @param negative
+	 * @return
+	 */
+	public boolean decodeInto(SimpleRDATable other, HashSet<Long> positive, HashSet<Long> negative){
+		RDATablePool pool = RDATablePool.get();
+		SimpleRDATable scratch = new SimpleRDATable();
+		scratch.buckets = pool.take(buckets, N_HASH);
+		try{
+			return decodeInto(other, scratch, positive, negative);
+		}finally{
+			pool.give(scratch.buckets, N_HASH);
+		}
+	}
+
 	
 	
 	/**
@@ -931,7 +1001,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 * @param ids, decoded ids
 	 * @param TSTable, id, timestamp
 	 */
-	public void RepairTBF(HashSet<Long> ids,Hashtable<Long,Double> TSTable){
+	public void RepairTBF(HashSet<Long> ids,Map<Long,Double> TSTable){
 		Iterator<Long> ier = ids.iterator();
 		while(ier.hasNext()){
 			long id = ier.next();
@@ -948,7 +1018,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 * @param TSTable, id, timestamp
 	 */
 	public void RepairTBF(HashSet<Long> ids,
-			Hashtable<Long,Double> TSTable,
+			Map<Long,Double> TSTable,
 			Hashtable<Long,byte[]> valueTable){
 		Iterator<Long> ier = ids.iterator();
 		while(ier.hasNext()){
@@ -970,7 +1040,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 * @param valueTable
 	 * @param percent
 	 */
-	public void RepairTBF(HashSet<Long> ids,Hashtable<Long,Double> TSTable,
+	public void RepairTBF(HashSet<Long> ids,Map<Long,Double> TSTable,
 			double percent){
 		Iterator<Long> ier = ids.iterator();
 		Random r =new Random(System.currentTimeMillis());
@@ -999,11 +1069,11 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		
 		int c=0;
 		double sum=0;
-		for(int i=0;i<subtractTBF.hashTable.length;i++){
+		for(int i=0;i<subtractTBF.buckets.size();i++){
 			//use only buckets that have insertions
-			long t = repairedTBF.hashTable[i].getNumItems();
+			long t = repairedTBF.buckets.getNumItems(i);
 			if(t>0){
-				sum+=Math.abs(subtractTBF.hashTable[i].TS);
+				sum+=Math.abs(subtractTBF.buckets.getTS(i));
 				c+=t;
 			}
 		}
@@ -1016,39 +1086,12 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	 * @return
 	 */
 	public double getAvgTS(SimpleRDATable RReceiver){
-		SimpleRDATable subtractTBF = this.subtractIBLT(RReceiver);		
-		int c=0;
-		double sum=0;
-		int good=0;
-		int total=0;
-		int size=subtractTBF.hashTable.length;
-		//////System.out.println("$size: "+size+", receiverSize: "+RReceiver.hashTable.length);
-		for(int i=0;i<size;i++){
-			//useful
-			if(subtractTBF.hashTable[i].Counter==0&&this.hashTable[i].keySum==RReceiver.hashTable[i].keySum&&
-					this.hashTable[i].Counter!=0
-			//this.hashTable[i].keyCheck==RReceiver.hashTable[i].keyCheck&&
-					){
-			//use only buckets that have insertions
-				
-			long t = Math.abs(RReceiver.hashTable[i].getNumItems());
-			//////System.out.println("$size:"+t);
-			//if(t>0){
-				sum+=Math.abs(subtractTBF.hashTable[i].TS);
-				c+=t;
-			//}
-			good++;
-			total++;
-			}else{
-				if(this.hashTable[i].keySum!=RReceiver.hashTable[i].keySum){
-					total++;
-				}
-//				System.err.println("Incorrect: "+
-//			this.hashTable[i].keyCheck+"="+RReceiver.hashTable[i].keyCheck+","+
-//						this.hashTable[i].keySum+"="+RReceiver.hashTable[i].keySum+","+
-//						subtractTBF.hashTable[i].Counter);
-			}
-		}
+		//use only buckets that have insertions and the same ids on both sides
+		double[] r=RDAKernels.avgTS(this.buckets, RReceiver.buckets);
+		double sum=r[0];
+		long c=(long)r[1];
+		double good=r[2];
+		double total=r[3];
 		log.main("AvgUnUsed: "+(total-good+0.0)/total);
 		if(c>0){
 		return sum/c;
@@ -1080,10 +1123,11 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		//for each part, skip the empty buckets
 		//for a pair, construct the adjacent pair
 		
-		int halvedSizePart=this.hashTable.length/N_HASH;		
+		int halvedSizePart=this.buckets.size()/N_HASH;		
 		//store the collapsed result
 		SimpleRDATable CollapseTable = new SimpleRDATable();
-		Vector<SimpleRDATableEntry> collapsedRDA = new Vector<SimpleRDATableEntry>();
+		RDABucketStore collapsedRDA = buckets.newStore(buckets.size()/2+1);
+		int collapsed=0;
 		CollapseTable.N_HASH=this.N_HASH;
 		
 		//global index
@@ -1094,27 +1138,22 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		for(int i=start;i<indexHash*halvedSizePart;i++){
 			
 			//skip
-			if((i*2+1)>=indexHash*halvedSizePart||this.hashTable[i*2].empty()||this.hashTable[i*2+1].empty()){
+			if((i*2+1)>=indexHash*halvedSizePart||this.buckets.empty(i*2)||this.buckets.empty(i*2+1)){
 				continue;
 			}
-			SimpleRDATableEntry entry = new SimpleRDATableEntry();
-			entry.TS=this.hashTable[i*2].TS-this.hashTable[i*2+1].TS;
-			entry.Counter=this.hashTable[i*2].Counter+this.hashTable[i*2+1].Counter;
-			entry.keySum=this.hashTable[i*2].keySum^this.hashTable[i*2+1].keySum;
-			//entry.keyCheck=this.hashTable[i*2].keyCheck^this.hashTable[i*2+1].keyCheck;
-			collapsedRDA.add(entry);
+			collapsedRDA.set(collapsed++,
+					this.buckets.getCounter(i*2)+this.buckets.getCounter(i*2+1),
+					this.buckets.getTS(i*2)-this.buckets.getTS(i*2+1),
+					this.buckets.getKeySum(i*2)^this.buckets.getKeySum(i*2+1),0);
 		}
 		indexHash++;
 		start+=halvedSizePart;
 		
 		}
 		//copy
-		CollapseTable.hashTable=new SimpleRDATableEntry[collapsedRDA.size()];
-		CollapseTable.expectedNumEntries = CollapseTable.hashTable.length;
-		for(int i=0;i<CollapseTable.hashTable.length;i++){
-			CollapseTable.hashTable[i]=collapsedRDA.get(i).clone();
-		}
-		collapsedRDA.clear();
+		CollapseTable.buckets=buckets.newStore(collapsed);
+		CollapseTable.buckets.copyFrom(collapsedRDA, 0, 0, collapsed);
+		CollapseTable.expectedNumEntries = collapsed;
 		return CollapseTable;
 	}
 	
@@ -1130,15 +1169,17 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		
 		//counterSum[0] = 0;
 		
-		//int halvedSizePart=this.hashTable.length/N_HASH;		
+		//int halvedSizePart=this.buckets.size()/N_HASH;		
 		//store the collapsed result
 		SimpleRDATable[] aa = new SimpleRDATable[2];
 		aa[0] = new SimpleRDATable();
 		aa[1] = new SimpleRDATable();
 		SimpleRDATable  CollapseTableMe = aa[0];
 		
-		Vector<SimpleRDATableEntry> meVec = new Vector<SimpleRDATableEntry>();
-		Vector<SimpleRDATableEntry> youVec = new Vector<SimpleRDATableEntry>();
+		//at most one collapsed bucket per pair
+		RDABucketStore meVec = buckets.newStore(buckets.size()/2+1);
+		RDABucketStore youVec = you.buckets.newStore(buckets.size()/2+1);
+		int collapsed=0;
 		
 		CollapseTableMe.N_HASH=this.N_HASH;
 		CollapseTableMe.expectedNumEntries=this.expectedNumEntries;
@@ -1154,7 +1195,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		int indexHash=1;
 		int indexAInTable, indexBInTable;
 		
-		int bucketsPerHash = you.hashTable.length/N_HASH;
+		int bucketsPerHash = you.buckets.size()/N_HASH;
 		
 		int[] sign = new int[ bucketsPerHash];
 		for(int i=0;i< bucketsPerHash;i++){
@@ -1182,9 +1223,9 @@ public class SimpleRDATable  implements Writable ,Serializable{
 			 int signAtom = 1;
 			for(int i=startEntry;i<endEntry;i++){
 								
-				if(this.hashTable[i].Counter!=you.hashTable[i].Counter//||
-						//this.hashTable[i].keySum!=you.hashTable[i].keySum||
-						//this.hashTable[i].keyCheck!=you.hashTable[i].keyCheck
+				if(this.buckets.getCounter(i)!=you.buckets.getCounter(i)//||
+						//this.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+						//this.buckets.getKeyCheck(i)!=you.buckets.getKeyCheck(i)
 						){
 					continue;
 				}else{
@@ -1193,9 +1234,9 @@ public class SimpleRDATable  implements Writable ,Serializable{
 					// System.out.println("i: "+(i-startEntry)+", sign: "+signAtom);
 					 signAtom*=-1;
 					//sum
-					branchAvg[iii]+=Math.abs(this.hashTable[i].TS-you.hashTable[i].TS);
+					branchAvg[iii]+=Math.abs(this.buckets.getTS(i)-you.buckets.getTS(i));
 					//avg
-					counterPackets+=this.hashTable[i].Counter;
+					counterPackets+=this.buckets.getCounter(i);
 					
 				}
 				//}
@@ -1223,36 +1264,29 @@ public class SimpleRDATable  implements Writable ,Serializable{
 			int signB = SignIndexes.get(ii*2+1);
 			
 			//skip
-			SimpleRDATableEntry entry = new SimpleRDATableEntry();
-			entry.TS=signA*this.hashTable[indexAInTable].TS + signB*this.hashTable[indexBInTable].TS;
-			entry.Counter=this.hashTable[indexAInTable].Counter+this.hashTable[indexBInTable].Counter;
-			entry.keySum=this.hashTable[indexAInTable].keySum^this.hashTable[indexBInTable].keySum;
-			//entry.keyCheck=this.hashTable[indexAInTable].keyCheck^this.hashTable[indexBInTable].keyCheck;
-			meVec.add(entry);
-			//CollapseTableMe.hashTable.add(entry);
+			meVec.set(collapsed,
+					this.buckets.getCounter(indexAInTable)+this.buckets.getCounter(indexBInTable),
+					signA*this.buckets.getTS(indexAInTable) + signB*this.buckets.getTS(indexBInTable),
+					this.buckets.getKeySum(indexAInTable)^this.buckets.getKeySum(indexBInTable),0);
 			
-			SimpleRDATableEntry YouEntry = new SimpleRDATableEntry();
-			YouEntry.TS=signA*you.hashTable[indexAInTable].TS + signB*you.hashTable[indexBInTable].TS;
-			YouEntry.Counter=you.hashTable[indexAInTable].Counter+you.hashTable[indexBInTable].Counter;
-			YouEntry.keySum=you.hashTable[indexAInTable].keySum^you.hashTable[indexBInTable].keySum;
-			//YouEntry.keyCheck=you.hashTable[indexAInTable].keyCheck^you.hashTable[indexBInTable].keyCheck;
-			youVec.add(YouEntry);
-			//CollapseTableYou.hashTable.add(YouEntry);
+			youVec.set(collapsed,
+					you.buckets.getCounter(indexAInTable)+you.buckets.getCounter(indexBInTable),
+					signA*you.buckets.getTS(indexAInTable) + signB*you.buckets.getTS(indexBInTable),
+					you.buckets.getKeySum(indexAInTable)^you.buckets.getKeySum(indexBInTable),0);
+			collapsed++;
 			
 			//counterSum[0]+=YouEntry.Counter;
 		}
-		interval=youVec.size();//CollapseTableYou.hashTable.length;
+		interval=collapsed;//CollapseTableYou.buckets.size();
 		intervals.add(interval);
 		}
 		//copy
-		CollapseTableMe.hashTable = new SimpleRDATableEntry[meVec.size()];
-		CollapseTableYou.hashTable = new SimpleRDATableEntry[youVec.size()];
-		CollapseTableMe.expectedNumEntries = CollapseTableMe.hashTable.length;
-		CollapseTableYou.expectedNumEntries = CollapseTableYou.hashTable.length;
-		for(int i=0;i<CollapseTableMe.expectedNumEntries;i++){
-			CollapseTableMe.hashTable[i]=meVec.get(i).clone();
-			CollapseTableYou.hashTable[i]=youVec.get(i).clone();
-		}
+		CollapseTableMe.buckets = buckets.newStore(collapsed);
+		CollapseTableYou.buckets = you.buckets.newStore(collapsed);
+		CollapseTableMe.buckets.copyFrom(meVec, 0, 0, collapsed);
+		CollapseTableYou.buckets.copyFrom(youVec, 0, 0, collapsed);
+		CollapseTableMe.expectedNumEntries = collapsed;
+		CollapseTableYou.expectedNumEntries = collapsed;
 		
 		return aa;
 	}
@@ -1265,7 +1299,7 @@ public class SimpleRDATable  implements Writable ,Serializable{
 //		//for each part, skip the empty buckets
 //		//for a pair, construct the adjacent pair
 //		
-//		//int halvedSizePart=this.hashTable.length/N_HASH;		
+//		//int halvedSizePart=this.buckets.size()/N_HASH;		
 //		//store the collapsed result
 //		RDATable[] aa = new RDATable[2];
 //		aa[0] = new RDATable();
@@ -1292,9 +1326,9 @@ public class SimpleRDATable  implements Writable ,Serializable{
 //			
 //			 computeIndexes.clear();
 //			for(int i=startEntry;i<endEntry;i++){
-//				if(this.hashTable[i].empty()||you.hashTable[i].empty()||
-//						this.hashTable[i].Counter!=you.hashTable[i].Counter||
-//						this.hashTable[i].keySum!=you.hashTable[i].keySum){
+//				if(this.buckets.empty(i)||you.buckets.empty(i)||
+//						this.buckets.getCounter(i)!=you.buckets.getCounter(i)||
+//						this.buckets.getKeySum(i)!=you.buckets.getKeySum(i)){
 //					continue;
 //				}else{
 //					 computeIndexes.add(i);
@@ -1316,21 +1350,21 @@ public class SimpleRDATable  implements Writable ,Serializable{
 //			
 //			//skip
 //			SimpleRDATableEntry entry = new SimpleRDATableEntry();
-//			entry.TS=this.hashTable[indexAInTable].TS-this.hashTable[indexBInTable].TS;
-//			entry.Counter=this.hashTable[indexAInTable].Counter+this.hashTable[indexBInTable].Counter;
-//			entry.keySum=this.hashTable[indexAInTable].keySum^this.hashTable[indexBInTable].keySum;
-//			entry.keyCheck=this.hashTable[indexAInTable].keyCheck^this.hashTable[indexBInTable].keyCheck;
+//			entry.TS=this.buckets.getTS(indexAInTable)-this.buckets.getTS(indexBInTable);
+//			entry.Counter=this.buckets.getCounter(indexAInTable)+this.buckets.getCounter(indexBInTable);
+//			entry.keySum=this.buckets.getKeySum(indexAInTable)^this.buckets.getKeySum(indexBInTable);
+//			entry.keyCheck=this.buckets.getKeyCheck(indexAInTable)^this.buckets.getKeyCheck(indexBInTable);
 //			CollapseTableMe.hashTable.add(entry);
 //			
 //			SimpleRDATableEntry YouEntry = new SimpleRDATableEntry();
-//			YouEntry.TS=you.hashTable[indexAInTable].TS-you.hashTable[indexBInTable].TS;
-//			YouEntry.Counter=you.hashTable[indexAInTable].Counter+you.hashTable[indexBInTable].Counter;
-//			YouEntry.keySum=you.hashTable[indexAInTable].keySum^you.hashTable[indexBInTable].keySum;
-//			YouEntry.keyCheck=you.hashTable[indexAInTable].keyCheck^you.hashTable[indexBInTable].keyCheck;
+//			YouEntry.TS=you.buckets.getTS(indexAInTable)-you.buckets.getTS(indexBInTable);
+//			YouEntry.Counter=you.buckets.getCounter(indexAInTable)+you.buckets.getCounter(indexBInTable);
+//			YouEntry.keySum=you.buckets.getKeySum(indexAInTable)^you.buckets.getKeySum(indexBInTable);
+//			YouEntry.keyCheck=you.buckets.getKeyCheck(indexAInTable)^you.buckets.getKeyCheck(indexBInTable);
 //			CollapseTableYou.hashTable.add(YouEntry);
 //			
 //		}
-//		interval=CollapseTableYou.hashTable.length;
+//		interval=CollapseTableYou.buckets.size();
 //		intervals.add(interval);
 //		}
 //		return aa;
@@ -1340,8 +1374,8 @@ public class SimpleRDATable  implements Writable ,Serializable{
 		// TODO Auto-generated method stub
 		List<Integer> ll=new ArrayList<Integer>();
 		for(int i=start;i<end;i++){
-			if(this.hashTable[i].empty()||you.hashTable[i].empty()||
-					this.hashTable[i].Counter!=you.hashTable[i].Counter){
+			if(this.buckets.empty(i)||you.buckets.empty(i)||
+					this.buckets.getCounter(i)!=you.buckets.getCounter(i)){
 				continue;
 			}else{
 				ll.add(i);
@@ -1378,11 +1412,11 @@ public class SimpleRDATable  implements Writable ,Serializable{
 			double stdOneRound=0;
 			//separate each hash procedure
 			for(int indexHash=0;indexHash<N_HASH;indexHash++){
-				//////System.out.println("Table: "+you.hashTable.length+", "+me.hashTable.length);
+				//////System.out.println("Table: "+you.buckets.size()+", "+me.buckets.size());
 				//////System.out.println("s: "+start+", end: "+end+", total: "+intervalHashs.get(intervalHashs.size()-1));
 				
 				
-				end=Math.min(intervalHashs.get(indexHash),you.hashTable.length);
+				end=Math.min(intervalHashs.get(indexHash),you.buckets.size());
 				//reset for each partition hashed
 				if(end==0){
 					break;
@@ -1391,25 +1425,25 @@ public class SimpleRDATable  implements Writable ,Serializable{
 				totalSumCounter=0;
 				allSquaredSum=0;
 				for(int i=start;i<end;i++){
-					if(you.hashTable[i].empty()||
-							me.hashTable[i].empty()||
-							me.hashTable[i].Counter==0){
+					if(you.buckets.empty(i)||
+							me.buckets.empty(i)||
+							me.buckets.getCounter(i)==0){
 						System.err.println("empty");
 						continue;
 					}
-					if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-							me.hashTable[i].Counter!=you.hashTable[i].Counter){
+					if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+							me.buckets.getCounter(i)!=you.buckets.getCounter(i)){
 						//System.err.println("unequal! ");
 						continue;
 					}
 					
-				//	if(me.hashTable[i].Counter!=0&&
-					//		me.hashTable[i].keySum==you.hashTable[i].keySum&&
-					//		me.hashTable[i].Counter==you.hashTable[i].Counter){
-					totalSumCounter+=(me.hashTable[i].Counter);	
-							TASum=me.hashTable[i].TS;
-							TBSum=you.hashTable[i].TS;
-							//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
+				//	if(me.buckets.getCounter(i)!=0&&
+					//		me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+					//		me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+					totalSumCounter+=(me.buckets.getCounter(i));	
+							TASum=me.buckets.getTS(i);
+							TBSum=you.buckets.getTS(i);
+							//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.buckets.getCounter(i)+"\n");
 							allSquaredSum+=Math.pow(TBSum - TASum,2);	
 							
 				//	}
@@ -1442,144 +1476,22 @@ public class SimpleRDATable  implements Writable ,Serializable{
 	
 	
 	
+	/**
+	 * variance of the delay over the pairs of the coordinated collapse, one
+	 * pass per bank without building the collapsed tables
+	 * (CoordinatedCollapseAdjacentBank keeps the tables for the other scores)
+	 * @param other11
+	 * @param avg000
+	 * @return
+	 */
 	public double getFScoreByCollapse(SimpleRDATable other11,double avg000){
-		
-		Vector<Integer> intervalHashs = new Vector<Integer>();
-		//branch average
-		double[] BranchAvg = new double[this.N_HASH];
-		for(int i=0;i<this.N_HASH;i++){
-			BranchAvg[i]=0;
-		}
-		SimpleRDATable[] out=CoordinatedCollapseAdjacentBank(other11,intervalHashs,BranchAvg);
-		if(intervalHashs.isEmpty()){
+		double[] r=RDAKernels.collapsedVariance(this.buckets, other11.buckets, N_HASH);
+		if(r[0]<0){
 			return -1;
 		}
-			//do not collapse
-			SimpleRDATable me = out[0];
-			SimpleRDATable you = out[1];
-							
-			double TASum=0;
-			double TBSum=0;
-			//double squaredDiff=0;
-			double allSquaredSum=0;
-			double totalSumCounter=0;
-			//double S= 0;
-			double oneRound=0;
-			int start=0;int end=0;
-			//int count = 0;
-			//double v0;
-			//separate each hash procedure
-			/*for(int i=0;i<you.hashTable.length;i++){
-				if(you.hashTable[i].empty()||
-						me.hashTable[i].empty()||
-						me.hashTable[i].Counter==0){
-					System.err.println("empty");
-					continue;
-				}
-				if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-						me.hashTable[i].Counter!=you.hashTable[i].Counter||
-						me.hashTable[i].keyCheck!=you.hashTable[i].keyCheck){
-					System.err.println("unequal! ");
-					continue;
-				}
-				
-				totalSumCounter+=(me.hashTable[i].Counter);	
-				TASum=me.hashTable[i].TS;
-				TBSum=you.hashTable[i].TS;
-				//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
-				allSquaredSum+=Math.pow(TBSum - TASum,2);	
-			}
-			*/
-			
-			List<Double> eachValue = new ArrayList<Double>();
- 			double avgDouble=0;
-			double sumAllSquared=0;
-			double countAll=0;
-			double avgSquaredAll=0;
-			int countAllItems=0;
-			float countUnequalItems=0;
-			for(int indexHash=0;indexHash<N_HASH;indexHash++){
-				//////System.out.println("Table: "+you.hashTable.length+", "+me.hashTable.length);
-				//////System.out.println("s: "+start+", end: "+end+", total: "+intervalHashs.get(intervalHashs.size()-1));
-				
-				
-				//end = intervalHashs.get(indexHash);
-				end=Math.min(intervalHashs.get(indexHash),you.hashTable.length);
-				//reset for each partition hashed
-				if(end==0||start==end){
-					break;
-				}
-				
-				allSquaredSum = 0;
-				totalSumCounter = 0;
-				
-				for(int i=start;i<end;i++){
-					/*if(you.hashTable[i].empty()||
-							me.hashTable[i].empty()||
-							me.hashTable[i].Counter==0){
-						System.err.println("empty");
-						continue;
-					}
-					*/
-					countAllItems++;
-					if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-							me.hashTable[i].Counter!=you.hashTable[i].Counter//||
-							//me.hashTable[i].keyCheck!=you.hashTable[i].keyCheck
-							){
-						//System.err.println("unequal! ");
-						countUnequalItems++;
-						continue;
-					}
-					
-				//	if(me.hashTable[i].Counter!=0&&
-					//		me.hashTable[i].keySum==you.hashTable[i].keySum&&
-					//		me.hashTable[i].Counter==you.hashTable[i].Counter){
-					totalSumCounter+=(me.hashTable[i].Counter);	
-							TASum=me.hashTable[i].TS;
-							TBSum=you.hashTable[i].TS;
-							//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
-							allSquaredSum+=Math.pow(TBSum - TASum,2);	
-							
-				//	}
-					
-				}//end a round
-				
-				if(totalSumCounter==0){
-					 continue;
-				}
-				
-				sumAllSquared+=allSquaredSum;
-				countAll+=totalSumCounter;
-				avgSquaredAll+=BranchAvg[indexHash];
-				double stdValue= Math.abs(allSquaredSum/totalSumCounter - Math.pow(BranchAvg[indexHash],2));
-				eachValue.add(stdValue);
-				avgDouble+=stdValue;
-				//System.out.print(" "+stdValue);
-			}
-
-			avgDouble/=N_HASH;
-			//double median = math.percentile(eachValue,.5);
-			//double avgDouble0 = Math.abs( sumAllSquared/countAll - Math.pow(avgSquaredAll/N_HASH,2));
-
-			log.main("StdUnequalFrac: "+countUnequalItems/(countAllItems+0.0));
-			//System.out.println("\n===========\n"+avgDouble+", "+avgDouble0+"\n===========\n");
-				//double stdValue= Math.abs(allSquaredSum/totalSumCounter - Math.pow(avg,2));
-			eachValue.clear();
-			
-			
-			//double v=count>0?oneRound/count:-1;
-			//////System.out.print( "avg: "+v+"\n");
-			
-			intervalHashs.clear();
-			intervalHashs=null;
-			me.clear();
-			you.clear();
-			me=null;
-			you=null;
-			
-			return avgDouble;
-
-		}
+		log.main("StdUnequalFrac: "+r[1]);
+		return r[0];
+	}
 		
 	MathUtil math =new MathUtil(100);
 	
@@ -1607,24 +1519,24 @@ public class SimpleRDATable  implements Writable ,Serializable{
 			//int count = 0;
 			//double v0;
 			//separate each hash procedure
-			/*for(int i=0;i<you.hashTable.length;i++){
-				if(you.hashTable[i].empty()||
-						me.hashTable[i].empty()||
-						me.hashTable[i].Counter==0){
+			/*for(int i=0;i<you.buckets.size();i++){
+				if(you.buckets.empty(i)||
+						me.buckets.empty(i)||
+						me.buckets.getCounter(i)==0){
 					System.err.println("empty");
 					continue;
 				}
-				if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-						me.hashTable[i].Counter!=you.hashTable[i].Counter||
-						me.hashTable[i].keyCheck!=you.hashTable[i].keyCheck){
+				if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+						me.buckets.getCounter(i)!=you.buckets.getCounter(i)||
+						me.buckets.getKeyCheck(i)!=you.buckets.getKeyCheck(i)){
 					System.err.println("unequal! ");
 					continue;
 				}
 				
-				totalSumCounter+=(me.hashTable[i].Counter);	
-				TASum=me.hashTable[i].TS;
-				TBSum=you.hashTable[i].TS;
-				//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
+				totalSumCounter+=(me.buckets.getCounter(i));	
+				TASum=me.buckets.getTS(i);
+				TBSum=you.buckets.getTS(i);
+				//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.buckets.getCounter(i)+"\n");
 				allSquaredSum+=Math.pow(TBSum - TASum,2);	
 			}
 			*/
@@ -1633,11 +1545,11 @@ public class SimpleRDATable  implements Writable ,Serializable{
 			
 			double avgDouble=0;
 			for(int indexHash=0;indexHash<N_HASH;indexHash++){
-				//////System.out.println("Table: "+you.hashTable.length+", "+me.hashTable.length);
+				//////System.out.println("Table: "+you.buckets.size()+", "+me.buckets.size());
 				//////System.out.println("s: "+start+", end: "+end+", total: "+intervalHashs.get(intervalHashs.size()-1));
 				
 				
-				end=Math.min(intervalHashs.get(indexHash),you.hashTable.length);
+				end=Math.min(intervalHashs.get(indexHash),you.buckets.size());
 				//reset for each partition hashed
 				if(end==0){
 					break;
@@ -1647,29 +1559,29 @@ public class SimpleRDATable  implements Writable ,Serializable{
 				totalSumCounter = 0;
 				
 				for(int i=start;i<end;i++){
-					if(you.hashTable[i].empty()||
-							me.hashTable[i].empty()||
-							me.hashTable[i].Counter==0){
+					if(you.buckets.empty(i)||
+							me.buckets.empty(i)||
+							me.buckets.getCounter(i)==0){
 						System.err.println("empty");
 						continue;
 					}
 					totalCount++;
-					if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-							me.hashTable[i].Counter!=you.hashTable[i].Counter//||
-							//me.hashTable[i].keyCheck!=you.hashTable[i].keyCheck
+					if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+							me.buckets.getCounter(i)!=you.buckets.getCounter(i)//||
+							//me.buckets.getKeyCheck(i)!=you.buckets.getKeyCheck(i)
 							){
 						//System.err.println("unequal! ");
 						countUnequal++;
 						continue;
 					}
 					
-				//	if(me.hashTable[i].Counter!=0&&
-					//		me.hashTable[i].keySum==you.hashTable[i].keySum&&
-					//		me.hashTable[i].Counter==you.hashTable[i].Counter){
-					totalSumCounter+=(me.hashTable[i].Counter);	
-							TASum=me.hashTable[i].TS;
-							TBSum=you.hashTable[i].TS;
-							//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
+				//	if(me.buckets.getCounter(i)!=0&&
+					//		me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+					//		me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+					totalSumCounter+=(me.buckets.getCounter(i));	
+							TASum=me.buckets.getTS(i);
+							TBSum=you.buckets.getTS(i);
+							//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.buckets.getCounter(i)+"\n");
 							allSquaredSum+=Math.pow(TBSum - TASum,2);	
 							
 				//	}
@@ -1724,11 +1636,11 @@ public double getFScoreByCollapse0(SimpleRDATable other11,double avg){
 		double v0;
 		//separate each hash procedure
 		for(int indexHash=0;indexHash<N_HASH;indexHash++){
-			//////System.out.println("Table: "+you.hashTable.length+", "+me.hashTable.length);
+			//////System.out.println("Table: "+you.buckets.size()+", "+me.buckets.size());
 			//////System.out.println("s: "+start+", end: "+end+", total: "+intervalHashs.get(intervalHashs.size()-1));
 			
 			
-			end=Math.min(intervalHashs.get(indexHash),you.hashTable.length);
+			end=Math.min(intervalHashs.get(indexHash),you.buckets.size());
 			//reset for each partition hashed
 			if(end==0){
 				break;
@@ -1736,25 +1648,25 @@ public double getFScoreByCollapse0(SimpleRDATable other11,double avg){
 			S=0;
 			squaredDiff=0;
 			for(int i=start;i<end;i++){
-				if(you.hashTable[i].empty()||
-						me.hashTable[i].empty()||
-						me.hashTable[i].Counter==0){
+				if(you.buckets.empty(i)||
+						me.buckets.empty(i)||
+						me.buckets.getCounter(i)==0){
 					System.err.println("empty");
 					continue;
 				}
-				if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-						me.hashTable[i].Counter!=you.hashTable[i].Counter){
+				if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+						me.buckets.getCounter(i)!=you.buckets.getCounter(i)){
 					//System.err.println("unequal! ");
 					continue;
 				}
 				
-			//	if(me.hashTable[i].Counter!=0&&
-				//		me.hashTable[i].keySum==you.hashTable[i].keySum&&
-				//		me.hashTable[i].Counter==you.hashTable[i].Counter){
-						S+=(me.hashTable[i].Counter);	
-						TASum=me.hashTable[i].TS;
-						TBSum=you.hashTable[i].TS;
-						//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.hashTable[i].Counter+"\n");
+			//	if(me.buckets.getCounter(i)!=0&&
+				//		me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+				//		me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+						S+=(me.buckets.getCounter(i));	
+						TASum=me.buckets.getTS(i);
+						TBSum=you.buckets.getTS(i);
+						//System.out.print((TBSum - TASum)+",^2:"+(Math.pow(TBSum - TASum,2))+",#: "+me.buckets.getCounter(i)+"\n");
 						squaredDiff+=Math.pow(TBSum - TASum,2);	
 						
 			//	}
@@ -1785,40 +1697,40 @@ public double getFScoreByCollapse0(SimpleRDATable other11,double avg){
 		you=null;
 		
 		return v;
-//		for(int i=0;i<me.hashTable.length;i++){
-//			////////System.out.println("keySum: "+me.hashTable[i].keySum+", "
-//		//+you.hashTable[i].keySum);
-//			if(me.hashTable[i].Counter!=0&&
-//					me.hashTable[i].keySum==you.hashTable[i].keySum&&
-//					me.hashTable[i].Counter==you.hashTable[i].Counter){
-//					S+=me.hashTable[i].Counter;	
+//		for(int i=0;i<me.buckets.size();i++){
+//			////////System.out.println("keySum: "+me.buckets.getKeySum(i)+", "
+//		//+you.buckets.getKeySum(i));
+//			if(me.buckets.getCounter(i)!=0&&
+//					me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+//					me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+//					S+=me.buckets.getCounter(i);	
 //			}
 //		}
 //		//////System.out.println("S: "+S);		
 //		/**
 //		 * 
-//						me.hashTable[i].keyCheck==you.hashTable[i].keyCheck&&
+//						me.buckets.getKeyCheck(i)==you.buckets.getKeyCheck(i)&&
 //						
 //		 */
 //		double v;
-//		for(int i=0;i<me.hashTable.length;i++){
+//		for(int i=0;i<me.buckets.size();i++){
 //			
-//			if(you.hashTable[i].empty()||me.hashTable[i].empty()||me.hashTable[i].Counter==0){
+//			if(you.buckets.empty(i)||me.buckets.empty(i)||me.buckets.getCounter(i)==0){
 //				System.err.println("empty");
 //				continue;
 //			}
-//			if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-//					me.hashTable[i].Counter!=you.hashTable[i].Counter){
+//			if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+//					me.buckets.getCounter(i)!=you.buckets.getCounter(i)){
 //				System.err.println("unequal! ");
 //				continue;
 //			}
 //			//only choose good pair
-//				//if(me.hashTable[i].keySum==you.hashTable[i].keySum&&
-//				//		me.hashTable[i].Counter==you.hashTable[i].Counter){					
-//					TASum=me.hashTable[i].TS;
-//					TBSum=you.hashTable[i].TS;
+//				//if(me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+//				//		me.buckets.getCounter(i)==you.buckets.getCounter(i)){					
+//					TASum=me.buckets.getTS(i);
+//					TBSum=you.buckets.getTS(i);
 //					v=TBSum - TASum;
-//					//////System.out.print(v+",#: "+me.hashTable[i].Counter+"\n");
+//					//////System.out.print(v+",#: "+me.buckets.getCounter(i)+"\n");
 //					squaredDiff+=Math.pow(v,2);		
 //					//////System.out.print("$: "+squaredDiff+"\n");	
 //				
@@ -1840,39 +1752,39 @@ public double getFScoreByCollapse0(SimpleRDATable other11,double avg){
 //		double squaredDiff=0;
 //		int S=0;
 //		
-//		for(int i=0;i<me.hashTable.length;i++){
-//			////System.out.println("keySum: "+me.hashTable[i].keySum+", "+you.hashTable[i].keySum);
-//			if(me.hashTable[i].Counter!=0&&
-//					me.hashTable[i].keySum==you.hashTable[i].keySum&&
-//					me.hashTable[i].Counter==you.hashTable[i].Counter){
-//					S+=me.hashTable[i].Counter;	
+//		for(int i=0;i<me.buckets.size();i++){
+//			////System.out.println("keySum: "+me.buckets.getKeySum(i)+", "+you.buckets.getKeySum(i));
+//			if(me.buckets.getCounter(i)!=0&&
+//					me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+//					me.buckets.getCounter(i)==you.buckets.getCounter(i)){
+//					S+=me.buckets.getCounter(i);	
 //			}
 //		}
 //		////System.out.println("S: "+S);		
 //		/**
 //		 * 
-//						me.hashTable[i].keyCheck==you.hashTable[i].keyCheck&&
+//						me.buckets.getKeyCheck(i)==you.buckets.getKeyCheck(i)&&
 //						
 //		 */
 //		double v;
-//		for(int i=0;i<me.hashTable.length;i++){
+//		for(int i=0;i<me.buckets.size();i++){
 //			
-//			if(you.hashTable[i].empty()||me.hashTable[i].empty()||me.hashTable[i].Counter==0){
+//			if(you.buckets.empty(i)||me.buckets.empty(i)||me.buckets.getCounter(i)==0){
 //				System.err.println("empty");
 //				continue;
 //			}
-//			if(me.hashTable[i].keySum!=you.hashTable[i].keySum||
-//					me.hashTable[i].Counter!=you.hashTable[i].Counter){
+//			if(me.buckets.getKeySum(i)!=you.buckets.getKeySum(i)||
+//					me.buckets.getCounter(i)!=you.buckets.getCounter(i)){
 //				System.err.println("unequal! ");
 //				continue;
 //			}
 //			//only choose good pair
-//				if(me.hashTable[i].keySum==you.hashTable[i].keySum&&
-//						me.hashTable[i].Counter==you.hashTable[i].Counter){					
+//				if(me.buckets.getKeySum(i)==you.buckets.getKeySum(i)&&
+//						me.buckets.getCounter(i)==you.buckets.getCounter(i)){					
 //					TASum=me.hashTable[i].STS;
 //					TBSum=you.hashTable[i].STS;
 //					v=TBSum - TASum;
-//					//////System.out.print(v+",#: "+me.hashTable[i].Counter+"\n");
+//					//////System.out.print(v+",#: "+me.buckets.getCounter(i)+"\n");
 //					squaredDiff+=Math.pow(v,2);		
 //					//////System.out.print("$: "+squaredDiff+"\n");	
 //				
@@ -1890,9 +1802,8 @@ public double getFScoreByCollapse0(SimpleRDATable other11,double avg){
    public String dumpTable(){
 	   StringBuffer sb = new StringBuffer();
 	   sb.append("count keySum keyCheckMatch\n");
-	   for (int i=0;i<hashTable.length;i++){
-		   SimpleRDATableEntry entry = hashTable[i];
-		   sb.append("# items: "+entry.getNumItems()+" "+entry.keySum + " ");
+	   for (int i=0;i<buckets.size();i++){
+		   sb.append("# items: "+buckets.getNumItems(i)+" "+buckets.getKeySum(i) + " ");
 		   
 		   //byte[] kvec = IBLTEntry.ToByteArray(entry.keySum);
 		   //int[] hh = HashTableEntry.hashC.hash(new Key( kvec),HashTableEntry.N_HASHCHECK) ;
@@ -1933,9 +1844,7 @@ public double getFScoreByCollapse0(SimpleRDATable other11,double avg){
 		// TODO Auto-generated method stub
 		try {
 			BFOps.acquire();
-			for(int i=0;i<hashTable.length;i++){
-				hashTable[i].reset();
-			}
+			buckets.clear();
 			BFOps.release();
 		} catch (InterruptedException e) {
 			// TODO Auto-generated catch block
@@ -1951,40 +1860,24 @@ public double getFScoreByCollapse0(SimpleRDATable other11,double avg){
 	 * @return
 	 */
 	public double getGoodPackets(SimpleRDATable RReceiver) {
-		// TODO Auto-generated method stub
-		double good=0;
-		
-		SimpleRDATable subtractTBF = this.subtractIBLT(RReceiver);		
-		int c=0;
-		double sum=0;
-		int size=subtractTBF.hashTable.length;
-		//////System.out.println("$size: "+size+", receiverSize: "+RReceiver.hashTable.length);
-		for(int i=0;i<size;i++){
-			//useful
-			if(!RReceiver.hashTable[i].empty()&&!this.hashTable[i].empty()&&
-			//this.hashTable[i].keyCheck==RReceiver.hashTable[i].keyCheck&&
-					this.hashTable[i].keySum==RReceiver.hashTable[i].keySum){
-			//use only buckets that have insertions
-				
-				good+= Math.abs(RReceiver.hashTable[i].getNumItems());
-			//////System.out.println("$size:"+t);
-		}
-			
-	}
+		//use only buckets that have insertions
+		double good=RDAKernels.goodPackets(this.buckets, RReceiver.buckets);
 		//averaged by the number of hash functions
 		return good/N_HASH;
-}
+	}
 
 	@Override
 	public void write(DataOutput out) throws IOException {
-		// TODO Auto-generated method stub
-		
+		RDATableCodec.write(out, buckets);
 	}
 
 	@Override
 	public void readFields(DataInput in) throws IOException {
-		// TODO Auto-generated method stub
-		
+		buckets = RDATableCodec.read(in);
+		expectedNumEntries = buckets.size();
+		if(BFOps==null){
+			BFOps = new Semaphore(1);
+		}
 	}
 
 
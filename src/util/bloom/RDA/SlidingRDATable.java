@@ -0,0 +1,199 @@
+package util.bloom.RDA;
+
+import java.util.HashSet;
+
+/**
+ * RDA table over the last window of time instead of a measurement period:
+ * a ring of sub-window SimpleRDATables, one per slice of the window, and a
+ * running aggregate of all of them. A packet goes into the table of its
+ * slice and into the aggregate; when a slice leaves the window its table is
+ * subtracted from the aggregate (Counter-=, TS-=, keySum^=) and cleared for
+ * reuse, so the window can be asked for at any time and the capture never
+ * stops for a reset.
+ *
+ * the timestamps are floats in the buckets, the aggregate is rebuilt from the
+ * live slices once per turn of the ring so that the rounding of the
+ * subtractions does not pile up.
+ *
+ * both hosts cut the slices at the same multiples of the slice length, the
+ * packets in flight over a cut are decoded as a difference and repaired like
+ * any lost packet
+ */
+public class SlidingRDATable {
+
+	final int slots;
+	//time per slice, in the unit of the timestamps
+	final double slice;
+
+	final SimpleRDATable[] ring;
+	//id -> timestamp of the packets of every slice, to repair the window
+	final LongDoubleMap[] ids;
+	final SimpleRDATable aggregate;
+
+	//slice number of the newest slice, MIN_VALUE before the first packet
+	long current = Long.MIN_VALUE;
+	//slices expired since the last rebuild of the aggregate
+	int expired = 0;
+	long packets = 0;
+
+	/**
+	 * @param numBuckets buckets of every table
+	 * @param window length of the window, in the unit of the timestamps
+	 * @param _slots slices of the window
+	 * @param expected packets within the window
+	 */
+	public SlidingRDATable(int numBuckets, double window, int _slots, int expected) {
+		slots = Math.max(2, _slots);
+		slice = window / slots;
+		ring = new SimpleRDATable[slots];
+		ids = new LongDoubleMap[slots];
+		for (int i = 0; i < slots; i++) {
+			ring[i] = new SimpleRDATable(numBuckets);
+			ids[i] = LongDoubleMap.create(expected / slots, false);
+		}
+		aggregate = new SimpleRDATable(numBuckets);
+	}
+
+	long sliceOf(double ts) {
+		return (long) Math.floor(ts / slice);
+	}
+
+	int index(long s) {
+		return (int) (((s % slots) + slots) % slots);
+	}
+
+	/**
+	 * @param id
+	 * @param ts
+	 * @return false if the packet is older than the window, or already there
+	 */
+	public synchronized boolean insert(long id, double ts) {
+		long s = sliceOf(ts);
+		advance(s);
+		if (s <= current - slots) {
+			return false;
+		}
+		int i = index(s);
+		if (!ids[i].putIfAbsent(id, ts)) {
+			return false;
+		}
+		ring[i].insert(id, ts, 1);
+		aggregate.insert(id, ts, 1);
+		packets++;
+		return true;
+	}
+
+	/**
+	 * move the window so that the slice of ts is the newest, e.g. before a
+	 * query when no packet came for a while
+	 * @param ts
+	 */
+	public synchronized void advanceTo(double ts) {
+		advance(sliceOf(ts));
+	}
+
+	void advance(long s) {
+		if (current == Long.MIN_VALUE) {
+			current = s;
+			return;
+		}
+		if (s <= current) {
+			return;
+		}
+		if (s - current >= slots) {
+			//idle for longer than the window
+			for (int i = 0; i < slots; i++) {
+				expire(i);
+			}
+			aggregate.buckets.clear();
+			expired = 0;
+			current = s;
+			return;
+		}
+		while (current < s) {
+			current++;
+			//the slice that falls out shares the index of the new one
+			int i = index(current);
+			aggregate.buckets.subtract(ring[i].buckets);
+			expire(i);
+			if (++expired >= slots) {
+				rebuild();
+			}
+		}
+	}
+
+	void expire(int i) {
+		packets -= ids[i].size();
+		ring[i].buckets.clear();
+		ids[i].clear();
+	}
+
+	/**
+	 * sum of the live slices
+	 */
+	void rebuild() {
+		aggregate.buckets.clear();
+		for (SimpleRDATable t : ring) {
+			aggregate.buckets.add(t.buckets);
+		}
+		expired = 0;
+	}
+
+	/**
+	 * the window as one table, a copy
+	 * @param end timestamp the window ends at, the window is moved there first
+	 * @return
+	 */
+	public synchronized SimpleRDATable snapshot(double end) {
+		advance(sliceOf(end));
+		return aggregate.copyTable();
+	}
+
+	/**
+	 * @param id
+	 * @param missing
+	 * @return timestamp of a packet in the window
+	 */
+	public synchronized double getTS(long id, double missing) {
+		for (LongDoubleMap m : ids) {
+			if (m.containsKey(id)) {
+				return m.get(id, missing);
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * erase decoded ids from a snapshot, with the timestamps of the window
+	 * @param table from snapshot()
+	 * @param decoded
+	 * @return ids found
+	 */
+	public int repair(SimpleRDATable table, HashSet<Long> decoded) {
+		int n = 0;
+		for (long id : decoded) {
+			double ts = getTS(id, Double.NaN);
+			if (!Double.isNaN(ts)) {
+				table.erase(id, ts, 1);
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * packets within the window
+	 * @return
+	 */
+	public synchronized long size() {
+		return packets;
+	}
+
+	public int getNumBuckets() {
+		return aggregate.getNumBuckets();
+	}
+
+	public double getWindow() {
+		return slice * slots;
+	}
+}